@@ -0,0 +1,94 @@
+package com.maciejwasiak.locon.dto;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.maciejwasiak.locon.geofence.ZoneSnapshot;
+import com.maciejwasiak.locon.model.Device;
+import com.maciejwasiak.locon.model.User;
+import com.maciejwasiak.locon.model.UserRole;
+import com.maciejwasiak.locon.model.Zone;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DtoBenchmark {
+
+    @Param({ "10", "1000" })
+    int events;
+
+    private Zone zone;
+    private ZoneSnapshot zoneSnapshot;
+    private Device device;
+    private ThemeDto theme;
+    private List<GeofenceEventDto> eventList;
+    private ObjectMapper objectMapper;
+
+    @Setup
+    public void setUp() {
+        User user = new User("+48123456789", UserRole.USER);
+        user.setId(1L);
+        zone = new Zone("Home", "home", "Address", 52.2297, 21.0122, 300);
+        zone.setId(1L);
+        zone.setUser(user);
+        zone.setDeviceIds(List.of("1", "2"));
+        zoneSnapshot = ZoneSnapshot.from(zone);
+        device = new Device("watch", "GJD.13", "Kid", user);
+        device.setId(1L);
+        theme = ThemeDto.createDefaultTheme("play");
+
+        eventList = new ArrayList<>(events);
+        Instant now = Instant.now();
+        for (int i = 0; i < events; i++) {
+            eventList.add(new GeofenceEventDto(1L, "Home", String.valueOf(i % 3), "Device " + i % 3,
+                52.2297, 21.0122, 300, i % 2 == 0 ? "ENTER" : "EXIT", now.minusSeconds(i)));
+        }
+        // Same configuration Spring Boot applies to the application's ObjectMapper
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    }
+
+    @Benchmark
+    public ZoneDto zoneDtoFromEntity() {
+        return ZoneDto.from(zone);
+    }
+
+    @Benchmark
+    public ZoneDto zoneDtoFromSnapshot() {
+        return ZoneDto.from(zoneSnapshot);
+    }
+
+    @Benchmark
+    public DeviceDto deviceDtoFrom() {
+        return DeviceDto.from(device);
+    }
+
+    @Benchmark
+    public Map<String, String> themeToMap() {
+        return theme.toMap();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public byte[] serializeGeofenceEvents() throws Exception {
+        return objectMapper.writeValueAsBytes(eventList);
+    }
+}
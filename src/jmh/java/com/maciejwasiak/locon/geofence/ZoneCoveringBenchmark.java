@@ -0,0 +1,162 @@
+package com.maciejwasiak.locon.geofence;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-fix cost of deciding which side of a zone's hysteresis band a device is on: a one-probe cell
+ * covering against the exact check {@link ZoneTable#distanceMeters(int, double, double)} followed by
+ * comparisons with the enter and exit radii.
+ * <p>
+ * The covering is the cheapest form one could have: a flat grid of finest-level cells per zone, half
+ * a band wide, spanning the exit radius, each marked inside, outside or boundary. A fix is projected
+ * into the zone's local frame exactly as the exact check does and decided by a single array load;
+ * only boundary cells fall back to the distance. Fixes are spread over a disc of twice the radius
+ * around many zones so lookups do not stay in one zone's cache lines.
+ * <p>
+ * Both paths share the projection, which is most of the work; the exact check only adds a square
+ * root and two comparisons, so the covering cannot win for circles and is not used by the engine.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ZoneCoveringBenchmark {
+
+    private static final int FIXES = 4096;
+    private static final int ZONES = 1024;
+    private static final double METERS_PER_DEGREE = 111_195.0;
+    private static final byte INSIDE = 1;
+    private static final byte OUTSIDE = 2;
+    private static final byte BOUNDARY = 3;
+
+    @Param({ "100", "1000" })
+    int radiusMeters;
+
+    private ZoneTable table;
+    private double enterRadius;
+    private double exitRadius;
+    private double[] zoneLatRad;
+    private double[] zoneLngRad;
+    private double[] zoneCosLat;
+    private byte[][] cells;
+    private int side;
+    private double cellMeters;
+    private int[] slots;
+    private double[] latRad;
+    private double[] lngRad;
+
+    @Setup
+    public void setUp() {
+        TransitionPolicy policy = new TransitionPolicy(0.1, 10, 100, 0);
+        enterRadius = policy.enterRadiusMeters(radiusMeters);
+        exitRadius = policy.exitRadiusMeters(radiusMeters);
+        cellMeters = policy.bandMeters(radiusMeters) / 2;
+        side = (int) Math.ceil(2 * exitRadius / cellMeters);
+
+        Random random = new Random(42);
+        List<ZoneSnapshot> zones = new ArrayList<>(ZONES);
+        zoneLatRad = new double[ZONES];
+        zoneLngRad = new double[ZONES];
+        zoneCosLat = new double[ZONES];
+        cells = new byte[ZONES][];
+        for (int i = 0; i < ZONES; i++) {
+            double latitude = 49.0 + random.nextDouble() * 5;
+            double longitude = 14.0 + random.nextDouble() * 10;
+            zones.add(new ZoneSnapshot(i, "Zone " + i, "home", "Address", latitude, longitude, radiusMeters,
+                true, null, List.of()));
+            zoneLatRad[i] = Math.toRadians(latitude);
+            zoneLngRad[i] = Math.toRadians(longitude);
+            zoneCosLat[i] = Math.cos(zoneLatRad[i]);
+            cells[i] = cover();
+        }
+        table = ZoneTable.of(zones);
+
+        slots = new int[FIXES];
+        latRad = new double[FIXES];
+        lngRad = new double[FIXES];
+        for (int i = 0; i < FIXES; i++) {
+            int slot = random.nextInt(ZONES);
+            ZoneSnapshot zone = zones.get(slot);
+            double distance = random.nextDouble() * 2 * radiusMeters;
+            double bearing = random.nextDouble() * 2 * Math.PI;
+            slots[i] = slot;
+            latRad[i] = Math.toRadians(zone.latitude() + distance * Math.cos(bearing) / METERS_PER_DEGREE);
+            lngRad[i] = Math.toRadians(zone.longitude() + distance * Math.sin(bearing)
+                / (METERS_PER_DEGREE * Math.cos(Math.toRadians(zone.latitude()))));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FIXES)
+    public int exact() {
+        int decided = 0;
+        for (int i = 0; i < FIXES; i++) {
+            double distance = table.distanceMeters(slots[i], latRad[i], lngRad[i]);
+            decided += distance <= enterRadius ? INSIDE : distance > exitRadius ? OUTSIDE : BOUNDARY;
+        }
+        return decided;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FIXES)
+    public int covering() {
+        int decided = 0;
+        for (int i = 0; i < FIXES; i++) {
+            int slot = slots[i];
+            double x = (lngRad[i] - zoneLngRad[slot]) * zoneCosLat[slot] * GeoMath.EARTH_RADIUS_METERS + exitRadius;
+            double y = (latRad[i] - zoneLatRad[slot]) * GeoMath.EARTH_RADIUS_METERS + exitRadius;
+            int column = (int) Math.floor(x / cellMeters);
+            int row = (int) Math.floor(y / cellMeters);
+            byte cell = column < 0 || row < 0 || column >= side || row >= side
+                ? OUTSIDE
+                : cells[slot][row * side + column];
+            if (cell == BOUNDARY) {
+                double distance = table.distanceMeters(slot, latRad[i], lngRad[i]);
+                cell = distance <= enterRadius ? INSIDE : distance > exitRadius ? OUTSIDE : BOUNDARY;
+            }
+            decided += cell;
+        }
+        return decided;
+    }
+
+    /**
+     * Marks each cell by the nearest and farthest distance of its square from the zone center.
+     */
+    private byte[] cover() {
+        byte[] grid = new byte[side * side];
+        for (int row = 0; row < side; row++) {
+            for (int column = 0; column < side; column++) {
+                double minX = column * cellMeters - exitRadius;
+                double minY = row * cellMeters - exitRadius;
+                double maxX = minX + cellMeters;
+                double maxY = minY + cellMeters;
+                double nearX = Math.max(minX, Math.min(0, maxX));
+                double nearY = Math.max(minY, Math.min(0, maxY));
+                double farX = Math.max(Math.abs(minX), Math.abs(maxX));
+                double farY = Math.max(Math.abs(minY), Math.abs(maxY));
+                grid[row * side + column] = Math.hypot(farX, farY) <= enterRadius ? INSIDE
+                    : Math.hypot(nearX, nearY) > exitRadius ? OUTSIDE
+                    : BOUNDARY;
+            }
+        }
+        return grid;
+    }
+}
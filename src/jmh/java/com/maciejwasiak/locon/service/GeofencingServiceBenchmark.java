@@ -0,0 +1,73 @@
+package com.maciejwasiak.locon.service;
+
+import com.maciejwasiak.locon.dto.GeofenceEventDto;
+import com.maciejwasiak.locon.model.Zone;
+import com.maciejwasiak.locon.repository.ZoneRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeofencingServiceBenchmark {
+
+    private static final long ZONE_ID = 1L;
+
+    @Param({ "10", "1000" })
+    int count;
+
+    private GeofencingService geofencingService;
+    private Random random;
+
+    @Setup
+    public void setUp() {
+        Zone zone = new Zone("Home", "home", "Address", 52.2297, 21.0122, 300);
+        zone.setId(ZONE_ID);
+        zone.setDeviceIds(List.of("1", "2", "3"));
+        // Only findById is needed; a proxy keeps repository cost out of the measurement
+        ZoneRepository zoneRepository = (ZoneRepository) Proxy.newProxyInstance(
+            ZoneRepository.class.getClassLoader(), new Class<?>[] { ZoneRepository.class },
+            (proxy, method, args) -> {
+                if (method.getName().equals("findById")) {
+                    return Optional.of(zone);
+                }
+                throw new UnsupportedOperationException(method.getName());
+            });
+        geofencingService = new GeofencingService(zoneRepository, null, null);
+        random = new Random(42);
+    }
+
+    @Benchmark
+    public List<GeofenceEventDto> generateMockEvents() {
+        return geofencingService.generateMockEvents(ZONE_ID, count);
+    }
+
+    @Benchmark
+    public long streamMockEvents() {
+        return geofencingService.streamMockEvents(ZONE_ID, count, 42L).count();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public double[] jitterCoordinates() {
+        return GeofencingService.jitterCoordinates(random, 52.2297, 21.0122, 50);
+    }
+}
@@ -0,0 +1,20 @@
+package com.maciejwasiak.locon.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.maciejwasiak.locon.service.NotificationSender;
+import com.maciejwasiak.locon.service.OutboxNotificationSender;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(GeofenceProperties.class)
+public class GeofenceConfig {
+
+    @Bean
+    @ConditionalOnMissingBean(NotificationSender.class)
+    public OutboxNotificationSender outboxNotificationSender(ObjectMapper objectMapper, GeofenceProperties properties) {
+        return new OutboxNotificationSender(objectMapper, properties.getNotifications().getOutboxFile());
+    }
+}
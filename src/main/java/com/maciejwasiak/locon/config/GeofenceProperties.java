@@ -0,0 +1,178 @@
+package com.maciejwasiak.locon.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Tunables for the geofencing pipeline, bound from {@code locon.geofence.*}.
+ */
+@Data
+@ConfigurationProperties(prefix = "locon.geofence")
+public class GeofenceProperties {
+
+    private Transitions transitions = new Transitions();
+    private Scheduling scheduling = new Scheduling();
+    private Reporting reporting = new Reporting();
+    private Stream stream = new Stream();
+    private EventLog eventLog = new EventLog();
+    private Mock mock = new Mock();
+    private Simulator simulator = new Simulator();
+    private Pipeline pipeline = new Pipeline();
+    private Priority priority = new Priority();
+    private Snapshot snapshot = new Snapshot();
+    private Notifications notifications = new Notifications();
+    private Tracks tracks = new Tracks();
+
+    @Data
+    public static class Transitions {
+        /** Hysteresis band as a fraction of the zone radius: enter below r - band, exit above r + band. */
+        private double bandRatio = 0.1;
+        /** Lower bound of the band, roughly the GPS noise floor. */
+        private double minBandMeters = 10;
+        /** Upper bound of the band so large zones do not get sluggish edges. */
+        private double maxBandMeters = 100;
+        /** Time a device has to stay on the new side before a transition is confirmed; zero confirms at once. */
+        private Duration minDwell = Duration.ZERO;
+    }
+
+    @Data
+    public static class Scheduling {
+        /** Skip evaluating fixes of devices that cannot have reached any zone boundary yet. */
+        private boolean enabled = true;
+        /** Fastest plausible device speed used to predict the earliest boundary crossing (~250 km/h). */
+        private double maxSpeedMetersPerSecond = 70;
+        /** Upper bound on how long a device may go without a full evaluation. */
+        private Duration maxSkip = Duration.ofMinutes(15);
+    }
+
+    @Data
+    public static class Reporting {
+        /** Shortest next-report interval suggested to trackers (near a boundary or unknown). */
+        private Duration minInterval = Duration.ofSeconds(10);
+        /** Longest interval suggested, also used for devices without zones. */
+        private Duration maxInterval = Duration.ofMinutes(10);
+        /** Speed floor so stationary devices still re-check before they could walk to a boundary. */
+        private double minSpeedMetersPerSecond = 1.5;
+        /** Fraction of the time-to-boundary to suggest, leaving room for acceleration. */
+        private double safetyFactor = 0.5;
+    }
+
+    @Data
+    public static class Stream {
+        /** Events buffered per SSE subscriber before the oldest ones are dropped. */
+        private int bufferSize = 256;
+        /** Maximum events written to one subscriber per dispatch turn. */
+        private int maxBatch = 64;
+        /** Threads shared by all subscribers for writing to their connections. */
+        private int dispatchThreads = 2;
+        /**
+         * Longest a single write may block before its subscriber is dropped; meanwhile an extra dispatch
+         * thread stands in for the blocked one.
+         */
+        private Duration writeTimeout = Duration.ofSeconds(5);
+        /** Idle timeout of an SSE connection. */
+        private Duration timeout = Duration.ofMinutes(30);
+    }
+
+    @Data
+    public static class EventLog {
+        /** Directory holding the memory-mapped event log segments. */
+        private String directory = "data/geofence-events";
+        /** Size of one segment file; each is mapped in full. */
+        private int segmentSizeBytes = 64 * 1024 * 1024;
+        /** Force every appended batch to disk instead of relying on the page cache. */
+        private boolean forceOnAppend = false;
+        /** How long transitions are kept; a sealed segment is deleted once all its events are older. */
+        private Duration retention = Duration.ofDays(30);
+        /** How often expired segments are looked for. */
+        private Duration purgeInterval = Duration.ofHours(1);
+    }
+
+    @Data
+    public static class Mock {
+        /** Upper bound on events generated by one mock-events request; larger counts are clamped. */
+        private int maxEvents = 100_000;
+    }
+
+    @Data
+    public static class Simulator {
+        /** Largest virtual fleet one simulation run may create. */
+        private int maxDevices = 200_000;
+        /** Upper bound on devices x ticks for one run. */
+        private long maxFixesPerRun = 20_000_000;
+        /** Longest wall time a run paced by a target fix rate may be scheduled to take. */
+        private Duration maxPacedDuration = Duration.ofMinutes(10);
+        /** Latency samples kept per run for percentiles (reservoir sampled). */
+        private int latencySamples = 100_000;
+    }
+
+    @Data
+    public static class Pipeline {
+        /** Preallocated slots between HTTP ingestion and evaluation; must be a power of two. */
+        private int ringSize = 65_536;
+        /** Device-state partitions, each evaluated by its own single writer thread; defaults to one per core. */
+        private int partitions = Runtime.getRuntime().availableProcessors();
+        /** How long shutdown waits for accepted fixes to drain through every stage. */
+        private Duration drainTimeout = Duration.ofSeconds(5);
+        /** Queued fixes per partition above which routine fixes for that partition are shed. */
+        private int partitionCapacity = 16_384;
+        /**
+         * Share of the ring kept free of routine fixes; the same number of fixes may be pending in the SOS
+         * lane, beyond which SOS fixes are shed too.
+         */
+        private double sosReserve = 0.1;
+        /** Retry-After sent with 429 responses when fixes are shed. */
+        private Duration retryAfter = Duration.ofSeconds(2);
+    }
+
+    @Data
+    public static class Snapshot {
+        /** Directory holding the engine state snapshot. */
+        private String directory = "data/geofence-snapshots";
+        /** How often device-zone states are snapshotted; zero or negative writes only on shutdown. */
+        private Duration interval = Duration.ofMinutes(5);
+    }
+
+    @Data
+    public static class Tracks {
+        /** Directory holding one compressed track file per UTC day. */
+        private String directory = "data/geofence-tracks";
+        /** How long day files are kept; older ones are deleted, and older fixes are not stored. */
+        private Duration retention = Duration.ofDays(30);
+        /** Fixes per device block; larger blocks compress better but buffer more per device. */
+        private int blockFixes = 1024;
+        /** Open blocks older than this are sealed even if not full, bounding what a crash can lose. */
+        private Duration blockAge = Duration.ofMinutes(10);
+        /** How often sealed blocks are appended to the day files. */
+        private Duration flushInterval = Duration.ofSeconds(30);
+    }
+
+    @Data
+    public static class Notifications {
+        /** Threads calling the {@code NotificationSender}. */
+        private int dispatchThreads = 2;
+        /** Per-recipient deliveries waiting for a sender thread; further deliveries are dropped. */
+        private int queueCapacity = 10_000;
+        /** NDJSON file the default sender appends to; blank to only log. */
+        private String outboxFile = "data/notifications/outbox.ndjson";
+        /** Digest window for zones without their own; zero sends every transition on its own. */
+        private Duration digestWindow = Duration.ofSeconds(30);
+        /** Resolution of the digest timing wheel. */
+        private Duration digestTick = Duration.ofMillis(100);
+        /** Slots of the digest timing wheel; a power of two. */
+        private int digestWheelSlots = 512;
+    }
+
+    @Data
+    public static class Priority {
+        /** Device types (case-insensitive) whose fixes are never shed for routine load. */
+        private List<String> sosDeviceTypes = List.of("SOS", "Phone SOS");
+        /** Target time from receiving an SOS fix to its transitions being persisted and published. */
+        private Duration evaluationSlo = Duration.ofMillis(100);
+        /** Target time from handing an SOS transition to the dispatcher to the sender returning. */
+        private Duration notificationSlo = Duration.ofSeconds(1);
+    }
+}
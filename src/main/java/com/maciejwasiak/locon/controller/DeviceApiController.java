@@ -1,8 +1,13 @@
 package com.maciejwasiak.locon.controller;
 
 import com.maciejwasiak.locon.dto.DeviceDto;
+import com.maciejwasiak.locon.dto.DeviceLocationDto;
+import com.maciejwasiak.locon.dto.TrackPointDto;
 import com.maciejwasiak.locon.model.User;
+import com.maciejwasiak.locon.service.DeviceLocationStore;
+import com.maciejwasiak.locon.service.DevicePermissionService;
 import com.maciejwasiak.locon.service.DeviceService;
+import com.maciejwasiak.locon.service.DeviceTrackStore;
 import jakarta.servlet.http.HttpSession;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -10,8 +15,11 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.List;
 
 @RestController
@@ -20,7 +28,12 @@ import java.util.List;
 @Slf4j
 public class DeviceApiController {
     
+    private static final int MAX_TRACK_POINTS = 100_000;
+
     private final DeviceService deviceService;
+    private final DeviceLocationStore locationStore;
+    private final DeviceTrackStore trackStore;
+    private final DevicePermissionService devicePermissionService;
     
     @GetMapping
     public ResponseEntity<List<DeviceDto>> getUserDevices(HttpSession session) {
@@ -49,4 +62,86 @@ public class DeviceApiController {
                     return ResponseEntity.notFound().build();
                 });
     }
+
+    /**
+     * Last known location of one of the session user's devices, served from memory; 404 until the device
+     * has reported a fix.
+     */
+    @GetMapping("/{id}/location")
+    public ResponseEntity<DeviceLocationDto> getDeviceLocation(@PathVariable Long id, HttpSession session) {
+        ResponseEntity<DeviceLocationDto> denied = denyDeviceAccess((User) session.getAttribute("user"), id);
+        if (denied != null) {
+            return denied;
+        }
+        return locationStore.getLocation(id)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Last known locations of the session user's devices, served from memory. {@code userId} may only
+     * name the session user. Devices that have not reported yet are left out.
+     */
+    @GetMapping("/locations")
+    public ResponseEntity<List<DeviceLocationDto>> getDeviceLocations(
+            @RequestParam(required = false) Long userId, HttpSession session) {
+        User user = (User) session.getAttribute("user");
+        if (user == null) {
+            log.warn("Unauthorized access to device locations endpoint");
+            return ResponseEntity.status(401).build();
+        }
+        Long ownerId = userId != null ? userId : user.getId();
+        if (!devicePermissionService.canTrackDevicesOf(user, ownerId)) {
+            log.warn("User {} denied device locations of user {}", user.getId(), ownerId);
+            return ResponseEntity.status(403).build();
+        }
+        return ResponseEntity.ok(locationStore.getLocationsOfUser(ownerId));
+    }
+
+    /**
+     * Stored track of one of the session user's devices between {@code from} and {@code to} (inclusive),
+     * by default the last 24 hours, in time order.
+     */
+    @GetMapping("/{id}/track")
+    public ResponseEntity<List<TrackPointDto>> getDeviceTrack(
+            @PathVariable Long id,
+            @RequestParam(required = false) Instant from,
+            @RequestParam(required = false) Instant to,
+            @RequestParam(defaultValue = "10000") int limit,
+            HttpSession session) {
+        ResponseEntity<List<TrackPointDto>> denied = denyDeviceAccess((User) session.getAttribute("user"), id);
+        if (denied != null) {
+            return denied;
+        }
+        Instant end = to != null ? to : Instant.now();
+        Instant start = from != null ? from : end.minus(Duration.ofDays(1));
+        if (start.isAfter(end) || limit < 1 || limit > MAX_TRACK_POINTS) {
+            return ResponseEntity.badRequest().build();
+        }
+        log.debug("Reading track of device {} from {} to {}", id, start, end);
+        return ResponseEntity.ok(trackStore.track(id, start, end, limit));
+    }
+
+    /**
+     * Returns the response refusing access to the device's position data, or {@code null} when the user
+     * may see it.
+     */
+    private <T> ResponseEntity<T> denyDeviceAccess(User user, Long deviceId) {
+        if (user == null) {
+            log.warn("Unauthorized access to position data of device {}", deviceId);
+            return ResponseEntity.status(401).build();
+        }
+        Long ownerId = locationStore.ownerOf(deviceId);
+        if (ownerId == null) {
+            ownerId = deviceService.getDeviceById(deviceId).map(DeviceDto::userId).orElse(null);
+        }
+        if (ownerId == null) {
+            return ResponseEntity.notFound().build();
+        }
+        if (!devicePermissionService.canTrackDevicesOf(user, ownerId)) {
+            log.warn("User {} denied position data of device {}", user.getId(), deviceId);
+            return ResponseEntity.status(403).build();
+        }
+        return null;
+    }
 }
@@ -1,46 +1,281 @@
 package com.maciejwasiak.locon.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.maciejwasiak.locon.config.GeofenceProperties;
 import com.maciejwasiak.locon.dto.GeofenceEventDto;
+import com.maciejwasiak.locon.dto.LocationBatchRequest;
+import com.maciejwasiak.locon.dto.LocationBatchResponse;
+import com.maciejwasiak.locon.dto.LocationFixDto;
+import com.maciejwasiak.locon.dto.ReportingHint;
+import com.maciejwasiak.locon.dto.SimulationReport;
+import com.maciejwasiak.locon.dto.SimulationRequest;
+import com.maciejwasiak.locon.dto.ZoneDto;
+import com.maciejwasiak.locon.geofence.ZoneSnapshot;
+import com.maciejwasiak.locon.geofence.ZoneTable;
+import com.maciejwasiak.locon.model.User;
+import com.maciejwasiak.locon.model.UserRole;
+import com.maciejwasiak.locon.service.DeviceService;
+import com.maciejwasiak.locon.service.FleetSimulator;
+import com.maciejwasiak.locon.service.GeofenceEngine;
+import com.maciejwasiak.locon.service.GeofenceEventStore;
+import com.maciejwasiak.locon.service.GeofencePipeline;
+import com.maciejwasiak.locon.service.GeofenceStreamHub;
 import com.maciejwasiak.locon.service.GeofencingService;
+import jakarta.servlet.http.HttpSession;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @RestController
 @RequestMapping("/api/geofence")
+@Validated
 public class GeofencingController {
 
     private static final Logger log = LoggerFactory.getLogger(GeofencingController.class);
+    private static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType("application/x-ndjson");
 
     private final GeofencingService geofencingService;
+    private final GeofenceStreamHub streamHub;
+    private final GeofenceEventStore eventStore;
+    private final ObjectMapper objectMapper;
+    private final GeofenceProperties.Mock mockProperties;
+    private final FleetSimulator fleetSimulator;
+    private final GeofencePipeline pipeline;
+    private final GeofenceEngine geofenceEngine;
+    private final DeviceService deviceService;
 
-    public GeofencingController(GeofencingService geofencingService) {
+    public GeofencingController(GeofencingService geofencingService, GeofenceStreamHub streamHub,
+                                GeofenceEventStore eventStore, ObjectMapper objectMapper,
+                                GeofenceProperties properties, FleetSimulator fleetSimulator,
+                                GeofencePipeline pipeline, GeofenceEngine geofenceEngine,
+                                DeviceService deviceService) {
         this.geofencingService = geofencingService;
+        this.streamHub = streamHub;
+        this.eventStore = eventStore;
+        this.objectMapper = objectMapper;
+        this.mockProperties = properties.getMock();
+        this.fleetSimulator = fleetSimulator;
+        this.pipeline = pipeline;
+        this.geofenceEngine = geofenceEngine;
+        this.deviceService = deviceService;
     }
 
     @GetMapping("/events/{zoneId}")
-    public ResponseEntity<List<GeofenceEventDto>> getMockEvents(
+    public ResponseEntity<StreamingResponseBody> getMockEvents(
         @PathVariable Long zoneId,
-        @RequestParam(name = "count", required = false, defaultValue = "10") int count
+        @RequestParam(name = "count", required = false, defaultValue = "10") int count,
+        @RequestParam(required = false) Long seed,
+        @RequestHeader(name = HttpHeaders.ACCEPT, required = false) String accept
     ) {
-        log.info("Generating mock geofence events: zoneId={}, count={}", zoneId, count);
-        List<GeofenceEventDto> events = geofencingService.generateMockEvents(zoneId, count);
-        for (GeofenceEventDto event : events) {
-            log.info("Geofence {}: zone='{}' device='{}' at [{}, {}] radius={}m time={}",
-                event.eventType(), event.zoneName(), event.deviceName(),
-                String.format("%.5f", event.latitude()), String.format("%.5f", event.longitude()),
-                event.radiusMeters(), event.occurredAt());
+        int limit = Math.min(count, mockProperties.getMaxEvents());
+        boolean ndjson = accept != null && accept.contains(APPLICATION_NDJSON.toString());
+        log.debug("Streaming mock geofence events: zoneId={}, count={} (requested {}), seed={}, ndjson={}",
+            zoneId, limit, count, seed, ndjson);
+        Stream<GeofenceEventDto> events = geofencingService.streamMockEvents(zoneId, limit, seed);
+
+        StreamingResponseBody body = out -> {
+            ObjectWriter writer = objectMapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            try (SequenceWriter sequence = ndjson
+                    ? writer.withRootValueSeparator("\n").writeValues(out)
+                    : writer.writeValuesAsArray(out)) {
+                events.forEach(event -> {
+                    try {
+                        sequence.write(event);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+            if (ndjson) {
+                out.write('\n');
+            }
+        };
+        return ResponseEntity.ok()
+            .contentType(ndjson ? APPLICATION_NDJSON : MediaType.APPLICATION_JSON)
+            .body(body);
+    }
+
+    /**
+     * Evaluates the fixes and returns their transitions. When the pipeline is saturated routine fixes are
+     * shed with 429 and a Retry-After header; {@code accepted} then counts the (SOS) fixes still taken.
+     */
+    @PostMapping("/locations/batch")
+    public ResponseEntity<LocationBatchResponse> ingestBatch(@Valid @RequestBody LocationBatchRequest request) {
+        log.debug("Ingesting batch of {} location fixes", request.fixes().size());
+        LocationBatchResponse response = geofencingService.offerBatch(request.fixes());
+        log.debug("Batch produced {} transitions", response.transitions().size());
+        if (response.accepted() < request.fixes().size()) {
+            return tooManyRequests(response);
         }
-        log.debug("Generated {} mock events for zone {}", events.size(), zoneId);
-        return ResponseEntity.ok(events);
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Accepts fixes for asynchronous evaluation through the {@link GeofencePipeline}. Transitions are
+     * delivered through the stream and history endpoints; the response only carries reporting hints,
+     * based on what the engine knew before this batch. Shedding works as for the synchronous endpoint.
+     */
+    @PostMapping("/locations")
+    public ResponseEntity<LocationBatchResponse> ingestAsync(@Valid @RequestBody LocationBatchRequest request) {
+        List<LocationFixDto> fixes = request.fixes();
+        GeofencePipeline.Admission admission = pipeline.offer(fixes, false);
+        if (!admission.isComplete()) {
+            log.debug("Geofence pipeline saturated, shed {} of {} fixes", admission.shed(), fixes.size());
+            return tooManyRequests(new LocationBatchResponse(admission.accepted(), List.of()));
+        }
+        List<ReportingHint> hints = fixes.stream()
+            .map(LocationFixDto::deviceId)
+            .distinct()
+            .map(deviceId -> new ReportingHint(deviceId, geofenceEngine.recommendedReportSeconds(deviceId)))
+            .toList();
+        return ResponseEntity.accepted().body(new LocationBatchResponse(fixes.size(), List.of(), hints));
+    }
+
+    private ResponseEntity<LocationBatchResponse> tooManyRequests(LocationBatchResponse body) {
+        long retryAfterSeconds = Math.max(1, pipeline.getRetryAfter().toSeconds());
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+            .header(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds))
+            .body(body);
+    }
+
+    @PostMapping("/simulations")
+    public ResponseEntity<SimulationReport> runSimulation(@Valid @RequestBody SimulationRequest request,
+                                                          HttpSession session) {
+        User user = (User) session.getAttribute("user");
+        if (user == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        if (user.getRole() != UserRole.ADMIN) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        log.debug("Running fleet simulation: devices={}, ticks={}, model={}",
+            request.devices(), request.ticks(), request.modelOrDefault());
+        try {
+            return ResponseEntity.ok(fleetSimulator.run(request));
+        } catch (IllegalArgumentException e) {
+            log.debug("Rejected fleet simulation: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+    }
+
+    @GetMapping("/containing")
+    public ResponseEntity<List<ZoneDto>> getZonesContaining(
+        @RequestParam @DecimalMin("-90.0") @DecimalMax("90.0") double lat,
+        @RequestParam @DecimalMin("-180.0") @DecimalMax("180.0") double lng
+    ) {
+        log.debug("Looking up zones containing [{}, {}]", lat, lng);
+        return ResponseEntity.ok(geofencingService.findZonesContaining(lat, lng));
+    }
+
+    /**
+     * Live transitions of one of the session user's zones, or of all their zones when no zone is given.
+     */
+    @GetMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamEvents(
+        @RequestParam(required = false) Long zoneId,
+        @RequestParam(required = false) Long userId,
+        HttpSession session
+    ) {
+        User user = (User) session.getAttribute("user");
+        if (user == null) {
+            log.warn("Unauthorized access to geofence event stream");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        if ((userId != null && !userId.equals(user.getId()))
+                || (zoneId != null && !user.getId().equals(zoneOwner(zoneId)))) {
+            log.warn("User {} denied geofence event stream: zoneId={}, userId={}", user.getId(), zoneId, userId);
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        log.debug("Opening geofence event stream: zoneId={}, userId={}", zoneId, user.getId());
+        return ResponseEntity.ok(zoneId != null
+            ? streamHub.subscribe(zoneId, null)
+            : streamHub.subscribe(null, user.getId()));
     }
-}
 
+    private GeofenceEventStore.Scope scopeOf(User user) {
+        Set<String> devices = deviceService.getDevicesByUser(user).stream()
+            .map(device -> String.valueOf(device.id()))
+            .collect(Collectors.toSet());
+        Set<Long> zones = geofenceEngine.getZoneTable().activeZones().stream()
+            .filter(zone -> user.getId().equals(zone.userId()))
+            .map(ZoneSnapshot::id)
+            .collect(Collectors.toSet());
+        return new GeofenceEventStore.Scope(devices, zones);
+    }
 
+    private Long zoneOwner(long zoneId) {
+        ZoneTable table = geofenceEngine.getZoneTable();
+        int slot = table.slotOf(zoneId);
+        return slot >= 0 ? table.zone(slot).userId() : null;
+    }
+
+    /**
+     * Stored transitions of the session user's devices and in the session user's zones, narrowed by the
+     * optional filters.
+     */
+    @GetMapping("/history")
+    public ResponseEntity<StreamingResponseBody> getHistory(
+        @RequestParam(required = false) String deviceId,
+        @RequestParam(required = false) Long zoneId,
+        @RequestParam(required = false) Instant from,
+        @RequestParam(required = false) Instant to,
+        @RequestParam(defaultValue = "1000") @Min(1) @Max(100_000) int limit,
+        HttpSession session
+    ) {
+        User user = (User) session.getAttribute("user");
+        if (user == null) {
+            log.warn("Unauthorized access to geofence history");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        if (from != null && to != null && from.isAfter(to)) {
+            return ResponseEntity.badRequest().build();
+        }
+        GeofenceEventStore.Scope scope = scopeOf(user);
+        log.debug("Querying geofence history of user {}: deviceId={}, zoneId={}, from={}, to={}, limit={}",
+            user.getId(), deviceId, zoneId, from, to, limit);
+        StreamingResponseBody body = out -> {
+            int written = eventStore.history(deviceId, zoneId, from, to, limit, scope, event -> {
+                try {
+                    out.write(objectMapper.writeValueAsBytes(event));
+                    out.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            log.debug("Streamed {} geofence history events", written);
+        };
+        return ResponseEntity.ok().contentType(APPLICATION_NDJSON).body(body);
+    }
+}
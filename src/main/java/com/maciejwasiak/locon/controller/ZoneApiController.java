@@ -20,6 +20,8 @@ import java.util.stream.Collectors;
 @Slf4j
 public class ZoneApiController {
     
+    private static final int MAX_NOTIFICATION_WINDOW_SECONDS = 3600;
+    
     private final ZoneService zoneService;
     
     @GetMapping
@@ -52,7 +54,7 @@ public class ZoneApiController {
         log.debug("Creating new zone: {}", request.name());
         ZoneDto zoneDto = request.toZoneDto();
         Zone createdZone = zoneService.createZone(zoneDto.name(), zoneDto.icon(), zoneDto.address(), 
-                zoneDto.latitude(), zoneDto.longitude(), zoneDto.radius());
+                zoneDto.latitude(), zoneDto.longitude(), zoneDto.radius(), zoneDto.vertices());
         log.info("Zone created successfully with id: {}", createdZone.getId());
         return ResponseEntity.status(HttpStatus.CREATED).body(ZoneDto.from(createdZone));
     }
@@ -92,4 +94,19 @@ public class ZoneApiController {
             return ResponseEntity.notFound().build();
         }
     }
+    
+    @PutMapping("/{id}/notifications/window")
+    public ResponseEntity<ZoneDto> setNotificationWindow(@PathVariable Long id,
+                                                         @RequestParam(required = false) Integer seconds) {
+        if (seconds != null && (seconds < 0 || seconds > MAX_NOTIFICATION_WINDOW_SECONDS)) {
+            return ResponseEntity.badRequest().build();
+        }
+        log.debug("Setting notification window for zone id: {} to: {}s", id, seconds);
+        try {
+            return ResponseEntity.ok(ZoneDto.from(zoneService.setNotificationWindow(id, seconds)));
+        } catch (RuntimeException e) {
+            log.warn("Zone not found for notification window with id: {}", id);
+            return ResponseEntity.notFound().build();
+        }
+    }
 }
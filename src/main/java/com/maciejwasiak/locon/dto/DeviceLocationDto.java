@@ -0,0 +1,24 @@
+package com.maciejwasiak.locon.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.maciejwasiak.locon.geofence.LastLocationTable;
+
+import java.time.Instant;
+
+public record DeviceLocationDto(
+    Long deviceId,
+    double latitude,
+    double longitude,
+    @JsonInclude(JsonInclude.Include.NON_NULL) Double accuracy,
+    Instant timestamp
+) {
+    public static DeviceLocationDto from(LastLocationTable.Location location) {
+        return new DeviceLocationDto(
+            location.deviceId(),
+            location.latitude(),
+            location.longitude(),
+            Double.isNaN(location.accuracyMeters()) ? null : location.accuracyMeters(),
+            Instant.ofEpochMilli(location.atMillis())
+        );
+    }
+}
@@ -0,0 +1,15 @@
+package com.maciejwasiak.locon.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+
+public record LocationBatchRequest(
+    @NotEmpty(message = "At least one location fix is required")
+    @Size(max = LocationBatchRequest.MAX_FIXES, message = "Batch must not exceed " + LocationBatchRequest.MAX_FIXES + " fixes")
+    List<@Valid LocationFixDto> fixes
+) {
+    public static final int MAX_FIXES = 10_000;
+}
@@ -0,0 +1,13 @@
+package com.maciejwasiak.locon.dto;
+
+import java.util.List;
+
+public record LocationBatchResponse(
+    int accepted,
+    List<GeofenceEventDto> transitions,
+    List<ReportingHint> hints
+) {
+    public LocationBatchResponse(int accepted, List<GeofenceEventDto> transitions) {
+        this(accepted, transitions, List.of());
+    }
+}
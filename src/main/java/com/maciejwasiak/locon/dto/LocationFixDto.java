@@ -0,0 +1,29 @@
+package com.maciejwasiak.locon.dto;
+
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.PositiveOrZero;
+
+import java.time.Instant;
+
+public record LocationFixDto(
+    @NotBlank(message = "Device id is required")
+    String deviceId,
+    
+    @NotNull(message = "Latitude is required")
+    @DecimalMin(value = "-90.0", message = "Latitude must be between -90 and 90")
+    @DecimalMax(value = "90.0", message = "Latitude must be between -90 and 90")
+    Double latitude,
+    
+    @NotNull(message = "Longitude is required")
+    @DecimalMin(value = "-180.0", message = "Longitude must be between -180 and 180")
+    @DecimalMax(value = "180.0", message = "Longitude must be between -180 and 180")
+    Double longitude,
+    
+    Instant timestamp,
+    
+    @PositiveOrZero(message = "Accuracy must not be negative")
+    Double accuracy
+) {}
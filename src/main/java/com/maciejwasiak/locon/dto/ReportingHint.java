@@ -0,0 +1,6 @@
+package com.maciejwasiak.locon.dto;
+
+public record ReportingHint(
+    String deviceId,
+    int nextReportSeconds
+) {}
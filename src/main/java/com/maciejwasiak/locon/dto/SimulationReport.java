@@ -0,0 +1,19 @@
+package com.maciejwasiak.locon.dto;
+
+import java.time.Instant;
+
+public record SimulationReport(
+    int devices,
+    int ticks,
+    long fixes,
+    long transitions,
+    long wallMillis,
+    Double targetFixesPerSecond,
+    double fixesPerSecond,
+    double meanFixMicros,
+    double batchLatencyP50Millis,
+    double batchLatencyP99Millis,
+    double batchLatencyMaxMillis,
+    Instant simulatedFrom,
+    Instant simulatedTo
+) {}
@@ -0,0 +1,56 @@
+package com.maciejwasiak.locon.dto;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
+
+public record SimulationRequest(
+    @Min(value = 1, message = "At least one device is required")
+    int devices,
+    @Min(value = 1, message = "At least one tick is required")
+    int ticks,
+    @Positive
+    Integer reportIntervalSeconds,
+    MovementModel model,
+    @PositiveOrZero
+    Double gpsJitterMeters,
+    @Positive @Max(LocationBatchRequest.MAX_FIXES)
+    Integer batchSize,
+    Long seed,
+    @Positive
+    Double targetFixesPerSecond
+) {
+    public static final int DEFAULT_REPORT_INTERVAL_SECONDS = 30;
+    public static final double DEFAULT_GPS_JITTER_METERS = 15.0;
+    public static final int DEFAULT_BATCH_SIZE = 1_000;
+
+    public enum MovementModel {
+        /** Wander between random points around the device's zones. */
+        RANDOM_WAYPOINT,
+        /** Shuttle between a "home" and a "school" zone, dwelling at each end. */
+        COMMUTE,
+        /** Half the fleet of each model. */
+        MIXED
+    }
+
+    public int reportIntervalSecondsOrDefault() {
+        return reportIntervalSeconds != null ? reportIntervalSeconds : DEFAULT_REPORT_INTERVAL_SECONDS;
+    }
+
+    public MovementModel modelOrDefault() {
+        return model != null ? model : MovementModel.MIXED;
+    }
+
+    public double gpsJitterMetersOrDefault() {
+        return gpsJitterMeters != null ? gpsJitterMeters : DEFAULT_GPS_JITTER_METERS;
+    }
+
+    public int batchSizeOrDefault() {
+        return batchSize != null ? batchSize : DEFAULT_BATCH_SIZE;
+    }
+
+    public boolean isPaced() {
+        return targetFixesPerSecond != null;
+    }
+}
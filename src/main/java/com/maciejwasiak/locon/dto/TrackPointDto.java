@@ -0,0 +1,10 @@
+package com.maciejwasiak.locon.dto;
+
+import java.time.Instant;
+
+public record TrackPointDto(
+    double latitude,
+    double longitude,
+    Instant timestamp
+) {
+}
@@ -1,10 +1,19 @@
 package com.maciejwasiak.locon.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.AssertTrue;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Positive;
 import jakarta.validation.constraints.Size;
 
+import java.util.List;
+
+/**
+ * Circular zones need {@code radius}; polygon zones send their outline in {@code polygon} and may omit
+ * the radius, which is then derived as the circle around the given center enclosing every vertex.
+ */
 public record ZoneCreateRequest(
     @NotBlank(message = "Zone name is required")
     @Size(max = 100, message = "Zone name must not exceed 100 characters")
@@ -23,11 +32,30 @@ public record ZoneCreateRequest(
     @NotNull(message = "Longitude is required")
     Double longitude,
     
-    @NotNull(message = "Radius is required")
     @Positive(message = "Radius must be positive")
-    Integer radius
+    Integer radius,
+    
+    @Size(min = 3, max = 256, message = "Polygon must have between 3 and 256 vertices")
+    List<@Valid @NotNull ZoneVertexDto> polygon
 ) {
+    public ZoneCreateRequest(String name, String icon, String address, Double latitude, Double longitude,
+                             Integer radius) {
+        this(name, icon, address, latitude, longitude, radius, null);
+    }
+    
+    @JsonIgnore
+    @AssertTrue(message = "Radius is required")
+    public boolean isRadiusPresent() {
+        return radius != null || isPolygon();
+    }
+    
+    @JsonIgnore
+    public boolean isPolygon() {
+        return polygon != null && !polygon.isEmpty();
+    }
+    
     public ZoneDto toZoneDto() {
-        return new ZoneDto(null, name, icon, address, latitude, longitude, radius, true);
+        return new ZoneDto(null, name, icon, address, latitude, longitude, radius, true,
+            polygon != null ? List.copyOf(polygon) : List.of());
     }
 }
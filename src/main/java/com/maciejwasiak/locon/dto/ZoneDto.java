@@ -1,11 +1,19 @@
 package com.maciejwasiak.locon.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.maciejwasiak.locon.geofence.ZoneSnapshot;
 import com.maciejwasiak.locon.model.Zone;
+import com.maciejwasiak.locon.model.ZoneVertex;
+import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Positive;
 import jakarta.validation.constraints.Size;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
 public record ZoneDto(
     Long id,
     @NotBlank(message = "Zone name is required")
@@ -30,8 +38,24 @@ public record ZoneDto(
     Integer radius,
     
     @NotNull(message = "Notifications enabled status is required")
-    Boolean notificationsEnabled
+    Boolean notificationsEnabled,
+    
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    List<@Valid ZoneVertexDto> polygon,
+    
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    Integer notificationWindowSeconds
 ) {
+    public ZoneDto(Long id, String name, String icon, String address, Double latitude, Double longitude,
+                   Integer radius, Boolean notificationsEnabled) {
+        this(id, name, icon, address, latitude, longitude, radius, notificationsEnabled, List.of());
+    }
+    
+    public ZoneDto(Long id, String name, String icon, String address, Double latitude, Double longitude,
+                   Integer radius, Boolean notificationsEnabled, List<ZoneVertexDto> polygon) {
+        this(id, name, icon, address, latitude, longitude, radius, notificationsEnabled, polygon, null);
+    }
+    
     public static ZoneDto from(Zone zone) {
         return new ZoneDto(
             zone.getId(),
@@ -41,11 +65,35 @@ public record ZoneDto(
             zone.getLatitude(),
             zone.getLongitude(),
             zone.getRadius(),
-            zone.getNotificationsEnabled()
+            zone.getNotificationsEnabled(),
+            zone.getVertices() != null ? zone.getVertices().stream().map(ZoneVertexDto::from).toList() : List.of(),
+            zone.getNotificationWindowSeconds()
+        );
+    }
+    
+    public static ZoneDto from(ZoneSnapshot zone) {
+        return new ZoneDto(
+            zone.id(),
+            zone.name(),
+            zone.icon(),
+            zone.address(),
+            zone.latitude(),
+            zone.longitude(),
+            zone.radiusMeters(),
+            zone.notificationsEnabled(),
+            zone.vertices().stream().map(ZoneVertexDto::from).toList()
         );
     }
     
     public Zone toEntity() {
-        return new Zone(name, icon, address, latitude, longitude, radius);
+        Zone zone = new Zone(name, icon, address, latitude, longitude, radius);
+        zone.setVertices(vertices());
+        return zone;
+    }
+    
+    public List<ZoneVertex> vertices() {
+        return polygon != null
+            ? polygon.stream().map(ZoneVertexDto::toVertex).collect(Collectors.toList())
+            : new ArrayList<>();
     }
 }
@@ -0,0 +1,24 @@
+package com.maciejwasiak.locon.dto;
+
+import com.maciejwasiak.locon.model.ZoneVertex;
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.NotNull;
+
+public record ZoneVertexDto(
+    @NotNull(message = "Vertex latitude is required")
+    @DecimalMin("-90.0") @DecimalMax("90.0")
+    Double latitude,
+
+    @NotNull(message = "Vertex longitude is required")
+    @DecimalMin("-180.0") @DecimalMax("180.0")
+    Double longitude
+) {
+    public static ZoneVertexDto from(ZoneVertex vertex) {
+        return new ZoneVertexDto(vertex.getLatitude(), vertex.getLongitude());
+    }
+
+    public ZoneVertex toVertex() {
+        return new ZoneVertex(latitude, longitude);
+    }
+}
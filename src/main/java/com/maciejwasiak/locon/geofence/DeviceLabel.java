@@ -0,0 +1,11 @@
+package com.maciejwasiak.locon.geofence;
+
+/**
+ * Projection of a {@code Device} row to the fields that name it in transitions and notifications.
+ */
+public record DeviceLabel(Long deviceId, String model, String ownerName) {
+
+    public String label() {
+        return ownerName + " - " + model;
+    }
+}
@@ -0,0 +1,83 @@
+package com.maciejwasiak.locon.geofence;
+
+import java.util.Arrays;
+
+/**
+ * Last observed position, smoothed speed and distance to the nearest assigned zone boundary per device,
+ * kept in primitive arrays per stripe. Feeds the reporting-interval hints sent back to trackers.
+ */
+public final class DeviceMotionTable extends StripedTable<DeviceMotionTable.Columns> {
+
+    /** Weight of the newest speed sample in the exponential moving average. */
+    static final double SPEED_SMOOTHING = 0.5;
+
+    public DeviceMotionTable() {
+        super(Columns::new);
+    }
+
+    /**
+     * Records a fix and its boundary margin; returns the updated speed estimate in m/s.
+     */
+    public double record(long deviceId, double latitude, double longitude, long atMillis, double marginMeters) {
+        Columns stripe = stripeOf(deviceId);
+        synchronized (stripe) {
+            int entry = stripe.entryOf(deviceId);
+            if (entry == NO_ENTRY) {
+                entry = stripe.allocate(deviceId);
+                stripe.speed[entry] = 0;
+            } else if (atMillis > stripe.atMillis[entry]) {
+                double meters = GeoMath.fastDistanceMeters(
+                    stripe.latitude[entry], stripe.longitude[entry], latitude, longitude);
+                double sample = meters / ((atMillis - stripe.atMillis[entry]) / 1000.0);
+                stripe.speed[entry] = SPEED_SMOOTHING * sample + (1 - SPEED_SMOOTHING) * stripe.speed[entry];
+            } else {
+                // Out-of-order or duplicate fix: keep the newer position
+                return stripe.speed[entry];
+            }
+            stripe.latitude[entry] = latitude;
+            stripe.longitude[entry] = longitude;
+            stripe.atMillis[entry] = atMillis;
+            stripe.margin[entry] = marginMeters;
+            return stripe.speed[entry];
+        }
+    }
+
+    /**
+     * @return the last recorded margin in meters, or {@code NaN} if the device is unknown
+     */
+    public double marginMeters(long deviceId) {
+        Columns stripe = stripeOf(deviceId);
+        synchronized (stripe) {
+            int entry = stripe.entryOf(deviceId);
+            return entry == NO_ENTRY ? Double.NaN : stripe.margin[entry];
+        }
+    }
+
+    /**
+     * @return the smoothed speed in m/s, 0 if the device is unknown
+     */
+    public double speed(long deviceId) {
+        Columns stripe = stripeOf(deviceId);
+        synchronized (stripe) {
+            int entry = stripe.entryOf(deviceId);
+            return entry == NO_ENTRY ? 0 : stripe.speed[entry];
+        }
+    }
+
+    static final class Columns extends StripedTable.Stripe {
+        double[] latitude = new double[INITIAL_CAPACITY];
+        double[] longitude = new double[INITIAL_CAPACITY];
+        long[] atMillis = new long[INITIAL_CAPACITY];
+        double[] speed = new double[INITIAL_CAPACITY];
+        double[] margin = new double[INITIAL_CAPACITY];
+
+        @Override
+        void grow(int capacity) {
+            latitude = Arrays.copyOf(latitude, capacity);
+            longitude = Arrays.copyOf(longitude, capacity);
+            atMillis = Arrays.copyOf(atMillis, capacity);
+            speed = Arrays.copyOf(speed, capacity);
+            margin = Arrays.copyOf(margin, capacity);
+        }
+    }
+}
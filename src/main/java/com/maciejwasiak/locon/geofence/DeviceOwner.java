@@ -0,0 +1,7 @@
+package com.maciejwasiak.locon.geofence;
+
+/**
+ * Projection of a {@code Device} row to its owner, for in-memory per-user lookups.
+ */
+public record DeviceOwner(Long deviceId, Long userId) {
+}
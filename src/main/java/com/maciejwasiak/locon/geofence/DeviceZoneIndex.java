@@ -0,0 +1,262 @@
+package com.maciejwasiak.locon.geofence;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Inverted index from device id to the {@link ZoneTable} slots of the zones the device is assigned to.
+ * <p>
+ * Device ids are striped across a fixed number of immutable open-addressing maps. Readers do a single
+ * volatile read plus a primitive probe and never lock; writers (zone edits, assignment changes) copy
+ * only the stripes of the devices they touch, so an update costs a fraction of the index, not all of it.
+ */
+public final class DeviceZoneIndex {
+
+    public static final long NO_DEVICE = Long.MIN_VALUE;
+
+    private static final int STRIPES = 256;
+    private static final int[] NO_SLOTS = new int[0];
+    private static final long[] NO_DEVICES = new long[0];
+
+    private final AtomicReferenceArray<Stripe> stripes = new AtomicReferenceArray<>(STRIPES);
+
+    // Writer-side reverse mapping: slot -> devices currently assigned to it
+    private final Map<Integer, long[]> devicesBySlot = new HashMap<>();
+
+    public DeviceZoneIndex() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes.set(i, Stripe.EMPTY);
+        }
+    }
+
+    /**
+     * Parses an API device id into the primitive key used by the index, or {@link #NO_DEVICE}
+     * for ids that are not numeric (for example virtual simulator devices).
+     */
+    public static long parseDeviceId(String deviceId) {
+        if (deviceId == null || deviceId.isEmpty()) {
+            return NO_DEVICE;
+        }
+        try {
+            return Long.parseLong(deviceId);
+        } catch (NumberFormatException e) {
+            return NO_DEVICE;
+        }
+    }
+
+    public int[] slotsFor(long deviceId) {
+        if (deviceId == NO_DEVICE) {
+            return NO_SLOTS;
+        }
+        return stripes.get(stripeOf(deviceId)).get(deviceId);
+    }
+
+    public long[] devicesFor(int slot) {
+        synchronized (this) {
+            return devicesBySlot.getOrDefault(slot, NO_DEVICES).clone();
+        }
+    }
+
+    /**
+     * Replaces the full device assignment of one zone slot, touching only the devices whose
+     * assignment actually changed.
+     */
+    public synchronized void replaceZone(int slot, long[] deviceIds) {
+        long[] previous = devicesBySlot.getOrDefault(slot, NO_DEVICES);
+        long[] next = distinctSorted(deviceIds);
+        for (long deviceId : previous) {
+            if (Arrays.binarySearch(next, deviceId) < 0) {
+                update(deviceId, slot, false);
+            }
+        }
+        for (long deviceId : next) {
+            if (Arrays.binarySearch(previous, deviceId) < 0) {
+                update(deviceId, slot, true);
+            }
+        }
+        if (next.length == 0) {
+            devicesBySlot.remove(slot);
+        } else {
+            devicesBySlot.put(slot, next);
+        }
+    }
+
+    /**
+     * Bulk (re)build from a full slot -> devices assignment, used on startup and full reloads
+     * where patching stripe by stripe would be quadratic.
+     */
+    public synchronized void replaceAll(Map<Integer, long[]> assignments) {
+        devicesBySlot.clear();
+        Map<Long, int[]> slotsByDevice = new HashMap<>();
+        assignments.forEach((slot, deviceIds) -> {
+            long[] devices = distinctSorted(deviceIds);
+            if (devices.length == 0) {
+                return;
+            }
+            devicesBySlot.put(slot, devices);
+            for (long deviceId : devices) {
+                slotsByDevice.merge(deviceId, new int[] { slot }, (current, added) -> {
+                    int[] merged = Arrays.copyOf(current, current.length + 1);
+                    merged[current.length] = added[0];
+                    return merged;
+                });
+            }
+        });
+
+        List<List<Map.Entry<Long, int[]>>> byStripe = new ArrayList<>(STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            byStripe.add(new ArrayList<>());
+        }
+        for (Map.Entry<Long, int[]> entry : slotsByDevice.entrySet()) {
+            byStripe.get(stripeOf(entry.getKey())).add(entry);
+        }
+        for (int i = 0; i < STRIPES; i++) {
+            stripes.set(i, Stripe.of(byStripe.get(i)));
+        }
+    }
+
+    public synchronized void assign(long deviceId, int slot) {
+        long[] previous = devicesBySlot.getOrDefault(slot, NO_DEVICES);
+        if (Arrays.binarySearch(previous, deviceId) >= 0) {
+            return;
+        }
+        long[] next = Arrays.copyOf(previous, previous.length + 1);
+        next[previous.length] = deviceId;
+        Arrays.sort(next);
+        devicesBySlot.put(slot, next);
+        update(deviceId, slot, true);
+    }
+
+    public synchronized void unassign(long deviceId, int slot) {
+        long[] previous = devicesBySlot.getOrDefault(slot, NO_DEVICES);
+        int position = Arrays.binarySearch(previous, deviceId);
+        if (position < 0) {
+            return;
+        }
+        long[] next = new long[previous.length - 1];
+        System.arraycopy(previous, 0, next, 0, position);
+        System.arraycopy(previous, position + 1, next, position, next.length - position);
+        if (next.length == 0) {
+            devicesBySlot.remove(slot);
+        } else {
+            devicesBySlot.put(slot, next);
+        }
+        update(deviceId, slot, false);
+    }
+
+    public synchronized void clear() {
+        devicesBySlot.clear();
+        for (int i = 0; i < STRIPES; i++) {
+            stripes.set(i, Stripe.EMPTY);
+        }
+    }
+
+    public int deviceCount() {
+        int count = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            count += stripes.get(i).size;
+        }
+        return count;
+    }
+
+    private void update(long deviceId, int slot, boolean add) {
+        int stripeIndex = stripeOf(deviceId);
+        Stripe stripe = stripes.get(stripeIndex);
+        int[] current = stripe.get(deviceId);
+        int[] next;
+        if (add) {
+            next = Arrays.copyOf(current, current.length + 1);
+            next[current.length] = slot;
+        } else {
+            next = Arrays.stream(current).filter(s -> s != slot).toArray();
+        }
+        stripes.set(stripeIndex, stripe.with(deviceId, next));
+    }
+
+    private static long[] distinctSorted(long[] values) {
+        return Arrays.stream(values).filter(v -> v != NO_DEVICE).sorted().distinct().toArray();
+    }
+
+    private static int stripeOf(long deviceId) {
+        return LongIntHashMap.hash(deviceId) & (STRIPES - 1);
+    }
+
+    /**
+     * Immutable open-addressing map from device id to slot array.
+     */
+    private static final class Stripe {
+
+        static final Stripe EMPTY = new Stripe(new long[2], new int[2][], 0);
+
+        final long[] keys;
+        final int[][] values;
+        final int size;
+
+        private Stripe(long[] keys, int[][] values, int size) {
+            this.keys = keys;
+            this.values = values;
+            this.size = size;
+        }
+
+        int[] get(long key) {
+            int mask = keys.length - 1;
+            int index = (LongIntHashMap.hash(key) >>> 8) & mask;
+            while (values[index] != null) {
+                if (keys[index] == key) {
+                    return values[index];
+                }
+                index = (index + 1) & mask;
+            }
+            return NO_SLOTS;
+        }
+
+        static Stripe of(List<Map.Entry<Long, int[]>> entries) {
+            int capacity = capacityFor(entries.size());
+            long[] keys = new long[capacity];
+            int[][] values = new int[capacity][];
+            for (Map.Entry<Long, int[]> entry : entries) {
+                insert(keys, values, entry.getKey(), entry.getValue());
+            }
+            return new Stripe(keys, values, entries.size());
+        }
+
+        Stripe with(long key, int[] slots) {
+            boolean present = get(key) != NO_SLOTS;
+            int newSize = size + (slots.length == 0 ? (present ? -1 : 0) : (present ? 0 : 1));
+            int capacity = capacityFor(newSize);
+            long[] newKeys = new long[capacity];
+            int[][] newValues = new int[capacity][];
+            for (int i = 0; i < keys.length; i++) {
+                if (values[i] != null && keys[i] != key) {
+                    insert(newKeys, newValues, keys[i], values[i]);
+                }
+            }
+            if (slots.length > 0) {
+                insert(newKeys, newValues, key, slots);
+            }
+            return new Stripe(newKeys, newValues, newSize);
+        }
+
+        private static int capacityFor(int size) {
+            int capacity = 2;
+            while (capacity < size * 2) {
+                capacity <<= 1;
+            }
+            return capacity;
+        }
+
+        private static void insert(long[] keys, int[][] values, long key, int[] slots) {
+            int mask = keys.length - 1;
+            int index = (LongIntHashMap.hash(key) >>> 8) & mask;
+            while (values[index] != null) {
+                index = (index + 1) & mask;
+            }
+            keys[index] = key;
+            values[index] = slots;
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package com.maciejwasiak.locon.geofence;
+
+import java.util.Arrays;
+
+/**
+ * Per device-zone transition state, stored as primitives.
+ * <p>
+ * Each state is one {@code long}: the state in the low two bits and the epoch millis it started at in
+ * the rest. Only pairs that are not {@link #OUTSIDE} are stored, as {@code [zoneId, packed]} pairs in a
+ * per-device {@code long[]} row, so memory is 16 bytes per tracked pair plus one row per device that is
+ * inside (or about to enter) something. Devices are striped over independently locked segments.
+ */
+public final class DeviceZoneStates {
+
+    public static final int OUTSIDE = 0;
+    public static final int PENDING_ENTER = 1;
+    public static final int INSIDE = 2;
+    public static final int PENDING_EXIT = 3;
+
+    private static final int STRIPES = 64;
+    private static final int STRIPE_SHIFT = Integer.SIZE - Integer.numberOfTrailingZeros(STRIPES);
+    private static final int NO_ROW = -1;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    public DeviceZoneStates() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    public static long pack(int state, long sinceMillis) {
+        return (sinceMillis << 2) | state;
+    }
+
+    public static int stateOf(long packed) {
+        return (int) (packed & 3);
+    }
+
+    public static long sinceOf(long packed) {
+        return packed >> 2;
+    }
+
+    /**
+     * Whether the state counts as a confirmed presence (inside, or inside with an exit pending).
+     */
+    public static boolean isInside(long packed) {
+        int state = stateOf(packed);
+        return state == INSIDE || state == PENDING_EXIT;
+    }
+
+    /**
+     * Runs {@code action} with exclusive access to one device's states.
+     */
+    public void update(long deviceId, RowAction action) {
+        Stripe stripe = stripeOf(deviceId);
+        synchronized (stripe) {
+            stripe.cursor.bind(deviceId);
+            try {
+                action.apply(stripe.cursor);
+            } finally {
+                stripe.cursor.release();
+            }
+        }
+    }
+
+    public long get(long deviceId, long zoneId) {
+        Stripe stripe = stripeOf(deviceId);
+        synchronized (stripe) {
+            int row = stripe.rowByDevice.get(deviceId);
+            return row == NO_ROW ? pack(OUTSIDE, 0) : stripe.find(row, zoneId);
+        }
+    }
+
+    public void remove(long deviceId) {
+        Stripe stripe = stripeOf(deviceId);
+        synchronized (stripe) {
+            int row = stripe.rowByDevice.remove(deviceId);
+            if (row != NO_ROW) {
+                stripe.free(row);
+            }
+        }
+    }
+
+    /**
+     * Drops every device's state for the zone, e.g. after it was deleted.
+     */
+    public void removeZone(long zoneId) {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                for (int row = 0; row < stripe.rowCount; row++) {
+                    if (stripe.lengths[row] > 0) {
+                        stripe.removePair(row, zoneId);
+                        if (stripe.lengths[row] == 0) {
+                            stripe.rowByDevice.remove(stripe.devices[row]);
+                            stripe.free(row);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.rowByDevice.clear();
+                Arrays.fill(stripe.lengths, 0);
+                stripe.rowCount = 0;
+                stripe.freeCount = 0;
+                stripe.pairs = 0;
+            }
+        }
+    }
+
+    /**
+     * Visits every stored pair, one stripe at a time; each device's pairs are visited together and are
+     * consistent with each other, but different stripes are read at different moments.
+     */
+    public void forEach(PairVisitor visitor) {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                for (int row = 0; row < stripe.rowCount; row++) {
+                    long[] values = stripe.rows[row];
+                    for (int i = 0; i < stripe.lengths[row]; i += 2) {
+                        visitor.visit(stripe.devices[row], values[i], values[i + 1]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Number of stored (non-outside) device-zone pairs.
+     */
+    public long pairCount() {
+        long count = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                count += stripe.pairs;
+            }
+        }
+        return count;
+    }
+
+    private Stripe stripeOf(long deviceId) {
+        // High bits: the stripe's map probes from the low bits of the same hash, which would otherwise be
+        // equal for every key in the stripe
+        return stripes[LongIntHashMap.hash(deviceId) >>> STRIPE_SHIFT];
+    }
+
+    @FunctionalInterface
+    public interface RowAction {
+        void apply(Row row);
+    }
+
+    @FunctionalInterface
+    public interface PairVisitor {
+        void visit(long deviceId, long zoneId, long packed);
+    }
+
+    /**
+     * View of one device's states, valid only inside {@link #update(long, RowAction)}.
+     */
+    public interface Row {
+        /**
+         * @return the packed state, {@link #OUTSIDE} since 0 if none is stored
+         */
+        long get(long zoneId);
+
+        /**
+         * Stores the state; an {@link #OUTSIDE} state removes the pair.
+         */
+        void set(long zoneId, long packed);
+    }
+
+    private static final class Stripe {
+        final LongIntHashMap rowByDevice = new LongIntHashMap(64, NO_ROW);
+        long[][] rows = new long[16][];
+        long[] devices = new long[16];
+        int[] lengths = new int[16];
+        int[] freeRows = new int[16];
+        int freeCount;
+        int rowCount;
+        long pairs;
+        final Cursor cursor = new Cursor(this);
+
+        long find(int row, long zoneId) {
+            long[] values = rows[row];
+            for (int i = 0; i < lengths[row]; i += 2) {
+                if (values[i] == zoneId) {
+                    return values[i + 1];
+                }
+            }
+            return pack(OUTSIDE, 0);
+        }
+
+        void removePair(int row, long zoneId) {
+            long[] values = rows[row];
+            int length = lengths[row];
+            for (int i = 0; i < length; i += 2) {
+                if (values[i] == zoneId) {
+                    values[i] = values[length - 2];
+                    values[i + 1] = values[length - 1];
+                    lengths[row] = length - 2;
+                    pairs--;
+                    return;
+                }
+            }
+        }
+
+        int allocate() {
+            if (freeCount > 0) {
+                return freeRows[--freeCount];
+            }
+            if (rowCount == rows.length) {
+                rows = Arrays.copyOf(rows, rowCount * 2);
+                devices = Arrays.copyOf(devices, rowCount * 2);
+                lengths = Arrays.copyOf(lengths, rowCount * 2);
+            }
+            rows[rowCount] = new long[4];
+            return rowCount++;
+        }
+
+        void free(int row) {
+            pairs -= lengths[row] / 2;
+            lengths[row] = 0;
+            if (freeCount == freeRows.length) {
+                freeRows = Arrays.copyOf(freeRows, freeCount * 2);
+            }
+            freeRows[freeCount++] = row;
+        }
+    }
+
+    private static final class Cursor implements Row {
+        private final Stripe stripe;
+        private long deviceId;
+        private int row;
+
+        Cursor(Stripe stripe) {
+            this.stripe = stripe;
+        }
+
+        void bind(long deviceId) {
+            this.deviceId = deviceId;
+            this.row = stripe.rowByDevice.get(deviceId);
+        }
+
+        void release() {
+            if (row != NO_ROW && stripe.lengths[row] == 0) {
+                stripe.rowByDevice.remove(deviceId);
+                stripe.free(row);
+            }
+            row = NO_ROW;
+        }
+
+        @Override
+        public long get(long zoneId) {
+            return row == NO_ROW ? pack(OUTSIDE, 0) : stripe.find(row, zoneId);
+        }
+
+        @Override
+        public void set(long zoneId, long packed) {
+            boolean outside = stateOf(packed) == OUTSIDE;
+            if (row == NO_ROW) {
+                if (outside) {
+                    return;
+                }
+                row = stripe.allocate();
+                stripe.devices[row] = deviceId;
+                stripe.rowByDevice.put(deviceId, row);
+            }
+            long[] values = stripe.rows[row];
+            int length = stripe.lengths[row];
+            for (int i = 0; i < length; i += 2) {
+                if (values[i] != zoneId) {
+                    continue;
+                }
+                if (outside) {
+                    stripe.removePair(row, zoneId);
+                } else {
+                    values[i + 1] = packed;
+                }
+                return;
+            }
+            if (outside) {
+                return;
+            }
+            if (length == values.length) {
+                values = Arrays.copyOf(values, length * 2);
+                stripe.rows[row] = values;
+            }
+            values[length] = zoneId;
+            values[length + 1] = packed;
+            stripe.lengths[row] = length + 2;
+            stripe.pairs++;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.maciejwasiak.locon.geofence;
+
+import java.util.Arrays;
+
+/**
+ * Time-to-boundary schedule: for each device, the earliest time it could possibly cross the boundary
+ * of any of its zones, given its distance to the nearest one and a maximum plausible speed.
+ * <p>
+ * Fixes arriving before that time are skipped, unless the device has already moved farther than the
+ * margin from the point it was scheduled at (a GPS glitch or a speed above the assumed maximum), or
+ * the zone table / assignments changed in the meantime (tracked by a generation number).
+ * <p>
+ * State is kept in primitive arrays per stripe, indexed through a {@link LongIntHashMap}.
+ */
+public final class EvaluationSchedule extends StripedTable<EvaluationSchedule.Columns> {
+
+    /** Returned by {@link #remainingMargin} when the fix has to be evaluated. */
+    public static final double MUST_EVALUATE = -1;
+
+    // Shave the margin so the approximate displacement check errs on the side of evaluating
+    private static final double MARGIN_SAFETY = 0.98;
+
+    public EvaluationSchedule() {
+        super(Columns::new);
+    }
+
+    /**
+     * If the fix can be accepted without evaluating the device's zones, returns how far the device still
+     * is from the nearest boundary (the scheduled margin minus the distance moved since); otherwise
+     * {@link #MUST_EVALUATE}.
+     */
+    public double remainingMargin(long deviceId, int generation, long atMillis, double latitude, double longitude) {
+        Columns stripe = stripeOf(deviceId);
+        synchronized (stripe) {
+            int entry = stripe.entryOf(deviceId);
+            if (entry == NO_ENTRY || stripe.generation[entry] != generation || atMillis >= stripe.nextAt[entry]) {
+                return MUST_EVALUATE;
+            }
+            double moved = GeoMath.fastDistanceMeters(
+                stripe.latitude[entry], stripe.longitude[entry], latitude, longitude);
+            return moved < stripe.margin[entry] ? stripe.margin[entry] - moved : MUST_EVALUATE;
+        }
+    }
+
+    /**
+     * Records that the device, evaluated at the given point and time, is {@code marginMeters} away from
+     * the nearest boundary and cannot cross it before {@code nextAtMillis}.
+     */
+    public void schedule(long deviceId, int generation, double latitude, double longitude,
+                         double marginMeters, long nextAtMillis) {
+        Columns stripe = stripeOf(deviceId);
+        synchronized (stripe) {
+            int entry = stripe.entryOf(deviceId);
+            if (entry == NO_ENTRY) {
+                entry = stripe.allocate(deviceId);
+            }
+            stripe.generation[entry] = generation;
+            stripe.latitude[entry] = latitude;
+            stripe.longitude[entry] = longitude;
+            stripe.margin[entry] = marginMeters * MARGIN_SAFETY;
+            stripe.nextAt[entry] = nextAtMillis;
+        }
+    }
+
+    static final class Columns extends StripedTable.Stripe {
+        int[] generation = new int[INITIAL_CAPACITY];
+        double[] latitude = new double[INITIAL_CAPACITY];
+        double[] longitude = new double[INITIAL_CAPACITY];
+        double[] margin = new double[INITIAL_CAPACITY];
+        long[] nextAt = new long[INITIAL_CAPACITY];
+
+        @Override
+        void grow(int capacity) {
+            generation = Arrays.copyOf(generation, capacity);
+            latitude = Arrays.copyOf(latitude, capacity);
+            longitude = Arrays.copyOf(longitude, capacity);
+            margin = Arrays.copyOf(margin, capacity);
+            nextAt = Arrays.copyOf(nextAt, capacity);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.maciejwasiak.locon.geofence;
+
+/**
+ * Small set of geodesic helpers shared by the geofence engine.
+ */
+public final class GeoMath {
+
+    public static final double EARTH_RADIUS_METERS = 6_371_008.8;
+
+    private GeoMath() {
+    }
+
+    /**
+     * Great-circle distance between two WGS84 points in meters (Haversine formula).
+     */
+    public static double distanceMeters(double lat1, double lng1, double lat2, double lng2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLng = Math.toRadians(lng2 - lng1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+            + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+            * Math.sin(dLng / 2) * Math.sin(dLng / 2);
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1.0, Math.sqrt(a)));
+    }
+
+    /**
+     * Equirectangular distance approximation in meters; cheap and accurate to well under a percent
+     * over the few kilometers it is used for.
+     */
+    public static double fastDistanceMeters(double lat1, double lng1, double lat2, double lng2) {
+        double dLng = Math.toRadians(lng2 - lng1);
+        if (dLng > Math.PI) {
+            dLng -= 2 * Math.PI;
+        } else if (dLng < -Math.PI) {
+            dLng += 2 * Math.PI;
+        }
+        double x = dLng * Math.cos(Math.toRadians((lat1 + lat2) / 2));
+        double y = Math.toRadians(lat2 - lat1);
+        return Math.sqrt(x * x + y * y) * EARTH_RADIUS_METERS;
+    }
+}
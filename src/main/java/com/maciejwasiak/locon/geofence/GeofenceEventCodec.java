@@ -0,0 +1,187 @@
+package com.maciejwasiak.locon.geofence;
+
+import com.maciejwasiak.locon.dto.GeofenceEventDto;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.zip.CRC32C;
+
+/**
+ * Compact binary form of a {@link GeofenceEventDto} used by the event log.
+ * <pre>
+ * int    payload length (0 marks the unwritten tail of a segment)
+ * long   occurredAt, epoch millis
+ * long   zone id
+ * double latitude
+ * double longitude
+ * int    radius in meters
+ * byte   event type code (1 = ENTER, 2 = EXIT, 0 = custom, followed by its name)
+ * string device id, device name, zone name (unsigned short length + UTF-8)
+ * int    CRC32C of the payload
+ * </pre>
+ * Torn or partially written records fail the length or checksum test and are treated as end of log.
+ */
+public final class GeofenceEventCodec {
+
+    public static final int HEADER_BYTES = Integer.BYTES;
+    public static final int TRAILER_BYTES = Integer.BYTES;
+
+    private static final int FIXED_PAYLOAD_BYTES = Long.BYTES * 2 + Double.BYTES * 2 + Integer.BYTES + Byte.BYTES;
+    private static final int MAX_STRING_BYTES = 0xFFFF;
+    private static final byte CUSTOM = 0;
+    private static final byte ENTER = 1;
+    private static final byte EXIT = 2;
+
+    private GeofenceEventCodec() {
+    }
+
+    /**
+     * Total bytes the event occupies in the log, including length prefix and checksum.
+     */
+    public static int encodedSize(GeofenceEventDto event) {
+        int size = HEADER_BYTES + FIXED_PAYLOAD_BYTES + TRAILER_BYTES
+            + stringSize(event.deviceId()) + stringSize(event.deviceName()) + stringSize(event.zoneName());
+        if (typeCode(event.eventType()) == CUSTOM) {
+            size += stringSize(event.eventType());
+        }
+        return size;
+    }
+
+    /**
+     * Writes the record at {@code offset} using absolute puts and returns the number of bytes written.
+     * The length prefix is written last so a concurrent reader never sees a half-written record as valid.
+     */
+    public static int encode(GeofenceEventDto event, ByteBuffer buffer, int offset) {
+        int position = offset + HEADER_BYTES;
+        buffer.putLong(position, event.occurredAt() != null ? event.occurredAt().toEpochMilli() : 0L);
+        position += Long.BYTES;
+        buffer.putLong(position, event.zoneId() != null ? event.zoneId() : 0L);
+        position += Long.BYTES;
+        buffer.putDouble(position, event.latitude());
+        position += Double.BYTES;
+        buffer.putDouble(position, event.longitude());
+        position += Double.BYTES;
+        buffer.putInt(position, event.radiusMeters());
+        position += Integer.BYTES;
+        byte type = typeCode(event.eventType());
+        buffer.put(position++, type);
+        if (type == CUSTOM) {
+            position = putString(buffer, position, event.eventType());
+        }
+        position = putString(buffer, position, event.deviceId());
+        position = putString(buffer, position, event.deviceName());
+        position = putString(buffer, position, event.zoneName());
+
+        int payloadLength = position - offset - HEADER_BYTES;
+        buffer.putInt(position, checksum(buffer, offset + HEADER_BYTES, payloadLength));
+        buffer.putInt(offset, payloadLength);
+        return HEADER_BYTES + payloadLength + TRAILER_BYTES;
+    }
+
+    /**
+     * Returns the full record size at {@code offset}, or 0 if there is no complete, valid record there.
+     */
+    public static int recordSize(ByteBuffer buffer, int offset, int limit) {
+        if (offset + HEADER_BYTES > limit) {
+            return 0;
+        }
+        int payloadLength = buffer.getInt(offset);
+        if (payloadLength < FIXED_PAYLOAD_BYTES || offset + HEADER_BYTES + payloadLength + TRAILER_BYTES > limit) {
+            return 0;
+        }
+        int stored = buffer.getInt(offset + HEADER_BYTES + payloadLength);
+        if (stored != checksum(buffer, offset + HEADER_BYTES, payloadLength)) {
+            return 0;
+        }
+        return HEADER_BYTES + payloadLength + TRAILER_BYTES;
+    }
+
+    public static long occurredAtMillis(ByteBuffer buffer, int offset) {
+        return buffer.getLong(offset + HEADER_BYTES);
+    }
+
+    public static long zoneId(ByteBuffer buffer, int offset) {
+        return buffer.getLong(offset + HEADER_BYTES + Long.BYTES);
+    }
+
+    public static GeofenceEventDto decode(ByteBuffer buffer, int offset) {
+        int position = offset + HEADER_BYTES;
+        long occurredAt = buffer.getLong(position);
+        position += Long.BYTES;
+        long zoneId = buffer.getLong(position);
+        position += Long.BYTES;
+        double latitude = buffer.getDouble(position);
+        position += Double.BYTES;
+        double longitude = buffer.getDouble(position);
+        position += Double.BYTES;
+        int radius = buffer.getInt(position);
+        position += Integer.BYTES;
+        byte type = buffer.get(position++);
+        String eventType;
+        if (type == CUSTOM) {
+            eventType = getString(buffer, position);
+            position += stringSize(eventType);
+        } else {
+            eventType = type == ENTER ? "ENTER" : "EXIT";
+        }
+        String deviceId = getString(buffer, position);
+        position += stringSize(deviceId);
+        String deviceName = getString(buffer, position);
+        position += stringSize(deviceName);
+        String zoneName = getString(buffer, position);
+
+        return new GeofenceEventDto(zoneId, zoneName, deviceId, deviceName, latitude, longitude, radius,
+            eventType, Instant.ofEpochMilli(occurredAt));
+    }
+
+    /**
+     * Reads just the device id of the record at {@code offset} without decoding the rest.
+     */
+    public static String deviceId(ByteBuffer buffer, int offset) {
+        int position = offset + HEADER_BYTES + FIXED_PAYLOAD_BYTES;
+        if (buffer.get(position - 1) == CUSTOM) {
+            position += Short.BYTES + Short.toUnsignedInt(buffer.getShort(position));
+        }
+        return getString(buffer, position);
+    }
+
+    private static byte typeCode(String eventType) {
+        if ("ENTER".equals(eventType)) {
+            return ENTER;
+        }
+        if ("EXIT".equals(eventType)) {
+            return EXIT;
+        }
+        return CUSTOM;
+    }
+
+    private static int stringSize(String value) {
+        return Short.BYTES + Math.min(utf8Length(value), MAX_STRING_BYTES);
+    }
+
+    private static int utf8Length(String value) {
+        return value == null ? 0 : value.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static int putString(ByteBuffer buffer, int position, String value) {
+        byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, MAX_STRING_BYTES);
+        buffer.putShort(position, (short) length);
+        buffer.put(position + Short.BYTES, bytes, 0, length);
+        return position + Short.BYTES + length;
+    }
+
+    private static String getString(ByteBuffer buffer, int position) {
+        int length = Short.toUnsignedInt(buffer.getShort(position));
+        byte[] bytes = new byte[length];
+        buffer.get(position + Short.BYTES, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int checksum(ByteBuffer buffer, int offset, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(offset, length));
+        return (int) crc.getValue();
+    }
+}
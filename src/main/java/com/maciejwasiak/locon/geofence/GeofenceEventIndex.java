@@ -0,0 +1,412 @@
+package com.maciejwasiak.locon.geofence;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * In-memory secondary indexes over the {@link GeofenceEventLog}.
+ * <ul>
+ *   <li>a sparse time index: one entry per block of {@value #BLOCK_RECORDS} records holding the
+ *       block's first offset and its min/max event time (events are not strictly time-ordered, so
+ *       ranges rather than single keys are kept);</li>
+ *   <li>per-device and per-zone offset lists, appended in log order.</li>
+ * </ul>
+ * The index is caught up incrementally from the log, so the same code path serves startup rebuild
+ * and live appends. A {@link #checkpoint(Path) checkpoint} lets startup load the index and only catch
+ * up the records appended after it; {@link #trimBefore(long)} drops entries of purged log segments.
+ * <p>
+ * Checkpoint layout: magic, version, indexed offset, record count and fill of the last block, the
+ * time blocks, then each device's and zone's offset list, closed by a CRC32 of everything before it.
+ * Like {@link GeofenceStateSnapshot} it is written to a temporary file and atomically moved into place.
+ */
+public final class GeofenceEventIndex {
+
+    static final int BLOCK_RECORDS = 256;
+    static final int MAGIC = 0x47454958;
+    static final int VERSION = 1;
+
+    private static final int BUFFER_BYTES = 256 * 1024;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, OffsetList> byDevice = new HashMap<>();
+    private final Map<Long, OffsetList> byZone = new HashMap<>();
+
+    private long[] blockOffsets = new long[64];
+    private long[] blockMinMillis = new long[64];
+    private long[] blockMaxMillis = new long[64];
+    private int blockCount;
+    private int recordsInLastBlock = BLOCK_RECORDS;
+    private long indexedOffset;
+    private long recordCount;
+
+    /**
+     * Indexes every record between the last indexed offset and the end of the log.
+     */
+    public void catchUp(GeofenceEventLog log) {
+        lock.writeLock().lock();
+        try {
+            indexedOffset = log.read(indexedOffset, (offset, buffer, position) -> {
+                add(offset,
+                    GeofenceEventCodec.occurredAtMillis(buffer, position),
+                    GeofenceEventCodec.zoneId(buffer, position),
+                    GeofenceEventCodec.deviceId(buffer, position));
+                return true;
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Drops the time blocks and offsets that lie entirely below {@code offset}, typically the log's
+     * {@link GeofenceEventLog#firstOffset() first offset} after segments were purged.
+     */
+    public void trimBefore(long offset) {
+        lock.writeLock().lock();
+        try {
+            int firstBlock = 0;
+            if (indexedOffset <= offset) {
+                firstBlock = blockCount;
+                recordsInLastBlock = BLOCK_RECORDS;
+            } else {
+                while (firstBlock + 1 < blockCount && blockOffsets[firstBlock + 1] <= offset) {
+                    firstBlock++;
+                }
+            }
+            if (firstBlock > 0) {
+                blockCount -= firstBlock;
+                System.arraycopy(blockOffsets, firstBlock, blockOffsets, 0, blockCount);
+                System.arraycopy(blockMinMillis, firstBlock, blockMinMillis, 0, blockCount);
+                System.arraycopy(blockMaxMillis, firstBlock, blockMaxMillis, 0, blockCount);
+            }
+            // Every record is in exactly one device list, so those removals are the records dropped
+            recordCount -= trimLists(byDevice, offset);
+            trimLists(byZone, offset);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Offset up to which the log has been indexed.
+     */
+    public long indexedOffset() {
+        lock.readLock().lock();
+        try {
+            return indexedOffset;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the index to {@code file}, atomically replacing any previous checkpoint.
+     */
+    public void checkpoint(Path file) {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        lock.readLock().lock();
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            CRC32 checksum = new CRC32();
+            try (DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temporary), BUFFER_BYTES), checksum))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(indexedOffset);
+                out.writeLong(recordCount);
+                out.writeInt(recordsInLastBlock);
+                out.writeInt(blockCount);
+                for (int block = 0; block < blockCount; block++) {
+                    out.writeLong(blockOffsets[block]);
+                    out.writeLong(blockMinMillis[block]);
+                    out.writeLong(blockMaxMillis[block]);
+                }
+                out.writeInt(byDevice.size());
+                for (Map.Entry<String, OffsetList> entry : byDevice.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    entry.getValue().writeTo(out);
+                }
+                out.writeInt(byZone.size());
+                for (Map.Entry<Long, OffsetList> entry : byZone.entrySet()) {
+                    out.writeLong(entry.getKey());
+                    entry.getValue().writeTo(out);
+                }
+                out.flush();
+                out.writeLong(checksum.getValue());
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write geofence event index checkpoint " + file, e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Loads an index written by {@link #checkpoint(Path)}. It still has to be trimmed and caught up
+     * against the log it was taken from.
+     *
+     * @throws IllegalStateException if the file is not a valid checkpoint
+     */
+    public static GeofenceEventIndex read(Path file) {
+        CRC32 checksum = new CRC32();
+        try (CheckedInputStream checked = new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(file), BUFFER_BYTES), checksum);
+             DataInputStream in = new DataInputStream(checked)) {
+            if (in.readInt() != MAGIC) {
+                throw new IllegalStateException("Not a geofence event index checkpoint: " + file);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IllegalStateException("Unsupported geofence event index checkpoint version " + version);
+            }
+            GeofenceEventIndex index = new GeofenceEventIndex();
+            index.indexedOffset = in.readLong();
+            index.recordCount = in.readLong();
+            index.recordsInLastBlock = in.readInt();
+            index.blockCount = in.readInt();
+            int capacity = Math.max(64, index.blockCount);
+            index.blockOffsets = new long[capacity];
+            index.blockMinMillis = new long[capacity];
+            index.blockMaxMillis = new long[capacity];
+            for (int block = 0; block < index.blockCount; block++) {
+                index.blockOffsets[block] = in.readLong();
+                index.blockMinMillis[block] = in.readLong();
+                index.blockMaxMillis[block] = in.readLong();
+            }
+            for (int devices = in.readInt(); devices > 0; devices--) {
+                index.byDevice.put(in.readUTF(), OffsetList.readFrom(in));
+            }
+            for (int zones = in.readInt(); zones > 0; zones--) {
+                index.byZone.put(in.readLong(), OffsetList.readFrom(in));
+            }
+            long expectedChecksum = checksum.getValue();
+            if (in.readLong() != expectedChecksum) {
+                throw new IllegalStateException("Corrupt geofence event index checkpoint: " + file);
+            }
+            return index;
+        } catch (IOException | NegativeArraySizeException e) {
+            throw new IllegalStateException("Unreadable geofence event index checkpoint: " + file, e);
+        }
+    }
+
+    public long recordCount() {
+        lock.readLock().lock();
+        try {
+            return recordCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns candidate offsets for the query, in log order. Candidates still need their time and zone
+     * checked against the record, but only records that can possibly match are returned.
+     */
+    public long[] candidates(String deviceId, Long zoneId, long fromMillis, long toMillis) {
+        lock.readLock().lock();
+        try {
+            if (deviceId != null) {
+                OffsetList offsets = byDevice.get(deviceId);
+                return offsets == null ? new long[0] : filterByBlocks(offsets, fromMillis, toMillis);
+            }
+            if (zoneId != null) {
+                OffsetList offsets = byZone.get(zoneId);
+                return offsets == null ? new long[0] : filterByBlocks(offsets, fromMillis, toMillis);
+            }
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns candidate offsets of records of any of the devices or zones, in log order and without
+     * duplicates, so a query scoped to one owner only touches that owner's records.
+     */
+    public long[] candidatesOf(Collection<String> deviceIds, Collection<Long> zoneIds, long fromMillis, long toMillis) {
+        lock.readLock().lock();
+        try {
+            long[] merged = new long[0];
+            int count = 0;
+            for (OffsetList offsets : lists(deviceIds, zoneIds)) {
+                long[] filtered = filterByBlocks(offsets, fromMillis, toMillis);
+                if (count + filtered.length > merged.length) {
+                    merged = Arrays.copyOf(merged, Math.max(count + filtered.length, merged.length * 2));
+                }
+                System.arraycopy(filtered, 0, merged, count, filtered.length);
+                count += filtered.length;
+            }
+            Arrays.sort(merged, 0, count);
+            int unique = 0;
+            for (int i = 0; i < count; i++) {
+                if (unique == 0 || merged[unique - 1] != merged[i]) {
+                    merged[unique++] = merged[i];
+                }
+            }
+            return Arrays.copyOf(merged, unique);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the [start, end) offset ranges of time blocks overlapping the range, merged when adjacent.
+     */
+    public long[][] blockRanges(long fromMillis, long toMillis) {
+        lock.readLock().lock();
+        try {
+            long[][] ranges = new long[blockCount][];
+            int count = 0;
+            for (int block = 0; block < blockCount; block++) {
+                if (!overlaps(block, fromMillis, toMillis)) {
+                    continue;
+                }
+                long start = blockOffsets[block];
+                long end = block + 1 < blockCount ? blockOffsets[block + 1] : indexedOffset;
+                if (count > 0 && ranges[count - 1][1] == start) {
+                    ranges[count - 1][1] = end;
+                } else {
+                    ranges[count++] = new long[] { start, end };
+                }
+            }
+            return Arrays.copyOf(ranges, count);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void add(long offset, long occurredAtMillis, long zoneId, String deviceId) {
+        if (recordsInLastBlock == BLOCK_RECORDS) {
+            if (blockCount == blockOffsets.length) {
+                int capacity = blockCount * 2;
+                blockOffsets = Arrays.copyOf(blockOffsets, capacity);
+                blockMinMillis = Arrays.copyOf(blockMinMillis, capacity);
+                blockMaxMillis = Arrays.copyOf(blockMaxMillis, capacity);
+            }
+            blockOffsets[blockCount] = offset;
+            blockMinMillis[blockCount] = occurredAtMillis;
+            blockMaxMillis[blockCount] = occurredAtMillis;
+            blockCount++;
+            recordsInLastBlock = 0;
+        }
+        int block = blockCount - 1;
+        blockMinMillis[block] = Math.min(blockMinMillis[block], occurredAtMillis);
+        blockMaxMillis[block] = Math.max(blockMaxMillis[block], occurredAtMillis);
+        recordsInLastBlock++;
+        recordCount++;
+
+        byDevice.computeIfAbsent(deviceId, id -> new OffsetList()).add(offset);
+        byZone.computeIfAbsent(zoneId, id -> new OffsetList()).add(offset);
+    }
+
+    private static <K> long trimLists(Map<K, OffsetList> lists, long offset) {
+        long removed = 0;
+        for (Iterator<OffsetList> it = lists.values().iterator(); it.hasNext(); ) {
+            OffsetList offsets = it.next();
+            removed += offsets.dropBefore(offset);
+            if (offsets.size == 0) {
+                it.remove();
+            }
+        }
+        return removed;
+    }
+
+    private List<OffsetList> lists(Collection<String> deviceIds, Collection<Long> zoneIds) {
+        List<OffsetList> lists = new ArrayList<>(deviceIds.size() + zoneIds.size());
+        for (String deviceId : deviceIds) {
+            OffsetList offsets = byDevice.get(deviceId);
+            if (offsets != null) {
+                lists.add(offsets);
+            }
+        }
+        for (Long zoneId : zoneIds) {
+            OffsetList offsets = byZone.get(zoneId);
+            if (offsets != null) {
+                lists.add(offsets);
+            }
+        }
+        return lists;
+    }
+
+    private long[] filterByBlocks(OffsetList offsets, long fromMillis, long toMillis) {
+        long[] result = new long[offsets.size];
+        int count = 0;
+        int block = 0;
+        for (int i = 0; i < offsets.size; i++) {
+            long offset = offsets.values[i];
+            // Offsets are ascending, so the containing block only moves forward
+            while (block + 1 < blockCount && blockOffsets[block + 1] <= offset) {
+                block++;
+            }
+            if (overlaps(block, fromMillis, toMillis)) {
+                result[count++] = offset;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private boolean overlaps(int block, long fromMillis, long toMillis) {
+        return blockMaxMillis[block] >= fromMillis && blockMinMillis[block] <= toMillis;
+    }
+
+    private static final class OffsetList {
+        long[] values = new long[4];
+        int size;
+
+        void add(long offset) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = offset;
+        }
+
+        int dropBefore(long offset) {
+            int first = Arrays.binarySearch(values, 0, size, offset);
+            if (first < 0) {
+                first = -first - 1;
+            }
+            if (first > 0) {
+                System.arraycopy(values, first, values, 0, size - first);
+                size -= first;
+            }
+            return first;
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                out.writeLong(values[i]);
+            }
+        }
+
+        static OffsetList readFrom(DataInputStream in) throws IOException {
+            OffsetList offsets = new OffsetList();
+            offsets.size = in.readInt();
+            offsets.values = new long[Math.max(4, offsets.size)];
+            for (int i = 0; i < offsets.size; i++) {
+                offsets.values[i] = in.readLong();
+            }
+            return offsets;
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package com.maciejwasiak.locon.geofence;
+
+import com.maciejwasiak.locon.dto.GeofenceEventDto;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Append-only geofence event log made of fixed-size, memory-mapped segment files.
+ * <p>
+ * Every record is addressed by a global offset: the segment's base offset (encoded in its file
+ * name) plus the position inside the segment. A segment that cannot fit the next record is sealed
+ * and a new one starts at the next multiple of the segment size, so offsets grow monotonically and
+ * map to a segment with a single division.
+ * <p>
+ * There is a single writer (appends are synchronized); readers are lock-free and only see records
+ * below the published write offset. Readers work on an immutable snapshot of the segment list, so
+ * {@link #purgeBefore(long)} can drop the oldest segments while a read is in progress.
+ */
+public final class GeofenceEventLog implements Closeable {
+
+    private static final String SEGMENT_PREFIX = "events-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path directory;
+    private final int segmentSize;
+    private volatile List<Segment> segments = List.of();
+    private Segment active;
+    private volatile long writeOffset;
+
+    private GeofenceEventLog(Path directory, int segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Opens (or creates) the log in {@code directory}, recovering the write position of the last segment.
+     */
+    public static GeofenceEventLog open(Path directory, int segmentSize) {
+        GeofenceEventLog log = new GeofenceEventLog(directory, segmentSize);
+        try {
+            Files.createDirectories(directory);
+            List<Path> files;
+            try (Stream<Path> listing = Files.list(directory)) {
+                files = listing
+                    .filter(path -> path.getFileName().toString().startsWith(SEGMENT_PREFIX))
+                    .filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .toList();
+            }
+            List<Segment> segments = new ArrayList<>(files.size() + 1);
+            for (Path file : files) {
+                segments.add(Segment.map(file, baseOffsetOf(file), segmentSize));
+            }
+            if (segments.isEmpty()) {
+                segments.add(log.createSegment(0));
+            }
+            log.segments = List.copyOf(segments);
+            log.active = segments.get(segments.size() - 1);
+            log.active.recoverLimit();
+            log.writeOffset = log.active.baseOffset + log.active.limit;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open geofence event log in " + directory, e);
+        }
+        return log;
+    }
+
+    /**
+     * Appends the events and returns the offset of the first one.
+     */
+    public synchronized long append(List<GeofenceEventDto> events) {
+        long first = -1;
+        for (GeofenceEventDto event : events) {
+            long offset = appendOne(event);
+            if (first < 0) {
+                first = offset;
+            }
+        }
+        writeOffset = active.baseOffset + active.limit;
+        return first;
+    }
+
+    public synchronized long append(GeofenceEventDto event) {
+        long offset = appendOne(event);
+        writeOffset = active.baseOffset + active.limit;
+        return offset;
+    }
+
+    /**
+     * Offset one past the last readable record.
+     */
+    public long writeOffset() {
+        return writeOffset;
+    }
+
+    public int segmentSize() {
+        return segmentSize;
+    }
+
+    /**
+     * Offset of the oldest retained record (or of where it would be); everything below was purged.
+     */
+    public long firstOffset() {
+        return segments.get(0).baseOffset;
+    }
+
+    /**
+     * Sequentially reads records starting at {@code fromOffset} (which must be a record boundary or 0)
+     * until the consumer returns {@code false} or the end of the log is reached.
+     *
+     * @return the offset to resume from: the end of the log, or the record the visitor declined
+     */
+    public long read(long fromOffset, RecordVisitor visitor) {
+        long end = writeOffset;
+        List<Segment> segments = this.segments;
+        long offset = Math.max(fromOffset, segments.get(0).baseOffset);
+        while (offset < end) {
+            Segment segment = segmentFor(segments, offset);
+            if (segment == null) {
+                break;
+            }
+            int position = (int) (offset - segment.baseOffset);
+            int limit = (int) Math.min(segmentSize, end - segment.baseOffset);
+            int size = GeofenceEventCodec.recordSize(segment.buffer, position, limit);
+            if (size == 0) {
+                // Sealed segment tail: continue with the next segment
+                offset = segment.baseOffset + segmentSize;
+                continue;
+            }
+            if (!visitor.visit(offset, segment.buffer, position)) {
+                return offset;
+            }
+            offset += size;
+        }
+        return offset;
+    }
+
+    /**
+     * Decodes records into DTOs, a convenience over {@link #read(long, RecordVisitor)} for replay.
+     */
+    public long replay(long fromOffset, EventConsumer consumer) {
+        return read(fromOffset, (offset, buffer, position) ->
+            consumer.accept(offset, GeofenceEventCodec.decode(buffer, position)));
+    }
+
+    public List<SegmentInfo> segments() {
+        List<Segment> segments = this.segments;
+        List<SegmentInfo> info = new ArrayList<>(segments.size());
+        long end = writeOffset;
+        for (Segment segment : segments) {
+            long limit = Math.min(segment.baseOffset + segmentSize, end);
+            info.add(new SegmentInfo(segment.baseOffset, limit));
+        }
+        return info;
+    }
+
+    public synchronized void flush() {
+        active.buffer.force();
+    }
+
+    /**
+     * Deletes the oldest sealed segments whose records all occurred before {@code epochMillis}, stopping
+     * at the first segment that still holds a newer record; the active segment is always kept.
+     * <p>
+     * Purged segments are closed and their files deleted. The mapping itself is released once no reader
+     * holds the segment any more, so a read that is still walking it does not fault.
+     *
+     * @return the number of segments deleted
+     */
+    public synchronized int purgeBefore(long epochMillis) {
+        List<Segment> current = segments;
+        int expired = 0;
+        while (expired < current.size() - 1 && current.get(expired).newestMillis() < epochMillis) {
+            expired++;
+        }
+        if (expired == 0) {
+            return 0;
+        }
+        segments = List.copyOf(current.subList(expired, current.size()));
+        for (Segment segment : current.subList(0, expired)) {
+            try {
+                segment.channel.close();
+                Files.deleteIfExists(directory.resolve(fileName(segment.baseOffset)));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot delete geofence event log segment at " + segment.baseOffset, e);
+            }
+        }
+        return expired;
+    }
+
+    @Override
+    public synchronized void close() {
+        for (Segment segment : segments) {
+            segment.buffer.force();
+            try {
+                segment.channel.close();
+            } catch (IOException ignored) {
+                // Closing a mapped channel does not unmap it; nothing left to recover here
+            }
+        }
+    }
+
+    private long appendOne(GeofenceEventDto event) {
+        int size = GeofenceEventCodec.encodedSize(event);
+        if (size > segmentSize) {
+            throw new IllegalArgumentException("Event of " + size + " bytes exceeds segment size " + segmentSize);
+        }
+        if (active.limit + size > segmentSize) {
+            active.buffer.force();
+            active = createSegment(active.baseOffset + segmentSize);
+            List<Segment> extended = new ArrayList<>(segments);
+            extended.add(active);
+            segments = List.copyOf(extended);
+        }
+        long offset = active.baseOffset + active.limit;
+        active.limit += GeofenceEventCodec.encode(event, active.buffer, active.limit);
+        return offset;
+    }
+
+    private Segment segmentFor(List<Segment> segments, long offset) {
+        long base = offset - Math.floorMod(offset, (long) segmentSize);
+        // Segments are contiguous from the first one, so this is a direct index
+        int index = (int) ((base - segments.get(0).baseOffset) / segmentSize);
+        if (index < 0 || index >= segments.size()) {
+            return null;
+        }
+        return segments.get(index);
+    }
+
+    private Segment createSegment(long baseOffset) {
+        try {
+            return Segment.map(directory.resolve(fileName(baseOffset)), baseOffset, segmentSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create geofence event log segment at " + baseOffset, e);
+        }
+    }
+
+    private static String fileName(long baseOffset) {
+        return String.format("%s%020d%s", SEGMENT_PREFIX, baseOffset, SEGMENT_SUFFIX);
+    }
+
+    private static long baseOffsetOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    public record SegmentInfo(long baseOffset, long endOffset) {}
+
+    @FunctionalInterface
+    public interface RecordVisitor {
+        /**
+         * @return {@code false} to stop reading
+         */
+        boolean visit(long offset, ByteBuffer buffer, int position);
+    }
+
+    @FunctionalInterface
+    public interface EventConsumer {
+        /**
+         * @return {@code false} to stop reading
+         */
+        boolean accept(long offset, GeofenceEventDto event);
+    }
+
+    private static final class Segment {
+        private static final long UNSCANNED = Long.MAX_VALUE;
+
+        final long baseOffset;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        int limit;
+        // Newest occurredAt in the segment, computed once the segment is sealed
+        private long newestMillis = UNSCANNED;
+
+        private Segment(long baseOffset, FileChannel channel, MappedByteBuffer buffer) {
+            this.baseOffset = baseOffset;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        static Segment map(Path file, long baseOffset, int segmentSize) throws IOException {
+            FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            return new Segment(baseOffset, channel, buffer);
+        }
+
+        void recoverLimit() {
+            int position = 0;
+            int size;
+            while ((size = GeofenceEventCodec.recordSize(buffer, position, buffer.capacity())) > 0) {
+                position += size;
+            }
+            limit = position;
+        }
+
+        long newestMillis() {
+            if (newestMillis == UNSCANNED) {
+                long newest = Long.MIN_VALUE;
+                int position = 0;
+                int size;
+                while ((size = GeofenceEventCodec.recordSize(buffer, position, buffer.capacity())) > 0) {
+                    newest = Math.max(newest, GeofenceEventCodec.occurredAtMillis(buffer, position));
+                    position += size;
+                }
+                newestMillis = newest;
+            }
+            return newestMillis;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.maciejwasiak.locon.geofence;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Binary snapshot of {@link DeviceZoneStates} pairs, tied to the {@link GeofenceEventLog} offset from
+ * which transitions must be replayed on top of it.
+ * <p>
+ * Layout: magic, version, log offset and creation time, then one {@code [deviceId, zoneId, packed]}
+ * triple of longs per pair, closed by a {@link DeviceZoneIndex#NO_DEVICE} marker, the pair count and a
+ * CRC32 of everything before it. Snapshots are written to a temporary file and atomically moved into
+ * place, so a crash mid-write leaves the previous snapshot intact.
+ */
+public final class GeofenceStateSnapshot {
+
+    static final int MAGIC = 0x47535350;
+    static final int VERSION = 1;
+
+    private static final int BUFFER_BYTES = 256 * 1024;
+
+    private GeofenceStateSnapshot() {
+    }
+
+    /**
+     * Snapshot metadata.
+     *
+     * @param logOffset event log offset to replay from after loading the pairs
+     */
+    public record Header(long logOffset, long createdAtMillis, long pairCount) {
+    }
+
+    /**
+     * Writes the pairs produced by {@code source} and atomically replaces {@code file}.
+     *
+     * @return the number of pairs written
+     */
+    public static long write(Path file, long logOffset, long createdAtMillis,
+                             Consumer<DeviceZoneStates.PairVisitor> source) {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            CRC32 checksum = new CRC32();
+            long[] pairs = { 0 };
+            try (DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temporary), BUFFER_BYTES), checksum))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(logOffset);
+                out.writeLong(createdAtMillis);
+                source.accept((deviceId, zoneId, packed) -> {
+                    try {
+                        out.writeLong(deviceId);
+                        out.writeLong(zoneId);
+                        out.writeLong(packed);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    pairs[0]++;
+                });
+                out.writeLong(DeviceZoneIndex.NO_DEVICE);
+                out.writeLong(pairs[0]);
+                out.flush();
+                out.writeLong(checksum.getValue());
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return pairs[0];
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write geofence state snapshot " + file, e);
+        }
+    }
+
+    /**
+     * Streams the snapshot's pairs into {@code consumer}. The checksum is only verified at the end, so
+     * callers should discard what they loaded if this throws.
+     *
+     * @throws IllegalStateException if the file is not a valid snapshot
+     */
+    public static Header read(Path file, DeviceZoneStates.PairVisitor consumer) {
+        CRC32 checksum = new CRC32();
+        try (CheckedInputStream checked = new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(file), BUFFER_BYTES), checksum);
+             DataInputStream in = new DataInputStream(checked)) {
+            if (in.readInt() != MAGIC) {
+                throw new IllegalStateException("Not a geofence state snapshot: " + file);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IllegalStateException("Unsupported geofence state snapshot version " + version);
+            }
+            long logOffset = in.readLong();
+            long createdAtMillis = in.readLong();
+            long pairs = 0;
+            for (long deviceId = in.readLong(); deviceId != DeviceZoneIndex.NO_DEVICE; deviceId = in.readLong()) {
+                consumer.visit(deviceId, in.readLong(), in.readLong());
+                pairs++;
+            }
+            long expectedPairs = in.readLong();
+            long expectedChecksum = checksum.getValue();
+            if (expectedPairs != pairs || in.readLong() != expectedChecksum) {
+                throw new IllegalStateException("Corrupt geofence state snapshot: " + file);
+            }
+            return new Header(logOffset, createdAtMillis, pairs);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unreadable geofence state snapshot: " + file, e);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.maciejwasiak.locon.geofence;
+
+import java.util.Arrays;
+
+/**
+ * Last known position per device, kept in primitive arrays per stripe: one hash probe and a few array
+ * reads per lookup, and no objects per device. Out-of-order fixes never replace a newer position.
+ */
+public final class LastLocationTable extends StripedTable<LastLocationTable.Columns> {
+
+    public LastLocationTable() {
+        super(Columns::new);
+    }
+
+    /**
+     * A device's last known position.
+     *
+     * @param accuracyMeters reported accuracy, {@code NaN} if the fix carried none
+     */
+    public record Location(long deviceId, double latitude, double longitude, double accuracyMeters, long atMillis) {
+    }
+
+    /**
+     * Records a fix unless the device already has a newer one.
+     *
+     * @return {@code true} if the position was stored
+     */
+    public boolean update(long deviceId, double latitude, double longitude, double accuracyMeters, long atMillis) {
+        Columns stripe = stripeOf(deviceId);
+        synchronized (stripe) {
+            int entry = stripe.entryOf(deviceId);
+            if (entry == NO_ENTRY) {
+                entry = stripe.allocate(deviceId);
+            } else if (atMillis < stripe.atMillis[entry]) {
+                return false;
+            }
+            stripe.latitude[entry] = latitude;
+            stripe.longitude[entry] = longitude;
+            stripe.accuracy[entry] = accuracyMeters;
+            stripe.atMillis[entry] = atMillis;
+            return true;
+        }
+    }
+
+    /**
+     * @return the device's last position, or {@code null} if none was recorded
+     */
+    public Location get(long deviceId) {
+        Columns stripe = stripeOf(deviceId);
+        synchronized (stripe) {
+            int entry = stripe.entryOf(deviceId);
+            return entry == NO_ENTRY ? null : new Location(deviceId, stripe.latitude[entry], stripe.longitude[entry],
+                stripe.accuracy[entry], stripe.atMillis[entry]);
+        }
+    }
+
+    static final class Columns extends StripedTable.Stripe {
+        double[] latitude = new double[INITIAL_CAPACITY];
+        double[] longitude = new double[INITIAL_CAPACITY];
+        double[] accuracy = new double[INITIAL_CAPACITY];
+        long[] atMillis = new long[INITIAL_CAPACITY];
+
+        @Override
+        void grow(int capacity) {
+            latitude = Arrays.copyOf(latitude, capacity);
+            longitude = Arrays.copyOf(longitude, capacity);
+            accuracy = Arrays.copyOf(accuracy, capacity);
+            atMillis = Arrays.copyOf(atMillis, capacity);
+        }
+    }
+}
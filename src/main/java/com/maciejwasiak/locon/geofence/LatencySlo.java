@@ -0,0 +1,45 @@
+package com.maciejwasiak.locon.geofence;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency counters against a service-level objective: how many samples were recorded, their total
+ * time, and how many took longer than the threshold. Cheap enough to record on hot paths from any
+ * thread; exported as a function timer plus met/missed counters.
+ */
+public final class LatencySlo {
+
+    private final long thresholdNanos;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAdder missed = new LongAdder();
+
+    public LatencySlo(Duration threshold) {
+        this.thresholdNanos = threshold.toNanos();
+    }
+
+    public void record(long nanos) {
+        count.increment();
+        totalNanos.add(nanos);
+        if (nanos > thresholdNanos) {
+            missed.increment();
+        }
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public double getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    public long getMissed() {
+        return missed.sum();
+    }
+
+    public long getMet() {
+        return count.sum() - missed.sum();
+    }
+}
@@ -0,0 +1,178 @@
+package com.maciejwasiak.locon.geofence;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing {@code long -> int} hash map with linear probing.
+ * <p>
+ * Avoids boxing on hot lookups (zone id to table slot, device id to store slot). Not thread-safe:
+ * owners either publish a map once and never mutate it again, or guard it themselves.
+ */
+public final class LongIntHashMap {
+
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private final int missingValue;
+    private long[] keys;
+    private int[] values;
+    private boolean[] used;
+    private int size;
+    private int resizeThreshold;
+
+    public LongIntHashMap(int expectedSize, int missingValue) {
+        this.missingValue = missingValue;
+        allocate(capacityFor(expectedSize));
+    }
+
+    public LongIntHashMap(LongIntHashMap source) {
+        this.missingValue = source.missingValue;
+        this.keys = source.keys.clone();
+        this.values = source.values.clone();
+        this.used = source.used.clone();
+        this.size = source.size;
+        this.resizeThreshold = source.resizeThreshold;
+    }
+
+    public int get(long key) {
+        int mask = keys.length - 1;
+        int index = hash(key) & mask;
+        while (used[index]) {
+            if (keys[index] == key) {
+                return values[index];
+            }
+            index = (index + 1) & mask;
+        }
+        return missingValue;
+    }
+
+    public boolean containsKey(long key) {
+        int mask = keys.length - 1;
+        int index = hash(key) & mask;
+        while (used[index]) {
+            if (keys[index] == key) {
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Stores {@code value} under {@code key} and returns the previous value, or the missing value.
+     */
+    public int put(long key, int value) {
+        int mask = keys.length - 1;
+        int index = hash(key) & mask;
+        while (used[index]) {
+            if (keys[index] == key) {
+                int previous = values[index];
+                values[index] = value;
+                return previous;
+            }
+            index = (index + 1) & mask;
+        }
+        used[index] = true;
+        keys[index] = key;
+        values[index] = value;
+        if (++size > resizeThreshold) {
+            rehash(keys.length << 1);
+        }
+        return missingValue;
+    }
+
+    /**
+     * Removes {@code key} and returns its value, or the missing value. Uses backward-shift deletion
+     * so no tombstones accumulate.
+     */
+    public int remove(long key) {
+        int mask = keys.length - 1;
+        int index = hash(key) & mask;
+        while (used[index]) {
+            if (keys[index] == key) {
+                int previous = values[index];
+                shiftBack(index);
+                size--;
+                return previous;
+            }
+            index = (index + 1) & mask;
+        }
+        return missingValue;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int missingValue() {
+        return missingValue;
+    }
+
+    public void clear() {
+        Arrays.fill(used, false);
+        size = 0;
+    }
+
+    public void forEach(Entry consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            if (used[i]) {
+                consumer.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    private void shiftBack(int hole) {
+        int mask = keys.length - 1;
+        int index = (hole + 1) & mask;
+        while (used[index]) {
+            int home = hash(keys[index]) & mask;
+            boolean movable = hole <= index ? (home <= hole || home > index) : (home <= hole && home > index);
+            if (movable) {
+                keys[hole] = keys[index];
+                values[hole] = values[index];
+                hole = index;
+            }
+            index = (index + 1) & mask;
+        }
+        used[hole] = false;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        boolean[] oldUsed = used;
+        allocate(capacity);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        used = new boolean[capacity];
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = 16;
+        while (capacity * LOAD_FACTOR < expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    @FunctionalInterface
+    public interface Entry {
+        void accept(long key, int value);
+    }
+}
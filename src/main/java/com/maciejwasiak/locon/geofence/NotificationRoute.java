@@ -0,0 +1,14 @@
+package com.maciejwasiak.locon.geofence;
+
+/**
+ * Projection of a {@code ZoneDevice} row whose zone and device both have notifications enabled, with
+ * the users to notify: the zone's owner (if any) and the device's owner. {@code windowSeconds} is the
+ * zone's digest window, {@code null} for the configured default.
+ */
+public record NotificationRoute(Long zoneId, Long deviceId, Long zoneOwnerId, Long deviceOwnerId,
+                                Integer windowSeconds) {
+
+    public NotificationRoute(Long zoneId, Long deviceId, Long zoneOwnerId, Long deviceOwnerId) {
+        this(zoneId, deviceId, zoneOwnerId, deviceOwnerId, null);
+    }
+}
@@ -0,0 +1,106 @@
+package com.maciejwasiak.locon.geofence;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+/**
+ * Immutable zone/device to recipient routing, precomputed from {@link NotificationRoute}s so that
+ * dispatching a transition never touches the database.
+ * <p>
+ * Per zone, device ids are kept sorted next to their recipient user ids and looked up by binary search.
+ * Pairs without a route (muted zone, muted assignment or no assignment) have no recipients. Changes
+ * produce a new table, which callers publish through a volatile field.
+ */
+public final class NotificationRoutingTable {
+
+    /** Returned by {@link #windowSeconds(long)} for zones using the configured default window. */
+    public static final int DEFAULT_WINDOW = -1;
+
+    private static final long[] NO_RECIPIENTS = new long[0];
+
+    private final Map<Long, ZoneRoutes> zones;
+
+    private NotificationRoutingTable(Map<Long, ZoneRoutes> zones) {
+        this.zones = zones;
+    }
+
+    public static NotificationRoutingTable empty() {
+        return new NotificationRoutingTable(Map.of());
+    }
+
+    public static NotificationRoutingTable of(List<NotificationRoute> routes) {
+        Map<Long, ZoneRoutes> zones = new HashMap<>();
+        routes.stream()
+            .collect(Collectors.groupingBy(NotificationRoute::zoneId))
+            .forEach((zoneId, zoneRoutes) -> zones.put(zoneId, ZoneRoutes.of(zoneRoutes)));
+        return new NotificationRoutingTable(zones);
+    }
+
+    /**
+     * Returns a copy with the zone's routes replaced; an empty list removes the zone.
+     */
+    public NotificationRoutingTable withZone(long zoneId, List<NotificationRoute> routes) {
+        Map<Long, ZoneRoutes> copy = new HashMap<>(zones);
+        if (routes.isEmpty()) {
+            copy.remove(zoneId);
+        } else {
+            copy.put(zoneId, ZoneRoutes.of(routes));
+        }
+        return new NotificationRoutingTable(copy);
+    }
+
+    /**
+     * @return recipient user ids, distinct and ascending; empty when the pair is not routed
+     */
+    public long[] recipients(long zoneId, long deviceId) {
+        ZoneRoutes routes = zones.get(zoneId);
+        if (routes == null) {
+            return NO_RECIPIENTS;
+        }
+        int index = Arrays.binarySearch(routes.devices, deviceId);
+        return index >= 0 ? routes.recipients[index] : NO_RECIPIENTS;
+    }
+
+    public int windowSeconds(long zoneId) {
+        ZoneRoutes routes = zones.get(zoneId);
+        return routes == null ? DEFAULT_WINDOW : routes.windowSeconds;
+    }
+
+    public int routeCount() {
+        return zones.values().stream().mapToInt(routes -> routes.devices.length).sum();
+    }
+
+    private static final class ZoneRoutes {
+        final long[] devices;
+        final long[][] recipients;
+        final int windowSeconds;
+
+        private ZoneRoutes(long[] devices, long[][] recipients, int windowSeconds) {
+            this.devices = devices;
+            this.recipients = recipients;
+            this.windowSeconds = windowSeconds;
+        }
+
+        static ZoneRoutes of(List<NotificationRoute> routes) {
+            Map<Long, long[]> byDevice = new HashMap<>();
+            for (NotificationRoute route : routes) {
+                LongStream owners = route.zoneOwnerId() != null
+                    ? LongStream.of(route.zoneOwnerId(), route.deviceOwnerId())
+                    : LongStream.of(route.deviceOwnerId());
+                byDevice.merge(route.deviceId(), owners.toArray(), (a, b) -> LongStream.concat(
+                    Arrays.stream(a), Arrays.stream(b)).toArray());
+            }
+            long[] devices = byDevice.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+            long[][] recipients = new long[devices.length][];
+            for (int i = 0; i < devices.length; i++) {
+                recipients[i] = Arrays.stream(byDevice.get(devices[i])).distinct().sorted().toArray();
+            }
+            Integer window = routes.get(0).windowSeconds();
+            return new ZoneRoutes(devices, recipients, window != null ? window : DEFAULT_WINDOW);
+        }
+    }
+}
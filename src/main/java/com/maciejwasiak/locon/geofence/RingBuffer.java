@@ -0,0 +1,210 @@
+package com.maciejwasiak.locon.geofence;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Preallocated multi-producer ring of reusable slots, in the style of the LMAX Disruptor.
+ * <p>
+ * Producers claim a contiguous range of sequences with a single CAS, fill the slots in place and mark
+ * each one published; nothing is allocated per event. Consumers ({@link RingStage}) track their own
+ * {@link Sequence} and wait on the ring or on upstream stages, so a slot flows through every stage in
+ * order. A claim fails fast instead of blocking when it would overwrite a slot the slowest gating
+ * stage has not released yet, leaving back-pressure to the caller.
+ * <p>
+ * Consumers that stayed idle for a while block in {@link #awaitSignal} instead of polling; publishing
+ * and stage progress wake them through {@link #signalAll()}, which costs a fence and a volatile read
+ * while nobody sleeps.
+ */
+public final class RingBuffer<E> {
+
+    private final Object[] slots;
+    private final int mask;
+    private final int indexShift;
+    private final AtomicIntegerArray published;
+    private final AtomicLong claimed = new AtomicLong(-1);
+    private volatile Sequence[] gatingSequences = new Sequence[0];
+    private volatile long cachedGatingSequence = -1;
+    private final ReentrantLock sleepLock = new ReentrantLock();
+    private final Condition wakeUp = sleepLock.newCondition();
+    private final AtomicInteger sleepers = new AtomicInteger();
+
+    public RingBuffer(int size, Supplier<E> slotFactory) {
+        if (size < 1 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("Ring size must be a power of two, got " + size);
+        }
+        this.slots = new Object[size];
+        this.mask = size - 1;
+        this.indexShift = Integer.numberOfTrailingZeros(size);
+        this.published = new AtomicIntegerArray(size);
+        for (int i = 0; i < size; i++) {
+            slots[i] = slotFactory.get();
+            published.set(i, -1);
+        }
+    }
+
+    /**
+     * Sets the sequences of the final stages; producers never lap the slowest of them.
+     */
+    public void setGatingSequences(Sequence... sequences) {
+        this.gatingSequences = sequences.clone();
+    }
+
+    /**
+     * Claims {@code count} consecutive sequences.
+     *
+     * @return the highest claimed sequence, or {@code -1} if the ring lacks capacity
+     */
+    public long tryClaim(int count) {
+        if (count < 1 || count > slots.length) {
+            return -1;
+        }
+        while (true) {
+            long current = claimed.get();
+            long next = current + count;
+            long wrapPoint = next - slots.length;
+            if (wrapPoint > cachedGatingSequence) {
+                long gating = minimumGatingSequence(current);
+                cachedGatingSequence = gating;
+                if (wrapPoint > gating) {
+                    return -1;
+                }
+            }
+            if (claimed.compareAndSet(current, next)) {
+                return next;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public E get(long sequence) {
+        return (E) slots[(int) sequence & mask];
+    }
+
+    /**
+     * Makes the claimed range visible to the first stage, waking it if it is blocked.
+     */
+    public void publish(long low, long high) {
+        for (long sequence = low; sequence <= high; sequence++) {
+            published.lazySet((int) sequence & mask, (int) (sequence >>> indexShift));
+        }
+        signalAll();
+    }
+
+    /**
+     * Blocks the calling consumer until {@link #signalAll()} or the timeout, unless {@code ready} holds
+     * once it is registered as sleeping. Checking after registering pairs with the fence in
+     * {@code signalAll}: either the signaller sees the sleeper, or the sleeper sees the new work.
+     */
+    public void awaitSignal(BooleanSupplier ready, long timeoutNanos) {
+        sleepLock.lock();
+        sleepers.incrementAndGet();
+        try {
+            if (!ready.getAsBoolean()) {
+                wakeUp.awaitNanos(timeoutNanos);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            sleepers.decrementAndGet();
+            sleepLock.unlock();
+        }
+    }
+
+    /**
+     * Wakes every consumer blocked in {@link #awaitSignal}, to be called after making work visible.
+     */
+    public void signalAll() {
+        // Orders the caller's preceding (possibly lazy) stores before the read of the sleeper count
+        VarHandle.fullFence();
+        if (sleepers.get() > 0) {
+            sleepLock.lock();
+            try {
+                wakeUp.signalAll();
+            } finally {
+                sleepLock.unlock();
+            }
+        }
+    }
+
+    int sleepingConsumers() {
+        return sleepers.get();
+    }
+
+    /**
+     * Highest sequence in {@code [low, claimed]} such that every sequence up to it is published, or
+     * {@code low - 1} when {@code low} itself is not.
+     */
+    public long highestPublished(long low) {
+        long high = claimed.get();
+        for (long sequence = low; sequence <= high; sequence++) {
+            if (published.get((int) sequence & mask) != (int) (sequence >>> indexShift)) {
+                return sequence - 1;
+            }
+        }
+        return high;
+    }
+
+    public long claimedSequence() {
+        return claimed.get();
+    }
+
+    public int size() {
+        return slots.length;
+    }
+
+    /**
+     * Slots claimed but not yet released by every gating stage.
+     */
+    public long backlog() {
+        long current = claimed.get();
+        return current - minimumGatingSequence(current);
+    }
+
+    private long minimumGatingSequence(long defaultValue) {
+        long minimum = defaultValue;
+        for (Sequence sequence : gatingSequences) {
+            minimum = Math.min(minimum, sequence.get());
+        }
+        return minimum;
+    }
+
+    /**
+     * Progress counter of one consumer, padded against false sharing with its neighbours.
+     */
+    public static final class Sequence {
+
+        // The value lives in the middle of a cache-line-sized array so neighbouring sequences never share a line
+        private static final int PADDED = 15;
+        private static final int VALUE = 7;
+
+        private final AtomicLongArray value = new AtomicLongArray(PADDED);
+
+        public Sequence() {
+            value.set(VALUE, -1);
+        }
+
+        public long get() {
+            return value.get(VALUE);
+        }
+
+        public void set(long sequence) {
+            value.lazySet(VALUE, sequence);
+        }
+
+        static long minimum(Sequence[] sequences) {
+            long minimum = Long.MAX_VALUE;
+            for (Sequence sequence : sequences) {
+                minimum = Math.min(minimum, sequence.get());
+            }
+            return minimum;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.maciejwasiak.locon.geofence;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * One consumer of a {@link RingBuffer}, run on its own thread.
+ * <p>
+ * The first stage waits for producers to publish; later stages wait until every upstream stage has
+ * released a sequence. Whatever is available is handed over as one batch, with {@code endOfBatch} set
+ * on its last slot so handlers can flush accumulated work once per batch. An idle stage spins briefly,
+ * then yields, then parks for {@value #PARK_NANOS} ns at a time, which keeps wake-up latency low while
+ * traffic is bursty. After about a millisecond of that it blocks on the ring until a publish or an
+ * upstream stage signals it (or {@value #BLOCK_NANOS} ns pass), so a quiet pipeline stops waking up.
+ * Handlers get {@link Handler#onIdle()} on every idle round, so they can serve side work owned by the
+ * stage thread between batches; whoever hands them such work signals the ring.
+ */
+public final class RingStage<E> implements Runnable {
+
+    static final long PARK_NANOS = 50_000;
+    static final long BLOCK_NANOS = 10_000_000;
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 200;
+    private static final int PARK_TRIES = YIELD_TRIES + 20;
+
+    private final RingBuffer<E> ring;
+    private final RingBuffer.Sequence[] upstream;
+    private final Handler<E> handler;
+    private final RingBuffer.Sequence sequence = new RingBuffer.Sequence();
+    private volatile boolean running = true;
+
+    /**
+     * Receives slots in sequence order. Exceptions are reported to {@link #onFailure(Object, RuntimeException)}
+     * and never stop the stage.
+     */
+    @FunctionalInterface
+    public interface Handler<E> {
+
+        void onEvent(E slot, long sequence, boolean endOfBatch);
+
+        default void onFailure(E slot, RuntimeException failure) {
+        }
+
+        /**
+         * Called on the stage thread whenever no slot is available, before backing off.
+         */
+        default void onIdle() {
+        }
+
+        /**
+         * Whether {@link #onIdle()} has work waiting; a blocked stage does not sleep while it has.
+         */
+        default boolean hasIdleWork() {
+            return false;
+        }
+    }
+
+    /**
+     * @param upstream stages that must release a slot before this one sees it; empty for the first stage
+     */
+    public RingStage(RingBuffer<E> ring, Handler<E> handler, RingBuffer.Sequence... upstream) {
+        this.ring = ring;
+        this.handler = handler;
+        this.upstream = upstream.clone();
+    }
+
+    public RingBuffer.Sequence sequence() {
+        return sequence;
+    }
+
+    public void halt() {
+        running = false;
+        ring.signalAll();
+    }
+
+    @Override
+    public void run() {
+        long next = sequence.get() + 1;
+        int idle = 0;
+        while (running) {
+            long available = available(next);
+            if (available < next) {
+                handler.onIdle();
+                idle = backOff(idle, next);
+                continue;
+            }
+            idle = 0;
+            for (long current = next; current <= available; current++) {
+                E slot = ring.get(current);
+                try {
+                    handler.onEvent(slot, current, current == available);
+                } catch (RuntimeException e) {
+                    handler.onFailure(slot, e);
+                }
+            }
+            sequence.set(available);
+            ring.signalAll();
+            next = available + 1;
+        }
+    }
+
+    private long available(long next) {
+        return upstream.length == 0 ? ring.highestPublished(next) : RingBuffer.Sequence.minimum(upstream);
+    }
+
+    private int backOff(int idle, long next) {
+        if (idle < SPIN_TRIES) {
+            Thread.onSpinWait();
+        } else if (idle < YIELD_TRIES) {
+            Thread.yield();
+        } else if (idle < PARK_TRIES) {
+            LockSupport.parkNanos(PARK_NANOS);
+        } else {
+            ring.awaitSignal(() -> !running || available(next) >= next || handler.hasIdleWork(), BLOCK_NANOS);
+            return idle;
+        }
+        return idle + 1;
+    }
+}
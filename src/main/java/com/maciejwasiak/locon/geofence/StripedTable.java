@@ -0,0 +1,101 @@
+package com.maciejwasiak.locon.geofence;
+
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ * Base of the per-device tables that keep their fields in primitive column arrays. Devices are spread
+ * over independently locked stripes; each stripe maps device ids to entry indexes with a
+ * {@link LongIntHashMap} and recycles released entries. Subclasses declare the columns in their
+ * {@link Stripe} and read or write them while holding the stripe's monitor.
+ */
+abstract class StripedTable<S extends StripedTable.Stripe> {
+
+    static final int NO_ENTRY = -1;
+
+    private static final int STRIPES = 64;
+    private static final int STRIPE_SHIFT = Integer.SIZE - Integer.numberOfTrailingZeros(STRIPES);
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    StripedTable(Supplier<S> stripeFactory) {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = stripeFactory.get();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    final S stripeOf(long deviceId) {
+        // High bits: the stripe's map probes from the low bits of the same hash, which would otherwise be
+        // equal for every key in the stripe
+        return (S) stripes[LongIntHashMap.hash(deviceId) >>> STRIPE_SHIFT];
+    }
+
+    public void remove(long deviceId) {
+        Stripe stripe = stripeOf(deviceId);
+        synchronized (stripe) {
+            stripe.release(deviceId);
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.entryByDevice.size();
+            }
+        }
+        return size;
+    }
+
+    abstract static class Stripe {
+        static final int INITIAL_CAPACITY = 16;
+
+        private final LongIntHashMap entryByDevice = new LongIntHashMap(64, NO_ENTRY);
+        private int[] free = new int[INITIAL_CAPACITY];
+        private int freeCount;
+        private int count;
+        private int capacity = INITIAL_CAPACITY;
+
+        /**
+         * @return the device's entry, or {@link #NO_ENTRY}
+         */
+        final int entryOf(long deviceId) {
+            return entryByDevice.get(deviceId);
+        }
+
+        /**
+         * Assigns an entry to a device that has none; its columns hold whatever the previous owner left.
+         */
+        final int allocate(long deviceId) {
+            int entry;
+            if (freeCount > 0) {
+                entry = free[--freeCount];
+            } else {
+                if (count == capacity) {
+                    capacity *= 2;
+                    grow(capacity);
+                }
+                entry = count++;
+            }
+            entryByDevice.put(deviceId, entry);
+            return entry;
+        }
+
+        final void release(long deviceId) {
+            int entry = entryByDevice.remove(deviceId);
+            if (entry == NO_ENTRY) {
+                return;
+            }
+            if (freeCount == free.length) {
+                free = Arrays.copyOf(free, freeCount * 2);
+            }
+            free[freeCount++] = entry;
+        }
+
+        /**
+         * Grows every column to {@code capacity} entries.
+         */
+        abstract void grow(int capacity);
+    }
+}
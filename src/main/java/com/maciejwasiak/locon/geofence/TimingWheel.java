@@ -0,0 +1,102 @@
+package com.maciejwasiak.locon.geofence;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timing wheel: a ring of slots, each holding the items due in the ticks that map onto it.
+ * Scheduling is O(1), and advancing visits only the slots of the elapsed ticks (at most one full turn);
+ * items due in a later turn simply stay in their slot. Deadlines are rounded up to the tick, so an item
+ * never fires early.
+ * <p>
+ * Not thread-safe; callers serialize access.
+ */
+public final class TimingWheel<T> {
+
+    private final long tickMillis;
+    private final List<Entry<T>>[] slots;
+    private final int mask;
+    private long currentTick;
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    public TimingWheel(int slotCount, long tickMillis, long startMillis) {
+        if (Integer.bitCount(slotCount) != 1) {
+            throw new IllegalArgumentException("Slot count must be a power of two: " + slotCount);
+        }
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("Tick must be positive: " + tickMillis);
+        }
+        this.tickMillis = tickMillis;
+        this.slots = new List[slotCount];
+        for (int i = 0; i < slotCount; i++) {
+            slots[i] = new ArrayList<>();
+        }
+        this.mask = slotCount - 1;
+        this.currentTick = startMillis / tickMillis;
+    }
+
+    /**
+     * Schedules the item to fire at the first {@link #advance} reaching {@code deadlineMillis}.
+     */
+    public void schedule(T item, long deadlineMillis) {
+        long tick = Math.max(Math.floorDiv(deadlineMillis + tickMillis - 1, tickMillis), currentTick);
+        slots[(int) (tick & mask)].add(new Entry<>(item, tick));
+        size++;
+    }
+
+    /**
+     * Fires every item due at or before {@code nowMillis}, in slot order.
+     *
+     * @return the number of items fired
+     */
+    public int advance(long nowMillis, Consumer<T> expired) {
+        long targetTick = Math.floorDiv(nowMillis, tickMillis);
+        if (targetTick < currentTick) {
+            return 0;
+        }
+        long steps = Math.min(targetTick - currentTick + 1, slots.length);
+        int fired = 0;
+        for (long step = 0; step < steps; step++) {
+            List<Entry<T>> slot = slots[(int) ((currentTick + step) & mask)];
+            for (int i = 0; i < slot.size(); ) {
+                Entry<T> entry = slot.get(i);
+                if (entry.tick > targetTick) {
+                    i++;
+                    continue;
+                }
+                // Swap-remove, then look at the entry moved into position i
+                slot.set(i, slot.get(slot.size() - 1));
+                slot.remove(slot.size() - 1);
+                size--;
+                fired++;
+                expired.accept(entry.item);
+            }
+        }
+        currentTick = targetTick + 1;
+        return fired;
+    }
+
+    /**
+     * Removes and returns every scheduled item regardless of its deadline.
+     */
+    public List<T> drain() {
+        List<T> items = new ArrayList<>(size);
+        for (List<Entry<T>> slot : slots) {
+            for (Entry<T> entry : slot) {
+                items.add(entry.item);
+            }
+            slot.clear();
+        }
+        size = 0;
+        return items;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private record Entry<T>(T item, long tick) {
+    }
+}
@@ -0,0 +1,524 @@
+package com.maciejwasiak.locon.geofence;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only store of device location tracks, one file per UTC day.
+ * <p>
+ * Fixes are buffered per device and sealed into blocks of up to {@code blockFixes} fixes of one device
+ * and one day. Coordinates are E7 fixed-point integers (1e-7 degree, about 1 cm) and timestamps epoch
+ * milliseconds; each is stored as the zigzag varint delta to the previous fix of the block, so a moving
+ * device typically costs 6-9 bytes per fix instead of 24. A block is laid out as
+ * {@code [int payload length][long device][long min millis][long max millis][int fixes][int crc32][payload]}.
+ * The open block is encoded incrementally, so buffering costs no more memory than the encoded bytes.
+ * <p>
+ * On open only block headers are scanned, rebuilding a compact per-day index of every device's blocks;
+ * a range read then decodes just the blocks overlapping the range. A torn block at the end of a file (a
+ * crash mid-write) is truncated away; blocks not yet flushed are lost on a crash but not on close.
+ * <p>
+ * Appends and reads may come from any thread. File writes happen in {@link #flush()} outside the store
+ * lock, so appenders never wait for the disk.
+ */
+public final class TrackStore implements Closeable {
+
+    static final int HEADER_BYTES = 36;
+    static final double E7 = 1e7;
+
+    private static final String SUFFIX = ".track";
+    private static final long DAY_MILLIS = 86_400_000L;
+
+    private final Path directory;
+    private final int blockFixes;
+    private final Object flushLock = new Object();
+    private final Map<Long, Pending> pending = new HashMap<>();
+    private final List<Block> unwritten = new ArrayList<>();
+    private final TreeMap<Long, DayIndex> days = new TreeMap<>();
+    private final LongAdder appendedFixes = new LongAdder();
+    private final LongAdder writtenBytes = new LongAdder();
+
+    private TrackStore(Path directory, int blockFixes) {
+        this.directory = directory;
+        this.blockFixes = blockFixes;
+    }
+
+    /**
+     * Receives decoded fixes.
+     */
+    @FunctionalInterface
+    public interface PointVisitor {
+
+        /**
+         * @return {@code false} to stop reading
+         */
+        boolean visit(double latitude, double longitude, long atMillis);
+    }
+
+    /**
+     * Opens (or creates) the store in {@code directory}, indexing the blocks of every day file.
+     */
+    public static TrackStore open(Path directory, int blockFixes) {
+        if (blockFixes < 1) {
+            throw new IllegalArgumentException("Block must hold at least one fix: " + blockFixes);
+        }
+        TrackStore store = new TrackStore(directory, blockFixes);
+        try {
+            Files.createDirectories(directory);
+            List<Path> files;
+            try (Stream<Path> listing = Files.list(directory)) {
+                files = listing.filter(path -> path.getFileName().toString().endsWith(SUFFIX)).sorted().toList();
+            }
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                long day = LocalDate.parse(name.substring(0, name.length() - SUFFIX.length())).toEpochDay();
+                store.days.put(day, DayIndex.scan(file));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open track store in " + directory, e);
+        }
+        return store;
+    }
+
+    /**
+     * Buffers a fix in its device's open block, sealing the block when it is full or the fix belongs
+     * to another day.
+     */
+    public synchronized void append(long deviceId, double latitude, double longitude, long atMillis) {
+        long day = Math.floorDiv(atMillis, DAY_MILLIS);
+        Pending block = pending.get(deviceId);
+        if (block != null && block.day != day) {
+            seal(deviceId, block);
+            block = null;
+        }
+        if (block == null) {
+            block = new Pending(day, System.currentTimeMillis());
+            pending.put(deviceId, block);
+        }
+        block.add(toE7(latitude), toE7(longitude), atMillis);
+        appendedFixes.increment();
+        if (block.count >= blockFixes) {
+            seal(deviceId, block);
+        }
+    }
+
+    /**
+     * Seals open blocks created before {@code openedBeforeMillis} (wall clock), so slow devices still
+     * reach the disk regularly.
+     *
+     * @return the number of blocks sealed
+     */
+    public synchronized int sealOpenedBefore(long openedBeforeMillis) {
+        int sealed = 0;
+        for (Iterator<Map.Entry<Long, Pending>> it = pending.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Long, Pending> entry = it.next();
+            if (entry.getValue().openedAtMillis < openedBeforeMillis) {
+                it.remove();
+                unwritten.add(entry.getValue().seal(entry.getKey()));
+                sealed++;
+            }
+        }
+        return sealed;
+    }
+
+    /**
+     * Appends every sealed block to its day file and indexes it.
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            List<Block> batch;
+            synchronized (this) {
+                batch = new ArrayList<>(unwritten);
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            Map<Long, List<Block>> byDay = new TreeMap<>();
+            for (Block block : batch) {
+                byDay.computeIfAbsent(block.day, day -> new ArrayList<>()).add(block);
+            }
+            long bytes = 0;
+            for (Map.Entry<Long, List<Block>> entry : byDay.entrySet()) {
+                bytes += write(fileOf(entry.getKey()), entry.getValue());
+            }
+            synchronized (this) {
+                for (Block block : batch) {
+                    days.computeIfAbsent(block.day, day -> new DayIndex())
+                        .add(block.deviceId, block.offset, block.minMillis, block.maxMillis, block.bytes.length);
+                }
+                // Only flush removes from the list, and sealing only appends, so the batch is its prefix
+                unwritten.subList(0, batch.size()).clear();
+            }
+            writtenBytes.add(bytes);
+        }
+    }
+
+    /**
+     * Decodes the device's fixes within {@code [fromMillis, toMillis]}, block by block in time order,
+     * touching only blocks whose time range overlaps.
+     *
+     * @return the number of fixes passed to the visitor
+     */
+    public int read(long deviceId, long fromMillis, long toMillis, int limit, PointVisitor visitor) {
+        List<Source> sources = new ArrayList<>();
+        synchronized (this) {
+            long fromDay = Math.floorDiv(fromMillis, DAY_MILLIS);
+            long toDay = Math.floorDiv(toMillis, DAY_MILLIS);
+            if (fromDay <= toDay) {
+                days.subMap(fromDay, true, toDay, true).forEach((day, index) ->
+                    index.collect(deviceId, fromMillis, toMillis, day, sources));
+            }
+            for (Block block : unwritten) {
+                if (block.deviceId == deviceId && block.overlaps(fromMillis, toMillis)) {
+                    sources.add(new Source(block.day, -1, block.bytes.length, block.minMillis, block.bytes));
+                }
+            }
+            Pending open = pending.get(deviceId);
+            if (open != null && open.count > 0 && open.minMillis <= toMillis && open.maxMillis >= fromMillis) {
+                Block block = open.seal(deviceId);
+                sources.add(new Source(block.day, -1, block.bytes.length, block.minMillis, block.bytes));
+            }
+        }
+        sources.sort(Comparator.comparingLong(Source::minMillis));
+
+        int[] emitted = { 0 };
+        PointVisitor bounded = (latitude, longitude, atMillis) -> {
+            if (atMillis < fromMillis || atMillis > toMillis) {
+                return true;
+            }
+            emitted[0]++;
+            return visitor.visit(latitude, longitude, atMillis) && emitted[0] < limit;
+        };
+        for (Source source : sources) {
+            if (emitted[0] >= limit) {
+                break;
+            }
+            ByteBuffer block = source.bytes != null ? ByteBuffer.wrap(source.bytes) : readBlock(source);
+            if (block != null && !decode(block, bounded)) {
+                break;
+            }
+        }
+        return emitted[0];
+    }
+
+    /**
+     * Deletes the day files before {@code epochDay}.
+     *
+     * @return the number of files deleted
+     */
+    public int purgeBefore(long epochDay) {
+        synchronized (flushLock) {
+            List<Long> expired;
+            synchronized (this) {
+                expired = new ArrayList<>(days.headMap(epochDay, false).keySet());
+                expired.forEach(days::remove);
+            }
+            int deleted = 0;
+            for (long day : expired) {
+                try {
+                    if (Files.deleteIfExists(fileOf(day))) {
+                        deleted++;
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Cannot delete track file for day " + LocalDate.ofEpochDay(day), e);
+                }
+            }
+            return deleted;
+        }
+    }
+
+    public long getAppendedFixes() {
+        return appendedFixes.sum();
+    }
+
+    public long getWrittenBytes() {
+        return writtenBytes.sum();
+    }
+
+    /**
+     * Seals every open block and flushes it.
+     */
+    @Override
+    public void close() {
+        sealOpenedBefore(Long.MAX_VALUE);
+        flush();
+    }
+
+    static int toE7(double degrees) {
+        return (int) Math.round(degrees * E7);
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private void seal(long deviceId, Pending block) {
+        pending.remove(deviceId);
+        unwritten.add(block.seal(deviceId));
+    }
+
+    private Path fileOf(long day) {
+        return directory.resolve(LocalDate.ofEpochDay(day) + SUFFIX);
+    }
+
+    private static long write(Path file, List<Block> blocks) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long offset = channel.size();
+            ByteBuffer[] buffers = new ByteBuffer[blocks.size()];
+            for (int i = 0; i < blocks.size(); i++) {
+                Block block = blocks.get(i);
+                block.offset = offset;
+                offset += block.bytes.length;
+                buffers[i] = ByteBuffer.wrap(block.bytes);
+            }
+            channel.position(blocks.get(0).offset);
+            long written = 0;
+            while (written < offset - blocks.get(0).offset) {
+                written += channel.write(buffers);
+            }
+            return written;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append to track file " + file, e);
+        }
+    }
+
+    /**
+     * @return the block, or {@code null} if its file was purged meanwhile or its checksum does not match
+     */
+    private ByteBuffer readBlock(Source source) {
+        ByteBuffer block = ByteBuffer.allocate(source.length);
+        try (FileChannel channel = FileChannel.open(fileOf(source.day), StandardOpenOption.READ)) {
+            while (block.hasRemaining()) {
+                if (channel.read(block, source.offset + block.position()) < 0) {
+                    return null;
+                }
+            }
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read track block of day " + LocalDate.ofEpochDay(source.day), e);
+        }
+        return block.flip();
+    }
+
+    /**
+     * Decodes one block.
+     *
+     * @return {@code false} if the visitor asked to stop
+     */
+    static boolean decode(ByteBuffer block, PointVisitor visitor) {
+        int payloadLength = block.getInt(0);
+        int count = block.getInt(28);
+        int checksum = block.getInt(32);
+        CRC32 crc = new CRC32();
+        crc.update(block.slice(HEADER_BYTES, payloadLength));
+        if ((int) crc.getValue() != checksum) {
+            return true;
+        }
+        block.position(HEADER_BYTES);
+        long millis = 0;
+        long latitude = 0;
+        long longitude = 0;
+        for (int i = 0; i < count; i++) {
+            millis += unzigzag(readVarint(block));
+            latitude += unzigzag(readVarint(block));
+            longitude += unzigzag(readVarint(block));
+            if (!visitor.visit(latitude / E7, longitude / E7, millis)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static int writeVarint(byte[] buffer, int position, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+        return position;
+    }
+
+    static long readVarint(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * A device's open block, encoded as fixes arrive.
+     */
+    private static final class Pending {
+        final long day;
+        final long openedAtMillis;
+        byte[] payload = new byte[64];
+        int length;
+        int count;
+        long minMillis = Long.MAX_VALUE;
+        long maxMillis = Long.MIN_VALUE;
+        long previousMillis;
+        long previousLatitude;
+        long previousLongitude;
+
+        Pending(long day, long openedAtMillis) {
+            this.day = day;
+            this.openedAtMillis = openedAtMillis;
+        }
+
+        void add(int latitude, int longitude, long atMillis) {
+            // Three varints of at most 10 bytes each
+            if (length + 30 > payload.length) {
+                payload = Arrays.copyOf(payload, payload.length * 2);
+            }
+            length = writeVarint(payload, length, zigzag(atMillis - previousMillis));
+            length = writeVarint(payload, length, zigzag(latitude - previousLatitude));
+            length = writeVarint(payload, length, zigzag(longitude - previousLongitude));
+            previousMillis = atMillis;
+            previousLatitude = latitude;
+            previousLongitude = longitude;
+            minMillis = Math.min(minMillis, atMillis);
+            maxMillis = Math.max(maxMillis, atMillis);
+            count++;
+        }
+
+        Block seal(long deviceId) {
+            CRC32 crc = new CRC32();
+            crc.update(payload, 0, length);
+            ByteBuffer bytes = ByteBuffer.allocate(HEADER_BYTES + length)
+                .putInt(length)
+                .putLong(deviceId)
+                .putLong(minMillis)
+                .putLong(maxMillis)
+                .putInt(count)
+                .putInt((int) crc.getValue())
+                .put(payload, 0, length);
+            return new Block(day, deviceId, minMillis, maxMillis, bytes.array());
+        }
+    }
+
+    /**
+     * A sealed block; {@code offset} is set once it is written.
+     */
+    private static final class Block {
+        final long day;
+        final long deviceId;
+        final long minMillis;
+        final long maxMillis;
+        final byte[] bytes;
+        long offset = -1;
+
+        Block(long day, long deviceId, long minMillis, long maxMillis, byte[] bytes) {
+            this.day = day;
+            this.deviceId = deviceId;
+            this.minMillis = minMillis;
+            this.maxMillis = maxMillis;
+            this.bytes = bytes;
+        }
+
+        boolean overlaps(long fromMillis, long toMillis) {
+            return minMillis <= toMillis && maxMillis >= fromMillis;
+        }
+    }
+
+    /**
+     * A block to decode, either in a day file or still in memory.
+     */
+    private record Source(long day, long offset, int length, long minMillis, byte[] bytes) {
+    }
+
+    /**
+     * Blocks of one day file in primitive arrays; each device's blocks are chained from its latest one.
+     */
+    private static final class DayIndex {
+        private static final int NO_BLOCK = -1;
+
+        final LongIntHashMap lastBlock = new LongIntHashMap(64, NO_BLOCK);
+        int[] previous = new int[16];
+        long[] offset = new long[16];
+        long[] minMillis = new long[16];
+        long[] maxMillis = new long[16];
+        int[] length = new int[16];
+        int count;
+
+        void add(long deviceId, long blockOffset, long blockMin, long blockMax, int blockLength) {
+            if (count == offset.length) {
+                int capacity = count * 2;
+                previous = Arrays.copyOf(previous, capacity);
+                offset = Arrays.copyOf(offset, capacity);
+                minMillis = Arrays.copyOf(minMillis, capacity);
+                maxMillis = Arrays.copyOf(maxMillis, capacity);
+                length = Arrays.copyOf(length, capacity);
+            }
+            previous[count] = lastBlock.get(deviceId);
+            offset[count] = blockOffset;
+            minMillis[count] = blockMin;
+            maxMillis[count] = blockMax;
+            length[count] = blockLength;
+            lastBlock.put(deviceId, count++);
+        }
+
+        void collect(long deviceId, long fromMillis, long toMillis, long day, List<Source> out) {
+            for (int block = lastBlock.get(deviceId); block != NO_BLOCK; block = previous[block]) {
+                if (minMillis[block] <= toMillis && maxMillis[block] >= fromMillis) {
+                    out.add(new Source(day, offset[block], length[block], minMillis[block], null));
+                }
+            }
+        }
+
+        /**
+         * Indexes a day file from its block headers, truncating a torn trailing block.
+         */
+        static DayIndex scan(Path file) throws IOException {
+            DayIndex index = new DayIndex();
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                long size = channel.size();
+                long position = 0;
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                while (position + HEADER_BYTES <= size) {
+                    header.clear();
+                    while (header.hasRemaining()) {
+                        channel.read(header, position + header.position());
+                    }
+                    int payloadLength = header.getInt(0);
+                    if (payloadLength < 0 || position + HEADER_BYTES + payloadLength > size) {
+                        break;
+                    }
+                    index.add(header.getLong(4), position, header.getLong(12), header.getLong(20),
+                        HEADER_BYTES + payloadLength);
+                    position += HEADER_BYTES + payloadLength;
+                }
+                if (position < size) {
+                    channel.truncate(position);
+                }
+            }
+            return index;
+        }
+    }
+}
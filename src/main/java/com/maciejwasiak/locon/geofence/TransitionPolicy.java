@@ -0,0 +1,74 @@
+package com.maciejwasiak.locon.geofence;
+
+import static com.maciejwasiak.locon.geofence.DeviceZoneStates.INSIDE;
+import static com.maciejwasiak.locon.geofence.DeviceZoneStates.OUTSIDE;
+import static com.maciejwasiak.locon.geofence.DeviceZoneStates.PENDING_ENTER;
+import static com.maciejwasiak.locon.geofence.DeviceZoneStates.PENDING_EXIT;
+import static com.maciejwasiak.locon.geofence.DeviceZoneStates.pack;
+import static com.maciejwasiak.locon.geofence.DeviceZoneStates.sinceOf;
+import static com.maciejwasiak.locon.geofence.DeviceZoneStates.stateOf;
+
+/**
+ * Per device-zone state machine with a hysteresis band and a minimum dwell time.
+ * <p>
+ * A device only counts as entering once it is deeper than {@code radius - band} and as leaving once it
+ * is farther than {@code radius + band}, so GPS jitter around the edge does not flap. The band is
+ * proportional to the radius, clamped to [{@code minBandMeters}, {@code maxBandMeters}] and never more
+ * than half the radius. A candidate transition is only confirmed after the device has stayed on the
+ * new side for {@code minDwellMillis}; with a zero dwell transitions are confirmed immediately.
+ */
+public final class TransitionPolicy {
+
+    private final double bandRatio;
+    private final double minBandMeters;
+    private final double maxBandMeters;
+    private final long minDwellMillis;
+
+    public TransitionPolicy(double bandRatio, double minBandMeters, double maxBandMeters, long minDwellMillis) {
+        this.bandRatio = bandRatio;
+        this.minBandMeters = minBandMeters;
+        this.maxBandMeters = maxBandMeters;
+        this.minDwellMillis = Math.max(0, minDwellMillis);
+    }
+
+    public double bandMeters(int radiusMeters) {
+        double band = Math.min(maxBandMeters, Math.max(minBandMeters, radiusMeters * bandRatio));
+        return Math.min(band, radiusMeters / 2.0);
+    }
+
+    /**
+     * Inner radius a device has to cross to (start to) enter.
+     */
+    public double enterRadiusMeters(int radiusMeters) {
+        return radiusMeters - bandMeters(radiusMeters);
+    }
+
+    /**
+     * Outer radius a device has to cross to (start to) leave.
+     */
+    public double exitRadiusMeters(int radiusMeters) {
+        return radiusMeters + bandMeters(radiusMeters);
+    }
+
+    /**
+     * Computes the next packed state for a fix at {@code distanceMeters} from the zone center.
+     */
+    public long next(long packed, double distanceMeters, int radiusMeters, long atMillis) {
+        boolean clearlyInside = distanceMeters <= enterRadiusMeters(radiusMeters);
+        boolean clearlyOutside = distanceMeters > exitRadiusMeters(radiusMeters);
+        return switch (stateOf(packed)) {
+            case OUTSIDE -> !clearlyInside ? packed
+                : minDwellMillis == 0 ? pack(INSIDE, atMillis) : pack(PENDING_ENTER, atMillis);
+            case PENDING_ENTER -> clearlyOutside ? pack(OUTSIDE, 0)
+                : dwelled(packed, atMillis) ? pack(INSIDE, atMillis) : packed;
+            case INSIDE -> !clearlyOutside ? packed
+                : minDwellMillis == 0 ? pack(OUTSIDE, 0) : pack(PENDING_EXIT, atMillis);
+            default -> clearlyInside ? pack(INSIDE, atMillis)
+                : dwelled(packed, atMillis) ? pack(OUTSIDE, 0) : packed;
+        };
+    }
+
+    private boolean dwelled(long packed, long atMillis) {
+        return atMillis - sinceOf(packed) >= minDwellMillis;
+    }
+}
@@ -0,0 +1,7 @@
+package com.maciejwasiak.locon.geofence;
+
+/**
+ * Projection of a {@code ZoneDevice} row carrying only the two ids, so assignments can be
+ * loaded without materializing entities or proxies.
+ */
+public record ZoneDeviceLink(Long zoneId, Long deviceId) {}
@@ -0,0 +1,139 @@
+package com.maciejwasiak.locon.geofence;
+
+import com.maciejwasiak.locon.model.ZoneVertex;
+
+import java.util.List;
+
+/**
+ * Polygon outline compiled for the evaluation hot path.
+ * <p>
+ * Vertices are projected once into the zone's local equirectangular frame (meters east/north of the
+ * zone center, the same frame {@link ZoneTable} uses), and each edge keeps its precomputed direction,
+ * inverse slope and inverse squared length. Containment is a bounding-box reject followed by a
+ * crossing-number test over the primitive edge arrays; the signed distance to the nearest edge feeds the
+ * hysteresis band exactly like the distance to a circle's rim.
+ */
+public final class ZonePolygon {
+
+    private final int edgeCount;
+    private final double[] x;
+    private final double[] y;
+    private final double[] dx;
+    private final double[] dy;
+    private final double[] inverseSlope;
+    private final double[] inverseLengthSq;
+    private final double minX;
+    private final double maxX;
+    private final double minY;
+    private final double maxY;
+    private final int equivalentRadiusMeters;
+
+    private ZonePolygon(double[] x, double[] y) {
+        int n = x.length;
+        this.edgeCount = n;
+        this.x = x;
+        this.y = y;
+        this.dx = new double[n];
+        this.dy = new double[n];
+        this.inverseSlope = new double[n];
+        this.inverseLengthSq = new double[n];
+        double lowX = Double.MAX_VALUE;
+        double highX = -Double.MAX_VALUE;
+        double lowY = Double.MAX_VALUE;
+        double highY = -Double.MAX_VALUE;
+        double doubleArea = 0;
+        for (int i = 0; i < n; i++) {
+            int j = i + 1 == n ? 0 : i + 1;
+            dx[i] = x[j] - x[i];
+            dy[i] = y[j] - y[i];
+            inverseSlope[i] = dy[i] != 0 ? dx[i] / dy[i] : 0;
+            double lengthSq = dx[i] * dx[i] + dy[i] * dy[i];
+            inverseLengthSq[i] = lengthSq > 0 ? 1 / lengthSq : 0;
+            doubleArea += x[i] * y[j] - x[j] * y[i];
+            lowX = Math.min(lowX, x[i]);
+            highX = Math.max(highX, x[i]);
+            lowY = Math.min(lowY, y[i]);
+            highY = Math.max(highY, y[i]);
+        }
+        this.minX = lowX;
+        this.maxX = highX;
+        this.minY = lowY;
+        this.maxY = highY;
+        this.equivalentRadiusMeters = Math.max(1, (int) Math.round(Math.sqrt(Math.abs(doubleArea) / 2 / Math.PI)));
+    }
+
+    /**
+     * Projects {@code vertices} around the given center; the outline is closed implicitly.
+     */
+    public static ZonePolygon compile(List<ZoneVertex> vertices, double centerLatitude, double centerLongitude) {
+        if (vertices.size() < 3) {
+            throw new IllegalArgumentException("A polygon needs at least 3 vertices, got " + vertices.size());
+        }
+        double cosLat = Math.cos(Math.toRadians(centerLatitude));
+        double[] x = new double[vertices.size()];
+        double[] y = new double[vertices.size()];
+        for (int i = 0; i < vertices.size(); i++) {
+            ZoneVertex vertex = vertices.get(i);
+            double dLng = vertex.getLongitude() - centerLongitude;
+            if (dLng > 180) {
+                dLng -= 360;
+            } else if (dLng < -180) {
+                dLng += 360;
+            }
+            x[i] = Math.toRadians(dLng) * cosLat * GeoMath.EARTH_RADIUS_METERS;
+            y[i] = Math.toRadians(vertex.getLatitude() - centerLatitude) * GeoMath.EARTH_RADIUS_METERS;
+        }
+        return new ZonePolygon(x, y);
+    }
+
+    public boolean contains(double px, double py) {
+        if (px < minX || px > maxX || py < minY || py > maxY) {
+            return false;
+        }
+        boolean inside = false;
+        for (int i = 0; i < edgeCount; i++) {
+            double y0 = y[i];
+            if ((y0 > py) != (y0 + dy[i] > py) && px < x[i] + (py - y0) * inverseSlope[i]) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    /**
+     * Distance to the nearest edge, negative inside the polygon.
+     */
+    public double signedDistanceMeters(double px, double py) {
+        double nearestSq = Double.MAX_VALUE;
+        for (int i = 0; i < edgeCount; i++) {
+            double ox = px - x[i];
+            double oy = py - y[i];
+            double t = Math.max(0, Math.min(1, (ox * dx[i] + oy * dy[i]) * inverseLengthSq[i]));
+            double ex = ox - t * dx[i];
+            double ey = oy - t * dy[i];
+            nearestSq = Math.min(nearestSq, ex * ex + ey * ey);
+        }
+        double distance = Math.sqrt(nearestSq);
+        return contains(px, py) ? -distance : distance;
+    }
+
+    /**
+     * Distance to the bounding box, zero inside it; a cheap lower bound of the distance to the polygon.
+     */
+    public double boundingBoxDistanceMeters(double px, double py) {
+        double ox = Math.max(0, Math.max(minX - px, px - maxX));
+        double oy = Math.max(0, Math.max(minY - py, py - maxY));
+        return Math.sqrt(ox * ox + oy * oy);
+    }
+
+    /**
+     * Radius of the circle with the polygon's area; sizes the hysteresis band for the polygon.
+     */
+    public int equivalentRadiusMeters() {
+        return equivalentRadiusMeters;
+    }
+
+    public int edgeCount() {
+        return edgeCount;
+    }
+}
@@ -0,0 +1,57 @@
+package com.maciejwasiak.locon.geofence;
+
+import com.maciejwasiak.locon.model.Zone;
+import com.maciejwasiak.locon.model.ZoneVertex;
+
+import java.util.List;
+
+/**
+ * Detached, immutable copy of a {@link Zone} holding only what the geofence engine needs.
+ * Built once per reload so the evaluation path never touches JPA entities or lazy collections.
+ * <p>
+ * Polygon zones carry their outline in {@code vertices}; their center and radius describe the
+ * enclosing circle, which the spatial index and mock data keep using.
+ */
+public record ZoneSnapshot(
+    long id,
+    String name,
+    String icon,
+    String address,
+    double latitude,
+    double longitude,
+    int radiusMeters,
+    boolean notificationsEnabled,
+    Long userId,
+    List<String> deviceIds,
+    List<ZoneVertex> vertices
+) {
+    public static final int DEFAULT_RADIUS_METERS = 500;
+
+    public ZoneSnapshot(long id, String name, String icon, String address, double latitude, double longitude,
+                        int radiusMeters, boolean notificationsEnabled, Long userId, List<String> deviceIds) {
+        this(id, name, icon, address, latitude, longitude, radiusMeters, notificationsEnabled, userId, deviceIds,
+            List.of());
+    }
+
+    public boolean isPolygon() {
+        return !vertices.isEmpty();
+    }
+
+    public static ZoneSnapshot from(Zone zone) {
+        return new ZoneSnapshot(
+            zone.getId(),
+            zone.getName(),
+            zone.getIcon(),
+            zone.getAddress(),
+            zone.getLatitude() != null ? zone.getLatitude() : 0.0,
+            zone.getLongitude() != null ? zone.getLongitude() : 0.0,
+            zone.getRadius() != null ? zone.getRadius() : DEFAULT_RADIUS_METERS,
+            !Boolean.FALSE.equals(zone.getNotificationsEnabled()),
+            zone.getUser() != null ? zone.getUser().getId() : null,
+            zone.getDeviceIds() != null ? List.copyOf(zone.getDeviceIds()) : List.of(),
+            zone.getVertices() != null
+                ? zone.getVertices().stream().map(v -> new ZoneVertex(v.getLatitude(), v.getLongitude())).toList()
+                : List.of()
+        );
+    }
+}
@@ -0,0 +1,300 @@
+package com.maciejwasiak.locon.geofence;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Immutable uniform-grid index over zone circles.
+ * <p>
+ * Every zone is registered in each grid cell its bounding box touches, so a point query only
+ * has to test the handful of zones registered in the point's cell instead of every zone.
+ * Zones are referenced by their position (slot) in the list the index was built from.
+ * Zones whose bounding box would span more than {@link #MAX_CELLS_PER_ZONE} cells are kept in a
+ * small overflow list that is checked on every query.
+ * <p>
+ * Cells are spread over {@value #SHARDS} small open-addressing shards. {@link #withZone} and
+ * {@link #withoutZone} copy only the shards holding the zone's cells (and the shard array), so editing
+ * one zone costs about its own cell count, not the size of the index.
+ */
+public final class ZoneSpatialIndex {
+
+    public static final double DEFAULT_CELL_DEGREES = 0.01;
+    static final int MAX_CELLS_PER_ZONE = 4096;
+
+    private static final double METERS_PER_DEGREE_LAT = 111_320.0;
+    private static final int[] NO_SLOTS = new int[0];
+    private static final int SHARD_BITS = 8;
+    private static final int SHARDS = 1 << SHARD_BITS;
+
+    private final double cellDegrees;
+    private final int columns;
+    private final Shard[] shards;
+    private final int[] oversized;
+    private final int cellCount;
+
+    private ZoneSpatialIndex(double cellDegrees, Shard[] shards, int[] oversized) {
+        this.cellDegrees = cellDegrees;
+        this.columns = columnsFor(cellDegrees);
+        this.shards = shards;
+        this.oversized = oversized;
+        int count = 0;
+        for (Shard shard : shards) {
+            count += shard.count;
+        }
+        this.cellCount = count;
+    }
+
+    public static ZoneSpatialIndex build(List<ZoneSnapshot> zones) {
+        return build(zones, DEFAULT_CELL_DEGREES);
+    }
+
+    public static ZoneSpatialIndex build(List<ZoneSnapshot> zones, double cellDegrees) {
+        Builder builder = new Builder(cellDegrees);
+        for (int slot = 0; slot < zones.size(); slot++) {
+            ZoneSnapshot zone = zones.get(slot);
+            builder.add(slot, zone.latitude(), zone.longitude(), zone.radiusMeters());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Invokes {@code consumer} with every zone slot whose bounding box may contain the point.
+     * Candidates still need an exact containment check.
+     */
+    public void forEachCandidate(double latitude, double longitude, IntConsumer consumer) {
+        long key = pack(latRow(latitude), lngColumn(longitude));
+        for (int slot : shards[shardOf(key)].get(key)) {
+            consumer.accept(slot);
+        }
+        for (int slot : oversized) {
+            consumer.accept(slot);
+        }
+    }
+
+    /**
+     * Returns a copy with the circle registered under {@code slot}; only the shards of its cells are copied.
+     */
+    public ZoneSpatialIndex withZone(int slot, double latitude, double longitude, double radiusMeters) {
+        Map<Long, int[]> changes = new HashMap<>();
+        boolean fits = forEachCell(latitude, longitude, radiusMeters, cellDegrees, columns, key -> {
+            int[] current = cell(changes, key);
+            int[] next = Arrays.copyOf(current, current.length + 1);
+            next[current.length] = slot;
+            changes.put(key, next);
+        });
+        if (!fits) {
+            int[] next = Arrays.copyOf(oversized, oversized.length + 1);
+            next[oversized.length] = slot;
+            return new ZoneSpatialIndex(cellDegrees, shards, next);
+        }
+        return new ZoneSpatialIndex(cellDegrees, apply(changes), oversized);
+    }
+
+    /**
+     * Returns a copy without {@code slot}, which must have been registered with the same circle.
+     */
+    public ZoneSpatialIndex withoutZone(int slot, double latitude, double longitude, double radiusMeters) {
+        Map<Long, int[]> changes = new HashMap<>();
+        boolean fits = forEachCell(latitude, longitude, radiusMeters, cellDegrees, columns,
+            key -> changes.put(key, remove(cell(changes, key), slot)));
+        if (!fits) {
+            return new ZoneSpatialIndex(cellDegrees, shards, remove(oversized, slot));
+        }
+        return new ZoneSpatialIndex(cellDegrees, apply(changes), oversized);
+    }
+
+    public int cellCount() {
+        return cellCount;
+    }
+
+    private int[] cell(Map<Long, int[]> changes, long key) {
+        int[] changed = changes.get(key);
+        return changed != null ? changed : shards[shardOf(key)].get(key);
+    }
+
+    private Shard[] apply(Map<Long, int[]> changes) {
+        Map<Integer, Map<Long, int[]>> byShard = new HashMap<>();
+        changes.forEach((key, slots) -> byShard.computeIfAbsent(shardOf(key), shard -> new HashMap<>()).put(key, slots));
+        Shard[] copy = shards.clone();
+        byShard.forEach((shard, shardChanges) -> copy[shard] = copy[shard].with(shardChanges));
+        return copy;
+    }
+
+    private int latRow(double latitude) {
+        return (int) Math.floor((latitude + 90.0) / cellDegrees);
+    }
+
+    private int lngColumn(double longitude) {
+        return Math.floorMod((int) Math.floor((longitude + 180.0) / cellDegrees), columns);
+    }
+
+    private static int columnsFor(double cellDegrees) {
+        return (int) Math.ceil(360.0 / cellDegrees);
+    }
+
+    /**
+     * Visits the keys of the cells the circle's bounding box touches.
+     *
+     * @return {@code false}, without visiting anything, if the circle spans too many cells
+     */
+    private static boolean forEachCell(double latitude, double longitude, double radiusMeters,
+                                       double cellDegrees, int columns, LongConsumer consumer) {
+        double dLat = radiusMeters / METERS_PER_DEGREE_LAT;
+        double cosLat = Math.max(Math.cos(Math.toRadians(latitude)), 1e-6);
+        double dLng = Math.min(180.0, radiusMeters / (METERS_PER_DEGREE_LAT * cosLat));
+
+        int minRow = (int) Math.floor((Math.max(-90.0, latitude - dLat) + 90.0) / cellDegrees);
+        int maxRow = (int) Math.floor((Math.min(90.0, latitude + dLat) + 90.0) / cellDegrees);
+        int minColumn = (int) Math.floor((longitude - dLng + 180.0) / cellDegrees);
+        int maxColumn = (int) Math.floor((longitude + dLng + 180.0) / cellDegrees);
+
+        long cellSpan = (long) (maxRow - minRow + 1) * (maxColumn - minColumn + 1);
+        if (cellSpan > MAX_CELLS_PER_ZONE) {
+            return false;
+        }
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int column = minColumn; column <= maxColumn; column++) {
+                consumer.accept(pack(row, Math.floorMod(column, columns)));
+            }
+        }
+        return true;
+    }
+
+    private static long pack(int row, int column) {
+        return ((long) row << 32) | (column & 0xFFFFFFFFL);
+    }
+
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    private static int shardOf(long key) {
+        // High bits pick the shard, low bits the position inside it
+        return (int) (mix(key) >>> (Long.SIZE - SHARD_BITS));
+    }
+
+    private static int[] remove(int[] slots, int slot) {
+        for (int i = 0; i < slots.length; i++) {
+            if (slots[i] == slot) {
+                int[] next = Arrays.copyOf(slots, slots.length - 1);
+                System.arraycopy(slots, i + 1, next, i, slots.length - i - 1);
+                return next;
+            }
+        }
+        return slots;
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+
+    /**
+     * One open-addressing table of cells, filled before it is published and immutable afterwards. Cells
+     * without zones are not stored.
+     */
+    private static final class Shard {
+        static final Shard EMPTY = new Shard(0);
+
+        final long[] keys;
+        final int[][] slots;
+        final int mask;
+        int count;
+
+        Shard(int cells) {
+            int capacity = Integer.highestOneBit(Math.max(2, cells * 2 - 1)) << 1;
+            this.keys = new long[capacity];
+            this.slots = new int[capacity][];
+            this.mask = capacity - 1;
+        }
+
+        int[] get(long key) {
+            int[] found = slots[probe(key)];
+            return found != null ? found : NO_SLOTS;
+        }
+
+        /**
+         * Copy with the given cells replaced; a cell mapped to no slots is dropped.
+         */
+        Shard with(Map<Long, int[]> changes) {
+            Shard next = new Shard(count + changes.size());
+            for (int i = 0; i < keys.length; i++) {
+                if (slots[i] != null && !changes.containsKey(keys[i])) {
+                    next.put(keys[i], slots[i]);
+                }
+            }
+            changes.forEach(next::put);
+            return next;
+        }
+
+        void put(long key, int[] cellSlots) {
+            if (cellSlots.length == 0) {
+                return;
+            }
+            int index = probe(key);
+            keys[index] = key;
+            slots[index] = cellSlots;
+            count++;
+        }
+
+        private int probe(long key) {
+            int index = (int) mix(key) & mask;
+            while (slots[index] != null && keys[index] != key) {
+                index = (index + 1) & mask;
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Accumulates zone circles before freezing them into an immutable index.
+     */
+    public static final class Builder {
+
+        private final double cellDegrees;
+        private final int columns;
+        private final Map<Long, List<Integer>> cells = new HashMap<>();
+        private final List<Integer> oversized = new ArrayList<>();
+
+        public Builder(double cellDegrees) {
+            if (cellDegrees <= 0 || cellDegrees > 90) {
+                throw new IllegalArgumentException("Cell size must be in (0, 90] degrees");
+            }
+            this.cellDegrees = cellDegrees;
+            this.columns = columnsFor(cellDegrees);
+        }
+
+        public Builder add(int slot, double latitude, double longitude, double radiusMeters) {
+            boolean fits = forEachCell(latitude, longitude, radiusMeters, cellDegrees, columns,
+                key -> cells.computeIfAbsent(key, k -> new ArrayList<>(2)).add(slot));
+            if (!fits) {
+                oversized.add(slot);
+            }
+            return this;
+        }
+
+        public ZoneSpatialIndex build() {
+            int[] cellsPerShard = new int[SHARDS];
+            for (long key : cells.keySet()) {
+                cellsPerShard[shardOf(key)]++;
+            }
+            Shard[] shards = new Shard[SHARDS];
+            for (int i = 0; i < SHARDS; i++) {
+                shards[i] = cellsPerShard[i] == 0 ? Shard.EMPTY : new Shard(cellsPerShard[i]);
+            }
+            cells.forEach((key, slots) -> shards[shardOf(key)].put(key, toArray(slots)));
+            return new ZoneSpatialIndex(cellDegrees, shards, toArray(oversized));
+        }
+    }
+}
@@ -0,0 +1,379 @@
+package com.maciejwasiak.locon.geofence;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * Immutable struct-of-arrays view of all zones, laid out for the evaluation hot path.
+ * <p>
+ * Coordinates are stored in radians with {@code cos(lat)} precomputed and the radius stored as a
+ * squared central angle, so a containment check is a handful of multiplications on primitive arrays
+ * (equirectangular approximation, accurate to well under a meter for zone-sized radii).
+ * <p>
+ * Every mutation returns a new table (copy-on-write). Columns are split into pages of
+ * {@value #PAGE_SIZE} slots, the id lookup into {@value #ID_SHARDS} shards and the spatial index into
+ * shards of its own; an edit copies only the page, id shard and index shards it touches and shares the
+ * rest with the previous table, so editing one zone does not cost a pass over every zone.
+ * <p>
+ * Slots are stable across updates: an updated zone keeps its slot and a deleted zone leaves an inactive
+ * slot behind, so structures holding slot numbers stay valid until {@link #compacted()} or the next full
+ * rebuild via {@link #of(List)}. Once {@link #needsCompaction()} reports that too many slots are
+ * tombstones, the owner compacts the table and renumbers what it keeps by slot.
+ * <p>
+ * Polygon zones carry a compiled {@link ZonePolygon}. Their containment is a
+ * bounding-box reject plus a crossing test, and {@link #distanceMeters(int, double, double)} maps the
+ * signed distance to the outline onto {@link #radiusMeters(int)}, so the transition policy treats both
+ * shapes the same way.
+ */
+public final class ZoneTable {
+
+    static final int PAGE_SIZE = 1 << 10;
+    static final int ID_SHARDS = 64;
+    /** Tombstones tolerated regardless of table size before {@link #needsCompaction()} reports true. */
+    static final int MIN_TOMBSTONES_TO_COMPACT = 64;
+
+    private static final int NO_SLOT = -1;
+    private static final int PAGE_SHIFT = Integer.numberOfTrailingZeros(PAGE_SIZE);
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final int ID_SHARD_SHIFT = Integer.SIZE - Integer.numberOfTrailingZeros(ID_SHARDS);
+
+    private final int size;
+    private final int activeCount;
+    private final Page[] pages;
+    private final LongIntHashMap[] slotById;
+    private final ZoneSpatialIndex spatialIndex;
+
+    private ZoneTable(int size, int activeCount, Page[] pages, LongIntHashMap[] slotById,
+                      ZoneSpatialIndex spatialIndex) {
+        this.size = size;
+        this.activeCount = activeCount;
+        this.pages = pages;
+        this.slotById = slotById;
+        this.spatialIndex = spatialIndex;
+    }
+
+    public static ZoneTable empty() {
+        return of(List.of());
+    }
+
+    public static ZoneTable of(List<ZoneSnapshot> snapshots) {
+        int size = snapshots.size();
+        Page[] pages = new Page[pageCount(size)];
+        for (int page = 0; page < pages.length; page++) {
+            pages[page] = new Page();
+        }
+        LongIntHashMap[] slotById = newIdShards(size);
+        ZoneSpatialIndex.Builder indexBuilder = new ZoneSpatialIndex.Builder(ZoneSpatialIndex.DEFAULT_CELL_DEGREES);
+        for (int slot = 0; slot < size; slot++) {
+            ZoneSnapshot zone = snapshots.get(slot);
+            Page page = pages[slot >>> PAGE_SHIFT];
+            int i = slot & PAGE_MASK;
+            page.write(i, zone);
+            idShard(slotById, zone.id()).put(zone.id(), slot);
+            indexBuilder.add(slot, zone.latitude(), zone.longitude(), zone.radiusMeters());
+        }
+        return new ZoneTable(size, size, pages, slotById, indexBuilder.build());
+    }
+
+    /**
+     * Returns a copy of this table with {@code zone} inserted, or replaced in place if its id is already present.
+     */
+    public ZoneTable withZone(ZoneSnapshot zone) {
+        int existing = slotOf(zone.id());
+        int slot = existing == NO_SLOT ? size : existing;
+        int newSize = existing == NO_SLOT ? size + 1 : size;
+
+        Page[] newPages = pages.length == pageCount(newSize) ? pages.clone() : Arrays.copyOf(pages, pageCount(newSize));
+        int pageIndex = slot >>> PAGE_SHIFT;
+        Page page = newPages[pageIndex] != null ? newPages[pageIndex].copy() : new Page();
+        newPages[pageIndex] = page;
+        int i = slot & PAGE_MASK;
+        ZoneSnapshot previous = existing == NO_SLOT ? null : page.zones[i];
+        page.write(i, zone);
+
+        LongIntHashMap[] newSlotById = slotById;
+        if (existing == NO_SLOT) {
+            newSlotById = withIdShardCopied(zone.id());
+            idShard(newSlotById, zone.id()).put(zone.id(), slot);
+        }
+
+        ZoneSpatialIndex index = spatialIndex;
+        if (previous == null || previous.latitude() != zone.latitude() || previous.longitude() != zone.longitude()
+                || previous.radiusMeters() != zone.radiusMeters()) {
+            if (previous != null) {
+                index = index.withoutZone(slot, previous.latitude(), previous.longitude(), previous.radiusMeters());
+            }
+            index = index.withZone(slot, zone.latitude(), zone.longitude(), zone.radiusMeters());
+        }
+        return new ZoneTable(newSize, existing == NO_SLOT ? activeCount + 1 : activeCount,
+            newPages, newSlotById, index);
+    }
+
+    /**
+     * Returns a copy of this table with the zone deactivated, or this table if the id is unknown.
+     */
+    public ZoneTable withoutZone(long zoneId) {
+        int slot = slotOf(zoneId);
+        if (slot == NO_SLOT) {
+            return this;
+        }
+        Page[] newPages = pages.clone();
+        int pageIndex = slot >>> PAGE_SHIFT;
+        Page page = newPages[pageIndex].copy();
+        newPages[pageIndex] = page;
+        int i = slot & PAGE_MASK;
+        ZoneSnapshot zone = page.zones[i];
+        page.active[i] = false;
+        page.zones[i] = null;
+        page.polygons[i] = null;
+
+        LongIntHashMap[] newSlotById = withIdShardCopied(zoneId);
+        idShard(newSlotById, zoneId).remove(zoneId);
+        ZoneSpatialIndex index = spatialIndex.withoutZone(slot, zone.latitude(), zone.longitude(), zone.radiusMeters());
+        return new ZoneTable(size, activeCount - 1, newPages, newSlotById, index);
+    }
+
+    /**
+     * Whether deleted zones take up enough slots to be worth {@link #compacted()}: at least a quarter of
+     * the table and at least {@value #MIN_TOMBSTONES_TO_COMPACT}.
+     */
+    public boolean needsCompaction() {
+        int tombstones = size - activeCount;
+        return tombstones >= MIN_TOMBSTONES_TO_COMPACT && tombstones >= size / 4;
+    }
+
+    /**
+     * Returns a table holding only the active zones, in slot order. Slots change, so callers renumber
+     * anything they keep by slot (look zones up by id in the new table). Compiled polygons are
+     * reused, not rebuilt.
+     */
+    public ZoneTable compacted() {
+        Page[] newPages = new Page[pageCount(activeCount)];
+        for (int page = 0; page < newPages.length; page++) {
+            newPages[page] = new Page();
+        }
+        LongIntHashMap[] newSlotById = newIdShards(activeCount);
+        ZoneSpatialIndex.Builder indexBuilder = new ZoneSpatialIndex.Builder(ZoneSpatialIndex.DEFAULT_CELL_DEGREES);
+        int next = 0;
+        for (int slot = 0; slot < size; slot++) {
+            Page source = pages[slot >>> PAGE_SHIFT];
+            int from = slot & PAGE_MASK;
+            if (!source.active[from]) {
+                continue;
+            }
+            ZoneSnapshot zone = source.zones[from];
+            newPages[next >>> PAGE_SHIFT].copyFrom(next & PAGE_MASK, source, from);
+            idShard(newSlotById, zone.id()).put(zone.id(), next);
+            indexBuilder.add(next, zone.latitude(), zone.longitude(), zone.radiusMeters());
+            next++;
+        }
+        return new ZoneTable(activeCount, activeCount, newPages, newSlotById, indexBuilder.build());
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int activeCount() {
+        return activeCount;
+    }
+
+    public int slotOf(long zoneId) {
+        return idShard(slotById, zoneId).get(zoneId);
+    }
+
+    public boolean isActive(int slot) {
+        return slot >= 0 && slot < size && pages[slot >>> PAGE_SHIFT].active[slot & PAGE_MASK];
+    }
+
+    public long id(int slot) {
+        return pages[slot >>> PAGE_SHIFT].ids[slot & PAGE_MASK];
+    }
+
+    public ZoneSnapshot zone(int slot) {
+        return pages[slot >>> PAGE_SHIFT].zones[slot & PAGE_MASK];
+    }
+
+    /**
+     * Radius the transition policy works against: the zone radius for circles, the radius of the
+     * equal-area circle for polygons.
+     */
+    public int radiusMeters(int slot) {
+        Page page = pages[slot >>> PAGE_SHIFT];
+        int i = slot & PAGE_MASK;
+        ZonePolygon polygon = page.polygons[i];
+        return polygon != null ? polygon.equivalentRadiusMeters() : page.zones[i].radiusMeters();
+    }
+
+    /**
+     * Containment test against a point already converted to radians.
+     */
+    public boolean contains(int slot, double pointLatRad, double pointLngRad) {
+        Page page = pages[slot >>> PAGE_SHIFT];
+        int i = slot & PAGE_MASK;
+        ZonePolygon polygon = page.polygons[i];
+        if (polygon != null) {
+            return polygon.contains(page.localX(i, pointLngRad), page.localY(i, pointLatRad));
+        }
+        return page.squaredAngle(i, pointLatRad, pointLngRad) <= page.radiusSq[i];
+    }
+
+    /**
+     * Approximate distance in meters from the point to the zone center. For polygons this is
+     * {@link #radiusMeters(int)} plus the signed distance to the outline, so it crosses the radius exactly
+     * where the point crosses the outline.
+     */
+    public double distanceMeters(int slot, double pointLatRad, double pointLngRad) {
+        Page page = pages[slot >>> PAGE_SHIFT];
+        int i = slot & PAGE_MASK;
+        ZonePolygon polygon = page.polygons[i];
+        if (polygon != null) {
+            double x = page.localX(i, pointLngRad);
+            double y = page.localY(i, pointLatRad);
+            int radius = polygon.equivalentRadiusMeters();
+            double boxDistance = polygon.boundingBoxDistanceMeters(x, y);
+            // Far outside the bounding box the box distance is a good enough lower bound: the
+            // hysteresis band never exceeds half the radius
+            return boxDistance > radius ? radius + boxDistance : radius + polygon.signedDistanceMeters(x, y);
+        }
+        return Math.sqrt(page.squaredAngle(i, pointLatRad, pointLngRad)) * GeoMath.EARTH_RADIUS_METERS;
+    }
+
+    public void forEachContaining(double latitude, double longitude, IntConsumer consumer) {
+        double pointLatRad = Math.toRadians(latitude);
+        double pointLngRad = Math.toRadians(longitude);
+        spatialIndex.forEachCandidate(latitude, longitude, slot -> {
+            if (isActive(slot) && contains(slot, pointLatRad, pointLngRad)) {
+                consumer.accept(slot);
+            }
+        });
+    }
+
+    public List<ZoneSnapshot> activeZones() {
+        List<ZoneSnapshot> active = new ArrayList<>(activeCount);
+        for (int slot = 0; slot < size; slot++) {
+            ZoneSnapshot zone = zone(slot);
+            if (zone != null) {
+                active.add(zone);
+            }
+        }
+        return active;
+    }
+
+    private LongIntHashMap[] withIdShardCopied(long zoneId) {
+        LongIntHashMap[] copy = slotById.clone();
+        int shard = idShardOf(zoneId);
+        copy[shard] = new LongIntHashMap(copy[shard]);
+        return copy;
+    }
+
+    private static LongIntHashMap[] newIdShards(int expectedSize) {
+        LongIntHashMap[] shards = new LongIntHashMap[ID_SHARDS];
+        for (int shard = 0; shard < ID_SHARDS; shard++) {
+            shards[shard] = new LongIntHashMap(expectedSize / ID_SHARDS + 1, NO_SLOT);
+        }
+        return shards;
+    }
+
+    private static LongIntHashMap idShard(LongIntHashMap[] shards, long zoneId) {
+        return shards[idShardOf(zoneId)];
+    }
+
+    private static int idShardOf(long zoneId) {
+        // High bits, so each shard's map still sees well-spread low bits
+        return LongIntHashMap.hash(zoneId) >>> ID_SHARD_SHIFT;
+    }
+
+    private static int pageCount(int size) {
+        return (size + PAGE_SIZE - 1) >>> PAGE_SHIFT;
+    }
+
+    private static double wrapLongitude(double dLng) {
+        if (dLng > Math.PI) {
+            return dLng - 2 * Math.PI;
+        } else if (dLng < -Math.PI) {
+            return dLng + 2 * Math.PI;
+        }
+        return dLng;
+    }
+
+    /**
+     * Columns of {@value #PAGE_SIZE} consecutive slots. A page is only written while the table holding it
+     * is being built, before that table is published; later edits copy the page first.
+     */
+    private static final class Page {
+        final long[] ids;
+        final double[] latRad;
+        final double[] lngRad;
+        final double[] cosLat;
+        final double[] radiusSq;
+        final boolean[] active;
+        final ZoneSnapshot[] zones;
+        final ZonePolygon[] polygons;
+
+        Page() {
+            this(new long[PAGE_SIZE], new double[PAGE_SIZE], new double[PAGE_SIZE], new double[PAGE_SIZE],
+                new double[PAGE_SIZE], new boolean[PAGE_SIZE], new ZoneSnapshot[PAGE_SIZE],
+                new ZonePolygon[PAGE_SIZE]);
+        }
+
+        private Page(long[] ids, double[] latRad, double[] lngRad, double[] cosLat, double[] radiusSq,
+                     boolean[] active, ZoneSnapshot[] zones, ZonePolygon[] polygons) {
+            this.ids = ids;
+            this.latRad = latRad;
+            this.lngRad = lngRad;
+            this.cosLat = cosLat;
+            this.radiusSq = radiusSq;
+            this.active = active;
+            this.zones = zones;
+            this.polygons = polygons;
+        }
+
+        Page copy() {
+            return new Page(ids.clone(), latRad.clone(), lngRad.clone(), cosLat.clone(), radiusSq.clone(),
+                active.clone(), zones.clone(), polygons.clone());
+        }
+
+        void write(int i, ZoneSnapshot zone) {
+            double lat = Math.toRadians(zone.latitude());
+            double radiusAngle = zone.radiusMeters() / GeoMath.EARTH_RADIUS_METERS;
+            ids[i] = zone.id();
+            latRad[i] = lat;
+            lngRad[i] = Math.toRadians(zone.longitude());
+            cosLat[i] = Math.cos(lat);
+            radiusSq[i] = radiusAngle * radiusAngle;
+            active[i] = true;
+            zones[i] = zone;
+            polygons[i] = zone.isPolygon()
+                ? ZonePolygon.compile(zone.vertices(), zone.latitude(), zone.longitude())
+                : null;
+        }
+
+        void copyFrom(int i, Page source, int from) {
+            ids[i] = source.ids[from];
+            latRad[i] = source.latRad[from];
+            lngRad[i] = source.lngRad[from];
+            cosLat[i] = source.cosLat[from];
+            radiusSq[i] = source.radiusSq[from];
+            active[i] = true;
+            zones[i] = source.zones[from];
+            polygons[i] = source.polygons[from];
+        }
+
+        double localX(int i, double pointLngRad) {
+            return wrapLongitude(pointLngRad - lngRad[i]) * cosLat[i] * GeoMath.EARTH_RADIUS_METERS;
+        }
+
+        double localY(int i, double pointLatRad) {
+            return (pointLatRad - latRad[i]) * GeoMath.EARTH_RADIUS_METERS;
+        }
+
+        double squaredAngle(int i, double pointLatRad, double pointLngRad) {
+            double x = wrapLongitude(pointLngRad - lngRad[i]) * cosLat[i];
+            double y = pointLatRad - latRad[i];
+            return x * x + y * y;
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.maciejwasiak.locon.model;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.Fetch;
+import org.hibernate.annotations.FetchMode;
 import java.time.LocalDateTime;
 import java.util.List;
 
@@ -45,9 +47,20 @@ public class Zone {
     @Column(name = "device_id")
     private List<String> deviceIds = new java.util.ArrayList<>();
     
+    // Polygon outline in drawing order; empty for circular zones
+    @ElementCollection(fetch = FetchType.EAGER)
+    @Fetch(FetchMode.SUBSELECT)
+    @CollectionTable(name = "zone_vertices", joinColumns = @JoinColumn(name = "zone_id"))
+    @OrderColumn(name = "vertex_order")
+    private List<ZoneVertex> vertices = new java.util.ArrayList<>();
+    
     @Column(name = "notifications_enabled", nullable = false)
     private Boolean notificationsEnabled = true;
     
+    // Coalescing window for notification digests; null uses the configured default
+    @Column(name = "notification_window_seconds")
+    private Integer notificationWindowSeconds;
+    
     public Zone() {
         this.createdAt = LocalDateTime.now();
     }
@@ -161,6 +174,18 @@ public class Zone {
         this.deviceIds = deviceIds;
     }
     
+    public List<ZoneVertex> getVertices() {
+        return vertices;
+    }
+    
+    public void setVertices(List<ZoneVertex> vertices) {
+        this.vertices = vertices;
+    }
+    
+    public boolean isPolygon() {
+        return vertices != null && !vertices.isEmpty();
+    }
+    
     public Boolean getNotificationsEnabled() {
         return notificationsEnabled;
     }
@@ -169,6 +194,14 @@ public class Zone {
         this.notificationsEnabled = notificationsEnabled;
     }
     
+    public Integer getNotificationWindowSeconds() {
+        return notificationWindowSeconds;
+    }
+    
+    public void setNotificationWindowSeconds(Integer notificationWindowSeconds) {
+        this.notificationWindowSeconds = notificationWindowSeconds;
+    }
+    
     public int getDeviceCount() {
         return deviceIds != null ? deviceIds.size() : 0;
     }
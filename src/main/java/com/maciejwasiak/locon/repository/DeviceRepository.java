@@ -1,14 +1,28 @@
 package com.maciejwasiak.locon.repository;
 
+import com.maciejwasiak.locon.geofence.DeviceLabel;
+import com.maciejwasiak.locon.geofence.DeviceOwner;
 import com.maciejwasiak.locon.model.Device;
 import com.maciejwasiak.locon.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface DeviceRepository extends JpaRepository<Device, Long> {
     List<Device> findByUser(User user);
     List<Device> findByUserId(Long userId);
+    
+    @Query("SELECT d.id FROM Device d WHERE LOWER(d.type) IN :types")
+    List<Long> findIdsByTypeIn(@Param("types") Collection<String> lowercaseTypes);
+
+    @Query("SELECT new com.maciejwasiak.locon.geofence.DeviceOwner(d.id, d.user.id) FROM Device d")
+    List<DeviceOwner> findOwners();
+
+    @Query("SELECT new com.maciejwasiak.locon.geofence.DeviceLabel(d.id, d.model, d.ownerName) FROM Device d")
+    List<DeviceLabel> findLabels();
 }
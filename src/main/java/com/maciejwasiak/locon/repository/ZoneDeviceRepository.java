@@ -1,9 +1,13 @@
 package com.maciejwasiak.locon.repository;
 
+import com.maciejwasiak.locon.geofence.NotificationRoute;
+import com.maciejwasiak.locon.geofence.ZoneDeviceLink;
 import com.maciejwasiak.locon.model.Device;
 import com.maciejwasiak.locon.model.Zone;
 import com.maciejwasiak.locon.model.ZoneDevice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -17,4 +21,20 @@ public interface ZoneDeviceRepository extends JpaRepository<ZoneDevice, Long> {
     List<ZoneDevice> findByDeviceId(Long deviceId);
     Optional<ZoneDevice> findByZoneAndDevice(Zone zone, Device device);
     boolean existsByZoneAndDevice(Zone zone, Device device);
+    
+    @Query("SELECT new com.maciejwasiak.locon.geofence.ZoneDeviceLink(zd.zone.id, zd.device.id) FROM ZoneDevice zd")
+    List<ZoneDeviceLink> findAllLinks();
+    
+    @Query("SELECT zd.device.id FROM ZoneDevice zd WHERE zd.zone.id = :zoneId")
+    List<Long> findDeviceIdsByZoneId(@Param("zoneId") Long zoneId);
+    
+    @Query("SELECT new com.maciejwasiak.locon.geofence.NotificationRoute(z.id, d.id, zu.id, d.user.id, z.notificationWindowSeconds) " +
+           "FROM ZoneDevice zd JOIN zd.zone z JOIN zd.device d LEFT JOIN z.user zu " +
+           "WHERE z.notificationsEnabled = true AND zd.notificationsEnabled = true")
+    List<NotificationRoute> findNotificationRoutes();
+    
+    @Query("SELECT new com.maciejwasiak.locon.geofence.NotificationRoute(z.id, d.id, zu.id, d.user.id, z.notificationWindowSeconds) " +
+           "FROM ZoneDevice zd JOIN zd.zone z JOIN zd.device d LEFT JOIN z.user zu " +
+           "WHERE z.id = :zoneId AND z.notificationsEnabled = true AND zd.notificationsEnabled = true")
+    List<NotificationRoute> findNotificationRoutesByZoneId(@Param("zoneId") Long zoneId);
 }
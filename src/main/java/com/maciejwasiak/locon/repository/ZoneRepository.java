@@ -31,4 +31,11 @@ public interface ZoneRepository extends JpaRepository<Zone, Long> {
     
     // Delete zone by ID and user (for security)
     void deleteByIdAndUser(Long id, User user);
+    
+    // Load all zones with their device assignments in one query (geofence engine snapshot)
+    @Query("SELECT DISTINCT z FROM Zone z LEFT JOIN FETCH z.deviceIds")
+    List<Zone> findAllWithDeviceIds();
+    
+    @Query("SELECT z FROM Zone z LEFT JOIN FETCH z.deviceIds WHERE z.id = :id")
+    Optional<Zone> findByIdWithDeviceIds(@Param("id") Long id);
 }
\ No newline at end of file
@@ -20,6 +20,7 @@ public class DataLoaderService implements CommandLineRunner {
     private final DeviceRepository deviceRepository;
     private final ZoneRepository zoneRepository;
     private final ZoneDeviceRepository zoneDeviceRepository;
+    private final ZoneService zoneService;
     
     @Override
     @Transactional
@@ -73,7 +74,6 @@ public class DataLoaderService implements CommandLineRunner {
     }
     
     private ZoneDevice createZoneDevice(Zone zone, Device device, Boolean notificationsEnabled) {
-        ZoneDevice zoneDevice = new ZoneDevice(zone, device, notificationsEnabled);
-        return zoneDeviceRepository.save(zoneDevice);
+        return zoneService.assignDevice(zone, device, notificationsEnabled);
     }
 }
@@ -0,0 +1,45 @@
+package com.maciejwasiak.locon.service;
+
+import com.maciejwasiak.locon.geofence.DeviceLabel;
+import com.maciejwasiak.locon.geofence.DeviceZoneIndex;
+import com.maciejwasiak.locon.repository.DeviceRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Display names of devices ({@code Device.ownerName} and {@code Device.model}) for the transitions the
+ * {@link GeofenceEngine} emits, loaded once at startup so evaluation never touches the database. Devices
+ * without a row, such as simulated ones, are named after their id.
+ */
+@Service
+@Slf4j
+public class DeviceLabels {
+
+    private final DeviceRepository deviceRepository;
+    private volatile Map<Long, String> labels = Map.of();
+
+    public DeviceLabels(DeviceRepository deviceRepository) {
+        this.deviceRepository = deviceRepository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void reload() {
+        Map<Long, String> loaded = new HashMap<>();
+        for (DeviceLabel device : deviceRepository.findLabels()) {
+            loaded.put(device.deviceId(), device.label());
+        }
+        this.labels = loaded;
+        log.info("Loaded labels of {} devices", loaded.size());
+    }
+
+    public String labelOf(String deviceId) {
+        long id = DeviceZoneIndex.parseDeviceId(deviceId);
+        String label = id == DeviceZoneIndex.NO_DEVICE ? null : labels.get(id);
+        return label != null ? label : "Device " + deviceId;
+    }
+}
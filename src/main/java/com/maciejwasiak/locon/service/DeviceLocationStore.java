@@ -0,0 +1,97 @@
+package com.maciejwasiak.locon.service;
+
+import com.maciejwasiak.locon.dto.DeviceLocationDto;
+import com.maciejwasiak.locon.dto.LocationFixDto;
+import com.maciejwasiak.locon.geofence.DeviceOwner;
+import com.maciejwasiak.locon.geofence.DeviceZoneIndex;
+import com.maciejwasiak.locon.geofence.LastLocationTable;
+import com.maciejwasiak.locon.repository.DeviceRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Last known location of every device that reported a fix, fed by the {@link GeofencePipeline} for
+ * every accepted fix (whether or not the device has zones). Lookups never touch the database: positions
+ * live in a {@link LastLocationTable}, and the devices of each user in an index loaded at startup.
+ * Locations are not persisted; after a restart a device is unknown until its next fix.
+ */
+@Service
+@Slf4j
+public class DeviceLocationStore {
+
+    private final DeviceRepository deviceRepository;
+    private final LastLocationTable locations = new LastLocationTable();
+    private volatile Map<Long, long[]> devicesByUser = Map.of();
+    private volatile Map<Long, Long> ownerByDevice = Map.of();
+
+    public DeviceLocationStore(DeviceRepository deviceRepository) {
+        this.deviceRepository = deviceRepository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void reloadOwners() {
+        Map<Long, List<Long>> grouped = new HashMap<>();
+        Map<Long, Long> owners = new HashMap<>();
+        for (DeviceOwner owner : deviceRepository.findOwners()) {
+            grouped.computeIfAbsent(owner.userId(), id -> new ArrayList<>()).add(owner.deviceId());
+            owners.put(owner.deviceId(), owner.userId());
+        }
+        Map<Long, long[]> index = new HashMap<>(grouped.size() * 2);
+        grouped.forEach((userId, devices) -> index.put(userId,
+            devices.stream().mapToLong(Long::longValue).toArray()));
+        this.devicesByUser = index;
+        this.ownerByDevice = owners;
+        log.info("Device location store indexed devices of {} users", index.size());
+    }
+
+    /**
+     * Records the fix as its device's location unless a newer one is known. The fix must carry a
+     * timestamp.
+     */
+    public void record(LocationFixDto fix) {
+        long deviceId = DeviceZoneIndex.parseDeviceId(fix.deviceId());
+        if (deviceId == DeviceZoneIndex.NO_DEVICE || fix.timestamp() == null) {
+            return;
+        }
+        locations.update(deviceId, fix.latitude(), fix.longitude(),
+            fix.accuracy() != null ? fix.accuracy() : Double.NaN, fix.timestamp().toEpochMilli());
+    }
+
+    public Optional<DeviceLocationDto> getLocation(long deviceId) {
+        return Optional.ofNullable(locations.get(deviceId)).map(DeviceLocationDto::from);
+    }
+
+    /**
+     * Locations of the user's devices that have reported at least once.
+     */
+    public List<DeviceLocationDto> getLocationsOfUser(long userId) {
+        long[] devices = devicesByUser.getOrDefault(userId, new long[0]);
+        List<DeviceLocationDto> result = new ArrayList<>(devices.length);
+        for (long deviceId : devices) {
+            LastLocationTable.Location location = locations.get(deviceId);
+            if (location != null) {
+                result.add(DeviceLocationDto.from(location));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Owner of the device as indexed at startup, or {@code null} for devices registered since.
+     */
+    public Long ownerOf(long deviceId) {
+        return ownerByDevice.get(deviceId);
+    }
+
+    public int size() {
+        return locations.size();
+    }
+}
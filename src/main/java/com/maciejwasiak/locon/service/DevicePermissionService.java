@@ -1,5 +1,6 @@
 package com.maciejwasiak.locon.service;
 
+import com.maciejwasiak.locon.model.User;
 import com.maciejwasiak.locon.model.UserRole;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -66,6 +67,17 @@ public class DevicePermissionService {
         return result;
     }
     
+    /**
+     * Whether the user may see where a device owned by {@code ownerId} is or has been: only the owner
+     * may, and only when their role is granted at least one device.
+     */
+    public boolean canTrackDevicesOf(User user, Long ownerId) {
+        boolean result = ownerId != null && ownerId.equals(user.getId())
+            && !getAvailableDevices(user.getRole()).isEmpty();
+        log.debug("Device tracking permission of user {} for owner {}: {}", user.getId(), ownerId, result);
+        return result;
+    }
+    
     public Map<String, Map<String, Boolean>> getAllDevicePermissions() {
         log.debug("Getting all device permissions");
         return DEVICE_PERMISSIONS;
@@ -0,0 +1,51 @@
+package com.maciejwasiak.locon.service;
+
+import com.maciejwasiak.locon.config.GeofenceProperties;
+import com.maciejwasiak.locon.geofence.DeviceZoneIndex;
+import com.maciejwasiak.locon.repository.DeviceRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Knows which devices are SOS devices, by their {@code Device.type}, so ingestion keeps serving them
+ * while routine traffic is shed. Lookups are a binary search over an immutable sorted array.
+ */
+@Service
+@Slf4j
+public class DevicePriorities {
+
+    private final DeviceRepository deviceRepository;
+    private final List<String> sosTypes;
+    private volatile long[] sosDevices = new long[0];
+
+    public DevicePriorities(DeviceRepository deviceRepository, GeofenceProperties properties) {
+        this.deviceRepository = deviceRepository;
+        this.sosTypes = properties.getPriority().getSosDeviceTypes().stream()
+            .map(type -> type.toLowerCase(Locale.ROOT))
+            .toList();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void reload() {
+        long[] devices = deviceRepository.findIdsByTypeIn(sosTypes).stream()
+            .mapToLong(Long::longValue)
+            .sorted()
+            .toArray();
+        this.sosDevices = devices;
+        log.info("Loaded {} SOS devices", devices.length);
+    }
+
+    public boolean isSos(long deviceId) {
+        return deviceId != DeviceZoneIndex.NO_DEVICE && Arrays.binarySearch(sosDevices, deviceId) >= 0;
+    }
+
+    public boolean isSos(String deviceId) {
+        return isSos(DeviceZoneIndex.parseDeviceId(deviceId));
+    }
+}
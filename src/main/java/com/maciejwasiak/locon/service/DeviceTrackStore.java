@@ -0,0 +1,118 @@
+package com.maciejwasiak.locon.service;
+
+import com.maciejwasiak.locon.config.GeofenceProperties;
+import com.maciejwasiak.locon.dto.LocationFixDto;
+import com.maciejwasiak.locon.dto.TrackPointDto;
+import com.maciejwasiak.locon.geofence.DeviceZoneIndex;
+import com.maciejwasiak.locon.geofence.TrackStore;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps {@code retention} worth of location tracks per device in a compressed {@link TrackStore}, fed
+ * by the {@link GeofencePipeline} with every accepted fix. A background task periodically seals blocks
+ * older than {@code blockAge}, appends sealed blocks to the day files and deletes expired days.
+ */
+@Service
+@Slf4j
+public class DeviceTrackStore {
+
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private final GeofenceProperties.Tracks properties;
+    private final TrackStore store;
+    private ScheduledExecutorService scheduler;
+
+    public DeviceTrackStore(GeofenceProperties properties) {
+        this.properties = properties.getTracks();
+        this.store = TrackStore.open(Path.of(this.properties.getDirectory()), this.properties.getBlockFixes());
+        log.info("Device track store opened at {}", this.properties.getDirectory());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        long intervalMillis = properties.getFlushInterval().toMillis();
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "geofence-tracks");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::maintainQuietly, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Appends the fix to its device's track. Fixes without a timestamp or older than the retention are
+     * ignored.
+     */
+    public void record(LocationFixDto fix) {
+        long deviceId = DeviceZoneIndex.parseDeviceId(fix.deviceId());
+        if (deviceId == DeviceZoneIndex.NO_DEVICE || fix.timestamp() == null) {
+            return;
+        }
+        long atMillis = fix.timestamp().toEpochMilli();
+        if (atMillis < System.currentTimeMillis() - properties.getRetention().toMillis()) {
+            return;
+        }
+        store.append(deviceId, fix.latitude(), fix.longitude(), atMillis);
+    }
+
+    /**
+     * The device's fixes within the inclusive time range, in time order, decoding only the stored
+     * blocks that overlap it.
+     */
+    public List<TrackPointDto> track(long deviceId, Instant from, Instant to, int limit) {
+        List<TrackPointDto> points = new ArrayList<>();
+        store.read(deviceId, from.toEpochMilli(), to.toEpochMilli(), limit, (latitude, longitude, atMillis) ->
+            points.add(new TrackPointDto(latitude, longitude, Instant.ofEpochMilli(atMillis))));
+        return points;
+    }
+
+    /**
+     * Seals aged blocks, writes everything sealed and drops expired day files.
+     */
+    public void maintain() {
+        long now = System.currentTimeMillis();
+        store.sealOpenedBefore(now - properties.getBlockAge().toMillis());
+        store.flush();
+        int purged = store.purgeBefore(Math.floorDiv(now - properties.getRetention().toMillis(), DAY_MILLIS));
+        if (purged > 0) {
+            log.info("Deleted {} expired track files", purged);
+        }
+    }
+
+    public long getRecordedFixes() {
+        return store.getAppendedFixes();
+    }
+
+    public long getWrittenBytes() {
+        return store.getWrittenBytes();
+    }
+
+    @PreDestroy
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        store.close();
+        log.info("Device track store closed after writing {} bytes", store.getWrittenBytes());
+    }
+
+    private void maintainQuietly() {
+        try {
+            maintain();
+        } catch (RuntimeException e) {
+            log.error("Failed to maintain device track store", e);
+        }
+    }
+}
@@ -0,0 +1,372 @@
+package com.maciejwasiak.locon.service;
+
+import com.maciejwasiak.locon.config.GeofenceProperties;
+import com.maciejwasiak.locon.dto.LocationBatchResponse;
+import com.maciejwasiak.locon.dto.LocationFixDto;
+import com.maciejwasiak.locon.dto.SimulationReport;
+import com.maciejwasiak.locon.dto.SimulationRequest;
+import com.maciejwasiak.locon.dto.SimulationRequest.MovementModel;
+import com.maciejwasiak.locon.geofence.GeoMath;
+import com.maciejwasiak.locon.geofence.ZoneSnapshot;
+import com.maciejwasiak.locon.geofence.ZoneTable;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Moves a fleet of virtual devices around the existing zones and feeds their fixes through
+ * {@link GeofencingService#processBatch(List)}, i.e. the same ingestion and evaluation path real
+ * trackers use. Devices are attached to the engine's in-memory assignment for the duration of the run
+ * only, and the pipeline keeps their fixes and transitions out of the last-location and track stores,
+ * the event log and every listener (see {@link #isVirtual(long)}).
+ * <p>
+ * Fix timestamps advance by the reporting interval, but batches are sent as fast as ingestion takes them
+ * unless the request sets a target rate: each batch is then held until the wall clock reaches the time
+ * its last fix is due at that rate, and the report shows the achieved rate next to the target.
+ * <p>
+ * Device state is kept in parallel primitive arrays so a 100k-device fleet costs a few megabytes.
+ */
+@Service
+@Slf4j
+public class FleetSimulator {
+
+    /** Virtual device ids start here, far above any database-generated id. */
+    static final long VIRTUAL_DEVICE_BASE = 9_000_000_000_000L;
+
+    private static final double WALKING_SPEED = 1.4;
+    private static final double COMMUTE_SPEED = 9.0;
+    private static final double WAYPOINT_SPREAD = 3.0;
+    private static final int MIN_DWELL_TICKS = 5;
+    private static final int MAX_DWELL_TICKS = 20;
+
+    private final GeofenceEngine geofenceEngine;
+    private final GeofencingService geofencingService;
+    private final GeofencePipeline pipeline;
+    private final GeofenceProperties.Simulator properties;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    public FleetSimulator(GeofenceEngine geofenceEngine, GeofencingService geofencingService,
+                          GeofencePipeline pipeline, GeofenceProperties properties) {
+        this.geofenceEngine = geofenceEngine;
+        this.geofencingService = geofencingService;
+        this.pipeline = pipeline;
+        this.properties = properties.getSimulator();
+    }
+
+    /**
+     * Runs one simulation synchronously and reports throughput and batch latency.
+     *
+     * @throws IllegalArgumentException if the run exceeds the configured limits or there are no zones
+     * @throws IllegalStateException if another simulation is already running
+     */
+    public SimulationReport run(SimulationRequest request) {
+        long totalFixes = (long) request.devices() * request.ticks();
+        if (request.devices() > properties.getMaxDevices()) {
+            throw new IllegalArgumentException("At most " + properties.getMaxDevices() + " devices per simulation");
+        }
+        if (totalFixes > properties.getMaxFixesPerRun()) {
+            throw new IllegalArgumentException("At most " + properties.getMaxFixesPerRun() + " fixes per simulation");
+        }
+        if (request.isPaced() && totalFixes / request.targetFixesPerSecond()
+                > properties.getMaxPacedDuration().toSeconds()) {
+            throw new IllegalArgumentException("A paced simulation may take at most "
+                + properties.getMaxPacedDuration().toSeconds() + " s");
+        }
+        ZoneTable table = geofenceEngine.getZoneTable();
+        int[] slots = activeSlots(table);
+        if (slots.length == 0) {
+            throw new IllegalArgumentException("Simulation needs at least one zone");
+        }
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("A simulation is already running");
+        }
+        try {
+            Random random = request.seed() != null ? new Random(request.seed()) : new Random();
+            Fleet fleet = new Fleet(request, table, slots, random);
+            Map<Integer, long[]> assignments = fleet.assignments();
+            geofenceEngine.attachDevices(assignments);
+            try {
+                return simulate(request, fleet, random);
+            } finally {
+                geofenceEngine.detachDevices(assignments);
+                long[] deviceIds = fleet.deviceIds();
+                pipeline.broadcast(partition -> geofenceEngine.forgetDevices(partition, deviceIds));
+            }
+        } finally {
+            running.set(false);
+        }
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    /**
+     * Whether the id belongs to a simulated device rather than a tracker.
+     */
+    public static boolean isVirtual(long deviceId) {
+        return deviceId >= VIRTUAL_DEVICE_BASE;
+    }
+
+    private SimulationReport simulate(SimulationRequest request, Fleet fleet, Random random) {
+        int batchSize = request.batchSizeOrDefault();
+        int intervalSeconds = request.reportIntervalSecondsOrDefault();
+        double jitterMeters = request.gpsJitterMetersOrDefault();
+        Instant start = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+        LatencyReservoir latencies = new LatencyReservoir(properties.getLatencySamples(), random.nextLong());
+
+        log.info("Fleet simulation started: {} devices, {} ticks every {}s, model {}, target {} fixes/s",
+            request.devices(), request.ticks(), intervalSeconds, request.modelOrDefault(),
+            request.isPaced() ? Math.round(request.targetFixesPerSecond()) : "unpaced");
+        long transitions = 0;
+        long fixes = 0;
+        long busyNanos = 0;
+        long wallStart = System.nanoTime();
+        List<LocationFixDto> batch = new ArrayList<>(batchSize);
+        for (int tick = 0; tick < request.ticks(); tick++) {
+            Instant timestamp = start.plusSeconds((long) tick * intervalSeconds);
+            for (int device = 0; device < fleet.size; device++) {
+                fleet.step(device, tick, intervalSeconds);
+                double[] reported = GeofencingService.jitterCoordinates(
+                    random, fleet.lat[device], fleet.lng[device], jitterMeters);
+                batch.add(new LocationFixDto(Long.toString(VIRTUAL_DEVICE_BASE + device),
+                    reported[0], reported[1], timestamp, jitterMeters));
+                if (batch.size() == batchSize) {
+                    awaitPace(request, wallStart, fixes + batch.size());
+                    long nanos = System.nanoTime();
+                    LocationBatchResponse response = geofencingService.processBatch(batch);
+                    nanos = System.nanoTime() - nanos;
+                    latencies.record(nanos);
+                    busyNanos += nanos;
+                    transitions += response.transitions().size();
+                    fixes += batch.size();
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            awaitPace(request, wallStart, fixes + batch.size());
+            long nanos = System.nanoTime();
+            transitions += geofencingService.processBatch(batch).transitions().size();
+            nanos = System.nanoTime() - nanos;
+            latencies.record(nanos);
+            busyNanos += nanos;
+            fixes += batch.size();
+        }
+        long wallNanos = System.nanoTime() - wallStart;
+
+        SimulationReport report = new SimulationReport(
+            request.devices(),
+            request.ticks(),
+            fixes,
+            transitions,
+            wallNanos / 1_000_000,
+            request.targetFixesPerSecond(),
+            fixes / Math.max(1e-9, wallNanos / 1e9),
+            fixes == 0 ? 0 : busyNanos / 1_000.0 / fixes,
+            latencies.percentileMillis(0.50),
+            latencies.percentileMillis(0.99),
+            latencies.maxMillis(),
+            start,
+            start.plusSeconds((long) (request.ticks() - 1) * intervalSeconds)
+        );
+        log.info("Fleet simulation finished: {} fixes, {} transitions in {} ms ({} fixes/s of target {}, p99 batch {} ms)",
+            report.fixes(), report.transitions(), report.wallMillis(), Math.round(report.fixesPerSecond()),
+            request.isPaced() ? Math.round(request.targetFixesPerSecond()) : "unpaced", report.batchLatencyP99Millis());
+        return report;
+    }
+
+    /**
+     * For paced runs, waits until the wall clock reaches the time the {@code fixesDue}-th fix is due at the
+     * target rate. A run that falls behind sends straight away until it is back on schedule.
+     */
+    private static void awaitPace(SimulationRequest request, long wallStart, long fixesDue) {
+        if (!request.isPaced()) {
+            return;
+        }
+        long dueAt = wallStart + (long) (fixesDue * 1e9 / request.targetFixesPerSecond());
+        long remaining;
+        while ((remaining = dueAt - System.nanoTime()) > 0 && !Thread.currentThread().isInterrupted()) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    private static int[] activeSlots(ZoneTable table) {
+        int[] slots = new int[table.size()];
+        int count = 0;
+        for (int slot = 0; slot < table.size(); slot++) {
+            if (table.isActive(slot)) {
+                slots[count++] = slot;
+            }
+        }
+        return Arrays.copyOf(slots, count);
+    }
+
+    /**
+     * Struct-of-arrays state of the virtual fleet. Every device has a home and a second zone
+     * (the school for commuters, an extra wandering area otherwise) and is assigned to both.
+     */
+    private static final class Fleet {
+        final int size;
+        final double[] lat;
+        final double[] lng;
+        final double[] targetLat;
+        final double[] targetLng;
+        final double[] speed;
+        final int[] home;
+        final int[] away;
+        final int[] dwellUntil;
+        final boolean[] commuter;
+        final boolean[] headingAway;
+        private final ZoneTable table;
+        private final Random random;
+
+        Fleet(SimulationRequest request, ZoneTable table, int[] slots, Random random) {
+            this.size = request.devices();
+            this.table = table;
+            this.random = random;
+            lat = new double[size];
+            lng = new double[size];
+            targetLat = new double[size];
+            targetLng = new double[size];
+            speed = new double[size];
+            home = new int[size];
+            away = new int[size];
+            dwellUntil = new int[size];
+            commuter = new boolean[size];
+            headingAway = new boolean[size];
+
+            MovementModel model = request.modelOrDefault();
+            for (int device = 0; device < size; device++) {
+                home[device] = slots[random.nextInt(slots.length)];
+                away[device] = slots.length > 1 ? pickOther(slots, home[device]) : home[device];
+                commuter[device] = away[device] != home[device] && switch (model) {
+                    case COMMUTE -> true;
+                    case RANDOM_WAYPOINT -> false;
+                    case MIXED -> (device & 1) == 0;
+                };
+                speed[device] = commuter[device] ? COMMUTE_SPEED : WALKING_SPEED;
+
+                ZoneSnapshot start = table.zone(home[device]);
+                double[] position = GeofencingService.jitterCoordinates(
+                    random, start.latitude(), start.longitude(), start.radiusMeters() / 2.0);
+                lat[device] = position[0];
+                lng[device] = position[1];
+                chooseTarget(device);
+            }
+        }
+
+        long[] deviceIds() {
+            long[] ids = new long[size];
+            for (int device = 0; device < size; device++) {
+                ids[device] = VIRTUAL_DEVICE_BASE + device;
+            }
+            return ids;
+        }
+
+        Map<Integer, long[]> assignments() {
+            Map<Integer, List<Long>> bySlot = new HashMap<>();
+            for (int device = 0; device < size; device++) {
+                long deviceId = VIRTUAL_DEVICE_BASE + device;
+                bySlot.computeIfAbsent(home[device], slot -> new ArrayList<>()).add(deviceId);
+                if (away[device] != home[device]) {
+                    bySlot.computeIfAbsent(away[device], slot -> new ArrayList<>()).add(deviceId);
+                }
+            }
+            Map<Integer, long[]> assignments = new HashMap<>(bySlot.size() * 2);
+            bySlot.forEach((slot, ids) -> assignments.put(slot, ids.stream().mapToLong(Long::longValue).toArray()));
+            return assignments;
+        }
+
+        void step(int device, int tick, int intervalSeconds) {
+            if (tick < dwellUntil[device]) {
+                return;
+            }
+            double remaining = GeoMath.distanceMeters(lat[device], lng[device], targetLat[device], targetLng[device]);
+            double travel = speed[device] * intervalSeconds;
+            if (travel >= remaining) {
+                lat[device] = targetLat[device];
+                lng[device] = targetLng[device];
+                dwellUntil[device] = tick + MIN_DWELL_TICKS + random.nextInt(MAX_DWELL_TICKS - MIN_DWELL_TICKS + 1);
+                headingAway[device] = !headingAway[device];
+                chooseTarget(device);
+            } else {
+                // Linear interpolation is accurate enough over a single reporting interval
+                double fraction = travel / remaining;
+                lat[device] += (targetLat[device] - lat[device]) * fraction;
+                lng[device] += (targetLng[device] - lng[device]) * fraction;
+            }
+        }
+
+        private void chooseTarget(int device) {
+            ZoneSnapshot zone = table.zone(headingAway[device] ? away[device] : home[device]);
+            // Commuters head for the zone center; wanderers pick a point that may lie outside the zone
+            double spread = commuter[device] ? zone.radiusMeters() / 4.0 : zone.radiusMeters() * WAYPOINT_SPREAD;
+            double[] target = GeofencingService.jitterCoordinates(random, zone.latitude(), zone.longitude(), spread);
+            targetLat[device] = target[0];
+            targetLng[device] = target[1];
+        }
+
+        private int pickOther(int[] slots, int exclude) {
+            int slot;
+            do {
+                slot = slots[random.nextInt(slots.length)];
+            } while (slot == exclude);
+            return slot;
+        }
+    }
+
+    /**
+     * Fixed-size uniform sample of batch latencies (Vitter's algorithm R), so percentiles stay
+     * cheap however long the run is.
+     */
+    private static final class LatencyReservoir {
+        private final long[] samples;
+        private final Random random;
+        private long seen;
+        private long max;
+
+        LatencyReservoir(int capacity, long seed) {
+            this.samples = new long[Math.max(1, capacity)];
+            this.random = new Random(seed);
+        }
+
+        void record(long nanos) {
+            max = Math.max(max, nanos);
+            if (seen < samples.length) {
+                samples[(int) seen] = nanos;
+            } else {
+                long index = (long) (random.nextDouble() * (seen + 1));
+                if (index < samples.length) {
+                    samples[(int) index] = nanos;
+                }
+            }
+            seen++;
+        }
+
+        double percentileMillis(double percentile) {
+            int count = (int) Math.min(seen, samples.length);
+            if (count == 0) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            int index = Math.min(count - 1, (int) Math.ceil(percentile * count) - 1);
+            return sorted[Math.max(0, index)] / 1e6;
+        }
+
+        double maxMillis() {
+            return max / 1e6;
+        }
+    }
+}
@@ -0,0 +1,477 @@
+package com.maciejwasiak.locon.service;
+
+import com.maciejwasiak.locon.config.GeofenceProperties;
+import com.maciejwasiak.locon.dto.GeofenceEventDto;
+import com.maciejwasiak.locon.dto.LocationFixDto;
+import com.maciejwasiak.locon.geofence.DeviceMotionTable;
+import com.maciejwasiak.locon.geofence.DeviceZoneIndex;
+import com.maciejwasiak.locon.geofence.DeviceZoneStates;
+import com.maciejwasiak.locon.geofence.EvaluationSchedule;
+import com.maciejwasiak.locon.geofence.TransitionPolicy;
+import com.maciejwasiak.locon.geofence.ZoneDeviceLink;
+import com.maciejwasiak.locon.geofence.ZoneSnapshot;
+import com.maciejwasiak.locon.geofence.ZoneTable;
+import com.maciejwasiak.locon.model.Zone;
+import com.maciejwasiak.locon.repository.ZoneDeviceRepository;
+import com.maciejwasiak.locon.repository.ZoneRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.LongStream;
+
+/**
+ * Evaluates device location fixes against the zones assigned to each device and emits
+ * ENTER/EXIT transitions. Runs entirely from an immutable {@link ZoneTable}; the database is
+ * only read when zones change, and readers never take a lock.
+ * <p>
+ * Transitions go through a per device-zone {@link TransitionPolicy} (hysteresis band plus minimum
+ * dwell), so fixes wobbling around a zone edge do not produce ENTER/EXIT storms. Devices far from
+ * every assigned boundary are put on an {@link EvaluationSchedule} and their fixes are skipped until
+ * they could plausibly have reached one.
+ * <p>
+ * Per-device state (transition states, evaluation schedule, motion) is sharded by device id into
+ * {@link #partitionCount()} partitions. The {@link GeofencePipeline} runs one evaluation thread per
+ * partition, so every partition has a single writer and its stores are never contended; only
+ * occasional reads such as reporting hints come from other threads.
+ */
+@Service
+@Slf4j
+public class GeofenceEngine {
+
+    public static final String ENTER = "ENTER";
+    public static final String EXIT = "EXIT";
+
+    private final ZoneRepository zoneRepository;
+    private final ZoneDeviceRepository zoneDeviceRepository;
+    private final DeviceLabels deviceLabels;
+    private final TransitionPolicy transitionPolicy;
+
+    private volatile ZoneTable zoneTable = ZoneTable.empty();
+    private final DeviceZoneIndex deviceIndex = new DeviceZoneIndex();
+    private final DevicePartition[] partitions;
+    private final GeofenceProperties.Scheduling scheduling;
+    private final GeofenceProperties.Reporting reporting;
+    private final LongAdder evaluatedFixes = new LongAdder();
+    private final LongAdder skippedFixes = new LongAdder();
+
+    // Bumped after every zone table or assignment change; invalidates scheduled skips
+    private volatile int generation;
+    // Odd while slots are being renumbered (reload, compaction): the table and the device index are
+    // then replaced one after the other, and readers retry until they saw both from the same layout
+    private volatile int slotLayout;
+    // Simulated fleets hold slot numbers while attached, so compaction waits until they are detached
+    private int attachedFleets;
+
+    public GeofenceEngine(ZoneRepository zoneRepository, ZoneDeviceRepository zoneDeviceRepository,
+                          DeviceLabels deviceLabels, GeofenceProperties properties) {
+        this.zoneRepository = zoneRepository;
+        this.zoneDeviceRepository = zoneDeviceRepository;
+        this.deviceLabels = deviceLabels;
+        GeofenceProperties.Transitions transitions = properties.getTransitions();
+        this.transitionPolicy = new TransitionPolicy(transitions.getBandRatio(), transitions.getMinBandMeters(),
+            transitions.getMaxBandMeters(), transitions.getMinDwell().toMillis());
+        this.scheduling = properties.getScheduling();
+        this.reporting = properties.getReporting();
+        this.partitions = new DevicePartition[Math.max(1, properties.getPipeline().getPartitions())];
+        for (int partition = 0; partition < partitions.length; partition++) {
+            partitions[partition] = new DevicePartition();
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        reloadZones();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onZoneChanged(ZoneChangedEvent event) {
+        log.debug("Zone {} {}, updating geofence zone table", event.zoneId(), event.changeType());
+        if (event.changeType() == ZoneChangedEvent.ChangeType.DELETED) {
+            removeZone(event.zoneId());
+        } else {
+            zoneRepository.findByIdWithDeviceIds(event.zoneId())
+                .ifPresentOrElse(this::upsertZone, () -> removeZone(event.zoneId()));
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAssignmentsChanged(ZoneAssignmentsChangedEvent event) {
+        log.debug("Devices of zone {} changed, refreshing its assignment", event.zoneId());
+        refreshAssignments(event.zoneId());
+    }
+
+    public synchronized void reloadZones() {
+        List<ZoneSnapshot> snapshots = zoneRepository.findAllWithDeviceIds().stream()
+            .map(ZoneSnapshot::from)
+            .toList();
+        ZoneTable table = ZoneTable.of(snapshots);
+
+        Map<Long, List<Long>> linkedDevices = new HashMap<>();
+        for (ZoneDeviceLink link : zoneDeviceRepository.findAllLinks()) {
+            linkedDevices.computeIfAbsent(link.zoneId(), id -> new ArrayList<>()).add(link.deviceId());
+        }
+        Map<Integer, long[]> assignments = new HashMap<>(snapshots.size() * 2);
+        for (int slot = 0; slot < table.size(); slot++) {
+            ZoneSnapshot zone = table.zone(slot);
+            assignments.put(slot, assignedDevices(zone, linkedDevices.getOrDefault(zone.id(), List.of())));
+        }
+
+        replaceLayout(table, assignments);
+        log.info("Geofence zone table loaded: {} zones, {} assigned devices",
+            table.activeCount(), deviceIndex.deviceCount());
+    }
+
+    public synchronized void upsertZone(Zone zone) {
+        ZoneTable table = zoneTable.withZone(ZoneSnapshot.from(zone));
+        int slot = table.slotOf(zone.getId());
+        // Publish the table first: a reader that sees the new slot in the index must find it in the table
+        this.zoneTable = table;
+        deviceIndex.replaceZone(slot,
+            assignedDevices(table.zone(slot), zoneDeviceRepository.findDeviceIdsByZoneId(zone.getId())));
+        generation++;
+    }
+
+    public synchronized void removeZone(Long zoneId) {
+        int slot = zoneTable.slotOf(zoneId);
+        if (slot < 0) {
+            return;
+        }
+        deviceIndex.replaceZone(slot, new long[0]);
+        this.zoneTable = zoneTable.withoutZone(zoneId);
+        generation++;
+        compactZonesIfNeeded();
+    }
+
+    /**
+     * Drops the slots of deleted zones once {@link ZoneTable#needsCompaction()} says they are worth it,
+     * renumbering the device index along with the table.
+     */
+    private void compactZonesIfNeeded() {
+        ZoneTable table = zoneTable;
+        if (!table.needsCompaction() || attachedFleets > 0) {
+            return;
+        }
+        ZoneTable compacted = table.compacted();
+        Map<Integer, long[]> assignments = new HashMap<>(compacted.size() * 2);
+        for (int slot = 0; slot < compacted.size(); slot++) {
+            assignments.put(slot, deviceIndex.devicesFor(table.slotOf(compacted.id(slot))));
+        }
+        replaceLayout(compacted, assignments);
+        log.info("Geofence zone table compacted from {} to {} slots", table.size(), compacted.size());
+    }
+
+    private void replaceLayout(ZoneTable table, Map<Integer, long[]> assignments) {
+        slotLayout++;
+        try {
+            this.zoneTable = table;
+            deviceIndex.replaceAll(assignments);
+        } finally {
+            slotLayout++;
+        }
+        generation++;
+    }
+
+    /**
+     * Re-reads the device assignment of a single zone after {@code ZoneDevice} rows changed.
+     */
+    public synchronized void refreshAssignments(Long zoneId) {
+        ZoneTable table = zoneTable;
+        int slot = table.slotOf(zoneId);
+        if (slot >= 0) {
+            deviceIndex.replaceZone(slot,
+                assignedDevices(table.zone(slot), zoneDeviceRepository.findDeviceIdsByZoneId(zoneId)));
+            generation++;
+        }
+    }
+
+    /**
+     * Adds devices to zone slots on top of their persisted assignment, e.g. for a simulated fleet.
+     * The extra assignments live only in memory and are dropped by the next {@link #reloadZones()}.
+     */
+    public synchronized void attachDevices(Map<Integer, long[]> devicesBySlot) {
+        attachedFleets++;
+        devicesBySlot.forEach((slot, deviceIds) -> {
+            long[] current = deviceIndex.devicesFor(slot);
+            deviceIndex.replaceZone(slot, LongStream.concat(Arrays.stream(current), Arrays.stream(deviceIds)).toArray());
+        });
+        generation++;
+    }
+
+    /**
+     * Reverts {@link #attachDevices(Map)}. The devices' per-partition state is left to
+     * {@link #forgetDevices(int, long[])}, which the caller broadcasts through the {@link GeofencePipeline}.
+     */
+    public synchronized void detachDevices(Map<Integer, long[]> devicesBySlot) {
+        devicesBySlot.forEach((slot, deviceIds) -> {
+            long[] removed = deviceIds.clone();
+            Arrays.sort(removed);
+            deviceIndex.replaceZone(slot, Arrays.stream(deviceIndex.devicesFor(slot))
+                .filter(deviceId -> Arrays.binarySearch(removed, deviceId) < 0)
+                .toArray());
+        });
+        generation++;
+        attachedFleets--;
+        compactZonesIfNeeded();
+    }
+
+    /**
+     * Drops one partition's transition states for a deleted zone. Runs on that partition's thread as a
+     * control message broadcast by the {@link GeofencePipeline}.
+     */
+    public void forgetZone(int partition, long zoneId) {
+        partitions[partition].states.removeZone(zoneId);
+    }
+
+    /**
+     * Drops the states, schedule and motion of those devices that belong to the partition. Runs on that
+     * partition's thread as a control message broadcast by the {@link GeofencePipeline}.
+     */
+    public void forgetDevices(int partition, long[] deviceIds) {
+        DevicePartition target = partitions[partition];
+        for (long deviceId : deviceIds) {
+            if (partitionOf(deviceId) == partition) {
+                target.states.remove(deviceId);
+                target.schedule.remove(deviceId);
+                target.motion.remove(deviceId);
+            }
+        }
+    }
+
+    /**
+     * Visits every stored (non-outside) device-zone state across all partitions, e.g. for a snapshot.
+     */
+    public void forEachState(DeviceZoneStates.PairVisitor visitor) {
+        for (DevicePartition partition : partitions) {
+            partition.states.forEach(visitor);
+        }
+    }
+
+    /**
+     * Overwrites one device-zone state of a device in {@code partition} while restoring from a snapshot or
+     * the event log. Runs on that partition's thread as a control message broadcast by the
+     * {@link GeofencePipeline}.
+     */
+    public void restoreState(int partition, long deviceId, long zoneId, long packed) {
+        partitions[partition].states.update(deviceId, row -> row.set(zoneId, packed));
+    }
+
+    public int partitionCount() {
+        return partitions.length;
+    }
+
+    /**
+     * Partition owning the device's state; the same mapping routes the device's fixes in the pipeline.
+     */
+    public int partitionOf(long deviceId) {
+        return Math.floorMod(Long.hashCode(deviceId), partitions.length);
+    }
+
+    public ZoneTable getZoneTable() {
+        return zoneTable;
+    }
+
+    public DeviceZoneIndex getDeviceIndex() {
+        return deviceIndex;
+    }
+
+    public List<ZoneSnapshot> getZones() {
+        return zoneTable.activeZones();
+    }
+
+    /**
+     * Returns every zone whose circle contains the given point, using the spatial index so only
+     * zones registered in the point's grid cell are distance-checked.
+     */
+    public List<ZoneSnapshot> findZonesContaining(double latitude, double longitude) {
+        ZoneTable table = zoneTable;
+        List<ZoneSnapshot> containing = new ArrayList<>(2);
+        table.forEachContaining(latitude, longitude, slot -> containing.add(table.zone(slot)));
+        return containing;
+    }
+
+    public List<GeofenceEventDto> evaluate(LocationFixDto fix) {
+        List<GeofenceEventDto> transitions = new ArrayList<>(2);
+        evaluate(fix, transitions);
+        return transitions;
+    }
+
+    /**
+     * Evaluates a single fix and appends any resulting transitions to {@code transitions}.
+     */
+    public void evaluate(LocationFixDto fix, List<GeofenceEventDto> transitions) {
+        // Read the generation before the table so a concurrent change can only invalidate, never hide
+        int currentGeneration = generation;
+        long device = DeviceZoneIndex.parseDeviceId(fix.deviceId());
+        int layout;
+        ZoneTable layoutTable;
+        int[] layoutSlots;
+        do {
+            layout = slotLayout;
+            layoutTable = zoneTable;
+            layoutSlots = deviceIndex.slotsFor(device);
+        } while ((layout & 1) != 0 || layout != slotLayout);
+        ZoneTable table = layoutTable;
+        int[] assigned = layoutSlots;
+        if (assigned.length == 0) {
+            return;
+        }
+        Instant occurredAt = fix.timestamp() != null ? fix.timestamp() : Instant.now();
+        long atMillis = occurredAt.toEpochMilli();
+        DevicePartition partition = partitionFor(device);
+        EvaluationSchedule schedule = partition.schedule;
+        DeviceMotionTable motion = partition.motion;
+        if (scheduling.isEnabled()) {
+            double remaining = schedule.remainingMargin(
+                device, currentGeneration, atMillis, fix.latitude(), fix.longitude());
+            if (remaining != EvaluationSchedule.MUST_EVALUATE) {
+                skippedFixes.increment();
+                motion.record(device, fix.latitude(), fix.longitude(), atMillis, remaining);
+                return;
+            }
+        }
+        evaluatedFixes.increment();
+        double latRad = Math.toRadians(fix.latitude());
+        double lngRad = Math.toRadians(fix.longitude());
+
+        partition.states.update(device, row -> {
+            double margin = Double.MAX_VALUE;
+            for (int slot : assigned) {
+                if (!table.isActive(slot)) {
+                    continue;
+                }
+                long zoneId = table.id(slot);
+                ZoneSnapshot zone = table.zone(slot);
+                double distance = table.distanceMeters(slot, latRad, lngRad);
+                long current = row.get(zoneId);
+                int radius = table.radiusMeters(slot);
+                long next = transitionPolicy.next(current, distance, radius, atMillis);
+                margin = Math.min(margin, boundaryMargin(next, distance, radius));
+                if (next == current) {
+                    continue;
+                }
+                row.set(zoneId, next);
+                boolean wasInside = DeviceZoneStates.isInside(current);
+                boolean isInside = DeviceZoneStates.isInside(next);
+                if (isInside && !wasInside) {
+                    transitions.add(toEvent(zone, fix, ENTER, occurredAt));
+                } else if (!isInside && wasInside) {
+                    transitions.add(toEvent(zone, fix, EXIT, occurredAt));
+                }
+            }
+            if (scheduling.isEnabled()) {
+                scheduleNext(schedule, device, currentGeneration, fix, atMillis, margin);
+            }
+            motion.record(device, fix.latitude(), fix.longitude(), atMillis,
+                margin == Double.MAX_VALUE ? Double.POSITIVE_INFINITY : Math.max(0, margin));
+        });
+    }
+
+    /**
+     * Suggests when the device should report next: the time it needs at its current speed (floored at
+     * a walking pace) to cover a fraction of the distance to its nearest zone boundary, clamped to the
+     * configured range. Devices without zones get the longest interval, unseen ones the shortest.
+     */
+    public int recommendedReportSeconds(String deviceId) {
+        long device = DeviceZoneIndex.parseDeviceId(deviceId);
+        long minSeconds = reporting.getMinInterval().toSeconds();
+        long maxSeconds = reporting.getMaxInterval().toSeconds();
+        if (deviceIndex.slotsFor(device).length == 0) {
+            return (int) maxSeconds;
+        }
+        DeviceMotionTable motion = partitionFor(device).motion;
+        double margin = motion.marginMeters(device);
+        if (Double.isNaN(margin)) {
+            return (int) minSeconds;
+        }
+        double speed = Math.max(motion.speed(device), reporting.getMinSpeedMetersPerSecond());
+        double seconds = margin / speed * reporting.getSafetyFactor();
+        return (int) Math.max(minSeconds, Math.min(maxSeconds, seconds));
+    }
+
+    /**
+     * Whether the device is confirmed inside the zone (an exit may be pending dwell).
+     */
+    public boolean isInside(String deviceId, long zoneId) {
+        long device = DeviceZoneIndex.parseDeviceId(deviceId);
+        return device != DeviceZoneIndex.NO_DEVICE
+            && DeviceZoneStates.isInside(partitionFor(device).states.get(device, zoneId));
+    }
+
+    public TransitionPolicy getTransitionPolicy() {
+        return transitionPolicy;
+    }
+
+    public long getEvaluatedFixes() {
+        return evaluatedFixes.sum();
+    }
+
+    public long getSkippedFixes() {
+        return skippedFixes.sum();
+    }
+
+    /**
+     * Distance the device has to travel before the state for this zone can change: to the enter
+     * radius when outside, to the exit radius when inside, none while a transition is pending.
+     */
+    private double boundaryMargin(long state, double distanceMeters, int radiusMeters) {
+        return switch (DeviceZoneStates.stateOf(state)) {
+            case DeviceZoneStates.OUTSIDE -> distanceMeters - transitionPolicy.enterRadiusMeters(radiusMeters);
+            case DeviceZoneStates.INSIDE -> transitionPolicy.exitRadiusMeters(radiusMeters) - distanceMeters;
+            default -> 0;
+        };
+    }
+
+    private DevicePartition partitionFor(long deviceId) {
+        return partitions[partitionOf(deviceId)];
+    }
+
+    private void scheduleNext(EvaluationSchedule schedule, long device, int currentGeneration, LocationFixDto fix,
+                              long atMillis, double margin) {
+        if (margin <= 0 || margin == Double.MAX_VALUE) {
+            schedule.remove(device);
+            return;
+        }
+        long skipMillis = Math.min(scheduling.getMaxSkip().toMillis(),
+            (long) (margin / scheduling.getMaxSpeedMetersPerSecond() * 1000));
+        schedule.schedule(device, currentGeneration, fix.latitude(), fix.longitude(), margin, atMillis + skipMillis);
+    }
+
+    private GeofenceEventDto toEvent(ZoneSnapshot zone, LocationFixDto fix, String eventType, Instant occurredAt) {
+        return new GeofenceEventDto(
+            zone.id(),
+            zone.name(),
+            fix.deviceId(),
+            deviceLabels.labelOf(fix.deviceId()),
+            fix.latitude(),
+            fix.longitude(),
+            zone.radiusMeters(),
+            eventType,
+            occurredAt
+        );
+    }
+
+    /**
+     * One shard of per-device state.
+     */
+    private static final class DevicePartition {
+        final DeviceZoneStates states = new DeviceZoneStates();
+        final EvaluationSchedule schedule = new EvaluationSchedule();
+        final DeviceMotionTable motion = new DeviceMotionTable();
+    }
+
+    private static long[] assignedDevices(ZoneSnapshot zone, List<Long> linkedDeviceIds) {
+        LongStream fromZone = zone.deviceIds().stream().mapToLong(DeviceZoneIndex::parseDeviceId);
+        LongStream fromLinks = linkedDeviceIds.stream().mapToLong(Long::longValue);
+        return LongStream.concat(fromZone, fromLinks).toArray();
+    }
+}
@@ -0,0 +1,22 @@
+package com.maciejwasiak.locon.service;
+
+import com.maciejwasiak.locon.dto.GeofenceEventDto;
+
+import java.util.List;
+
+/**
+ * Receives geofence transitions produced by the engine. Implementations must not block:
+ * they are called on the ingestion path and should hand work off to their own threads.
+ */
+public interface GeofenceEventListener {
+
+    void onGeofenceEvents(List<GeofenceEventDto> events);
+
+    /**
+     * Whether this listener records events durably; durable listeners run in the persist stage of the
+     * {@link GeofencePipeline}, all others in the notify stage after it.
+     */
+    default boolean isDurable() {
+        return false;
+    }
+}
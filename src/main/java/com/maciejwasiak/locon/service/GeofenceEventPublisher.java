@@ -0,0 +1,52 @@
+package com.maciejwasiak.locon.service;
+
+import com.maciejwasiak.locon.dto.GeofenceEventDto;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Fans geofence transitions out to every registered {@link GeofenceEventListener}.
+ * A failing listener is logged and skipped so it cannot break ingestion or the other listeners.
+ * Durable listeners are always called before notifying ones, and the two groups can be published to
+ * separately by pipeline stages.
+ */
+@Service
+@Slf4j
+public class GeofenceEventPublisher {
+
+    private final List<GeofenceEventListener> durableListeners;
+    private final List<GeofenceEventListener> notifyingListeners;
+
+    public GeofenceEventPublisher(List<GeofenceEventListener> listeners) {
+        this.durableListeners = listeners.stream().filter(GeofenceEventListener::isDurable).toList();
+        this.notifyingListeners = listeners.stream().filter(listener -> !listener.isDurable()).toList();
+    }
+
+    public void publish(List<GeofenceEventDto> events) {
+        publishDurable(events);
+        publishNotifications(events);
+    }
+
+    public void publishDurable(List<GeofenceEventDto> events) {
+        publish(durableListeners, events);
+    }
+
+    public void publishNotifications(List<GeofenceEventDto> events) {
+        publish(notifyingListeners, events);
+    }
+
+    private static void publish(List<GeofenceEventListener> listeners, List<GeofenceEventDto> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        for (GeofenceEventListener listener : listeners) {
+            try {
+                listener.onGeofenceEvents(events);
+            } catch (RuntimeException e) {
+                log.error("Geofence listener {} failed for {} events", listener.getClass().getSimpleName(), events.size(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.maciejwasiak.locon.service;
+
+import com.maciejwasiak.locon.config.GeofenceProperties;
+import com.maciejwasiak.locon.dto.GeofenceEventDto;
+import com.maciejwasiak.locon.geofence.GeofenceEventCodec;
+import com.maciejwasiak.locon.geofence.GeofenceEventIndex;
+import com.maciejwasiak.locon.geofence.GeofenceEventLog;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Durable history of geofence transitions, backed by the memory-mapped {@link GeofenceEventLog}.
+ * <p>
+ * A {@link GeofenceEventIndex} is caught up after every append, so history queries only touch the
+ * records (or time blocks) that can match. On startup it is loaded from its checkpoint and only
+ * caught up with the records appended since; without a usable checkpoint it is rebuilt from the log.
+ * <p>
+ * A background task deletes segments whose transitions are all older than {@code retention}, trims
+ * the index to match and checkpoints it. Device states entered before the retention survive in the
+ * {@link GeofenceStateStore} snapshot, not in the log.
+ */
+@Service
+@Slf4j
+public class GeofenceEventStore implements GeofenceEventListener {
+
+    private static final String INDEX_CHECKPOINT = "index.checkpoint";
+
+    private final GeofenceProperties.EventLog properties;
+    private final GeofenceEventLog eventLog;
+    private final GeofenceEventIndex index;
+    private final Path indexCheckpoint;
+    private final boolean forceOnAppend;
+    private ScheduledExecutorService scheduler;
+
+    public GeofenceEventStore(GeofenceProperties properties) {
+        GeofenceProperties.EventLog config = properties.getEventLog();
+        this.properties = config;
+        this.eventLog = GeofenceEventLog.open(Path.of(config.getDirectory()), config.getSegmentSizeBytes());
+        this.forceOnAppend = config.isForceOnAppend();
+        this.indexCheckpoint = Path.of(config.getDirectory()).resolve(INDEX_CHECKPOINT);
+        this.index = loadIndex();
+        long checkpointed = index.indexedOffset();
+        index.trimBefore(eventLog.firstOffset());
+        index.catchUp(eventLog);
+        log.info("Geofence event log opened at {} (write offset {}, {} events indexed, caught up from offset {})",
+            config.getDirectory(), eventLog.writeOffset(), index.recordCount(), checkpointed);
+    }
+
+    private GeofenceEventIndex loadIndex() {
+        if (!Files.exists(indexCheckpoint)) {
+            return new GeofenceEventIndex();
+        }
+        try {
+            GeofenceEventIndex loaded = GeofenceEventIndex.read(indexCheckpoint);
+            if (loaded.indexedOffset() <= eventLog.writeOffset()) {
+                return loaded;
+            }
+            log.warn("Geofence event index checkpoint is ahead of the log (offset {} > {}), rebuilding the index",
+                loaded.indexedOffset(), eventLog.writeOffset());
+        } catch (IllegalStateException e) {
+            log.warn("Ignoring geofence event index checkpoint, rebuilding the index from the log", e);
+        }
+        return new GeofenceEventIndex();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        long intervalMillis = properties.getPurgeInterval().toMillis();
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "geofence-event-log");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::purgeQuietly, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Deletes log segments whose transitions are all older than the retention and drops their index
+     * entries.
+     *
+     * @return the number of segments deleted
+     */
+    public int purgeExpired() {
+        int purged = eventLog.purgeBefore(System.currentTimeMillis() - properties.getRetention().toMillis());
+        if (purged > 0) {
+            index.trimBefore(eventLog.firstOffset());
+            log.info("Deleted {} expired geofence event log segments, log now starts at offset {}",
+                purged, eventLog.firstOffset());
+        }
+        return purged;
+    }
+
+    /**
+     * Writes the index checkpoint so the next startup only indexes records appended after it.
+     */
+    public void checkpointIndex() {
+        index.checkpoint(indexCheckpoint);
+    }
+
+    @Override
+    public boolean isDurable() {
+        return true;
+    }
+
+    @Override
+    public void onGeofenceEvents(List<GeofenceEventDto> events) {
+        eventLog.append(events);
+        if (forceOnAppend) {
+            eventLog.flush();
+        }
+        index.catchUp(eventLog);
+    }
+
+    /**
+     * Streams stored events matching the filters, in append order. Any filter may be {@code null};
+     * the time range is inclusive. A {@code null} scope leaves the query unrestricted.
+     *
+     * @return the number of events passed to the consumer
+     */
+    public int history(String deviceId, Long zoneId, Instant from, Instant to, int limit, Scope scope,
+                       Consumer<GeofenceEventDto> consumer) {
+        long fromMillis = from != null ? from.toEpochMilli() : Long.MIN_VALUE;
+        long toMillis = to != null ? to.toEpochMilli() : Long.MAX_VALUE;
+        int[] emitted = { 0 };
+        GeofenceEventLog.RecordVisitor matcher = (offset, buffer, position) -> {
+            long occurredAt = GeofenceEventCodec.occurredAtMillis(buffer, position);
+            if (occurredAt < fromMillis || occurredAt > toMillis) {
+                return true;
+            }
+            if (zoneId != null && GeofenceEventCodec.zoneId(buffer, position) != zoneId) {
+                return true;
+            }
+            if (deviceId != null || scope != null) {
+                String recordDevice = GeofenceEventCodec.deviceId(buffer, position);
+                if (deviceId != null && !deviceId.equals(recordDevice)) {
+                    return true;
+                }
+                if (scope != null && !scope.includes(recordDevice, GeofenceEventCodec.zoneId(buffer, position))) {
+                    return true;
+                }
+            }
+            consumer.accept(GeofenceEventCodec.decode(buffer, position));
+            return ++emitted[0] < limit;
+        };
+
+        long[] offsets = index.candidates(deviceId, zoneId, fromMillis, toMillis);
+        if (offsets == null && scope != null) {
+            offsets = index.candidatesOf(scope.deviceIds(), scope.zoneIds(), fromMillis, toMillis);
+        }
+        if (offsets != null) {
+            long firstOffset = eventLog.firstOffset();
+            for (long offset : offsets) {
+                if (emitted[0] >= limit) {
+                    break;
+                }
+                if (offset < firstOffset) {
+                    continue;
+                }
+                eventLog.read(offset, (recordOffset, buffer, position) -> {
+                    matcher.visit(recordOffset, buffer, position);
+                    return false;
+                });
+            }
+        } else {
+            for (long[] range : index.blockRanges(fromMillis, toMillis)) {
+                if (emitted[0] >= limit) {
+                    break;
+                }
+                long end = range[1];
+                eventLog.read(range[0], (offset, buffer, position) ->
+                    offset < end && matcher.visit(offset, buffer, position));
+            }
+        }
+        return emitted[0];
+    }
+
+    /**
+     * Replays stored events in append order starting at {@code fromOffset}.
+     *
+     * @return the offset to resume from
+     */
+    public long replay(long fromOffset, GeofenceEventLog.EventConsumer consumer) {
+        return eventLog.replay(fromOffset, consumer);
+    }
+
+    public GeofenceEventLog getEventLog() {
+        return eventLog;
+    }
+
+    /**
+     * Restricts a history query to the transitions of some devices or in some zones, typically those
+     * owned by the requesting user.
+     */
+    public record Scope(Set<String> deviceIds, Set<Long> zoneIds) {
+
+        boolean includes(String deviceId, long zoneId) {
+            return deviceIds.contains(deviceId) || zoneIds.contains(zoneId);
+        }
+    }
+
+    private void purgeQuietly() {
+        try {
+            purgeExpired();
+        } catch (RuntimeException e) {
+            log.error("Failed to purge expired geofence event log segments", e);
+        }
+        checkpointQuietly();
+    }
+
+    private void checkpointQuietly() {
+        try {
+            checkpointIndex();
+        } catch (RuntimeException e) {
+            log.error("Failed to write geofence event index checkpoint", e);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        checkpointQuietly();
+        eventLog.close();
+        log.info("Geofence event log closed at offset {}", eventLog.writeOffset());
+    }
+}
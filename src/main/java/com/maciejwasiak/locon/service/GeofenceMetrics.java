@@ -0,0 +1,126 @@
+package com.maciejwasiak.locon.service;
+
+import com.maciejwasiak.locon.geofence.LatencySlo;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes geofencing pipeline counters to Micrometer (and so to {@code /actuator/metrics}).
+ */
+@Component
+@RequiredArgsConstructor
+public class GeofenceMetrics implements MeterBinder {
+
+    private final GeofenceEngine geofenceEngine;
+    private final GeofencePipeline pipeline;
+    private final NotificationDispatcher notificationDispatcher;
+    private final DeviceTrackStore trackStore;
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("geofence.fixes", geofenceEngine, GeofenceEngine::getEvaluatedFixes)
+            .description("Location fixes evaluated against the device's zones")
+            .tag("result", "evaluated")
+            .register(registry);
+        FunctionCounter.builder("geofence.fixes", geofenceEngine, GeofenceEngine::getSkippedFixes)
+            .description("Location fixes accepted without evaluation because no boundary was reachable")
+            .tag("result", "skipped")
+            .register(registry);
+        Gauge.builder("geofence.pipeline.backlog", pipeline, GeofencePipeline::getBacklog)
+            .description("Fixes accepted by the ingestion ring but not yet through every stage")
+            .register(registry);
+        FunctionCounter.builder("geofence.pipeline.fixes", pipeline, GeofencePipeline::getAcceptedFixes)
+            .description("Fixes published into the ingestion ring")
+            .tag("result", "accepted")
+            .register(registry);
+        FunctionCounter.builder("geofence.pipeline.fixes", pipeline, GeofencePipeline::getRejectedFixes)
+            .description("Fixes shed because the ingestion pipeline was saturated")
+            .tag("result", "rejected")
+            .register(registry);
+        FunctionCounter.builder("geofence.pipeline.shed", pipeline, GeofencePipeline::getShedRoutineFixes)
+            .description("Routine fixes shed by admission control")
+            .tag("priority", "routine")
+            .register(registry);
+        FunctionCounter.builder("geofence.pipeline.shed", pipeline, GeofencePipeline::getShedSosFixes)
+            .description("SOS fixes shed because the ingestion ring was physically full")
+            .tag("priority", "sos")
+            .register(registry);
+        for (int partition = 0; partition < pipeline.partitionCount(); partition++) {
+            int index = partition;
+            Gauge.builder("geofence.pipeline.queue.depth", pipeline, p -> p.getQueueDepth(index))
+                .description("Fixes queued for a device partition's evaluation thread")
+                .tag("partition", Integer.toString(partition))
+                .register(registry);
+        }
+        FunctionCounter.builder("geofence.notifications", notificationDispatcher, NotificationDispatcher::getSentEvents)
+            .description("Transitions delivered to a recipient through the notification sender")
+            .tag("result", "sent")
+            .register(registry);
+        FunctionCounter.builder("geofence.notifications", notificationDispatcher, NotificationDispatcher::getFailedEvents)
+            .description("Transitions whose delivery failed in the notification sender")
+            .tag("result", "failed")
+            .register(registry);
+        FunctionCounter.builder("geofence.notifications", notificationDispatcher, NotificationDispatcher::getDroppedEvents)
+            .description("Transitions dropped because the notification queue was full")
+            .tag("result", "dropped")
+            .register(registry);
+        FunctionCounter.builder("geofence.notifications", notificationDispatcher, NotificationDispatcher::getUnroutedEvents)
+            .description("Transitions without recipients (notifications disabled or no assignment)")
+            .tag("result", "unrouted")
+            .register(registry);
+        FunctionCounter.builder("geofence.notifications.digests", notificationDispatcher,
+                NotificationDispatcher::getSentNotifications)
+            .description("Notifications handed to the sender, each carrying one recipient's digest")
+            .register(registry);
+        FunctionCounter.builder("geofence.notifications.coalesced", notificationDispatcher,
+                NotificationDispatcher::getCoalescedEvents)
+            .description("Transitions folded into a later one for the same device and zone within a digest")
+            .register(registry);
+        FunctionCounter.builder("geofence.tracks.fixes", trackStore, DeviceTrackStore::getRecordedFixes)
+            .description("Fixes appended to device tracks")
+            .register(registry);
+        FunctionCounter.builder("geofence.tracks.bytes", trackStore, DeviceTrackStore::getWrittenBytes)
+            .baseUnit("bytes")
+            .description("Compressed track bytes written to the day files")
+            .register(registry);
+        Gauge.builder("geofence.sos.pending", pipeline, GeofencePipeline::getSosPending)
+            .description("SOS fixes accepted by the priority lane but not yet published")
+            .register(registry);
+        bindSlo(registry, "evaluation", pipeline.getSosLatency());
+        bindSlo(registry, "notification", notificationDispatcher.getSosLatency());
+        Gauge.builder("geofence.fixes.skip.ratio", geofenceEngine, GeofenceMetrics::skipRatio)
+            .description("Share of fixes skipped by time-to-boundary scheduling")
+            .register(registry);
+    }
+
+    private static void bindSlo(MeterRegistry registry, String stage, LatencySlo slo) {
+        FunctionTimer.builder("geofence.sos.latency", slo, LatencySlo::getCount, LatencySlo::getTotalNanos,
+                TimeUnit.NANOSECONDS)
+            .description("Latency of the SOS priority lane")
+            .tag("stage", stage)
+            .register(registry);
+        FunctionCounter.builder("geofence.sos.slo", slo, LatencySlo::getMet)
+            .description("SOS lane operations within their latency objective")
+            .tag("stage", stage)
+            .tag("result", "met")
+            .register(registry);
+        FunctionCounter.builder("geofence.sos.slo", slo, LatencySlo::getMissed)
+            .description("SOS lane operations slower than their latency objective")
+            .tag("stage", stage)
+            .tag("result", "missed")
+            .register(registry);
+    }
+
+    private static double skipRatio(GeofenceEngine engine) {
+        long skipped = engine.getSkippedFixes();
+        long total = skipped + engine.getEvaluatedFixes();
+        return total == 0 ? 0 : (double) skipped / total;
+    }
+}
@@ -0,0 +1,692 @@
+package com.maciejwasiak.locon.service;
+
+import com.maciejwasiak.locon.config.GeofenceProperties;
+import com.maciejwasiak.locon.dto.GeofenceEventDto;
+import com.maciejwasiak.locon.dto.LocationFixDto;
+import com.maciejwasiak.locon.geofence.DeviceZoneIndex;
+import com.maciejwasiak.locon.geofence.LatencySlo;
+import com.maciejwasiak.locon.geofence.RingBuffer;
+import com.maciejwasiak.locon.geofence.RingStage;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * Asynchronous ingestion path: request threads copy fixes into preallocated {@link RingBuffer} slots and
+ * return, while dedicated consumer threads run the stages
+ * <ol>
+ *   <li><b>decode</b> - stamps the receive time on fixes without one, records each device's last known
+ *       location in the {@link DeviceLocationStore} and its track in the {@link DeviceTrackStore}, and
+ *       marks devices without zones so later stages can pass over them;</li>
+ *   <li><b>evaluate</b> - one consumer per {@link GeofenceEngine} device partition. Each is the only
+ *       writer of its partition's state, so a device's fixes are evaluated in order and evaluation
+ *       threads never contend;</li>
+ *   <li><b>persist</b> - hands each batch of transitions to the durable listeners (the event log);</li>
+ *   <li><b>notify</b> - fans the same transitions out to the remaining listeners (SSE, ...).</li>
+ * </ol>
+ * Slots are reused, so steady-state ingestion allocates only the transitions it produces.
+ * <p>
+ * Fixes of {@link FleetSimulator} devices are evaluated like any other, and their transitions are
+ * returned to the submitter, but they are not recorded in the location or track stores and their
+ * transitions are never published.
+ * <p>
+ * Operations touching every partition, such as dropping the states of a deleted zone, are published as
+ * control slots that each evaluation thread runs against its own partition, in order with the fixes.
+ * <p>
+ * Fixes of SOS devices ({@link DevicePriorities}) skip the ring and take a low-latency lane: they are
+ * queued in a per-partition inbox that the partition's evaluation thread drains before its next ring
+ * slot (or as soon as it is idle), so they never wait behind routine backlog while their device state
+ * keeps a single writer. Their transitions are then persisted and published one fix at a time on a
+ * dedicated {@code geofence-sos} thread instead of in stage batches, and the time from receipt to
+ * publication is measured against {@code locon.geofence.priority.evaluation-slo}.
+ * <p>
+ * Admission is bounded: {@link #offer(List, boolean)} sheds routine fixes once their partition holds
+ * {@code partitionCapacity} queued fixes or the ring is full up to the {@code sosReserve}. SOS fixes are
+ * only shed when as many fixes as that reserve are already pending in their lane. The limits are
+ * checked before claiming, so concurrent producers can overshoot them by at most one batch each; the
+ * ring itself is the hard bound.
+ */
+@Service
+@Slf4j
+public class GeofencePipeline {
+
+    private final GeofenceEngine geofenceEngine;
+    private final GeofenceEventPublisher eventPublisher;
+    private final DevicePriorities priorities;
+    private final DeviceLocationStore locations;
+    private final DeviceTrackStore tracks;
+    private final GeofenceProperties.Pipeline properties;
+    private final RingBuffer<FixSlot> ring;
+    private final List<RingStage<FixSlot>> stages = new ArrayList<>();
+    private final List<Thread> threads = new ArrayList<>();
+    private final RingStage<FixSlot> notifyStage;
+    private final AtomicLongArray queued;
+    private final int routineLimit;
+    private final int sosCapacity;
+    private final ConcurrentLinkedQueue<PriorityFix>[] inboxes;
+    private final AtomicInteger sosPending = new AtomicInteger();
+    private final ExecutorService sosLane;
+    private final LatencySlo sosLatency;
+    private final LongAdder acceptedFixes = new LongAdder();
+    private final LongAdder shedRoutineFixes = new LongAdder();
+    private final LongAdder shedSosFixes = new LongAdder();
+    private volatile boolean accepting = true;
+
+    @SuppressWarnings("unchecked")
+    public GeofencePipeline(GeofenceEngine geofenceEngine, GeofenceEventPublisher eventPublisher,
+                            DevicePriorities priorities, DeviceLocationStore locations,
+                            DeviceTrackStore tracks, GeofenceProperties properties) {
+        this.geofenceEngine = geofenceEngine;
+        this.eventPublisher = eventPublisher;
+        this.priorities = priorities;
+        this.locations = locations;
+        this.tracks = tracks;
+        this.properties = properties.getPipeline();
+        this.ring = new RingBuffer<>(this.properties.getRingSize(), FixSlot::new);
+        this.routineLimit = ring.size() - (int) Math.ceil(ring.size() * this.properties.getSosReserve());
+        this.sosCapacity = Math.max(1, ring.size() - routineLimit);
+        this.sosLatency = new LatencySlo(properties.getPriority().getEvaluationSlo());
+        this.sosLane = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "geofence-sos");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        RingStage<FixSlot> decode = stage("decode", new RingStage<>(ring, this::decode));
+        int partitions = Math.max(1, geofenceEngine.partitionCount());
+        this.queued = new AtomicLongArray(partitions);
+        this.inboxes = new ConcurrentLinkedQueue[partitions];
+        for (int partition = 0; partition < partitions; partition++) {
+            inboxes[partition] = new ConcurrentLinkedQueue<>();
+        }
+        RingBuffer.Sequence[] evaluated = new RingBuffer.Sequence[partitions];
+        for (int partition = 0; partition < partitions; partition++) {
+            RingStage<FixSlot> evaluate = stage("evaluate-" + partition,
+                new RingStage<>(ring, new EvaluateHandler(partition), decode.sequence()));
+            evaluated[partition] = evaluate.sequence();
+        }
+        RingStage<FixSlot> persist = stage("persist",
+            new RingStage<>(ring, new TransitionsHandler(eventPublisher::publishDurable, false), evaluated));
+        this.notifyStage = stage("notify", new RingStage<>(ring,
+            new TransitionsHandler(eventPublisher::publishNotifications, true), persist.sequence()));
+        ring.setGatingSequences(notifyStage.sequence());
+    }
+
+    @PostConstruct
+    public void start() {
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        log.info("Geofence pipeline started: {} slots, {} stage threads", ring.size(), threads.size());
+    }
+
+    /**
+     * Publishes the fixes for asynchronous evaluation, shedding under load as described in
+     * {@link #offer(List, boolean)}.
+     *
+     * @return {@code false} if any fix was shed
+     */
+    public boolean tryPublish(List<LocationFixDto> fixes) {
+        return offer(fixes, false).isComplete();
+    }
+
+    /**
+     * Publishes the fixes unless the pipeline is saturated. Routine fixes are admitted or shed together,
+     * and so are SOS fixes, independently of them; a shed batch may still have its SOS fixes accepted.
+     *
+     * @param track whether the admission should carry a future of the accepted fixes' transitions
+     */
+    public Admission offer(List<LocationFixDto> fixes, boolean track) {
+        int[] routinePerPartition = new int[queued.length()];
+        boolean[] sos = new boolean[fixes.size()];
+        int sosCount = 0;
+        for (int i = 0; i < fixes.size(); i++) {
+            long device = DeviceZoneIndex.parseDeviceId(fixes.get(i).deviceId());
+            if (priorities.isSos(device)) {
+                sos[i] = true;
+                sosCount++;
+            } else {
+                routinePerPartition[geofenceEngine.partitionOf(device)]++;
+            }
+        }
+        int routine = fixes.size() - sosCount;
+        long high = routine > 0 && accepting && hasRoutineRoom(routine, routinePerPartition)
+            ? ring.tryClaim(routine)
+            : -1;
+        boolean routineAdmitted = high >= 0;
+        boolean sosAdmitted = sosCount > 0 && accepting && reserveLane(sosCount);
+        if (!routineAdmitted) {
+            shedRoutineFixes.add(routine);
+        }
+        if (!sosAdmitted) {
+            shedSosFixes.add(sosCount);
+        }
+
+        List<LocationFixDto> admitted = new ArrayList<>(fixes.size());
+        int[] routineIndexes = new int[routineAdmitted ? routine : 0];
+        int[] sosIndexes = new int[sosAdmitted ? sosCount : 0];
+        for (int i = 0, r = 0, p = 0; i < fixes.size(); i++) {
+            if (sos[i] ? sosAdmitted : routineAdmitted) {
+                if (sos[i]) {
+                    sosIndexes[p++] = admitted.size();
+                } else {
+                    routineIndexes[r++] = admitted.size();
+                }
+                admitted.add(fixes.get(i));
+            }
+        }
+        Completion completion = track ? new Completion(admitted.size()) : null;
+        if (admitted.isEmpty() && completion != null) {
+            completion.future.complete(List.of());
+        }
+        for (int index : sosIndexes) {
+            toLane(admitted.get(index), index, completion);
+        }
+        if (routineAdmitted) {
+            fill(high - routine + 1, admitted, routineIndexes, 0, routine, completion);
+        }
+        acceptedFixes.add(admitted.size());
+        return new Admission(admitted.size(), fixes.size() - admitted.size(),
+            completion != null ? completion.future : null);
+    }
+
+    /**
+     * Publishes the fixes and returns their transitions, in fix order, once they have been persisted and
+     * handed to the notification listeners. Waits for ring (or SOS lane) space instead of rejecting;
+     * routine fixes beyond the ring size are published in ring-sized chunks.
+     */
+    public CompletableFuture<List<GeofenceEventDto>> submit(List<LocationFixDto> fixes) {
+        Completion completion = new Completion(fixes.size());
+        if (fixes.isEmpty()) {
+            completion.future.complete(List.of());
+            return completion.future;
+        }
+        int[] routineIndexes = new int[fixes.size()];
+        int routine = 0;
+        for (int i = 0; i < fixes.size(); i++) {
+            if (priorities.isSos(DeviceZoneIndex.parseDeviceId(fixes.get(i).deviceId()))) {
+                while (!reserveLane(1)) {
+                    ensureAccepting();
+                    LockSupport.parkNanos(50_000);
+                }
+                toLane(fixes.get(i), i, completion);
+            } else {
+                routineIndexes[routine++] = i;
+            }
+        }
+        for (int from = 0; from < routine; ) {
+            int count = Math.min(routine - from, ring.size());
+            long high = claim(count);
+            fill(high - count + 1, fixes, routineIndexes, from, count, completion);
+            from += count;
+        }
+        acceptedFixes.add(fixes.size());
+        return completion.future;
+    }
+
+    /**
+     * Runs {@code action} once on every evaluation thread, with that thread's partition index, after
+     * all fixes published before it.
+     */
+    public void broadcast(IntConsumer action) {
+        long sequence = claim(1);
+        FixSlot slot = ring.get(sequence);
+        slot.reset();
+        slot.control = action;
+        ring.publish(sequence, sequence);
+    }
+
+    /**
+     * Like {@link #broadcast(IntConsumer)}, but returns only once every evaluation thread has run the action.
+     */
+    public void broadcastAndWait(IntConsumer action) {
+        CountDownLatch done = new CountDownLatch(partitionCount());
+        broadcast(partition -> {
+            try {
+                action.accept(partition);
+            } finally {
+                done.countDown();
+            }
+        });
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the geofence partitions", e);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onZoneChanged(ZoneChangedEvent event) {
+        if (event.changeType() == ZoneChangedEvent.ChangeType.DELETED) {
+            long zoneId = event.zoneId();
+            broadcast(partition -> geofenceEngine.forgetZone(partition, zoneId));
+        }
+    }
+
+    /**
+     * Fixes accepted but not yet through the notify stage or the SOS lane.
+     */
+    public long getBacklog() {
+        return ring.backlog() + sosPending.get();
+    }
+
+    /**
+     * SOS fixes accepted but not yet evaluated and published.
+     */
+    public int getSosPending() {
+        return sosPending.get();
+    }
+
+    public LatencySlo getSosLatency() {
+        return sosLatency;
+    }
+
+    public int partitionCount() {
+        return queued.length();
+    }
+
+    /**
+     * Fixes routed to the partition that its evaluation thread has not taken yet.
+     */
+    public long getQueueDepth(int partition) {
+        return queued.get(partition);
+    }
+
+    public long getAcceptedFixes() {
+        return acceptedFixes.sum();
+    }
+
+    public long getRejectedFixes() {
+        return shedRoutineFixes.sum() + shedSosFixes.sum();
+    }
+
+    public long getShedRoutineFixes() {
+        return shedRoutineFixes.sum();
+    }
+
+    public long getShedSosFixes() {
+        return shedSosFixes.sum();
+    }
+
+    public Duration getRetryAfter() {
+        return properties.getRetryAfter();
+    }
+
+    @PreDestroy
+    public void stop() {
+        accepting = false;
+        long deadline = System.nanoTime() + properties.getDrainTimeout().toNanos();
+        while ((notifyStage.sequence().get() < ring.claimedSequence() || sosPending.get() > 0)
+                && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(1_000_000);
+        }
+        stages.forEach(RingStage::halt);
+        sosLane.shutdown();
+        try {
+            sosLane.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        long undelivered = ring.claimedSequence() - notifyStage.sequence().get();
+        IllegalStateException stopped = new IllegalStateException("Geofence pipeline stopped before evaluating fix");
+        for (long sequence = notifyStage.sequence().get() + 1; sequence <= ring.claimedSequence(); sequence++) {
+            Completion completion = ring.get(sequence).completion;
+            if (completion != null) {
+                completion.future.completeExceptionally(stopped);
+            }
+        }
+        for (ConcurrentLinkedQueue<PriorityFix> inbox : inboxes) {
+            for (PriorityFix sos = inbox.poll(); sos != null; sos = inbox.poll()) {
+                undelivered++;
+                if (sos.completion != null) {
+                    sos.completion.future.completeExceptionally(stopped);
+                }
+            }
+        }
+        if (undelivered > 0) {
+            log.warn("Geofence pipeline stopped with {} fixes not fully processed", undelivered);
+        } else {
+            log.info("Geofence pipeline stopped after draining");
+        }
+    }
+
+    private boolean hasRoutineRoom(int routine, int[] routinePerPartition) {
+        if (ring.backlog() + routine > routineLimit) {
+            return false;
+        }
+        for (int partition = 0; partition < routinePerPartition.length; partition++) {
+            int count = routinePerPartition[partition];
+            if (count > 0 && queued.get(partition) + count > properties.getPartitionCapacity()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void ensureAccepting() {
+        if (!accepting) {
+            throw new IllegalStateException("Geofence pipeline is stopped");
+        }
+    }
+
+    private long claim(int count) {
+        while (true) {
+            ensureAccepting();
+            long high = ring.tryClaim(count);
+            if (high >= 0) {
+                return high;
+            }
+            LockSupport.parkNanos(50_000);
+        }
+    }
+
+    /**
+     * Reserves room for {@code count} fixes in the SOS lane.
+     */
+    private boolean reserveLane(int count) {
+        while (true) {
+            int pending = sosPending.get();
+            if (pending + count > sosCapacity) {
+                return false;
+            }
+            if (sosPending.compareAndSet(pending, pending + count)) {
+                return true;
+            }
+        }
+    }
+
+    private void toLane(LocationFixDto fix, int index, Completion completion) {
+        long receivedAtNanos = System.nanoTime();
+        if (fix.timestamp() == null) {
+            fix = new LocationFixDto(fix.deviceId(), fix.latitude(), fix.longitude(), Instant.now(), fix.accuracy());
+        }
+        locations.record(fix);
+        tracks.record(fix);
+        long device = DeviceZoneIndex.parseDeviceId(fix.deviceId());
+        inboxes[geofenceEngine.partitionOf(device)].add(new PriorityFix(fix, device, receivedAtNanos, completion, index));
+        ring.signalAll();
+    }
+
+    /**
+     * Persists and publishes one SOS fix's transitions on the lane thread.
+     */
+    private void publishPriority(PriorityFix sos) {
+        try {
+            if (!sos.transitions.isEmpty()) {
+                List<GeofenceEventDto> transitions = List.copyOf(sos.transitions);
+                eventPublisher.publishDurable(transitions);
+                eventPublisher.publishNotifications(transitions);
+            }
+        } finally {
+            sosPending.decrementAndGet();
+            sosLatency.record(System.nanoTime() - sos.receivedAtNanos);
+            if (sos.completion != null && sos.completion.record(sos.index, sos.transitions)) {
+                sos.completion.complete();
+            }
+        }
+    }
+
+    /**
+     * Fills the claimed range with {@code fixes[indexes[from]]...}; each fix's index also locates its
+     * result in the completion.
+     */
+    private void fill(long low, List<LocationFixDto> fixes, int[] indexes, int from, int count,
+                      Completion completion) {
+        long receivedAt = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            int index = indexes[from + i];
+            FixSlot slot = ring.get(low + i);
+            slot.reset();
+            slot.fix = fixes.get(index);
+            slot.receivedAtMillis = receivedAt;
+            slot.device = DeviceZoneIndex.parseDeviceId(slot.fix.deviceId());
+            slot.simulated = FleetSimulator.isVirtual(slot.device);
+            slot.partition = geofenceEngine.partitionOf(slot.device);
+            queued.incrementAndGet(slot.partition);
+            slot.completion = completion;
+            slot.index = index;
+        }
+        ring.publish(low, low + count - 1);
+    }
+
+    private RingStage<FixSlot> stage(String name, RingStage<FixSlot> stage) {
+        Thread thread = new Thread(stage, "geofence-" + name);
+        thread.setDaemon(true);
+        stages.add(stage);
+        threads.add(thread);
+        return stage;
+    }
+
+    private void decode(FixSlot slot, long sequence, boolean endOfBatch) {
+        if (slot.control != null) {
+            return;
+        }
+        LocationFixDto fix = slot.fix;
+        if (fix.timestamp() == null) {
+            fix = new LocationFixDto(fix.deviceId(), fix.latitude(), fix.longitude(),
+                Instant.ofEpochMilli(slot.receivedAtMillis), fix.accuracy());
+            slot.fix = fix;
+        }
+        if (!slot.simulated) {
+            locations.record(fix);
+            tracks.record(fix);
+        }
+        slot.assigned = geofenceEngine.getDeviceIndex().slotsFor(slot.device).length > 0;
+    }
+
+    /**
+     * Outcome of {@link #offer(List, boolean)}.
+     *
+     * @param transitions transitions of the accepted fixes once persisted, if tracking was requested
+     */
+    public record Admission(int accepted, int shed, CompletableFuture<List<GeofenceEventDto>> transitions) {
+
+        public boolean isComplete() {
+            return shed == 0;
+        }
+    }
+
+    /**
+     * Mutable event slot; owned by exactly one stage at a time.
+     */
+    static final class FixSlot {
+        LocationFixDto fix;
+        IntConsumer control;
+        long receivedAtMillis;
+        long device;
+        int partition;
+        boolean assigned;
+        boolean simulated;
+        Completion completion;
+        int index;
+        final List<GeofenceEventDto> transitions = new ArrayList<>(2);
+
+        void reset() {
+            fix = null;
+            control = null;
+            completion = null;
+            transitions.clear();
+        }
+    }
+
+    /**
+     * An SOS fix in its lane; written by the partition's evaluation thread, then by the lane thread.
+     */
+    private static final class PriorityFix {
+        final LocationFixDto fix;
+        final long device;
+        final long receivedAtNanos;
+        final Completion completion;
+        final int index;
+        final List<GeofenceEventDto> transitions = new ArrayList<>(2);
+
+        PriorityFix(LocationFixDto fix, long device, long receivedAtNanos, Completion completion, int index) {
+            this.fix = fix;
+            this.device = device;
+            this.receivedAtNanos = receivedAtNanos;
+            this.completion = completion;
+            this.index = index;
+        }
+    }
+
+    /**
+     * Results of one submission, recorded by the notify thread and the SOS lane; whichever records the
+     * last fix completes it.
+     */
+    private static final class Completion {
+        final CompletableFuture<List<GeofenceEventDto>> future = new CompletableFuture<>();
+        final List<?>[] results;
+        int remaining;
+
+        Completion(int size) {
+            this.results = new List<?>[size];
+            this.remaining = size;
+        }
+
+        /**
+         * @return {@code true} once every fix of the submission has been recorded
+         */
+        synchronized boolean record(int index, List<GeofenceEventDto> transitions) {
+            results[index] = transitions.isEmpty() ? List.of() : List.copyOf(transitions);
+            return --remaining == 0;
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized void complete() {
+            List<GeofenceEventDto> transitions = new ArrayList<>();
+            for (List<?> result : results) {
+                transitions.addAll((List<GeofenceEventDto>) result);
+            }
+            future.complete(transitions);
+        }
+    }
+
+    private final class EvaluateHandler implements RingStage.Handler<FixSlot> {
+
+        private final int partition;
+
+        EvaluateHandler(int partition) {
+            this.partition = partition;
+        }
+
+        @Override
+        public void onEvent(FixSlot slot, long sequence, boolean endOfBatch) {
+            evaluatePriority();
+            if (slot.control != null) {
+                slot.control.accept(partition);
+            } else if (slot.partition == partition) {
+                queued.decrementAndGet(partition);
+                if (slot.assigned) {
+                    geofenceEngine.evaluate(slot.fix, slot.transitions);
+                }
+            }
+        }
+
+        @Override
+        public void onIdle() {
+            evaluatePriority();
+        }
+
+        @Override
+        public boolean hasIdleWork() {
+            return !inboxes[partition].isEmpty();
+        }
+
+        @Override
+        public void onFailure(FixSlot slot, RuntimeException failure) {
+            if (slot.control != null) {
+                log.error("Failed to run control action on geofence partition {}", partition, failure);
+            } else {
+                log.error("Failed to evaluate fix of device {}", slot.fix.deviceId(), failure);
+            }
+        }
+
+        /**
+         * Evaluates the partition's waiting SOS fixes ahead of the ring and hands them to the lane thread.
+         */
+        private void evaluatePriority() {
+            ConcurrentLinkedQueue<PriorityFix> inbox = inboxes[partition];
+            for (PriorityFix sos = inbox.poll(); sos != null; sos = inbox.poll()) {
+                try {
+                    if (geofenceEngine.getDeviceIndex().slotsFor(sos.device).length > 0) {
+                        geofenceEngine.evaluate(sos.fix, sos.transitions);
+                    }
+                } catch (RuntimeException e) {
+                    log.error("Failed to evaluate SOS fix of device {}", sos.fix.deviceId(), e);
+                }
+                PriorityFix evaluated = sos;
+                try {
+                    sosLane.execute(() -> publishPriority(evaluated));
+                } catch (RejectedExecutionException e) {
+                    sosPending.decrementAndGet();
+                    if (sos.completion != null) {
+                        sos.completion.future.completeExceptionally(
+                            new IllegalStateException("Geofence pipeline stopped before publishing SOS fix"));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Collects the transitions of a batch of slots and publishes them once at the end of the batch. The
+     * last stage also completes the submissions whose final fix it has seen, after publishing, so
+     * synchronous callers only return once their transitions are persisted.
+     */
+    private static final class TransitionsHandler implements RingStage.Handler<FixSlot> {
+
+        private final Consumer<List<GeofenceEventDto>> publisher;
+        private final boolean completes;
+        private final List<GeofenceEventDto> batch = new ArrayList<>();
+        private final List<Completion> completed = new ArrayList<>();
+
+        TransitionsHandler(Consumer<List<GeofenceEventDto>> publisher, boolean completes) {
+            this.publisher = publisher;
+            this.completes = completes;
+        }
+
+        @Override
+        public void onEvent(FixSlot slot, long sequence, boolean endOfBatch) {
+            if (slot.control == null) {
+                if (!slot.simulated) {
+                    batch.addAll(slot.transitions);
+                }
+                if (completes && slot.completion != null && slot.completion.record(slot.index, slot.transitions)) {
+                    completed.add(slot.completion);
+                }
+            }
+            if (endOfBatch) {
+                try {
+                    if (!batch.isEmpty()) {
+                        publisher.accept(List.copyOf(batch));
+                    }
+                } finally {
+                    batch.clear();
+                    completed.forEach(Completion::complete);
+                    completed.clear();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.maciejwasiak.locon.service;
+
+import com.maciejwasiak.locon.config.GeofenceProperties;
+import com.maciejwasiak.locon.geofence.DeviceZoneIndex;
+import com.maciejwasiak.locon.geofence.DeviceZoneStates;
+import com.maciejwasiak.locon.geofence.GeofenceStateSnapshot;
+import com.maciejwasiak.locon.geofence.ZoneTable;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the engine's per-device zone states across restarts, so the first fix after a deploy does not
+ * look like a fresh ENTER.
+ * <p>
+ * A {@link GeofenceStateSnapshot} is written periodically and on shutdown; the {@link GeofenceEventStore}
+ * log serves as the write-ahead log of every transition since. On startup the snapshot is loaded and the
+ * log replayed from the snapshot's offset (from the beginning when there is no usable snapshot).
+ * <p>
+ * The log offset is read before the states, so every transition missing from a snapshot was appended
+ * after its offset; transitions already in the snapshot are replayed again, which is harmless because
+ * ENTER and EXIT simply set the state.
+ * <p>
+ * Restored states are staged per engine partition and applied by one {@link GeofencePipeline} broadcast,
+ * so each partition's state is only ever written by its own evaluation thread.
+ * <p>
+ * States of {@link FleetSimulator} devices are neither written nor restored: a snapshot taken during a
+ * simulation would otherwise bring them back after a restart, when nothing is left to forget them.
+ */
+@Service
+@Slf4j
+public class GeofenceStateStore {
+
+    private static final String SNAPSHOT_FILE = "states.snapshot";
+
+    private final GeofenceEngine geofenceEngine;
+    private final GeofenceEventStore eventStore;
+    private final GeofencePipeline pipeline;
+    private final GeofenceProperties.Snapshot properties;
+    private final Path file;
+    private ScheduledExecutorService scheduler;
+    private volatile boolean ready;
+
+    public GeofenceStateStore(GeofenceEngine geofenceEngine, GeofenceEventStore eventStore,
+                              GeofencePipeline pipeline, GeofenceProperties properties) {
+        this.geofenceEngine = geofenceEngine;
+        this.eventStore = eventStore;
+        this.pipeline = pipeline;
+        this.properties = properties.getSnapshot();
+        this.file = Path.of(this.properties.getDirectory()).resolve(SNAPSHOT_FILE);
+    }
+
+    /**
+     * Restores states before zones are loaded, so no fix can be evaluated against an empty state.
+     */
+    @PostConstruct
+    public void restore() {
+        long started = System.nanoTime();
+        long fromOffset = 0;
+        long restoredPairs = 0;
+        StagedStates[] staged = new StagedStates[Math.max(1, geofenceEngine.partitionCount())];
+        for (int partition = 0; partition < staged.length; partition++) {
+            staged[partition] = new StagedStates();
+        }
+        DeviceZoneStates.PairVisitor stage = (deviceId, zoneId, packed) -> {
+            if (!FleetSimulator.isVirtual(deviceId)) {
+                staged[geofenceEngine.partitionOf(deviceId)].add(deviceId, zoneId, packed);
+            }
+        };
+        if (Files.exists(file)) {
+            try {
+                GeofenceStateSnapshot.Header header = GeofenceStateSnapshot.read(file, stage);
+                fromOffset = header.logOffset();
+                restoredPairs = header.pairCount();
+            } catch (IllegalStateException e) {
+                log.warn("Ignoring geofence state snapshot, replaying the whole event log instead", e);
+                for (StagedStates states : staged) {
+                    states.clear();
+                }
+            }
+        }
+        long[] replayed = { 0 };
+        eventStore.replay(fromOffset, (offset, event) -> {
+            long deviceId = DeviceZoneIndex.parseDeviceId(event.deviceId());
+            if (deviceId != DeviceZoneIndex.NO_DEVICE) {
+                long packed = GeofenceEngine.ENTER.equals(event.eventType())
+                    ? DeviceZoneStates.pack(DeviceZoneStates.INSIDE, event.occurredAt().toEpochMilli())
+                    : DeviceZoneStates.pack(DeviceZoneStates.OUTSIDE, 0);
+                stage.visit(deviceId, event.zoneId(), packed);
+                replayed[0]++;
+            }
+            return true;
+        });
+        pipeline.broadcastAndWait(partition -> staged[partition].applyTo(geofenceEngine, partition));
+        log.info("Geofence states restored: {} pairs from snapshot, {} transitions replayed from offset {} in {} ms",
+            restoredPairs, replayed[0], fromOffset, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        ready = true;
+        long intervalMillis = properties.getInterval().toMillis();
+        if (intervalMillis <= 0) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "geofence-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::snapshotQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes a snapshot of the current states, skipping simulated devices and zones that no longer exist.
+     *
+     * @return the number of pairs written
+     */
+    public synchronized long snapshot() {
+        long started = System.nanoTime();
+        long logOffset = eventStore.getEventLog().writeOffset();
+        ZoneTable zones = geofenceEngine.getZoneTable();
+        long pairs = GeofenceStateSnapshot.write(file, logOffset, System.currentTimeMillis(), visitor ->
+            geofenceEngine.forEachState((deviceId, zoneId, packed) -> {
+                if (!FleetSimulator.isVirtual(deviceId) && zones.slotOf(zoneId) >= 0) {
+                    visitor.visit(deviceId, zoneId, packed);
+                }
+            }));
+        log.debug("Geofence state snapshot written: {} pairs at log offset {} in {} ms",
+            pairs, logOffset, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        return pairs;
+    }
+
+    @PreDestroy
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        // Before the zones are loaded every pair would look orphaned; keep the previous snapshot instead
+        if (ready) {
+            snapshotQuietly();
+        }
+    }
+
+    private void snapshotQuietly() {
+        try {
+            snapshot();
+        } catch (RuntimeException e) {
+            log.error("Failed to write geofence state snapshot", e);
+        }
+    }
+
+    /**
+     * Device-zone states read for one partition, as (device, zone, packed state) triples in read order.
+     */
+    private static final class StagedStates {
+        private long[] values = new long[3 * 16];
+        private int size;
+
+        void add(long deviceId, long zoneId, long packed) {
+            if (size + 3 > values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+            values[size++] = deviceId;
+            values[size++] = zoneId;
+            values[size++] = packed;
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        void applyTo(GeofenceEngine engine, int partition) {
+            for (int i = 0; i < size; i += 3) {
+                engine.restoreState(partition, values[i], values[i + 1], values[i + 2]);
+            }
+        }
+    }
+}
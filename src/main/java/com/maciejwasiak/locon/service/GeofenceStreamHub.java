@@ -0,0 +1,348 @@
+package com.maciejwasiak.locon.service;
+
+import com.maciejwasiak.locon.config.GeofenceProperties;
+import com.maciejwasiak.locon.dto.GeofenceEventDto;
+import com.maciejwasiak.locon.geofence.ZoneTable;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shared fan-out hub pushing geofence transitions to Server-Sent Events subscribers.
+ * <p>
+ * Publishing only enqueues into each matching subscriber's bounded buffer; a small shared pool
+ * writes to the connections. When a subscriber falls behind, its oldest buffered events are
+ * dropped, so one slow browser never stalls ingestion or the other subscribers.
+ * <p>
+ * A write to a connection blocks while the client's socket buffer is full. A watchdog drops any
+ * subscriber whose write has been blocked longer than the configured write timeout: it is unregistered,
+ * its writer is interrupted and its emitter is completed with an error once the write returns. Until
+ * then an extra dispatch thread stands in for the blocked one, so the other subscribers keep flowing.
+ */
+@Service
+@Slf4j
+public class GeofenceStreamHub implements GeofenceEventListener {
+
+    private final GeofenceEngine geofenceEngine;
+    private final GeofenceProperties.Stream properties;
+    private final ExecutorService dispatcher;
+    private final ScheduledExecutorService watchdog;
+
+    private final ConcurrentHashMap<Long, Set<Subscriber>> byZone = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, Set<Subscriber>> byUser = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final AtomicLong droppedEvents = new AtomicLong();
+    private final AtomicLong stalledSubscribers = new AtomicLong();
+
+    @Autowired
+    public GeofenceStreamHub(GeofenceEngine geofenceEngine, GeofenceProperties properties) {
+        this(geofenceEngine, properties.getStream(), dispatchPool(properties.getStream().getDispatchThreads()),
+            Executors.newSingleThreadScheduledExecutor(daemonThreads("geofence-sse-watchdog")));
+    }
+
+    GeofenceStreamHub(GeofenceEngine geofenceEngine, GeofenceProperties.Stream properties, ExecutorService dispatcher) {
+        this(geofenceEngine, properties, dispatcher, null);
+    }
+
+    /**
+     * @param watchdog runs {@link #expireStalledWrites(long)} periodically; {@code null} leaves it to the caller
+     */
+    GeofenceStreamHub(GeofenceEngine geofenceEngine, GeofenceProperties.Stream properties, ExecutorService dispatcher,
+                      ScheduledExecutorService watchdog) {
+        this.geofenceEngine = geofenceEngine;
+        this.properties = properties;
+        this.dispatcher = dispatcher;
+        this.watchdog = watchdog;
+        if (watchdog != null) {
+            long periodMillis = Math.max(100, properties.getWriteTimeout().toMillis() / 2);
+            watchdog.scheduleAtFixedRate(() -> expireStalledWrites(System.nanoTime()),
+                periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Opens a stream filtered by zone or, when {@code zoneId} is {@code null}, by zone owner. There is no
+     * unfiltered stream; callers check that the subscriber may see the zone or owner.
+     */
+    public SseEmitter subscribe(Long zoneId, Long userId) {
+        if (zoneId == null && userId == null) {
+            throw new IllegalArgumentException("A zone or user filter is required");
+        }
+        SseEmitter emitter = new SseEmitter(properties.getTimeout().toMillis());
+        return register(emitter, zoneId, userId).emitter;
+    }
+
+    Subscriber register(SseEmitter emitter, Long zoneId, Long userId) {
+        Subscriber subscriber = new Subscriber(emitter, zoneId, userId, properties.getBufferSize());
+        if (zoneId != null) {
+            addTo(byZone, zoneId, subscriber);
+        } else {
+            addTo(byUser, userId, subscriber);
+        }
+        subscriberCount.incrementAndGet();
+        emitter.onCompletion(() -> unregister(subscriber));
+        emitter.onTimeout(() -> unregister(subscriber));
+        emitter.onError(error -> unregister(subscriber));
+        log.debug("SSE subscriber registered: zoneId={}, userId={}, total={}", zoneId, userId, subscriberCount());
+        return subscriber;
+    }
+
+    @Override
+    public void onGeofenceEvents(List<GeofenceEventDto> events) {
+        if (subscriberCount() == 0) {
+            return;
+        }
+        ZoneTable table = geofenceEngine.getZoneTable();
+        for (GeofenceEventDto event : events) {
+            if (event.zoneId() != null) {
+                offerAll(byZone.get(event.zoneId()), event);
+                int slot = table.slotOf(event.zoneId());
+                Long ownerId = slot >= 0 ? table.zone(slot).userId() : null;
+                if (ownerId != null) {
+                    offerAll(byUser.get(ownerId), event);
+                }
+            }
+        }
+    }
+
+    public int subscriberCount() {
+        return subscriberCount.get();
+    }
+
+    public long getDroppedEvents() {
+        return droppedEvents.get();
+    }
+
+    public long getStalledSubscribers() {
+        return stalledSubscribers.get();
+    }
+
+    /**
+     * Drops every subscriber whose current write started more than the write timeout before {@code nowNanos}.
+     */
+    void expireStalledWrites(long nowNanos) {
+        long timeoutNanos = properties.getWriteTimeout().toNanos();
+        for (ConcurrentHashMap<Long, Set<Subscriber>> index : List.of(byZone, byUser)) {
+            for (Set<Subscriber> subscribers : index.values()) {
+                for (Subscriber subscriber : subscribers) {
+                    long startedAt = subscriber.writeStartedNanos;
+                    if (startedAt != 0 && nowNanos - startedAt > timeoutNanos) {
+                        dropStalled(subscriber);
+                    }
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (watchdog != null) {
+            watchdog.shutdownNow();
+        }
+        dispatcher.shutdownNow();
+    }
+
+    private void offerAll(Set<Subscriber> subscribers, GeofenceEventDto event) {
+        if (subscribers == null) {
+            return;
+        }
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer(event);
+            if (subscriber.scheduled.compareAndSet(false, true)) {
+                dispatcher.execute(() -> drain(subscriber));
+            }
+        }
+    }
+
+    private void drain(Subscriber subscriber) {
+        try {
+            GeofenceEventDto event;
+            int sent = 0;
+            while (sent < properties.getMaxBatch() && !subscriber.stalled
+                    && (event = subscriber.buffer.poll()) != null) {
+                send(subscriber, event);
+                sent++;
+            }
+        } catch (IOException | IllegalStateException e) {
+            if (!subscriber.stalled) {
+                log.debug("SSE subscriber disconnected: {}", e.getMessage());
+                unregister(subscriber);
+            }
+            return;
+        } finally {
+            subscriber.scheduled.set(false);
+        }
+        // Re-arm if events arrived while draining or the batch limit was hit
+        if (!subscriber.stalled && !subscriber.buffer.isEmpty() && subscriber.scheduled.compareAndSet(false, true)) {
+            dispatcher.execute(() -> drain(subscriber));
+        }
+    }
+
+    private void send(Subscriber subscriber, GeofenceEventDto event) throws IOException {
+        synchronized (subscriber) {
+            subscriber.writer = Thread.currentThread();
+            subscriber.writeStartedNanos = System.nanoTime();
+        }
+        try {
+            subscriber.emitter.send(SseEmitter.event().name("geofence").data(event));
+        } finally {
+            boolean stalled;
+            synchronized (subscriber) {
+                subscriber.writer = null;
+                subscriber.writeStartedNanos = 0;
+                stalled = subscriber.stalled;
+                if (stalled) {
+                    // The watchdog's interrupt was meant for this write only
+                    Thread.interrupted();
+                }
+            }
+            if (stalled) {
+                finishStalled(subscriber);
+            }
+        }
+    }
+
+    private void dropStalled(Subscriber subscriber) {
+        synchronized (subscriber) {
+            if (subscriber.writer == null || subscriber.stalled) {
+                return;
+            }
+            subscriber.compensated = addDispatchThread(1);
+            subscriber.stalled = true;
+            subscriber.writer.interrupt();
+        }
+        unregister(subscriber);
+        stalledSubscribers.incrementAndGet();
+        log.warn("SSE subscriber dropped after a write blocked for more than {}: zoneId={}, userId={}",
+            properties.getWriteTimeout(), subscriber.zoneId, subscriber.userId);
+    }
+
+    /**
+     * Runs on the dispatch thread once the stalled write has returned, since the emitter is locked until then.
+     */
+    private void finishStalled(Subscriber subscriber) {
+        if (subscriber.compensated) {
+            subscriber.compensated = false;
+            addDispatchThread(-1);
+        }
+        subscriber.emitter.completeWithError(new TimeoutException("SSE write blocked for more than "
+            + properties.getWriteTimeout()));
+    }
+
+    /**
+     * Grows or shrinks the dispatch pool by {@code delta} threads, up to its maximum size.
+     *
+     * @return {@code false} if the pool could not change
+     */
+    private boolean addDispatchThread(int delta) {
+        if (!(dispatcher instanceof ThreadPoolExecutor pool)) {
+            return false;
+        }
+        synchronized (pool) {
+            int core = pool.getCorePoolSize() + delta;
+            if (core < 1 || core > pool.getMaximumPoolSize()) {
+                return false;
+            }
+            pool.setCorePoolSize(core);
+            return true;
+        }
+    }
+
+    private void unregister(Subscriber subscriber) {
+        boolean removed;
+        if (subscriber.zoneId != null) {
+            removed = removeFrom(byZone, subscriber.zoneId, subscriber);
+        } else {
+            removed = removeFrom(byUser, subscriber.userId, subscriber);
+        }
+        if (removed) {
+            subscriberCount.decrementAndGet();
+            subscriber.buffer.clear();
+            log.debug("SSE subscriber removed: zoneId={}, userId={}, dropped={}",
+                subscriber.zoneId, subscriber.userId, subscriber.dropped.get());
+        }
+    }
+
+    private static void addTo(ConcurrentHashMap<Long, Set<Subscriber>> index, Long key, Subscriber subscriber) {
+        index.compute(key, (id, subscribers) -> {
+            Set<Subscriber> target = subscribers != null ? subscribers : ConcurrentHashMap.newKeySet();
+            target.add(subscriber);
+            return target;
+        });
+    }
+
+    private static boolean removeFrom(ConcurrentHashMap<Long, Set<Subscriber>> index, Long key, Subscriber subscriber) {
+        boolean[] removed = { false };
+        index.computeIfPresent(key, (id, subscribers) -> {
+            removed[0] = subscribers.remove(subscriber);
+            return subscribers.isEmpty() ? null : subscribers;
+        });
+        return removed[0];
+    }
+
+    /**
+     * Fixed pool of {@code threads} that may temporarily double while writes are stalled.
+     */
+    private static ThreadPoolExecutor dispatchPool(int threads) {
+        return new ThreadPoolExecutor(threads, 2 * threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+            daemonThreads("geofence-sse"));
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    final class Subscriber {
+        final SseEmitter emitter;
+        final Long zoneId;
+        final Long userId;
+        final ArrayBlockingQueue<GeofenceEventDto> buffer;
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        final AtomicInteger dropped = new AtomicInteger();
+        // Writer state, guarded by the subscriber's monitor; writeStartedNanos is 0 between writes
+        volatile Thread writer;
+        volatile long writeStartedNanos;
+        volatile boolean stalled;
+        boolean compensated;
+
+        Subscriber(SseEmitter emitter, Long zoneId, Long userId, int capacity) {
+            this.emitter = emitter;
+            this.zoneId = zoneId;
+            this.userId = userId;
+            this.buffer = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        }
+
+        void offer(GeofenceEventDto event) {
+            while (!buffer.offer(event)) {
+                if (buffer.poll() != null) {
+                    dropped.incrementAndGet();
+                    droppedEvents.incrementAndGet();
+                }
+            }
+        }
+    }
+}
@@ -1,66 +1,177 @@
 package com.maciejwasiak.locon.service;
 
 import com.maciejwasiak.locon.dto.GeofenceEventDto;
+import com.maciejwasiak.locon.dto.LocationBatchResponse;
+import com.maciejwasiak.locon.dto.LocationFixDto;
+import com.maciejwasiak.locon.dto.ReportingHint;
+import com.maciejwasiak.locon.dto.ZoneDto;
+import com.maciejwasiak.locon.geofence.ZoneSnapshot;
 import com.maciejwasiak.locon.model.Zone;
 import com.maciejwasiak.locon.repository.ZoneRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
+import java.util.stream.Stream;
 
 @Service
 @Transactional(readOnly = true)
 public class GeofencingService {
 
     private static final Logger log = LoggerFactory.getLogger(GeofencingService.class);
+    private static final double DEFAULT_LATITUDE = 52.2297;
+    private static final double DEFAULT_LONGITUDE = 21.0122;
+
     private final ZoneRepository zoneRepository;
-    private final Random random = new Random();
+    private final GeofenceEngine geofenceEngine;
+    private final GeofencePipeline pipeline;
 
-    public GeofencingService(ZoneRepository zoneRepository) {
+    public GeofencingService(ZoneRepository zoneRepository, GeofenceEngine geofenceEngine,
+                             GeofencePipeline pipeline) {
         this.zoneRepository = zoneRepository;
+        this.geofenceEngine = geofenceEngine;
+        this.pipeline = pipeline;
+    }
+
+    /**
+     * Evaluates a single fix on its device's partition thread and waits for the (persisted) transitions.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<GeofenceEventDto> processLocation(LocationFixDto fix) {
+        List<GeofenceEventDto> transitions = pipeline.submit(List.of(fix)).join();
+        if (!transitions.isEmpty()) {
+            log.debug("Device {} produced {} geofence transitions", fix.deviceId(), transitions.size());
+        }
+        return transitions;
+    }
+
+    /**
+     * Evaluates a buffered batch of fixes in a single pass and returns only the resulting transitions,
+     * plus a recommended next-report interval for every device in the batch.
+     * Fixes are ordered by timestamp first so out-of-order gateway buffers do not produce spurious flaps.
+     * Evaluation runs on the {@link GeofencePipeline} partition threads; the call returns once the
+     * transitions have been persisted and handed to the notification listeners.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public LocationBatchResponse processBatch(List<LocationFixDto> fixes) {
+        List<LocationFixDto> ordered = isOrderedByTimestamp(fixes) ? fixes : sortByTimestamp(fixes);
+        return respond(ordered, fixes.size(), pipeline.submit(ordered).join());
+    }
+
+    /**
+     * Like {@link #processBatch(List)}, but sheds instead of waiting when the pipeline is saturated. A
+     * response accepting fewer fixes than sent means routine fixes were shed; SOS fixes may still have
+     * been evaluated and are reflected in the transitions.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public LocationBatchResponse offerBatch(List<LocationFixDto> fixes) {
+        List<LocationFixDto> ordered = isOrderedByTimestamp(fixes) ? fixes : sortByTimestamp(fixes);
+        GeofencePipeline.Admission admission = pipeline.offer(ordered, true);
+        if (!admission.isComplete()) {
+            log.debug("Geofence pipeline saturated, shed {} of {} fixes", admission.shed(), fixes.size());
+        }
+        return respond(ordered, admission.accepted(), admission.transitions().join());
+    }
+
+    private LocationBatchResponse respond(List<LocationFixDto> ordered, int accepted,
+                                          List<GeofenceEventDto> transitions) {
+        Set<String> deviceIds = new LinkedHashSet<>();
+        for (LocationFixDto fix : ordered) {
+            deviceIds.add(fix.deviceId());
+        }
+        log.debug("Processed batch of {} fixes, {} transitions", accepted, transitions.size());
+        List<ReportingHint> hints = new ArrayList<>(deviceIds.size());
+        for (String deviceId : deviceIds) {
+            hints.add(new ReportingHint(deviceId, geofenceEngine.recommendedReportSeconds(deviceId)));
+        }
+        return new LocationBatchResponse(accepted, transitions, hints);
+    }
+
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<ZoneDto> findZonesContaining(double latitude, double longitude) {
+        List<ZoneDto> zones = geofenceEngine.findZonesContaining(latitude, longitude).stream()
+            .map(ZoneDto::from)
+            .toList();
+        log.debug("Found {} zones containing [{}, {}]", zones.size(), latitude, longitude);
+        return zones;
+    }
+
+    private static boolean isOrderedByTimestamp(List<LocationFixDto> fixes) {
+        Instant previous = null;
+        for (LocationFixDto fix : fixes) {
+            Instant current = fix.timestamp();
+            if (current == null) {
+                continue;
+            }
+            if (previous != null && current.isBefore(previous)) {
+                return false;
+            }
+            previous = current;
+        }
+        return true;
+    }
+
+    private static List<LocationFixDto> sortByTimestamp(List<LocationFixDto> fixes) {
+        List<LocationFixDto> sorted = new ArrayList<>(fixes);
+        sorted.sort(Comparator.comparing(LocationFixDto::timestamp, Comparator.nullsLast(Comparator.naturalOrder())));
+        return sorted;
     }
 
     public List<GeofenceEventDto> generateMockEvents(Long zoneId, int count) {
-        log.debug("Generating {} mock events for zone: {}", count, zoneId);
-        Zone zone = zoneRepository.findById(zoneId)
+        return streamMockEvents(zoneId, count, null).toList();
+    }
+
+    /**
+     * Lazily generates mock transitions for a zone. The zone is resolved up front, and each event is
+     * created only when the stream is consumed, so memory stays constant regardless of {@code count}.
+     * With a {@code seed}, devices, event types, positions and time offsets are reproducible.
+     */
+    public Stream<GeofenceEventDto> streamMockEvents(Long zoneId, int count, Long seed) {
+        log.debug("Generating {} mock events for zone: {} (seed={})", count, zoneId, seed);
+        Zone entity = zoneRepository.findById(zoneId)
             .orElseThrow(() -> new IllegalArgumentException("Zone not found"));
+        ZoneSnapshot zone = ZoneSnapshot.from(entity);
+        boolean hasCenter = entity.getLatitude() != null && entity.getLongitude() != null;
+        double latitude = hasCenter ? zone.latitude() : DEFAULT_LATITUDE;
+        double longitude = hasCenter ? zone.longitude() : DEFAULT_LONGITUDE;
 
-        List<GeofenceEventDto> events = new ArrayList<>();
-        List<String> deviceIds = zone.getDeviceIds() != null ? zone.getDeviceIds() : List.of();
+        List<String> deviceIds = zone.deviceIds();
         if (deviceIds.isEmpty()) {
             deviceIds = List.of("virtual-1");
             log.debug("No devices assigned to zone, using virtual device");
         }
+        List<String> devices = deviceIds;
+        Random random = seed != null ? new Random(seed) : new Random();
+        Instant now = Instant.now();
 
-        for (int i = 0; i < Math.max(1, count); i++) {
-            String deviceId = deviceIds.get(random.nextInt(deviceIds.size()));
-            String deviceName = mockDeviceName(deviceId);
+        return Stream.generate(() -> {
+            String deviceId = devices.get(random.nextInt(devices.size()));
             String eventType = random.nextBoolean() ? "ENTER" : "EXIT";
-            double[] jitter = jitterCoordinates(zone.getLatitude(), zone.getLongitude(), zone.getRadius());
-
-            events.add(new GeofenceEventDto(
-                zone.getId(),
-                zone.getName(),
+            double[] jitter = jitterCoordinates(random, latitude, longitude, Math.min(50, zone.radiusMeters() / 5.0));
+            return new GeofenceEventDto(
+                zone.id(),
+                zone.name(),
                 deviceId,
-                deviceName,
+                deviceName(deviceId),
                 jitter[0],
                 jitter[1],
-                zone.getRadius() != null ? zone.getRadius() : 500,
+                zone.radiusMeters(),
                 eventType,
-                Instant.now().minusSeconds(random.nextInt(3600))
-            ));
-        }
-
-        log.debug("Generated {} mock geofence events for zone {}", events.size(), zoneId);
-        return events;
+                now.minusSeconds(random.nextInt(3600))
+            );
+        }).limit(Math.max(1, count));
     }
 
-    private String mockDeviceName(String deviceId) {
+    static String deviceName(String deviceId) {
         return switch (deviceId) {
             case "1" -> "Phone SOS";
             case "2" -> "GJD.13 Watch";
@@ -69,12 +180,10 @@ public class GeofencingService {
         };
     }
 
-    private double[] jitterCoordinates(Double lat, Double lng, Integer radiusMeters) {
-        if (lat == null || lng == null) {
-            lat = 52.2297;
-            lng = 21.0122;
-        }
-        double maxOffsetMeters = Math.min(50, radiusMeters != null ? radiusMeters / 5.0 : 50);
+    /**
+     * Offsets a point by up to {@code maxOffsetMeters} on each axis, mimicking GPS noise.
+     */
+    static double[] jitterCoordinates(Random random, double lat, double lng, double maxOffsetMeters) {
         double dLat = (random.nextDouble() - 0.5) * (maxOffsetMeters / 111_000.0) * 2;
         double dLng = (random.nextDouble() - 0.5) * (maxOffsetMeters / (111_320.0 * Math.cos(Math.toRadians(lat)))) * 2;
         return new double[] { lat + dLat, lng + dLng };
@@ -0,0 +1,377 @@
+package com.maciejwasiak.locon.service;
+
+import com.maciejwasiak.locon.config.GeofenceProperties;
+import com.maciejwasiak.locon.dto.GeofenceEventDto;
+import com.maciejwasiak.locon.geofence.DeviceZoneIndex;
+import com.maciejwasiak.locon.geofence.LatencySlo;
+import com.maciejwasiak.locon.geofence.NotificationRoutingTable;
+import com.maciejwasiak.locon.geofence.TimingWheel;
+import com.maciejwasiak.locon.repository.ZoneDeviceRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Turns geofence transitions into user notifications, honoring {@code Zone.notificationsEnabled} and
+ * {@code ZoneDevice.notificationsEnabled}.
+ * <p>
+ * Recipients come from a {@link NotificationRoutingTable} loaded once and refreshed per zone on
+ * {@link ZoneChangedEvent}s, so dispatching never queries the database. The transitions of one pipeline
+ * batch are grouped per recipient and handed to the {@link NotificationSender} on a small bounded pool;
+ * when the pool falls behind, deliveries are dropped (and counted) rather than stalling ingestion.
+ * <p>
+ * Transitions are coalesced per recipient: the first one opens a digest that is sent when the shortest
+ * window ({@code Zone.notificationWindowSeconds}, or the configured default) of the zones in it has
+ * passed, and later transitions join it. Per device and zone the first and the latest transition are
+ * kept, so an ENTER followed by an EXIT still reads as a visit. A transition of a zone without a window
+ * takes the open digest along in the same notification, ahead of itself, so nothing arrives out of
+ * order. Open digests wait in a {@link TimingWheel} advanced by a single timer thread rather than one
+ * scheduled task each.
+ * <p>
+ * Transitions of SOS devices ({@link DevicePriorities}) are never coalesced or dropped: they are sent at
+ * once on a dedicated {@code geofence-notify-sos} thread, and the time until the sender returns is
+ * measured against {@code locon.geofence.priority.notification-slo}.
+ */
+@Service
+@Slf4j
+public class NotificationDispatcher implements GeofenceEventListener {
+
+    private final ZoneDeviceRepository zoneDeviceRepository;
+    private final NotificationSender sender;
+    private final DevicePriorities priorities;
+    private final ExecutorService executor;
+    private final ExecutorService sosExecutor;
+    private final LatencySlo sosLatency;
+    private final LongAdder sentEvents = new LongAdder();
+    private final LongAdder failedEvents = new LongAdder();
+    private final LongAdder droppedEvents = new LongAdder();
+    private final LongAdder unroutedEvents = new LongAdder();
+    private final LongAdder coalescedEvents = new LongAdder();
+    private final LongAdder sentNotifications = new LongAdder();
+    private final GeofenceProperties.Notifications properties;
+    private final long defaultWindowMillis;
+    private final Map<Long, Digest> openDigests = new HashMap<>();
+    private final TimingWheel<Digest> digestWheel;
+    private ScheduledExecutorService timer;
+    private volatile NotificationRoutingTable routes = NotificationRoutingTable.empty();
+
+    @Autowired
+    public NotificationDispatcher(ZoneDeviceRepository zoneDeviceRepository, NotificationSender sender,
+                                  DevicePriorities priorities, GeofenceProperties properties) {
+        this(zoneDeviceRepository, sender, priorities, properties, boundedPool(properties.getNotifications()),
+            Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "geofence-notify-sos");
+                thread.setDaemon(true);
+                return thread;
+            }));
+    }
+
+    NotificationDispatcher(ZoneDeviceRepository zoneDeviceRepository, NotificationSender sender,
+                           DevicePriorities priorities, GeofenceProperties properties,
+                           ExecutorService executor, ExecutorService sosExecutor) {
+        this.zoneDeviceRepository = zoneDeviceRepository;
+        this.sender = sender;
+        this.priorities = priorities;
+        this.properties = properties.getNotifications();
+        this.executor = executor;
+        this.sosExecutor = sosExecutor;
+        this.sosLatency = new LatencySlo(properties.getPriority().getNotificationSlo());
+        this.defaultWindowMillis = this.properties.getDigestWindow().toMillis();
+        this.digestWheel = new TimingWheel<>(this.properties.getDigestWheelSlots(),
+            this.properties.getDigestTick().toMillis(), System.currentTimeMillis());
+    }
+
+    @PostConstruct
+    public void start() {
+        long tickMillis = properties.getDigestTick().toMillis();
+        timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "geofence-digest");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleAtFixedRate(() -> flushDue(System.currentTimeMillis()), tickMillis, tickMillis,
+            TimeUnit.MILLISECONDS);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void reloadRoutes() {
+        NotificationRoutingTable table = NotificationRoutingTable.of(zoneDeviceRepository.findNotificationRoutes());
+        this.routes = table;
+        log.info("Notification routing table loaded: {} zone-device routes", table.routeCount());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onZoneChanged(ZoneChangedEvent event) {
+        boolean deleted = event.changeType() == ZoneChangedEvent.ChangeType.DELETED;
+        routes = routes.withZone(event.zoneId(),
+            deleted ? List.of() : zoneDeviceRepository.findNotificationRoutesByZoneId(event.zoneId()));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onAssignmentsChanged(ZoneAssignmentsChangedEvent event) {
+        routes = routes.withZone(event.zoneId(), zoneDeviceRepository.findNotificationRoutesByZoneId(event.zoneId()));
+    }
+
+    @Override
+    public void onGeofenceEvents(List<GeofenceEventDto> events) {
+        offer(events, System.currentTimeMillis());
+    }
+
+    void offer(List<GeofenceEventDto> events, long nowMillis) {
+        long receivedAtNanos = System.nanoTime();
+        NotificationRoutingTable table = routes;
+        Map<Long, List<GeofenceEventDto>> immediate = new LinkedHashMap<>();
+        Map<Long, List<GeofenceEventDto>> urgent = new LinkedHashMap<>();
+        synchronized (openDigests) {
+            for (GeofenceEventDto event : events) {
+                long deviceId = DeviceZoneIndex.parseDeviceId(event.deviceId());
+                long[] recipients = deviceId == DeviceZoneIndex.NO_DEVICE || event.zoneId() == null
+                    ? new long[0]
+                    : table.recipients(event.zoneId(), deviceId);
+                if (recipients.length == 0) {
+                    unroutedEvents.increment();
+                    continue;
+                }
+                if (priorities.isSos(deviceId)) {
+                    for (long recipient : recipients) {
+                        urgent.computeIfAbsent(recipient, id -> new ArrayList<>()).add(event);
+                    }
+                    continue;
+                }
+                int zoneWindow = table.windowSeconds(event.zoneId());
+                long windowMillis = zoneWindow == NotificationRoutingTable.DEFAULT_WINDOW
+                    ? defaultWindowMillis
+                    : zoneWindow * 1_000L;
+                for (long recipient : recipients) {
+                    if (windowMillis <= 0) {
+                        List<GeofenceEventDto> batch = immediate.computeIfAbsent(recipient, id -> new ArrayList<>());
+                        Digest open = openDigests.remove(recipient);
+                        if (open != null) {
+                            batch.addAll(seal(open));
+                        }
+                        batch.add(event);
+                        continue;
+                    }
+                    Digest digest = openDigests.get(recipient);
+                    if (digest == null) {
+                        digest = new Digest(recipient, nowMillis);
+                        openDigests.put(recipient, digest);
+                    }
+                    digest.add(event);
+                    long deadline = digest.openedAtMillis + windowMillis;
+                    if (deadline < digest.deadlineMillis) {
+                        // The wheel cannot move an entry: the earlier one fires first, the later one finds it sealed
+                        digest.deadlineMillis = deadline;
+                        digestWheel.schedule(digest, deadline);
+                    }
+                }
+            }
+        }
+        urgent.forEach((recipient, batch) -> submitUrgent(recipient, batch, receivedAtNanos));
+        immediate.forEach(this::submit);
+    }
+
+    /**
+     * Sends every digest whose window has passed at {@code nowMillis}.
+     */
+    void flushDue(long nowMillis) {
+        Map<Long, List<GeofenceEventDto>> due = new LinkedHashMap<>();
+        synchronized (openDigests) {
+            digestWheel.advance(nowMillis, digest -> {
+                if (!digest.sealed) {
+                    openDigests.remove(digest.recipient);
+                    due.put(digest.recipient, seal(digest));
+                }
+            });
+        }
+        due.forEach(this::submit);
+    }
+
+    public long getCoalescedEvents() {
+        return coalescedEvents.sum();
+    }
+
+    public long getSentNotifications() {
+        return sentNotifications.sum();
+    }
+
+    public LatencySlo getSosLatency() {
+        return sosLatency;
+    }
+
+    public int getOpenDigests() {
+        synchronized (openDigests) {
+            return openDigests.size();
+        }
+    }
+
+    public long getSentEvents() {
+        return sentEvents.sum();
+    }
+
+    public long getFailedEvents() {
+        return failedEvents.sum();
+    }
+
+    public long getDroppedEvents() {
+        return droppedEvents.sum();
+    }
+
+    public long getUnroutedEvents() {
+        return unroutedEvents.sum();
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        if (timer != null) {
+            timer.shutdownNow();
+        }
+        Map<Long, List<GeofenceEventDto>> open = new LinkedHashMap<>();
+        synchronized (openDigests) {
+            for (Digest digest : digestWheel.drain()) {
+                if (!digest.sealed) {
+                    open.put(digest.recipient, seal(digest));
+                }
+            }
+            openDigests.clear();
+        }
+        open.forEach(this::submit);
+        executor.shutdown();
+        sosExecutor.shutdown();
+        if (!executor.awaitTermination(5, TimeUnit.SECONDS) || !sosExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+            log.warn("Notification dispatcher stopped with deliveries pending");
+            executor.shutdownNow();
+            sosExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Closes a digest removed from {@code openDigests} and returns what to send; callers hold its lock.
+     */
+    private List<GeofenceEventDto> seal(Digest digest) {
+        digest.sealed = true;
+        List<GeofenceEventDto> events = digest.events();
+        coalescedEvents.add(digest.added - events.size());
+        return events;
+    }
+
+    private void submitUrgent(long recipient, List<GeofenceEventDto> events, long receivedAtNanos) {
+        try {
+            sosExecutor.execute(() -> {
+                deliver(recipient, events);
+                sosLatency.record(System.nanoTime() - receivedAtNanos);
+            });
+        } catch (RejectedExecutionException e) {
+            droppedEvents.add(events.size());
+        }
+    }
+
+    private void submit(long recipient, List<GeofenceEventDto> events) {
+        try {
+            executor.execute(() -> deliver(recipient, events));
+        } catch (RejectedExecutionException e) {
+            droppedEvents.add(events.size());
+        }
+    }
+
+    private void deliver(long recipient, List<GeofenceEventDto> events) {
+        try {
+            sender.send(recipient, events);
+            sentEvents.add(events.size());
+            sentNotifications.increment();
+        } catch (RuntimeException e) {
+            failedEvents.add(events.size());
+            log.warn("Failed to notify user {} of {} geofence events", recipient, events.size(), e);
+        }
+    }
+
+    /**
+     * Transitions waiting for one recipient, per device and zone in first-seen order. Of each pair the
+     * first and the latest transition are kept; the first is only sent when its type differs from the
+     * latest, so back-and-forth in between is folded while a visit (ENTER, then EXIT) is not.
+     */
+    private static final class Digest {
+        final long recipient;
+        final long openedAtMillis;
+        final Map<DeviceZone, FirstAndLatest> transitions = new LinkedHashMap<>();
+        long deadlineMillis = Long.MAX_VALUE;
+        int added;
+        boolean sealed;
+
+        Digest(long recipient, long openedAtMillis) {
+            this.recipient = recipient;
+            this.openedAtMillis = openedAtMillis;
+        }
+
+        void add(GeofenceEventDto event) {
+            added++;
+            DeviceZone key = new DeviceZone(event.deviceId(), event.zoneId());
+            FirstAndLatest pair = transitions.get(key);
+            if (pair == null) {
+                transitions.put(key, new FirstAndLatest(event));
+            } else {
+                pair.latest = event;
+            }
+        }
+
+        List<GeofenceEventDto> events() {
+            List<GeofenceEventDto> events = new ArrayList<>(transitions.size());
+            for (FirstAndLatest pair : transitions.values()) {
+                if (pair.latest == null) {
+                    events.add(pair.first);
+                    continue;
+                }
+                if (!pair.first.eventType().equals(pair.latest.eventType())) {
+                    events.add(pair.first);
+                }
+                events.add(pair.latest);
+            }
+            return events;
+        }
+    }
+
+    private static final class FirstAndLatest {
+        final GeofenceEventDto first;
+        GeofenceEventDto latest;
+
+        FirstAndLatest(GeofenceEventDto first) {
+            this.first = first;
+        }
+    }
+
+    private record DeviceZone(String deviceId, Long zoneId) {
+    }
+
+    private static ExecutorService boundedPool(GeofenceProperties.Notifications properties) {
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory threads = runnable -> {
+            Thread thread = new Thread(runnable, "geofence-notify-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return new ThreadPoolExecutor(properties.getDispatchThreads(), properties.getDispatchThreads(),
+            0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(properties.getQueueCapacity()), threads,
+            new ThreadPoolExecutor.AbortPolicy());
+    }
+}
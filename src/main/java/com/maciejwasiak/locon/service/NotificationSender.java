@@ -0,0 +1,15 @@
+package com.maciejwasiak.locon.service;
+
+import com.maciejwasiak.locon.dto.GeofenceEventDto;
+
+import java.util.List;
+
+/**
+ * Delivers geofence notifications to one user (push, SMS, ...). Implementations may block: the
+ * {@link NotificationDispatcher} calls them from its own threads, once per recipient and batch.
+ * Declaring a bean of this type replaces the default {@link OutboxNotificationSender}.
+ */
+public interface NotificationSender {
+
+    void send(long recipientId, List<GeofenceEventDto> events);
+}
@@ -0,0 +1,71 @@
+package com.maciejwasiak.locon.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.maciejwasiak.locon.dto.GeofenceEventDto;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Local stand-in for a real push/SMS gateway: logs every notification and, when an outbox file is
+ * configured, appends it there as one NDJSON line {@code {"recipientId":..,"events":[..]}}.
+ */
+@Slf4j
+public class OutboxNotificationSender implements NotificationSender, AutoCloseable {
+
+    private final ObjectMapper objectMapper;
+    private final Path outboxFile;
+    private BufferedWriter writer;
+
+    public OutboxNotificationSender(ObjectMapper objectMapper, String outboxFile) {
+        this.objectMapper = objectMapper;
+        this.outboxFile = outboxFile == null || outboxFile.isBlank() ? null : Path.of(outboxFile);
+    }
+
+    @Override
+    public void send(long recipientId, List<GeofenceEventDto> events) {
+        log.info("Notifying user {} of {} geofence events", recipientId, events.size());
+        if (outboxFile == null) {
+            return;
+        }
+        String line;
+        try {
+            line = objectMapper.writeValueAsString(Map.of("recipientId", recipientId, "events", events));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize notification for user " + recipientId, e);
+        }
+        append(line);
+    }
+
+    private synchronized void append(String line) {
+        try {
+            if (writer == null) {
+                Files.createDirectories(outboxFile.toAbsolutePath().getParent());
+                writer = Files.newBufferedWriter(outboxFile, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            writer.write(line);
+            writer.newLine();
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append to notification outbox " + outboxFile, e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package com.maciejwasiak.locon.service;
+
+/**
+ * Published by {@link ZoneService} whenever devices are assigned to or removed from a zone,
+ * so in-memory geofencing structures can re-read that zone's {@code ZoneDevice} rows.
+ */
+public record ZoneAssignmentsChangedEvent(Long zoneId) {
+}
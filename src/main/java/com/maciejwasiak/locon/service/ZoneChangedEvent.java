@@ -0,0 +1,14 @@
+package com.maciejwasiak.locon.service;
+
+/**
+ * Published by {@link ZoneService} whenever a zone is created, updated or deleted,
+ * so in-memory geofencing structures can refresh without polling the database.
+ */
+public record ZoneChangedEvent(Long zoneId, ChangeType changeType) {
+
+    public enum ChangeType {
+        CREATED,
+        UPDATED,
+        DELETED
+    }
+}
@@ -1,12 +1,18 @@
 package com.maciejwasiak.locon.service;
 
 import com.maciejwasiak.locon.dto.ZoneDto;
+import com.maciejwasiak.locon.geofence.GeoMath;
+import com.maciejwasiak.locon.model.Device;
 import com.maciejwasiak.locon.model.User;
 import com.maciejwasiak.locon.model.Zone;
+import com.maciejwasiak.locon.model.ZoneDevice;
+import com.maciejwasiak.locon.model.ZoneVertex;
+import com.maciejwasiak.locon.repository.ZoneDeviceRepository;
 import com.maciejwasiak.locon.repository.ZoneRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -22,6 +28,12 @@ public class ZoneService {
     @Autowired
     private ZoneRepository zoneRepository;
     
+    @Autowired
+    private ZoneDeviceRepository zoneDeviceRepository;
+    
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    
     public Zone createZone(String name, String address, String icon, Integer radius, 
                           List<String> deviceIds, User user) {
         log.debug("Creating zone '{}' for user: {}", name, user.getPhone());
@@ -31,6 +43,7 @@ public class ZoneService {
             zone.setDeviceIds(deviceIds);
             
             Zone savedZone = zoneRepository.save(zone);
+            publishChange(savedZone.getId(), ZoneChangedEvent.ChangeType.CREATED);
             log.info("Zone '{}' created successfully with ID: {} for user: {}", name, savedZone.getId(), user.getPhone());
             
             return savedZone;
@@ -56,6 +69,7 @@ public class ZoneService {
             zone.setDeviceIds(deviceIds);
 
             Zone savedZone = zoneRepository.save(zone);
+            publishChange(savedZone.getId(), ZoneChangedEvent.ChangeType.CREATED);
             log.info("Zone '{}' with coordinates created successfully with ID: {} for user: {}", name, savedZone.getId(), user.getPhone());
             return savedZone;
         } catch (Exception e) {
@@ -66,11 +80,18 @@ public class ZoneService {
     
     public Zone createZone(String name, String icon, String address, Double latitude, 
                           Double longitude, Integer radius) {
-        log.debug("Creating zone '{}' with coordinates", name);
+        return createZone(name, icon, address, latitude, longitude, radius, List.of());
+    }
+    
+    public Zone createZone(String name, String icon, String address, Double latitude,
+                          Double longitude, Integer radius, List<ZoneVertex> polygon) {
+        log.debug("Creating zone '{}' with coordinates ({} polygon vertices)", name, polygon.size());
         
         Zone zone = new Zone(name, icon, address, latitude, longitude, radius);
+        applyPolygon(zone, polygon);
         
         Zone savedZone = zoneRepository.save(zone);
+        publishChange(savedZone.getId(), ZoneChangedEvent.ChangeType.CREATED);
         log.info("Zone '{}' created successfully with ID: {}", name, savedZone.getId());
         
         return savedZone;
@@ -115,9 +136,11 @@ public class ZoneService {
         zone.setAddress(address);
         zone.setIcon(icon);
         zone.setRadius(radius);
+        fitRadiusToVertices(zone);
         zone.setDeviceIds(deviceIds);
         
         Zone updatedZone = zoneRepository.save(zone);
+        publishChange(updatedZone.getId(), ZoneChangedEvent.ChangeType.UPDATED);
         log.info("Zone '{}' updated successfully with ID: {} for user: {}", name, updatedZone.getId(), user.getPhone());
         
         return updatedZone;
@@ -141,9 +164,11 @@ public class ZoneService {
         if (longitude != null) {
             zone.setLongitude(longitude);
         }
+        fitRadiusToVertices(zone);
         zone.setDeviceIds(deviceIds);
 
         Zone updatedZone = zoneRepository.save(zone);
+        publishChange(updatedZone.getId(), ZoneChangedEvent.ChangeType.UPDATED);
         log.info("Zone '{}' with coordinates updated successfully with ID: {} for user: {}", name, updatedZone.getId(), user.getPhone());
 
         return updatedZone;
@@ -161,8 +186,10 @@ public class ZoneService {
         zone.setLatitude(zoneDto.latitude());
         zone.setLongitude(zoneDto.longitude());
         zone.setRadius(zoneDto.radius());
+        applyPolygon(zone, zoneDto.vertices());
         
         Zone updatedZone = zoneRepository.save(zone);
+        publishChange(updatedZone.getId(), ZoneChangedEvent.ChangeType.UPDATED);
         log.info("Zone '{}' updated via API successfully with ID: {}", zoneDto.name(), updatedZone.getId());
         
         return updatedZone;
@@ -176,6 +203,7 @@ public class ZoneService {
         }
         
         zoneRepository.deleteByIdAndUser(zoneId, user);
+        publishChange(zoneId, ZoneChangedEvent.ChangeType.DELETED);
         log.info("Zone ID: {} deleted successfully for user: {}", zoneId, user.getPhone());
     }
     
@@ -187,6 +215,7 @@ public class ZoneService {
         }
         
         zoneRepository.deleteById(zoneId);
+        publishChange(zoneId, ZoneChangedEvent.ChangeType.DELETED);
         log.info("Zone ID: {} deleted via API successfully", zoneId);
     }
     
@@ -217,8 +246,86 @@ public class ZoneService {
         
         zone.setNotificationsEnabled(enabled);
         Zone updatedZone = zoneRepository.save(zone);
+        publishChange(updatedZone.getId(), ZoneChangedEvent.ChangeType.UPDATED);
         log.info("Notifications toggled to {} for zone ID: {}", enabled, zoneId);
         
         return updatedZone;
     }
+    
+    /**
+     * Sets how long notifications for the zone are coalesced into one digest; {@code null} restores the
+     * configured default and 0 sends every transition on its own.
+     */
+    public Zone setNotificationWindow(Long zoneId, Integer seconds) {
+        log.debug("Setting notification window for zone ID: {} to: {}s", zoneId, seconds);
+        
+        Zone zone = zoneRepository.findById(zoneId)
+                .orElseThrow(() -> new RuntimeException("Zone not found"));
+        
+        zone.setNotificationWindowSeconds(seconds);
+        Zone updatedZone = zoneRepository.save(zone);
+        publishChange(updatedZone.getId(), ZoneChangedEvent.ChangeType.UPDATED);
+        
+        return updatedZone;
+    }
+    
+    /**
+     * Replaces the zone outline and, for polygons, fits the radius to it.
+     */
+    private static void applyPolygon(Zone zone, List<ZoneVertex> polygon) {
+        zone.getVertices().clear();
+        if (polygon != null) {
+            zone.getVertices().addAll(polygon);
+        }
+        fitRadiusToVertices(zone);
+    }
+
+    /**
+     * For polygons, sets the radius to the circle around the zone center that encloses every vertex, which
+     * the spatial index and radius-based features keep relying on. Circles keep their radius.
+     */
+    private static void fitRadiusToVertices(Zone zone) {
+        if (!zone.isPolygon()) {
+            return;
+        }
+        double enclosingMeters = 0;
+        for (ZoneVertex vertex : zone.getVertices()) {
+            enclosingMeters = Math.max(enclosingMeters, GeoMath.distanceMeters(
+                zone.getLatitude(), zone.getLongitude(), vertex.getLatitude(), vertex.getLongitude()));
+        }
+        zone.setRadius((int) Math.ceil(enclosingMeters) + 1);
+    }
+    
+    public ZoneDevice assignDevice(Zone zone, Device device, Boolean notificationsEnabled) {
+        log.debug("Assigning device {} to zone {}", device.getId(), zone.getId());
+        
+        ZoneDevice zoneDevice = zoneDeviceRepository.findByZoneAndDevice(zone, device)
+                .orElseGet(() -> new ZoneDevice(zone, device));
+        zoneDevice.setNotificationsEnabled(notificationsEnabled);
+        
+        ZoneDevice savedZoneDevice = zoneDeviceRepository.save(zoneDevice);
+        publishAssignmentsChange(zone.getId());
+        return savedZoneDevice;
+    }
+    
+    public void unassignDevice(Zone zone, Device device) {
+        log.debug("Removing device {} from zone {}", device.getId(), zone.getId());
+        
+        zoneDeviceRepository.findByZoneAndDevice(zone, device).ifPresent(zoneDevice -> {
+            zoneDeviceRepository.delete(zoneDevice);
+            publishAssignmentsChange(zone.getId());
+        });
+    }
+    
+    private void publishChange(Long zoneId, ZoneChangedEvent.ChangeType changeType) {
+        if (eventPublisher != null) {
+            eventPublisher.publishEvent(new ZoneChangedEvent(zoneId, changeType));
+        }
+    }
+
+    private void publishAssignmentsChange(Long zoneId) {
+        if (eventPublisher != null) {
+            eventPublisher.publishEvent(new ZoneAssignmentsChangedEvent(zoneId));
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,91 @@
+package com.maciejwasiak.locon.controller;
+
+import com.maciejwasiak.locon.model.Device;
+import com.maciejwasiak.locon.model.User;
+import com.maciejwasiak.locon.model.UserRole;
+import com.maciejwasiak.locon.repository.DeviceRepository;
+import com.maciejwasiak.locon.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class DeviceApiControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private DeviceRepository deviceRepository;
+
+    private User owner;
+    private User stranger;
+    private Long deviceId;
+
+    @BeforeEach
+    void setUp() {
+        owner = userRepository.findByPhone("+48111222333")
+                .orElseGet(() -> userRepository.save(new User("+48111222333", UserRole.USER)));
+        stranger = userRepository.findByPhone("+48444555666")
+                .orElseGet(() -> userRepository.save(new User("+48444555666", UserRole.USER)));
+        deviceId = deviceRepository.save(new Device("Smartwatch", "GJD.13 Watch", "Kid", owner)).getId();
+    }
+
+    @AfterEach
+    void tearDown() {
+        deviceRepository.deleteAll();
+    }
+
+    @Test
+    void positionEndpoints_WithoutSession_ShouldReturnUnauthorized() throws Exception {
+        mockMvc.perform(get("/api/devices/" + deviceId + "/location"))
+                .andExpect(status().isUnauthorized());
+        mockMvc.perform(get("/api/devices/locations").param("userId", owner.getId().toString()))
+                .andExpect(status().isUnauthorized());
+        mockMvc.perform(get("/api/devices/" + deviceId + "/track"))
+                .andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    void positionEndpoints_ForAnotherUsersDevice_ShouldReturnForbidden() throws Exception {
+        mockMvc.perform(get("/api/devices/" + deviceId + "/location").session(sessionOf(stranger)))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(get("/api/devices/locations")
+                        .param("userId", owner.getId().toString())
+                        .session(sessionOf(stranger)))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(get("/api/devices/" + deviceId + "/track").session(sessionOf(stranger)))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    void positionEndpoints_ForOwnDevice_ShouldAnswer() throws Exception {
+        mockMvc.perform(get("/api/devices/" + deviceId + "/location").session(sessionOf(owner)))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(get("/api/devices/locations").session(sessionOf(owner)))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/api/devices/" + deviceId + "/track").session(sessionOf(owner)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(0));
+    }
+
+    private static MockHttpSession sessionOf(User user) {
+        MockHttpSession session = new MockHttpSession();
+        session.setAttribute("user", user);
+        return session;
+    }
+}
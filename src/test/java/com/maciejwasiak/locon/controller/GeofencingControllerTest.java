@@ -5,18 +5,25 @@ import com.maciejwasiak.locon.model.UserRole;
 import com.maciejwasiak.locon.model.Zone;
 import com.maciejwasiak.locon.repository.UserRepository;
 import com.maciejwasiak.locon.repository.ZoneRepository;
+import com.maciejwasiak.locon.service.GeofenceEngine;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpSession;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @SpringBootTest
@@ -33,30 +40,258 @@ class GeofencingControllerTest {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private GeofenceEngine geofenceEngine;
+
     private Long zoneId;
+    private User user;
 
     @BeforeEach
     void setup() {
         zoneRepository.deleteAll();
         userRepository.deleteAll();
 
-        User user = userRepository.save(new User("+48123456789", UserRole.ADMIN));
+        user = userRepository.save(new User("+48123456789", UserRole.ADMIN));
         Zone zone = new Zone("Home", "Address", "home", 300, user);
         zone.setLatitude(52.2297);
         zone.setLongitude(21.0122);
         zone.setDeviceIds(List.of("1", "2"));
         zone = zoneRepository.save(zone);
         zoneId = zone.getId();
+        geofenceEngine.reloadZones();
     }
 
     @Test
     void getMockEvents_ShouldReturnEvents() throws Exception {
-        mockMvc.perform(get("/api/geofence/events/" + zoneId).param("count", "5")
+        MvcResult result = mockMvc.perform(get("/api/geofence/events/" + zoneId).param("count", "5")
                 .accept(MediaType.APPLICATION_JSON))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
             .andExpect(status().isOk())
             .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
             .andExpect(jsonPath("$[0].zoneId").value(zoneId));
     }
-}
 
+    @Test
+    void getMockEvents_WithNdjsonAndCount_ShouldStreamOneEventPerLine() throws Exception {
+        MvcResult result = mockMvc.perform(get("/api/geofence/events/" + zoneId)
+                .param("count", "25")
+                .param("seed", "7")
+                .accept("application/x-ndjson"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+        String ndjson = mockMvc.perform(asyncDispatch(result))
+            .andExpect(status().isOk())
+            .andExpect(content().contentTypeCompatibleWith("application/x-ndjson"))
+            .andReturn().getResponse().getContentAsString();
+
+        String[] lines = ndjson.strip().split("\n");
+        assertEquals(25, lines.length);
+        assertTrue(lines[24].contains("\"zoneId\":" + zoneId));
+    }
+
+    @Test
+    void ingestBatch_ShouldReturnOnlyTransitions() throws Exception {
+        String body = """
+            {"fixes": [
+              {"deviceId": "1", "latitude": 52.2297, "longitude": 21.0122, "timestamp": "2025-01-01T08:00:00Z", "accuracy": 5},
+              {"deviceId": "1", "latitude": 52.2298, "longitude": 21.0121, "timestamp": "2025-01-01T08:00:10Z", "accuracy": 5},
+              {"deviceId": "1", "latitude": 52.2600, "longitude": 21.0600, "timestamp": "2025-01-01T08:05:00Z", "accuracy": 5}
+            ]}
+            """;
+
+        mockMvc.perform(post("/api/geofence/locations/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(body))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.accepted").value(3))
+            .andExpect(jsonPath("$.transitions.length()").value(2))
+            .andExpect(jsonPath("$.transitions[0].eventType").value("ENTER"))
+            .andExpect(jsonPath("$.transitions[1].eventType").value("EXIT"))
+            .andExpect(jsonPath("$.hints.length()").value(1))
+            .andExpect(jsonPath("$.hints[0].deviceId").value("1"))
+            .andExpect(jsonPath("$.hints[0].nextReportSeconds").isNumber());
+    }
+
+    @Test
+    void ingestAsync_ShouldAcceptAndEvaluateInBackground() throws Exception {
+        String body = """
+            {"fixes": [
+              {"deviceId": "1", "latitude": 52.2297, "longitude": 21.0122, "timestamp": "2025-01-01T08:00:00Z"}
+            ]}
+            """;
+
+        mockMvc.perform(post("/api/geofence/locations")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(body))
+            .andExpect(status().isAccepted())
+            .andExpect(jsonPath("$.accepted").value(1))
+            .andExpect(jsonPath("$.transitions.length()").value(0))
+            .andExpect(jsonPath("$.hints[0].deviceId").value("1"));
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!geofenceEngine.isInside("1", zoneId) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(geofenceEngine.isInside("1", zoneId));
+    }
+
+    @Test
+    void ingestBatch_WithEmptyBatch_ShouldReturnBadRequest() throws Exception {
+        mockMvc.perform(post("/api/geofence/locations/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"fixes\": []}"))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void runSimulation_ShouldReportThroughput() throws Exception {
+        mockMvc.perform(post("/api/geofence/simulations")
+                .session(sessionOf(user))
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"devices\": 20, \"ticks\": 5, \"model\": \"COMMUTE\", \"seed\": 1}"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.fixes").value(100))
+            .andExpect(jsonPath("$.fixesPerSecond").isNumber());
+    }
+
+    @Test
+    void runSimulation_WithoutDevices_ShouldReturnBadRequest() throws Exception {
+        mockMvc.perform(post("/api/geofence/simulations")
+                .session(sessionOf(user))
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"devices\": 0, \"ticks\": 5}"))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void runSimulation_WithoutAdminSession_ShouldBeRejected() throws Exception {
+        String body = "{\"devices\": 20, \"ticks\": 5}";
+        mockMvc.perform(post("/api/geofence/simulations")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(body))
+            .andExpect(status().isUnauthorized());
+
+        User other = userRepository.save(new User("+48987654321", UserRole.USER));
+        mockMvc.perform(post("/api/geofence/simulations")
+                .session(sessionOf(other))
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(body))
+            .andExpect(status().isForbidden());
+    }
+
+    @Test
+    void getZonesContaining_ShouldReturnMatchingZones() throws Exception {
+        mockMvc.perform(get("/api/geofence/containing")
+                .param("lat", "52.2298")
+                .param("lng", "21.0121"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.length()").value(1))
+            .andExpect(jsonPath("$[0].id").value(zoneId));
+
+        mockMvc.perform(get("/api/geofence/containing")
+                .param("lat", "50.0647")
+                .param("lng", "19.9450"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.length()").value(0));
+    }
+
+    @Test
+    void getHistory_ShouldStreamMatchingEventsAsNdjson() throws Exception {
+        String body = """
+            {"fixes": [
+              {"deviceId": "2", "latitude": 52.2297, "longitude": 21.0122, "timestamp": "2019-03-01T08:00:00Z"},
+              {"deviceId": "2", "latitude": 52.2600, "longitude": 21.0600, "timestamp": "2019-03-01T09:00:00Z"},
+              {"deviceId": "2", "latitude": 52.2297, "longitude": 21.0122, "timestamp": "2019-03-02T08:00:00Z"}
+            ]}
+            """;
+        mockMvc.perform(post("/api/geofence/locations/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(body))
+            .andExpect(status().isOk());
+
+        MvcResult result = mockMvc.perform(get("/api/geofence/history")
+                .param("deviceId", "2")
+                .param("from", "2019-03-01T00:00:00Z")
+                .param("to", "2019-03-01T23:59:59Z")
+                .session(sessionOf(user)))
+            .andExpect(request().asyncStarted())
+            .andReturn();
 
+        String ndjson = mockMvc.perform(asyncDispatch(result))
+            .andExpect(status().isOk())
+            .andExpect(content().contentTypeCompatibleWith("application/x-ndjson"))
+            .andReturn().getResponse().getContentAsString();
+
+        String[] lines = ndjson.strip().split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].contains("\"eventType\":\"ENTER\""));
+        assertTrue(lines[1].contains("\"eventType\":\"EXIT\""));
+
+        User other = userRepository.save(new User("+48987654321", UserRole.USER));
+        MvcResult foreign = mockMvc.perform(get("/api/geofence/history")
+                .param("from", "2019-03-01T00:00:00Z")
+                .param("to", "2019-03-01T23:59:59Z")
+                .session(sessionOf(other)))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+        assertEquals("", mockMvc.perform(asyncDispatch(foreign))
+            .andExpect(status().isOk())
+            .andReturn().getResponse().getContentAsString());
+    }
+
+    @Test
+    void getHistory_WithoutSession_ShouldReturnUnauthorized() throws Exception {
+        mockMvc.perform(get("/api/geofence/history"))
+            .andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    void getHistory_WithInvertedRange_ShouldReturnBadRequest() throws Exception {
+        mockMvc.perform(get("/api/geofence/history")
+                .param("from", "2019-03-02T00:00:00Z")
+                .param("to", "2019-03-01T00:00:00Z")
+                .session(sessionOf(user)))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void streamEvents_WithoutSession_ShouldReturnUnauthorized() throws Exception {
+        mockMvc.perform(get("/api/geofence/stream").accept(MediaType.TEXT_EVENT_STREAM))
+            .andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    void streamEvents_ForAnotherUsersZone_ShouldReturnForbidden() throws Exception {
+        User other = userRepository.save(new User("+48987654321", UserRole.USER));
+
+        mockMvc.perform(get("/api/geofence/stream")
+                .param("zoneId", zoneId.toString())
+                .session(sessionOf(other))
+                .accept(MediaType.TEXT_EVENT_STREAM))
+            .andExpect(status().isForbidden());
+        mockMvc.perform(get("/api/geofence/stream")
+                .param("userId", user.getId().toString())
+                .session(sessionOf(other))
+                .accept(MediaType.TEXT_EVENT_STREAM))
+            .andExpect(status().isForbidden());
+    }
+
+    @Test
+    void streamEvents_ForOwnZone_ShouldOpenStream() throws Exception {
+        mockMvc.perform(get("/api/geofence/stream")
+                .param("zoneId", zoneId.toString())
+                .session(sessionOf(user))
+                .accept(MediaType.TEXT_EVENT_STREAM))
+            .andExpect(request().asyncStarted());
+    }
+
+    private static MockHttpSession sessionOf(User user) {
+        MockHttpSession session = new MockHttpSession();
+        session.setAttribute("user", user);
+        return session;
+    }
+}
@@ -1,7 +1,13 @@
 package com.maciejwasiak.locon.dto;
 
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
 import org.junit.jupiter.api.Test;
 
+import java.util.List;
+import java.util.Set;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class ZoneCreateRequestTest {
@@ -32,6 +38,25 @@ class ZoneCreateRequestTest {
         assertEquals(longitude, dto.longitude());
         assertEquals(radius, dto.radius());
         assertTrue(dto.notificationsEnabled());
+        assertTrue(dto.polygon().isEmpty());
+    }
+
+    @Test
+    void validation_PolygonZoneMayOmitRadiusButCircleMayNot() {
+        Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+        List<ZoneVertexDto> outline = List.of(
+            new ZoneVertexDto(52.2290, 21.0110), new ZoneVertexDto(52.2290, 21.0130), new ZoneVertexDto(52.2305, 21.0120));
+
+        ZoneCreateRequest polygon = new ZoneCreateRequest("Campus", "school", "Address", 52.2297, 21.0122, null, outline);
+        ZoneCreateRequest circle = new ZoneCreateRequest("Home", "home", "Address", 52.2297, 21.0122, null);
+        ZoneCreateRequest tooFewVertices = new ZoneCreateRequest("Campus", "school", "Address", 52.2297, 21.0122,
+            null, outline.subList(0, 2));
+
+        Set<ConstraintViolation<ZoneCreateRequest>> circleViolations = validator.validate(circle);
+        assertTrue(validator.validate(polygon).isEmpty());
+        assertTrue(circleViolations.stream().anyMatch(v -> v.getMessage().contains("Radius is required")));
+        assertFalse(validator.validate(tooFewVertices).isEmpty());
+        assertEquals(3, polygon.toZoneDto().vertices().size());
     }
 }
 
@@ -0,0 +1,65 @@
+package com.maciejwasiak.locon.geofence;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeviceZoneIndexTest {
+
+    @Test
+    void replaceAll_BuildsDeviceToSlotMapping() {
+        DeviceZoneIndex index = new DeviceZoneIndex();
+
+        index.replaceAll(Map.of(0, new long[] { 1, 2 }, 1, new long[] { 2, 3, 3 }));
+
+        assertArrayEquals(new int[] { 0 }, index.slotsFor(1));
+        assertArrayEquals(new int[] { 0, 1 }, sorted(index.slotsFor(2)));
+        assertArrayEquals(new int[] { 1 }, index.slotsFor(3));
+        assertEquals(3, index.deviceCount());
+    }
+
+    @Test
+    void replaceZone_OnlyTouchesChangedDevices() {
+        DeviceZoneIndex index = new DeviceZoneIndex();
+        index.replaceAll(Map.of(0, new long[] { 1, 2 }, 1, new long[] { 2 }));
+        int[] untouched = index.slotsFor(2);
+
+        index.replaceZone(0, new long[] { 2, 4 });
+
+        assertEquals(0, index.slotsFor(1).length);
+        assertArrayEquals(new int[] { 0 }, index.slotsFor(4));
+        assertSame(untouched, index.slotsFor(2));
+        assertArrayEquals(new long[] { 2, 4 }, index.devicesFor(0));
+    }
+
+    @Test
+    void assignAndUnassign_UpdateIncrementally() {
+        DeviceZoneIndex index = new DeviceZoneIndex();
+
+        for (long deviceId = 1; deviceId <= 1_000; deviceId++) {
+            index.assign(deviceId, (int) (deviceId % 5));
+        }
+        index.unassign(10, 0);
+        index.assign(10, 3);
+
+        assertEquals(1_000, index.deviceCount());
+        assertArrayEquals(new int[] { 3 }, index.slotsFor(10));
+        assertArrayEquals(new int[] { 2 }, index.slotsFor(7));
+    }
+
+    @Test
+    void parseDeviceId_NonNumericId_IsNotIndexed() {
+        assertEquals(DeviceZoneIndex.NO_DEVICE, DeviceZoneIndex.parseDeviceId("virtual-1"));
+        assertEquals(0, new DeviceZoneIndex().slotsFor(DeviceZoneIndex.parseDeviceId("virtual-1")).length);
+        assertEquals(42L, DeviceZoneIndex.parseDeviceId("42"));
+    }
+
+    private static int[] sorted(int[] slots) {
+        int[] copy = slots.clone();
+        Arrays.sort(copy);
+        return copy;
+    }
+}
@@ -0,0 +1,81 @@
+package com.maciejwasiak.locon.geofence;
+
+import org.junit.jupiter.api.Test;
+
+import static com.maciejwasiak.locon.geofence.DeviceZoneStates.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeviceZoneStatesTest {
+
+    @Test
+    void pack_RoundTripsStateAndSince() {
+        long packed = pack(PENDING_EXIT, 1_735_689_600_000L);
+
+        assertEquals(PENDING_EXIT, stateOf(packed));
+        assertEquals(1_735_689_600_000L, sinceOf(packed));
+    }
+
+    @Test
+    void update_StoresOnlyNonOutsidePairs() {
+        DeviceZoneStates states = new DeviceZoneStates();
+
+        states.update(7L, row -> {
+            row.set(1L, pack(INSIDE, 10));
+            row.set(2L, pack(PENDING_ENTER, 20));
+            row.set(3L, pack(OUTSIDE, 0));
+        });
+
+        assertEquals(2, states.pairCount());
+        assertEquals(INSIDE, stateOf(states.get(7L, 1L)));
+        assertEquals(20, sinceOf(states.get(7L, 2L)));
+        assertEquals(OUTSIDE, stateOf(states.get(7L, 3L)));
+        assertEquals(OUTSIDE, stateOf(states.get(8L, 1L)));
+    }
+
+    @Test
+    void update_SettingOutsideRemovesPairAndReleasesRow() {
+        DeviceZoneStates states = new DeviceZoneStates();
+        states.update(7L, row -> row.set(1L, pack(INSIDE, 10)));
+
+        states.update(7L, row -> row.set(1L, pack(OUTSIDE, 0)));
+        states.update(9L, row -> row.set(5L, pack(INSIDE, 30)));
+
+        assertEquals(1, states.pairCount());
+        assertEquals(OUTSIDE, stateOf(states.get(7L, 1L)));
+        assertEquals(INSIDE, stateOf(states.get(9L, 5L)));
+    }
+
+    @Test
+    void remove_DropsAllPairsOfDevice() {
+        DeviceZoneStates states = new DeviceZoneStates();
+        states.update(7L, row -> {
+            for (long zoneId = 0; zoneId < 10; zoneId++) {
+                row.set(zoneId, pack(INSIDE, zoneId));
+            }
+        });
+
+        states.remove(7L);
+
+        assertEquals(0, states.pairCount());
+        assertEquals(OUTSIDE, stateOf(states.get(7L, 4L)));
+    }
+
+    @Test
+    void removeZone_DropsZoneForEveryDevice() {
+        DeviceZoneStates states = new DeviceZoneStates();
+        for (long deviceId = 0; deviceId < 200; deviceId++) {
+            states.update(deviceId, row -> {
+                row.set(1L, pack(INSIDE, 10));
+                row.set(2L, pack(PENDING_EXIT, 20));
+            });
+        }
+
+        states.removeZone(1L);
+        states.update(5L, row -> row.set(1L, pack(PENDING_ENTER, 30)));
+
+        assertEquals(201, states.pairCount());
+        assertEquals(OUTSIDE, stateOf(states.get(7L, 1L)));
+        assertEquals(PENDING_EXIT, stateOf(states.get(7L, 2L)));
+        assertEquals(PENDING_ENTER, stateOf(states.get(5L, 1L)));
+    }
+}
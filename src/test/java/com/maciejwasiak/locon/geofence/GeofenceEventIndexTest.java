@@ -0,0 +1,155 @@
+package com.maciejwasiak.locon.geofence;
+
+import com.maciejwasiak.locon.dto.GeofenceEventDto;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GeofenceEventIndexTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void candidates_ByDevice_ReturnsOnlyThatDevicesOffsets() {
+        try (GeofenceEventLog log = GeofenceEventLog.open(directory, 64 * 1024)) {
+            List<Long> deviceOneOffsets = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                long offset = log.append(event(String.valueOf(i % 4), 10L + i % 2, i * 1_000L));
+                if (i % 4 == 1) {
+                    deviceOneOffsets.add(offset);
+                }
+            }
+            GeofenceEventIndex index = new GeofenceEventIndex();
+            index.catchUp(log);
+
+            long[] offsets = index.candidates("1", null, Long.MIN_VALUE, Long.MAX_VALUE);
+
+            assertEquals(100, index.recordCount());
+            assertArrayEquals(deviceOneOffsets.stream().mapToLong(Long::longValue).toArray(), offsets);
+            assertEquals(0, index.candidates("missing", null, Long.MIN_VALUE, Long.MAX_VALUE).length);
+            assertEquals(50, index.candidates(null, 11L, Long.MIN_VALUE, Long.MAX_VALUE).length);
+            assertNull(index.candidates(null, null, 0, 1));
+            // Device 1 only appears in zone 11, so the union adds zone 10's 50 records
+            assertEquals(75, index.candidatesOf(Set.of("1"), Set.of(10L), Long.MIN_VALUE, Long.MAX_VALUE).length);
+            assertEquals(50, index.candidatesOf(Set.of("1", "3"), Set.of(11L), Long.MIN_VALUE, Long.MAX_VALUE).length);
+        }
+    }
+
+    @Test
+    void blockRanges_SkipsBlocksOutsideTimeRange() {
+        int records = GeofenceEventIndex.BLOCK_RECORDS * 4;
+        try (GeofenceEventLog log = GeofenceEventLog.open(directory, 1024 * 1024)) {
+            GeofenceEventIndex index = new GeofenceEventIndex();
+            for (int i = 0; i < records; i++) {
+                log.append(event("1", 10L, i * 1_000L));
+                if (i % 100 == 0) {
+                    index.catchUp(log);
+                }
+            }
+            index.catchUp(log);
+
+            long from = GeofenceEventIndex.BLOCK_RECORDS * 1_000L;
+            long to = from + 10_000L;
+            long[][] ranges = index.blockRanges(from, to);
+            long[] deviceCandidates = index.candidates("1", null, from, to);
+
+            assertEquals(records, index.recordCount());
+            assertEquals(1, ranges.length);
+            assertEquals(GeofenceEventIndex.BLOCK_RECORDS, deviceCandidates.length);
+            assertEquals(ranges[0][0], deviceCandidates[0]);
+        }
+    }
+
+    @Test
+    void trimBefore_DropsEntriesOfPurgedSegments() {
+        int records = GeofenceEventIndex.BLOCK_RECORDS * 4;
+        try (GeofenceEventLog log = GeofenceEventLog.open(directory, 16 * 1024)) {
+            for (int i = 0; i < records; i++) {
+                log.append(event(i < records / 2 ? "old" : String.valueOf(i % 2), 10L + i % 2, i * 1_000L));
+            }
+            GeofenceEventIndex index = new GeofenceEventIndex();
+            index.catchUp(log);
+
+            log.purgeBefore(records / 2 * 1_000L);
+            index.trimBefore(log.firstOffset());
+
+            long[] zoneOffsets = index.candidates(null, 10L, Long.MIN_VALUE, Long.MAX_VALUE);
+            List<Long> retained = new ArrayList<>();
+            List<Long> retainedOld = new ArrayList<>();
+            log.read(0, (offset, buffer, position) -> {
+                retained.add(offset);
+                if (GeofenceEventCodec.deviceId(buffer, position).equals("old")) {
+                    retainedOld.add(offset);
+                }
+                return true;
+            });
+            assertTrue(retained.size() < records);
+            assertEquals(retained.size(), index.recordCount());
+            // The segment holding the cut-over keeps its older records
+            assertArrayEquals(retainedOld.stream().mapToLong(Long::longValue).toArray(),
+                index.candidates("old", null, Long.MIN_VALUE, Long.MAX_VALUE));
+            assertTrue(zoneOffsets.length > 0);
+            assertTrue(zoneOffsets[0] >= log.firstOffset());
+            assertTrue(index.blockRanges(Long.MIN_VALUE, Long.MAX_VALUE)[0][1] > log.firstOffset());
+        }
+    }
+
+    @Test
+    void checkpoint_ReadBackIndexCatchesUpOnlyNewRecords() {
+        Path file = directory.resolve("index.checkpoint");
+        try (GeofenceEventLog log = GeofenceEventLog.open(directory, 64 * 1024)) {
+            for (int i = 0; i < 300; i++) {
+                log.append(event(String.valueOf(i % 3), 10L, i * 1_000L));
+            }
+            GeofenceEventIndex index = new GeofenceEventIndex();
+            index.catchUp(log);
+            index.checkpoint(file);
+            long checkpointed = index.indexedOffset();
+            for (int i = 300; i < 400; i++) {
+                log.append(event(String.valueOf(i % 3), 11L, i * 1_000L));
+            }
+            index.catchUp(log);
+
+            GeofenceEventIndex restored = GeofenceEventIndex.read(file);
+            assertEquals(checkpointed, restored.indexedOffset());
+            restored.catchUp(log);
+
+            assertEquals(400, restored.recordCount());
+            assertArrayEquals(index.candidates("1", null, Long.MIN_VALUE, Long.MAX_VALUE),
+                restored.candidates("1", null, Long.MIN_VALUE, Long.MAX_VALUE));
+            assertArrayEquals(index.candidates(null, 11L, Long.MIN_VALUE, Long.MAX_VALUE),
+                restored.candidates(null, 11L, Long.MIN_VALUE, Long.MAX_VALUE));
+            assertArrayEquals(index.blockRanges(250_000L, 260_000L), restored.blockRanges(250_000L, 260_000L));
+        }
+    }
+
+    @Test
+    void read_CorruptCheckpoint_IsRejected() throws Exception {
+        Path file = directory.resolve("index.checkpoint");
+        try (GeofenceEventLog log = GeofenceEventLog.open(directory, 64 * 1024)) {
+            log.append(event("1", 10L, 1_000L));
+            GeofenceEventIndex index = new GeofenceEventIndex();
+            index.catchUp(log);
+            index.checkpoint(file);
+        }
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length - 12] ^= 1;
+        Files.write(file, bytes);
+
+        assertThrows(IllegalStateException.class, () -> GeofenceEventIndex.read(file));
+    }
+
+    private static GeofenceEventDto event(String deviceId, long zoneId, long millis) {
+        return new GeofenceEventDto(zoneId, "Zone " + zoneId, deviceId, "Device " + deviceId, 52.2297, 21.0122, 100,
+            "ENTER", Instant.ofEpochMilli(millis));
+    }
+}
@@ -0,0 +1,134 @@
+package com.maciejwasiak.locon.geofence;
+
+import com.maciejwasiak.locon.dto.GeofenceEventDto;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GeofenceEventLogTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void appendAndReplay_RoundTripsEvents() {
+        try (GeofenceEventLog log = GeofenceEventLog.open(directory, 4096)) {
+            GeofenceEventDto enter = event("1", "ENTER", 1_000);
+            GeofenceEventDto exit = event("1", "EXIT", 2_000);
+            log.append(List.of(enter, exit));
+
+            List<GeofenceEventDto> replayed = new ArrayList<>();
+            log.replay(0, (offset, event) -> replayed.add(event));
+
+            assertEquals(List.of(enter, exit), replayed);
+        }
+    }
+
+    @Test
+    void append_RollsSegmentsAndKeepsOffsetsMonotonic() throws Exception {
+        List<Long> offsets = new ArrayList<>();
+        try (GeofenceEventLog log = GeofenceEventLog.open(directory, 512)) {
+            for (int i = 0; i < 50; i++) {
+                offsets.add(log.append(event(String.valueOf(i), "ENTER", i)));
+            }
+
+            List<String> deviceIds = new ArrayList<>();
+            log.replay(0, (offset, event) -> deviceIds.add(event.deviceId()));
+
+            assertEquals(50, deviceIds.size());
+            assertEquals("49", deviceIds.get(49));
+            assertTrue(log.segments().size() > 1);
+        }
+        for (int i = 1; i < offsets.size(); i++) {
+            assertTrue(offsets.get(i) > offsets.get(i - 1));
+        }
+        try (var files = Files.list(directory)) {
+            assertTrue(files.count() > 1);
+        }
+    }
+
+    @Test
+    void open_ExistingLog_ResumesAfterLastRecordAndIgnoresTornTail() throws Exception {
+        long endOffset;
+        try (GeofenceEventLog log = GeofenceEventLog.open(directory, 4096)) {
+            log.append(List.of(event("1", "ENTER", 1_000), event("2", "EXIT", 2_000)));
+            endOffset = log.writeOffset();
+        }
+        // Simulate a crash in the middle of writing the next record
+        try (RandomAccessFile file = new RandomAccessFile(directory.resolve(String.format("events-%020d.log", 0)).toFile(), "rw")) {
+            file.seek(endOffset);
+            file.writeInt(120);
+            file.writeLong(42L);
+        }
+
+        try (GeofenceEventLog log = GeofenceEventLog.open(directory, 4096)) {
+            assertEquals(endOffset, log.writeOffset());
+            log.append(event("3", "ENTER", 3_000));
+
+            List<String> deviceIds = new ArrayList<>();
+            log.replay(0, (offset, event) -> deviceIds.add(event.deviceId()));
+            assertEquals(List.of("1", "2", "3"), deviceIds);
+        }
+    }
+
+    @Test
+    void replay_FromOffset_SkipsEarlierRecordsAndStopsOnRequest() {
+        try (GeofenceEventLog log = GeofenceEventLog.open(directory, 4096)) {
+            log.append(event("1", "ENTER", 1_000));
+            long second = log.append(event("2", "ENTER", 2_000));
+            log.append(event("3", "ENTER", 3_000));
+
+            List<String> deviceIds = new ArrayList<>();
+            long next = log.replay(second, (offset, event) -> {
+                deviceIds.add(event.deviceId());
+                return false;
+            });
+
+            assertEquals(List.of("2"), deviceIds);
+            assertEquals(second, next);
+        }
+    }
+
+    @Test
+    void purgeBefore_DeletesOnlyOldestFullyExpiredSegments() throws Exception {
+        try (GeofenceEventLog log = GeofenceEventLog.open(directory, 512)) {
+            for (int i = 0; i < 50; i++) {
+                log.append(event(String.valueOf(i), "ENTER", i * 1_000L));
+            }
+            int segmentCount = log.segments().size();
+            long firstKept = log.segments().get(2).baseOffset();
+            List<GeofenceEventDto> kept = new ArrayList<>();
+            log.replay(firstKept, (offset, event) -> kept.add(event));
+
+            assertEquals(2, log.purgeBefore(kept.get(0).occurredAt().toEpochMilli()));
+
+            List<GeofenceEventDto> replayed = new ArrayList<>();
+            log.replay(0, (offset, event) -> replayed.add(event));
+            assertEquals(firstKept, log.firstOffset());
+            assertEquals(kept, replayed);
+            try (var files = Files.list(directory)) {
+                assertEquals(segmentCount - 2, files.count());
+            }
+
+            assertEquals(segmentCount - 3, log.purgeBefore(Long.MAX_VALUE));
+            assertEquals(1, log.segments().size());
+            log.append(event("50", "EXIT", 50_000));
+            List<String> deviceIds = new ArrayList<>();
+            log.replay(0, (offset, event) -> deviceIds.add(event.deviceId()));
+            assertEquals("50", deviceIds.get(deviceIds.size() - 1));
+        }
+    }
+
+    private static GeofenceEventDto event(String deviceId, String type, long millis) {
+        return new GeofenceEventDto(10L, "Home", deviceId, "Device " + deviceId, 52.2297, 21.0122, 100,
+            type, Instant.ofEpochMilli(millis));
+    }
+}
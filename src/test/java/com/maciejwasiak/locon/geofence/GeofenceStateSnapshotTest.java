@@ -0,0 +1,62 @@
+package com.maciejwasiak.locon.geofence;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.maciejwasiak.locon.geofence.DeviceZoneStates.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class GeofenceStateSnapshotTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void writeAndRead_RoundTripsPairsAndHeader() {
+        DeviceZoneStates states = new DeviceZoneStates();
+        for (long deviceId = 1; deviceId <= 1_000; deviceId++) {
+            long device = deviceId;
+            states.update(device, row -> {
+                row.set(10L, pack(INSIDE, device));
+                if (device % 3 == 0) {
+                    row.set(11L, pack(PENDING_EXIT, device * 2));
+                }
+            });
+        }
+        Path file = directory.resolve("states.snapshot");
+
+        long written = GeofenceStateSnapshot.write(file, 4_096L, 123L, states::forEach);
+        DeviceZoneStates restored = new DeviceZoneStates();
+        GeofenceStateSnapshot.Header header = GeofenceStateSnapshot.read(file, (deviceId, zoneId, packed) ->
+            restored.update(deviceId, row -> row.set(zoneId, packed)));
+
+        assertEquals(1_333, written);
+        assertEquals(new GeofenceStateSnapshot.Header(4_096L, 123L, 1_333), header);
+        assertEquals(states.pairCount(), restored.pairCount());
+        assertEquals(pack(INSIDE, 7), restored.get(7L, 10L));
+        assertEquals(pack(PENDING_EXIT, 18), restored.get(9L, 11L));
+        assertFalse(Files.exists(directory.resolve("states.snapshot.tmp")));
+    }
+
+    @Test
+    void read_CorruptedFile_Throws() throws Exception {
+        DeviceZoneStates states = new DeviceZoneStates();
+        states.update(5L, row -> row.set(10L, pack(INSIDE, 1)));
+        Path file = directory.resolve("states.snapshot");
+        GeofenceStateSnapshot.write(file, 0L, 0L, states::forEach);
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(30);
+            raf.write(0x7F);
+        }
+
+        List<Long> devices = new ArrayList<>();
+        assertThrows(IllegalStateException.class,
+            () -> GeofenceStateSnapshot.read(file, (deviceId, zoneId, packed) -> devices.add(deviceId)));
+    }
+}
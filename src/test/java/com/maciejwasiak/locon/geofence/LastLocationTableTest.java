@@ -0,0 +1,38 @@
+package com.maciejwasiak.locon.geofence;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LastLocationTableTest {
+
+    @Test
+    void update_KeepsTheNewestFixPerDevice() {
+        LastLocationTable table = new LastLocationTable();
+
+        assertTrue(table.update(1L, 52.0, 21.0, 15.0, 2_000));
+        assertFalse(table.update(1L, 53.0, 22.0, 5.0, 1_000));
+        assertTrue(table.update(2L, 50.0, 19.0, Double.NaN, 1_000));
+
+        assertEquals(new LastLocationTable.Location(1L, 52.0, 21.0, 15.0, 2_000), table.get(1L));
+        assertTrue(Double.isNaN(table.get(2L).accuracyMeters()));
+        assertNull(table.get(3L));
+        assertEquals(2, table.size());
+    }
+
+    @Test
+    void remove_ReusesTheFreedEntry() {
+        LastLocationTable table = new LastLocationTable();
+        for (long device = 0; device < 1_000; device++) {
+            table.update(device, device / 100.0, 0, 10, device);
+        }
+
+        table.remove(500L);
+        table.update(5_000L, 1.0, 2.0, 3.0, 4L);
+
+        assertNull(table.get(500L));
+        assertEquals(4.99, table.get(499L).latitude());
+        assertEquals(new LastLocationTable.Location(5_000L, 1.0, 2.0, 3.0, 4L), table.get(5_000L));
+        assertEquals(1_000, table.size());
+    }
+}
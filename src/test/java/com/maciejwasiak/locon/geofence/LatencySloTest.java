@@ -0,0 +1,24 @@
+package com.maciejwasiak.locon.geofence;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencySloTest {
+
+    @Test
+    void record_CountsSamplesOverTheThresholdAsMissed() {
+        LatencySlo slo = new LatencySlo(Duration.ofMillis(100));
+
+        slo.record(Duration.ofMillis(40).toNanos());
+        slo.record(Duration.ofMillis(100).toNanos());
+        slo.record(Duration.ofMillis(250).toNanos());
+
+        assertEquals(3, slo.getCount());
+        assertEquals(2, slo.getMet());
+        assertEquals(1, slo.getMissed());
+        assertEquals(Duration.ofMillis(390).toNanos(), slo.getTotalNanos());
+    }
+}
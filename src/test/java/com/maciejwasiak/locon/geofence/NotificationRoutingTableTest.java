@@ -0,0 +1,41 @@
+package com.maciejwasiak.locon.geofence;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NotificationRoutingTableTest {
+
+    @Test
+    void recipients_CombinesZoneAndDeviceOwnersPerRoute() {
+        NotificationRoutingTable table = NotificationRoutingTable.of(List.of(
+            new NotificationRoute(1L, 10L, 100L, 200L),
+            new NotificationRoute(1L, 11L, 100L, 100L),
+            new NotificationRoute(2L, 10L, null, 200L)));
+
+        assertArrayEquals(new long[] { 100L, 200L }, table.recipients(1L, 10L));
+        assertArrayEquals(new long[] { 100L }, table.recipients(1L, 11L));
+        assertArrayEquals(new long[] { 200L }, table.recipients(2L, 10L));
+        assertEquals(0, table.recipients(2L, 11L).length);
+        assertEquals(0, table.recipients(3L, 10L).length);
+        assertEquals(3, table.routeCount());
+    }
+
+    @Test
+    void withZone_ReplacesOrRemovesOneZone() {
+        NotificationRoutingTable table = NotificationRoutingTable.of(List.of(
+            new NotificationRoute(1L, 10L, 100L, 200L),
+            new NotificationRoute(2L, 10L, 100L, 200L)));
+
+        NotificationRoutingTable muted = table.withZone(1L, List.of());
+        NotificationRoutingTable moved = table.withZone(2L, List.of(new NotificationRoute(2L, 12L, 100L, 300L)));
+
+        assertEquals(0, muted.recipients(1L, 10L).length);
+        assertArrayEquals(new long[] { 100L, 200L }, muted.recipients(2L, 10L));
+        assertEquals(0, moved.recipients(2L, 10L).length);
+        assertArrayEquals(new long[] { 100L, 300L }, moved.recipients(2L, 12L));
+        assertArrayEquals(new long[] { 100L, 200L }, table.recipients(1L, 10L));
+    }
+}
@@ -0,0 +1,116 @@
+package com.maciejwasiak.locon.geofence;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RingBufferTest {
+
+    @Test
+    void tryClaim_FailsWhenItWouldLapTheGatingStage() {
+        RingBuffer<long[]> ring = new RingBuffer<>(8, () -> new long[1]);
+        RingBuffer.Sequence consumer = new RingBuffer.Sequence();
+        ring.setGatingSequences(consumer);
+
+        assertEquals(5, ring.tryClaim(6));
+        assertEquals(-1, ring.tryClaim(3));
+        consumer.set(1);
+
+        assertEquals(8, ring.tryClaim(3));
+        assertEquals(7, ring.backlog());
+        assertEquals(-1, ring.tryClaim(9));
+        assertThrows(IllegalArgumentException.class, () -> new RingBuffer<>(12, () -> new long[1]));
+    }
+
+    @Test
+    void highestPublished_StopsAtFirstUnpublishedSlot() {
+        RingBuffer<long[]> ring = new RingBuffer<>(8, () -> new long[1]);
+
+        ring.tryClaim(2);
+        ring.tryClaim(2);
+        ring.publish(2, 3);
+        assertEquals(-1, ring.highestPublished(0));
+        ring.publish(0, 1);
+        assertEquals(3, ring.highestPublished(0));
+    }
+
+    @Test
+    void stages_SeeEverySlotInOrderAfterUpstream() throws Exception {
+        int events = 200_000;
+        RingBuffer<long[]> ring = new RingBuffer<>(1024, () -> new long[2]);
+        RingStage<long[]> doubler = new RingStage<>(ring, (slot, sequence, endOfBatch) -> slot[1] = slot[0] * 2);
+        AtomicLong sum = new AtomicLong();
+        AtomicLong outOfOrder = new AtomicLong();
+        long[] expectedSequence = { 0 };
+        RingStage<long[]> summer = new RingStage<>(ring, (slot, sequence, endOfBatch) -> {
+            if (sequence != expectedSequence[0]++ || slot[1] != slot[0] * 2) {
+                outOfOrder.incrementAndGet();
+            }
+            sum.addAndGet(slot[0]);
+        }, doubler.sequence());
+        ring.setGatingSequences(summer.sequence());
+        List<Thread> threads = new ArrayList<>(List.of(new Thread(doubler), new Thread(summer)));
+        threads.forEach(Thread::start);
+
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < 2; p++) {
+            Thread producer = new Thread(() -> {
+                for (int i = 1; i <= events / 2; i++) {
+                    long high;
+                    while ((high = ring.tryClaim(1)) < 0) {
+                        Thread.onSpinWait();
+                    }
+                    ring.get(high)[0] = i;
+                    ring.publish(high, high);
+                }
+            });
+            producers.add(producer);
+            producer.start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (summer.sequence().get() < events - 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        doubler.halt();
+        summer.halt();
+
+        assertEquals(events - 1, summer.sequence().get());
+        assertEquals(0, outOfOrder.get());
+        assertEquals(2L * (events / 2) * (events / 2 + 1) / 2, sum.get());
+    }
+
+    @Test
+    void idleStage_BlocksUntilPublishSignalsIt() throws Exception {
+        RingBuffer<long[]> ring = new RingBuffer<>(16, () -> new long[1]);
+        AtomicLong seen = new AtomicLong(-1);
+        RingStage<long[]> stage = new RingStage<>(ring, (slot, sequence, endOfBatch) -> seen.set(slot[0]));
+        ring.setGatingSequences(stage.sequence());
+        Thread thread = new Thread(stage);
+        thread.start();
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (ring.sleepingConsumers() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(1, ring.sleepingConsumers());
+
+        long high = ring.tryClaim(1);
+        ring.get(high)[0] = 42;
+        ring.publish(high, high);
+        while (seen.get() != 42 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        stage.halt();
+        thread.join(1_000);
+
+        assertEquals(42, seen.get());
+        assertFalse(thread.isAlive());
+    }
+}
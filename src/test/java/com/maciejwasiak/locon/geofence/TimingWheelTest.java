@@ -0,0 +1,58 @@
+package com.maciejwasiak.locon.geofence;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimingWheelTest {
+
+    @Test
+    void advance_FiresItemsOnlyOnceTheirDeadlinePassed() {
+        TimingWheel<String> wheel = new TimingWheel<>(8, 100, 0);
+        wheel.schedule("a", 350);
+        wheel.schedule("b", 300);
+        List<String> fired = new ArrayList<>();
+
+        assertEquals(0, wheel.advance(250, fired::add));
+        assertEquals(1, wheel.advance(300, fired::add));
+        assertEquals(List.of("b"), fired);
+        assertEquals(1, wheel.size());
+
+        assertEquals(0, wheel.advance(399, fired::add));
+        assertEquals(1, wheel.advance(400, fired::add));
+        assertEquals(List.of("b", "a"), fired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void advance_KeepsItemsDueInALaterTurn() {
+        TimingWheel<String> wheel = new TimingWheel<>(4, 10, 0);
+        wheel.schedule("later", 75);
+        wheel.schedule("past", -5);
+        List<String> fired = new ArrayList<>();
+
+        wheel.advance(35, fired::add);
+        assertEquals(List.of("past"), fired);
+
+        wheel.advance(70, fired::add);
+        assertEquals(List.of("past"), fired);
+
+        wheel.advance(1_000, fired::add);
+        assertEquals(List.of("past", "later"), fired);
+    }
+
+    @Test
+    void drain_ReturnsEverythingRegardlessOfDeadline() {
+        TimingWheel<Integer> wheel = new TimingWheel<>(16, 50, 1_000);
+        wheel.schedule(1, 1_100);
+        wheel.schedule(2, 90_000);
+
+        assertEquals(2, wheel.drain().size());
+        assertEquals(0, wheel.size());
+        assertEquals(0, wheel.advance(100_000, item -> fail()));
+        assertThrows(IllegalArgumentException.class, () -> new TimingWheel<>(12, 50, 0));
+    }
+}
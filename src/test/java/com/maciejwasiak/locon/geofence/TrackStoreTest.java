@@ -0,0 +1,103 @@
+package com.maciejwasiak.locon.geofence;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrackStoreTest {
+
+    private static final long DAY = 86_400_000L;
+    private static final long START = LocalDate.of(2026, 3, 1).toEpochDay() * DAY;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void read_DecodesOnlyTheRangeAcrossBlocksFilesAndMemory() {
+        TrackStore store = TrackStore.open(directory, 100);
+        for (int i = 0; i < 250; i++) {
+            store.append(1L, 52.2297 + i * 1e-4, 21.0122 - i * 1e-4, START + i * 10_000L);
+            store.append(2L, 50.0, 19.0, START + i * 10_000L);
+        }
+        store.flush();
+
+        List<long[]> points = new ArrayList<>();
+        int read = store.read(1L, START + 950_000, START + 2_050_000, Integer.MAX_VALUE, (lat, lng, at) -> {
+            points.add(new long[] { TrackStore.toE7(lat), TrackStore.toE7(lng), at });
+            return true;
+        });
+
+        assertEquals(111, read);
+        assertEquals(START + 950_000, points.get(0)[2]);
+        assertEquals(START + 2_050_000, points.get(110)[2]);
+        assertEquals(TrackStore.toE7(52.2297 + 95 * 1e-4), points.get(0)[0]);
+        assertEquals(TrackStore.toE7(21.0122 - 205 * 1e-4), points.get(110)[1]);
+        assertEquals(5, store.read(2L, START, START + DAY, 5, (lat, lng, at) -> true));
+    }
+
+    @Test
+    void open_RebuildsTheIndexAndDropsATornBlock() throws Exception {
+        TrackStore store = TrackStore.open(directory, 10);
+        for (int i = 0; i < 25; i++) {
+            store.append(7L, 1.0 + i * 1e-5, 2.0, START + i * 1_000L);
+        }
+        store.close();
+        Path file = directory.resolve("2026-03-01.track");
+        long size = Files.size(file);
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(size - 3);
+        }
+
+        TrackStore reopened = TrackStore.open(directory, 10);
+        List<Long> times = new ArrayList<>();
+        reopened.read(7L, START, START + DAY, Integer.MAX_VALUE, (lat, lng, at) -> times.add(at));
+
+        assertEquals(20, times.size());
+        assertEquals(START + 19_000, times.get(19));
+        assertTrue(Files.size(file) < size);
+    }
+
+    @Test
+    void append_SplitsBlocksPerDayAndPurgeDropsOldDays() {
+        TrackStore store = TrackStore.open(directory, 1_000);
+        store.append(3L, 10.0, 20.0, START + DAY - 1);
+        store.append(3L, 10.0, 20.0, START + DAY);
+        store.close();
+
+        assertTrue(Files.exists(directory.resolve("2026-03-01.track")));
+        assertTrue(Files.exists(directory.resolve("2026-03-02.track")));
+        assertEquals(1, store.purgeBefore(START / DAY + 1));
+        assertEquals(1, store.read(3L, START, START + 2 * DAY, 10, (lat, lng, at) -> true));
+    }
+
+    @Test
+    void append_StoresAMovingDeviceInAFewBytesPerFix() {
+        TrackStore store = TrackStore.open(directory, 1_024);
+        int fixes = 8_640;
+        for (int i = 0; i < fixes; i++) {
+            // ~10 m/s with some jitter, one fix every 10 s
+            store.append(9L, 52.0 + i * 9e-4 + (i % 7) * 1e-6, 21.0 + i * 4e-4, START + i * 10_000L + i % 3);
+        }
+        store.close();
+
+        assertTrue(store.getWrittenBytes() < fixes * 10L, "written " + store.getWrittenBytes());
+        assertEquals(fixes, store.read(9L, START, START + DAY, Integer.MAX_VALUE, (lat, lng, at) -> true));
+    }
+
+    @Test
+    void zigzagVarint_RoundTripsExtremes() {
+        byte[] buffer = new byte[10];
+        for (long value : new long[] { 0, 1, -1, 63, -64, Integer.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE }) {
+            int length = TrackStore.writeVarint(buffer, 0, TrackStore.zigzag(value));
+            assertEquals(value, TrackStore.unzigzag(TrackStore.readVarint(java.nio.ByteBuffer.wrap(buffer, 0, length))));
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.maciejwasiak.locon.geofence;
+
+import org.junit.jupiter.api.Test;
+
+import static com.maciejwasiak.locon.geofence.DeviceZoneStates.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransitionPolicyTest {
+
+    @Test
+    void bandMeters_IsProportionalAndClamped() {
+        TransitionPolicy policy = new TransitionPolicy(0.1, 10, 100, 0);
+
+        assertEquals(10, policy.bandMeters(50));
+        assertEquals(30, policy.bandMeters(300));
+        assertEquals(100, policy.bandMeters(5_000));
+        assertEquals(5, policy.bandMeters(10));
+    }
+
+    @Test
+    void next_WithoutDwell_ConfirmsOnceOutsideTheBand() {
+        TransitionPolicy policy = new TransitionPolicy(0.1, 10, 100, 0);
+        long state = pack(OUTSIDE, 0);
+
+        state = policy.next(state, 95, 100, 1_000);
+        assertEquals(OUTSIDE, stateOf(state));
+        state = policy.next(state, 80, 100, 2_000);
+        assertEquals(INSIDE, stateOf(state));
+        state = policy.next(state, 108, 100, 3_000);
+        assertEquals(INSIDE, stateOf(state));
+        state = policy.next(state, 120, 100, 4_000);
+        assertEquals(OUTSIDE, stateOf(state));
+    }
+
+    @Test
+    void next_WithDwell_RequiresStayingOnTheNewSide() {
+        TransitionPolicy policy = new TransitionPolicy(0.1, 10, 100, 30_000);
+        long state = pack(OUTSIDE, 0);
+
+        state = policy.next(state, 50, 100, 0);
+        assertEquals(PENDING_ENTER, stateOf(state));
+        state = policy.next(state, 50, 100, 10_000);
+        assertEquals(PENDING_ENTER, stateOf(state));
+        state = policy.next(state, 50, 100, 30_000);
+        assertEquals(INSIDE, stateOf(state));
+
+        state = policy.next(state, 200, 100, 40_000);
+        assertEquals(PENDING_EXIT, stateOf(state));
+        assertTrue(isInside(state));
+        state = policy.next(state, 50, 100, 50_000);
+        assertEquals(INSIDE, stateOf(state));
+    }
+
+    @Test
+    void next_PendingEnterAbandonedWhenClearlyOutside() {
+        TransitionPolicy policy = new TransitionPolicy(0.1, 10, 100, 30_000);
+
+        long state = policy.next(pack(OUTSIDE, 0), 50, 100, 0);
+        state = policy.next(state, 150, 100, 40_000);
+
+        assertEquals(OUTSIDE, stateOf(state));
+    }
+}
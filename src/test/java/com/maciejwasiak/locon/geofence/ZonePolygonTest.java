@@ -0,0 +1,70 @@
+package com.maciejwasiak.locon.geofence;
+
+import com.maciejwasiak.locon.model.ZoneVertex;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ZonePolygonTest {
+
+    private static final double ORIGIN_LAT = 52.2297;
+    private static final double ORIGIN_LNG = 21.0122;
+
+    // L-shaped block: 200 m x 200 m with the north-east 140 m x 140 m cut out
+    private static final double[][] L_SHAPE = { {0, 0}, {200, 0}, {200, 60}, {60, 60}, {60, 200}, {0, 200} };
+
+    @Test
+    void contains_RejectsTheNotchOfAConcavePolygon() {
+        ZonePolygon polygon = ZonePolygon.compile(vertices(L_SHAPE), ORIGIN_LAT, ORIGIN_LNG);
+
+        assertTrue(polygon.contains(150, 30));
+        assertTrue(polygon.contains(30, 150));
+        assertFalse(polygon.contains(150, 150));
+        assertFalse(polygon.contains(-10, 30));
+        assertEquals(6, polygon.edgeCount());
+    }
+
+    @Test
+    void signedDistanceMeters_IsNegativeInsideAndMeasuredToNearestEdge() {
+        ZonePolygon polygon = ZonePolygon.compile(vertices(L_SHAPE), ORIGIN_LAT, ORIGIN_LNG);
+
+        assertEquals(-20, polygon.signedDistanceMeters(150, 20), 0.5);
+        assertEquals(90, polygon.signedDistanceMeters(150, 150), 0.5);
+        assertEquals(50, polygon.signedDistanceMeters(250, 30), 0.5);
+        assertEquals(0, polygon.boundingBoxDistanceMeters(150, 150));
+        assertEquals(50, polygon.boundingBoxDistanceMeters(250, 30), 0.5);
+    }
+
+    @Test
+    void equivalentRadiusMeters_MatchesArea() {
+        ZonePolygon polygon = ZonePolygon.compile(vertices(L_SHAPE), ORIGIN_LAT, ORIGIN_LNG);
+
+        // 200 * 60 + 60 * 140 = 20 400 m2
+        assertEquals(Math.round(Math.sqrt(20_400 / Math.PI)), polygon.equivalentRadiusMeters(), 1);
+    }
+
+    @Test
+    void compile_RejectsDegenerateOutline() {
+        assertThrows(IllegalArgumentException.class,
+            () -> ZonePolygon.compile(vertices(new double[][] { {0, 0}, {10, 10} }), ORIGIN_LAT, ORIGIN_LNG));
+    }
+
+    static List<ZoneVertex> vertices(double[][] offsetsMeters) {
+        List<ZoneVertex> vertices = new ArrayList<>();
+        for (double[] offset : offsetsMeters) {
+            double[] point = offset(offset[0], offset[1]);
+            vertices.add(new ZoneVertex(point[0], point[1]));
+        }
+        return vertices;
+    }
+
+    static double[] offset(double eastMeters, double northMeters) {
+        double lat = ORIGIN_LAT + Math.toDegrees(northMeters / GeoMath.EARTH_RADIUS_METERS);
+        double lng = ORIGIN_LNG + Math.toDegrees(
+            eastMeters / (GeoMath.EARTH_RADIUS_METERS * Math.cos(Math.toRadians(ORIGIN_LAT))));
+        return new double[] { lat, lng };
+    }
+}
@@ -0,0 +1,84 @@
+package com.maciejwasiak.locon.geofence;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ZoneSpatialIndexTest {
+
+    @Test
+    void forEachCandidate_ReturnsOnlyZonesRegisteredNearPoint() {
+        List<ZoneSnapshot> zones = List.of(
+            zone(1L, 52.2297, 21.0122, 100),
+            zone(2L, 50.0647, 19.9450, 300),
+            zone(3L, 52.2300, 21.0130, 50)
+        );
+        ZoneSpatialIndex index = ZoneSpatialIndex.build(zones);
+
+        List<Integer> candidates = new ArrayList<>();
+        index.forEachCandidate(52.2298, 21.0123, candidates::add);
+
+        assertTrue(candidates.contains(0));
+        assertTrue(candidates.contains(2));
+        assertFalse(candidates.contains(1));
+    }
+
+    @Test
+    void forEachCandidate_ZoneSpanningCellBoundary_IsFoundFromBothSides() {
+        ZoneSpatialIndex index = ZoneSpatialIndex.build(List.of(zone(1L, 52.2300, 21.0100, 500)));
+
+        List<Integer> west = new ArrayList<>();
+        List<Integer> east = new ArrayList<>();
+        index.forEachCandidate(52.2300, 21.0080, west::add);
+        index.forEachCandidate(52.2300, 21.0120, east::add);
+
+        assertEquals(List.of(0), west);
+        assertEquals(List.of(0), east);
+    }
+
+    @Test
+    void forEachCandidate_OversizedZone_IsAlwaysCandidate() {
+        ZoneSpatialIndex index = ZoneSpatialIndex.build(List.of(zone(1L, 52.0, 21.0, 2_000_000)));
+
+        List<Integer> candidates = new ArrayList<>();
+        index.forEachCandidate(40.0, 10.0, candidates::add);
+
+        assertEquals(List.of(0), candidates);
+        assertEquals(0, index.cellCount());
+    }
+
+    @Test
+    void builder_WithInvalidCellSize_Throws() {
+        assertThrows(IllegalArgumentException.class, () -> new ZoneSpatialIndex.Builder(0));
+    }
+
+    private static ZoneSnapshot zone(long id, double lat, double lng, int radius) {
+        return new ZoneSnapshot(id, "Zone " + id, "home", "Address", lat, lng, radius, true, null, List.of());
+    }
+
+    @Test
+    void withZoneAndWithoutZone_PatchOnlyTheZonesCells() {
+        ZoneSpatialIndex index = ZoneSpatialIndex.build(List.of(zone(1L, 52.2297, 21.0122, 100)));
+
+        ZoneSpatialIndex added = index.withZone(1, 50.0647, 19.9450, 300);
+        ZoneSpatialIndex removed = added.withoutZone(0, 52.2297, 21.0122, 100);
+        ZoneSpatialIndex oversized = removed.withZone(2, 0.0, 0.0, 2_000_000);
+
+        assertEquals(List.of(1), candidates(added, 50.0647, 19.9450));
+        assertEquals(List.of(0), candidates(added, 52.2297, 21.0122));
+        assertTrue(candidates(removed, 52.2297, 21.0122).isEmpty());
+        assertEquals(List.of(0), candidates(index, 52.2297, 21.0122));
+        assertEquals(added.cellCount() - index.cellCount(), removed.cellCount());
+        assertEquals(List.of(2), candidates(oversized, 40.0, 10.0));
+        assertTrue(candidates(oversized.withoutZone(2, 0.0, 0.0, 2_000_000), 40.0, 10.0).isEmpty());
+    }
+
+    private static List<Integer> candidates(ZoneSpatialIndex index, double lat, double lng) {
+        List<Integer> candidates = new ArrayList<>();
+        index.forEachCandidate(lat, lng, candidates::add);
+        return candidates;
+    }
+}
@@ -0,0 +1,136 @@
+package com.maciejwasiak.locon.geofence;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ZoneTableTest {
+
+    @Test
+    void contains_MatchesHaversineAtZoneScale() {
+        ZoneTable table = ZoneTable.of(List.of(zone(1L, 52.2297, 21.0122, 100)));
+
+        double[][] points = {
+            {52.2297, 21.0122}, {52.2305, 21.0122}, {52.2306, 21.0122}, {52.2297, 21.0136}, {52.2297, 21.0137}
+        };
+        for (double[] point : points) {
+            boolean expected = GeoMath.distanceMeters(point[0], point[1], 52.2297, 21.0122) <= 100;
+            assertEquals(expected, table.contains(0, Math.toRadians(point[0]), Math.toRadians(point[1])),
+                "point " + point[0] + "," + point[1]);
+        }
+    }
+
+    @Test
+    void withZone_UpdateKeepsSlotAndLeavesOriginalUntouched() {
+        ZoneTable original = ZoneTable.of(List.of(zone(1L, 52.2297, 21.0122, 100), zone(2L, 52.2370, 21.0175, 200)));
+
+        ZoneTable updated = original.withZone(zone(2L, 52.2370, 21.0175, 800));
+
+        assertEquals(1, updated.slotOf(2L));
+        assertEquals(800, updated.zone(1).radiusMeters());
+        assertEquals(200, original.zone(1).radiusMeters());
+        assertEquals(2, updated.size());
+    }
+
+    @Test
+    void withZone_NewZoneIsAppended() {
+        ZoneTable table = ZoneTable.of(List.of(zone(1L, 52.2297, 21.0122, 100)))
+            .withZone(zone(7L, 50.0647, 19.9450, 300));
+
+        assertEquals(1, table.slotOf(7L));
+        List<Integer> containing = new ArrayList<>();
+        table.forEachContaining(50.0647, 19.9450, containing::add);
+        assertEquals(List.of(1), containing);
+    }
+
+    @Test
+    void withoutZone_DeactivatesSlotWithoutShiftingOthers() {
+        ZoneTable table = ZoneTable.of(List.of(zone(1L, 52.2297, 21.0122, 100), zone(2L, 52.2370, 21.0175, 200)))
+            .withoutZone(1L);
+
+        assertFalse(table.isActive(0));
+        assertTrue(table.isActive(1));
+        assertEquals(-1, table.slotOf(1L));
+        assertEquals(1, table.activeCount());
+        List<Integer> containing = new ArrayList<>();
+        table.forEachContaining(52.2297, 21.0122, containing::add);
+        assertTrue(containing.isEmpty());
+    }
+
+    @Test
+    void polygonZone_ContainmentAndDistanceFollowTheOutline() {
+        double[][] outline = { {0, 0}, {200, 0}, {200, 60}, {60, 60}, {60, 200}, {0, 200} };
+        ZoneSnapshot polygon = new ZoneSnapshot(3L, "Campus", "school", "Address", 52.2297, 21.0122, 290, true, null,
+            List.of(), ZonePolygonTest.vertices(outline));
+        ZoneTable table = ZoneTable.of(List.of(polygon));
+
+        double[] arm = ZonePolygonTest.offset(150, 30);
+        double[] notch = ZonePolygonTest.offset(150, 150);
+        int radius = table.radiusMeters(0);
+
+        assertTrue(table.contains(0, Math.toRadians(arm[0]), Math.toRadians(arm[1])));
+        assertFalse(table.contains(0, Math.toRadians(notch[0]), Math.toRadians(notch[1])));
+        assertEquals(radius - 30, table.distanceMeters(0, Math.toRadians(arm[0]), Math.toRadians(arm[1])), 0.5);
+        assertEquals(radius + 90, table.distanceMeters(0, Math.toRadians(notch[0]), Math.toRadians(notch[1])), 0.5);
+        List<Integer> containing = new ArrayList<>();
+        table.forEachContaining(notch[0], notch[1], containing::add);
+        assertTrue(containing.isEmpty());
+    }
+
+    private static ZoneSnapshot zone(long id, double lat, double lng, int radius) {
+        return new ZoneSnapshot(id, "Zone " + id, "home", "Address", lat, lng, radius, true, null, List.of());
+    }
+
+    @Test
+    void withZone_AcrossPages_LeavesOtherZonesAndOriginalUntouched() {
+        List<ZoneSnapshot> zones = new ArrayList<>();
+        for (int i = 0; i < ZoneTable.PAGE_SIZE + 10; i++) {
+            zones.add(zone(i, 50.0 + i * 0.01, 20.0, 100));
+        }
+        ZoneTable original = ZoneTable.of(zones);
+
+        ZoneTable moved = original.withZone(zone(5L, 10.0, 10.0, 100))
+            .withZone(zone(ZoneTable.PAGE_SIZE + 3L, 11.0, 11.0, 100));
+
+        assertEquals(List.of(5), containing(moved, 10.0, 10.0));
+        assertEquals(List.of(ZoneTable.PAGE_SIZE + 3), containing(moved, 11.0, 11.0));
+        assertTrue(containing(moved, 50.05, 20.0).isEmpty());
+        assertEquals(List.of(5), containing(original, 50.05, 20.0));
+        assertEquals(List.of(6), containing(moved, 50.06, 20.0));
+        assertEquals(ZoneTable.PAGE_SIZE + 10, moved.activeCount());
+    }
+
+    @Test
+    void compacted_DropsTombstonesAndKeepsZonesFindable() {
+        List<ZoneSnapshot> zones = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            zones.add(zone(i, 50.0 + i * 0.01, 20.0, 100));
+        }
+        ZoneTable table = ZoneTable.of(zones);
+        for (long id = 0; id < ZoneTable.MIN_TOMBSTONES_TO_COMPACT - 1; id++) {
+            table = table.withoutZone(id);
+        }
+        assertFalse(table.needsCompaction());
+        table = table.withoutZone(ZoneTable.MIN_TOMBSTONES_TO_COMPACT - 1);
+        assertTrue(table.needsCompaction());
+
+        ZoneTable compacted = table.compacted();
+
+        int remaining = 200 - ZoneTable.MIN_TOMBSTONES_TO_COMPACT;
+        assertEquals(remaining, compacted.size());
+        assertEquals(remaining, compacted.activeCount());
+        assertEquals(0, compacted.slotOf(ZoneTable.MIN_TOMBSTONES_TO_COMPACT));
+        assertEquals(-1, compacted.slotOf(0L));
+        assertEquals(List.of(compacted.slotOf(150L)), containing(compacted, 51.5, 20.0));
+        assertFalse(compacted.needsCompaction());
+    }
+
+    private static List<Integer> containing(ZoneTable table, double lat, double lng) {
+        List<Integer> slots = new ArrayList<>();
+        table.forEachContaining(lat, lng, slots::add);
+        return slots;
+    }
+}
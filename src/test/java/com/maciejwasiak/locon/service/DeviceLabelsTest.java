@@ -0,0 +1,36 @@
+package com.maciejwasiak.locon.service;
+
+import com.maciejwasiak.locon.geofence.DeviceLabel;
+import com.maciejwasiak.locon.repository.DeviceRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DeviceLabelsTest {
+
+    @Mock
+    private DeviceRepository deviceRepository;
+
+    @InjectMocks
+    private DeviceLabels labels;
+
+    @Test
+    void labelOf_NamesStoredDevicesByOwnerAndModel() {
+        when(deviceRepository.findLabels()).thenReturn(List.of(
+            new DeviceLabel(1L, "iPhone 15", "Admin User"), new DeviceLabel(3L, "KidsGuard Pro", "Emma (Child)")));
+        labels.reload();
+
+        assertEquals("Admin User - iPhone 15", labels.labelOf("1"));
+        assertEquals("Emma (Child) - KidsGuard Pro", labels.labelOf("3"));
+        assertEquals("Device 2", labels.labelOf("2"));
+        assertEquals("Device virtual", labels.labelOf("virtual"));
+    }
+}
@@ -0,0 +1,49 @@
+package com.maciejwasiak.locon.service;
+
+import com.maciejwasiak.locon.dto.DeviceLocationDto;
+import com.maciejwasiak.locon.dto.LocationFixDto;
+import com.maciejwasiak.locon.geofence.DeviceOwner;
+import com.maciejwasiak.locon.repository.DeviceRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DeviceLocationStoreTest {
+
+    @Mock
+    private DeviceRepository deviceRepository;
+
+    @InjectMocks
+    private DeviceLocationStore store;
+
+    @Test
+    void getLocationsOfUser_ServesReportedDevicesFromMemory() {
+        when(deviceRepository.findOwners()).thenReturn(List.of(
+            new DeviceOwner(1L, 10L), new DeviceOwner(2L, 10L), new DeviceOwner(3L, 20L)));
+        store.reloadOwners();
+
+        store.record(new LocationFixDto("1", 52.2297, 21.0122, Instant.ofEpochMilli(5_000), 12.0));
+        store.record(new LocationFixDto("3", 50.0647, 19.9450, Instant.ofEpochMilli(6_000), null));
+        store.record(new LocationFixDto("virtual", 0.0, 0.0, Instant.ofEpochMilli(6_000), null));
+
+        assertEquals(List.of(new DeviceLocationDto(1L, 52.2297, 21.0122, 12.0, Instant.ofEpochMilli(5_000))),
+            store.getLocationsOfUser(10L));
+        assertNull(store.getLocation(3L).orElseThrow().accuracy());
+        assertTrue(store.getLocation(2L).isEmpty());
+        assertTrue(store.getLocationsOfUser(30L).isEmpty());
+        assertEquals(2, store.size());
+        assertEquals(20L, store.ownerOf(3L));
+        assertNull(store.ownerOf(4L));
+        verify(deviceRepository).findOwners();
+        verifyNoMoreInteractions(deviceRepository);
+    }
+}
@@ -0,0 +1,127 @@
+package com.maciejwasiak.locon.service;
+
+import com.maciejwasiak.locon.config.GeofenceProperties;
+import com.maciejwasiak.locon.dto.LocationBatchResponse;
+import com.maciejwasiak.locon.dto.LocationFixDto;
+import com.maciejwasiak.locon.dto.SimulationReport;
+import com.maciejwasiak.locon.dto.SimulationRequest;
+import com.maciejwasiak.locon.geofence.ZoneSnapshot;
+import com.maciejwasiak.locon.geofence.ZoneTable;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntConsumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class FleetSimulatorTest {
+
+    @Mock
+    private GeofenceEngine geofenceEngine;
+
+    @Mock
+    private GeofencingService geofencingService;
+
+    @Mock
+    private GeofencePipeline pipeline;
+
+    private FleetSimulator fleetSimulator;
+
+    @BeforeEach
+    void setUp() {
+        fleetSimulator = new FleetSimulator(geofenceEngine, geofencingService, pipeline, new GeofenceProperties());
+    }
+
+    @Test
+    void run_FeedsEveryFixThroughBatchIngestionAndDetachesDevices() {
+        when(geofenceEngine.getZoneTable()).thenReturn(ZoneTable.of(List.of(
+            zone(1L, 52.2297, 21.0122), zone(2L, 52.2370, 21.0175))));
+        when(geofencingService.processBatch(anyList()))
+            .thenAnswer(invocation -> new LocationBatchResponse(invocation.<List<?>>getArgument(0).size(), List.of()));
+
+        SimulationReport report = fleetSimulator.run(
+            new SimulationRequest(50, 10, 30, SimulationRequest.MovementModel.MIXED, 10.0, 64, 7L, null));
+
+        assertEquals(500, report.fixes());
+        assertTrue(report.fixesPerSecond() > 0);
+        assertNull(report.targetFixesPerSecond());
+        assertTrue(report.batchLatencyMaxMillis() >= report.batchLatencyP50Millis());
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<LocationFixDto>> batches = ArgumentCaptor.forClass(List.class);
+        verify(geofencingService, times(8)).processBatch(batches.capture());
+        Set<String> deviceIds = new HashSet<>();
+        batches.getAllValues().forEach(batch -> batch.forEach(fix -> deviceIds.add(fix.deviceId())));
+        assertEquals(50, deviceIds.size());
+        assertTrue(deviceIds.contains(Long.toString(FleetSimulator.VIRTUAL_DEVICE_BASE)));
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Map<Integer, long[]>> attached = ArgumentCaptor.forClass(Map.class);
+        verify(geofenceEngine).attachDevices(attached.capture());
+        verify(geofenceEngine).detachDevices(attached.getValue());
+        ArgumentCaptor<IntConsumer> forget = ArgumentCaptor.forClass(IntConsumer.class);
+        verify(pipeline).broadcast(forget.capture());
+        forget.getValue().accept(1);
+        ArgumentCaptor<long[]> forgotten = ArgumentCaptor.forClass(long[].class);
+        verify(geofenceEngine).forgetDevices(eq(1), forgotten.capture());
+        assertEquals(50, forgotten.getValue().length);
+        assertFalse(fleetSimulator.isRunning());
+    }
+
+    @Test
+    void run_WithTargetRate_PacesBatchesAgainstTheWallClock() {
+        when(geofenceEngine.getZoneTable()).thenReturn(ZoneTable.of(List.of(zone(1L, 52.2297, 21.0122))));
+        when(geofencingService.processBatch(anyList()))
+            .thenAnswer(invocation -> new LocationBatchResponse(invocation.<List<?>>getArgument(0).size(), List.of()));
+
+        SimulationReport report = fleetSimulator.run(
+            new SimulationRequest(50, 10, 30, null, null, 64, 7L, 2_000.0));
+
+        // The last of 500 fixes is due after 250 ms at 2000 fixes/s
+        assertEquals(500, report.fixes());
+        assertEquals(2_000.0, report.targetFixesPerSecond());
+        assertTrue(report.wallMillis() >= 250);
+        assertTrue(report.fixesPerSecond() <= 2_000.0);
+        assertTrue(report.fixesPerSecond() > 1_000.0);
+    }
+
+    @Test
+    void run_PacedBeyondMaxDuration_IsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> fleetSimulator.run(
+            new SimulationRequest(1_000, 1_000, null, null, null, null, null, 1.0)));
+        verifyNoInteractions(geofencingService);
+    }
+
+    @Test
+    void run_WithoutZones_IsRejected() {
+        when(geofenceEngine.getZoneTable()).thenReturn(ZoneTable.empty());
+
+        assertThrows(IllegalArgumentException.class, () -> fleetSimulator.run(
+            new SimulationRequest(10, 1, null, null, null, null, null, null)));
+        verify(geofenceEngine, never()).attachDevices(anyMap());
+    }
+
+    @Test
+    void run_AboveDeviceLimit_IsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> fleetSimulator.run(
+            new SimulationRequest(1_000_000, 1, null, null, null, null, null, null)));
+        verifyNoInteractions(geofencingService);
+    }
+
+    private static ZoneSnapshot zone(long id, double latitude, double longitude) {
+        return new ZoneSnapshot(id, "Zone " + id, "home", "Address", latitude, longitude, 150, true, null, List.of());
+    }
+}
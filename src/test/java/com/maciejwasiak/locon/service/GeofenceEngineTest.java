@@ -0,0 +1,278 @@
+package com.maciejwasiak.locon.service;
+
+import com.maciejwasiak.locon.config.GeofenceProperties;
+import com.maciejwasiak.locon.dto.GeofenceEventDto;
+import com.maciejwasiak.locon.dto.LocationFixDto;
+import com.maciejwasiak.locon.geofence.ZoneDeviceLink;
+import com.maciejwasiak.locon.geofence.ZoneTable;
+import com.maciejwasiak.locon.model.Zone;
+import com.maciejwasiak.locon.model.ZoneVertex;
+import com.maciejwasiak.locon.repository.ZoneDeviceRepository;
+import com.maciejwasiak.locon.repository.ZoneRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class GeofenceEngineTest {
+
+    @Mock
+    private ZoneRepository zoneRepository;
+
+    @Mock
+    private ZoneDeviceRepository zoneDeviceRepository;
+
+    @Mock
+    private DeviceLabels deviceLabels;
+
+    @Spy
+    private GeofenceProperties properties = new GeofenceProperties();
+
+    @InjectMocks
+    private GeofenceEngine geofenceEngine;
+
+    @BeforeEach
+    void setUp() {
+        Zone home = new Zone("Home", "home", "Address", 52.2297, 21.0122, 100);
+        home.setId(1L);
+        home.setDeviceIds(List.of("1", "2"));
+        Zone school = new Zone("School", "school", "Address", 52.2370, 21.0175, 200);
+        school.setId(2L);
+        school.setDeviceIds(List.of("2"));
+        when(zoneRepository.findAllWithDeviceIds()).thenReturn(List.of(home, school));
+        when(zoneDeviceRepository.findAllLinks()).thenReturn(List.of(new ZoneDeviceLink(2L, 5L)));
+        geofenceEngine.reloadZones();
+    }
+
+    @Test
+    void evaluate_FixInsideAssignedZone_EmitsEnterOnce() {
+        LocationFixDto fix = new LocationFixDto("1", 52.2298, 21.0123, Instant.now(), 5.0);
+
+        List<GeofenceEventDto> first = geofenceEngine.evaluate(fix);
+        List<GeofenceEventDto> second = geofenceEngine.evaluate(fix);
+
+        assertEquals(1, first.size());
+        assertEquals("ENTER", first.get(0).eventType());
+        assertEquals(1L, first.get(0).zoneId());
+        assertTrue(second.isEmpty());
+        assertTrue(geofenceEngine.isInside("1", 1L));
+    }
+
+    @Test
+    void evaluate_NamesTheDeviceByItsLabel() {
+        when(deviceLabels.labelOf("2")).thenReturn("Emma (Child) - KidsGuard Pro");
+
+        List<GeofenceEventDto> events = geofenceEngine.evaluate(
+            new LocationFixDto("2", 52.2298, 21.0123, Instant.now(), 5.0));
+
+        assertEquals(1, events.size());
+        assertEquals("Emma (Child) - KidsGuard Pro", events.get(0).deviceName());
+    }
+
+    @Test
+    void forgetDevices_OnlyClearsDevicesOfThePartition() {
+        LocationFixDto fix = new LocationFixDto("1", 52.2298, 21.0123, Instant.now(), 5.0);
+        geofenceEngine.evaluate(fix);
+        int partition = geofenceEngine.partitionOf(1L);
+
+        for (int other = 0; other < geofenceEngine.partitionCount(); other++) {
+            if (other != partition) {
+                geofenceEngine.forgetDevices(other, new long[] { 1L });
+            }
+        }
+        assertTrue(geofenceEngine.isInside("1", 1L));
+
+        geofenceEngine.forgetDevices(partition, new long[] { 1L });
+        assertFalse(geofenceEngine.isInside("1", 1L));
+        assertEquals("ENTER", geofenceEngine.evaluate(fix).get(0).eventType());
+    }
+
+    @Test
+    void evaluate_FixLeavingZone_EmitsExit() {
+        geofenceEngine.evaluate(new LocationFixDto("1", 52.2297, 21.0122, Instant.now(), null));
+
+        List<GeofenceEventDto> events = geofenceEngine.evaluate(
+            new LocationFixDto("1", 52.2500, 21.0500, Instant.now(), null));
+
+        assertEquals(1, events.size());
+        assertEquals("EXIT", events.get(0).eventType());
+        assertFalse(geofenceEngine.isInside("1", 1L));
+    }
+
+    @Test
+    void evaluate_JitterWithinHysteresisBand_DoesNotFlap() {
+        geofenceEngine.evaluate(new LocationFixDto("1", 52.2297, 21.0122, Instant.now(), null));
+
+        // ~105 m from the center of a 100 m zone: outside the radius but inside the 10 m band
+        List<GeofenceEventDto> jitter = geofenceEngine.evaluate(
+            new LocationFixDto("1", 52.230644, 21.0122, Instant.now(), null));
+        // ~150 m: clearly outside
+        List<GeofenceEventDto> leaving = geofenceEngine.evaluate(
+            new LocationFixDto("1", 52.231049, 21.0122, Instant.now(), null));
+
+        assertTrue(jitter.isEmpty());
+        assertEquals(1, leaving.size());
+        assertEquals("EXIT", leaving.get(0).eventType());
+    }
+
+    @Test
+    void evaluate_DeviceFarFromBoundary_SkipsUntilItCouldReachOne() {
+        Instant start = Instant.parse("2025-01-01T08:00:00Z");
+        // ~2.2 km north of Home: nearest enter radius is ~2.1 km away, reachable in ~30 s at 70 m/s
+        geofenceEngine.evaluate(new LocationFixDto("1", 52.2500, 21.0122, start, null));
+
+        geofenceEngine.evaluate(new LocationFixDto("1", 52.2501, 21.0122, start.plusSeconds(10), null));
+        geofenceEngine.evaluate(new LocationFixDto("1", 52.2501, 21.0122, start.plusSeconds(40), null));
+
+        assertEquals(1, geofenceEngine.getSkippedFixes());
+        assertEquals(2, geofenceEngine.getEvaluatedFixes());
+    }
+
+    @Test
+    void evaluate_ImplausibleJumpDuringSkipWindow_IsStillEvaluated() {
+        Instant start = Instant.parse("2025-01-01T08:00:00Z");
+        geofenceEngine.evaluate(new LocationFixDto("1", 52.2500, 21.0122, start, null));
+
+        List<GeofenceEventDto> events = geofenceEngine.evaluate(
+            new LocationFixDto("1", 52.2297, 21.0122, start.plusSeconds(1), null));
+
+        assertEquals(1, events.size());
+        assertEquals("ENTER", events.get(0).eventType());
+        assertEquals(0, geofenceEngine.getSkippedFixes());
+    }
+
+    @Test
+    void recommendedReportSeconds_ScalesWithDistanceToBoundary() {
+        Instant start = Instant.parse("2025-01-01T08:00:00Z");
+        geofenceEngine.evaluate(new LocationFixDto("1", 52.2500, 21.0122, start, null));
+        // ~20 m from the edge of Home
+        geofenceEngine.evaluate(new LocationFixDto("2", 52.2307, 21.0122, start, null));
+
+        int far = geofenceEngine.recommendedReportSeconds("1");
+        int near = geofenceEngine.recommendedReportSeconds("2");
+
+        assertTrue(far > near, far + " should exceed " + near);
+        assertEquals(10, near);
+        assertEquals(600, geofenceEngine.recommendedReportSeconds("42"));
+    }
+
+    @Test
+    void evaluate_OnlyChecksZonesAssignedToDevice() {
+        List<GeofenceEventDto> events = geofenceEngine.evaluate(
+            new LocationFixDto("1", 52.2370, 21.0175, Instant.now(), null));
+
+        assertTrue(events.isEmpty());
+        assertFalse(geofenceEngine.isInside("1", 2L));
+    }
+
+    @Test
+    void evaluate_UnknownDevice_ReturnsNoTransitions() {
+        assertTrue(geofenceEngine.evaluate(
+            new LocationFixDto("42", 52.2297, 21.0122, Instant.now(), null)).isEmpty());
+        verify(zoneRepository, times(1)).findAllWithDeviceIds();
+    }
+
+    @Test
+    void evaluate_DeviceAssignedThroughZoneDevice_IsEvaluated() {
+        List<GeofenceEventDto> events = geofenceEngine.evaluate(
+            new LocationFixDto("5", 52.2370, 21.0175, Instant.now(), null));
+
+        assertEquals(1, events.size());
+        assertEquals(2L, events.get(0).zoneId());
+    }
+
+    @Test
+    void refreshAssignments_UpdatesOnlyChangedZone() {
+        when(zoneDeviceRepository.findDeviceIdsByZoneId(1L)).thenReturn(List.of(9L));
+
+        geofenceEngine.refreshAssignments(1L);
+
+        assertEquals(1, geofenceEngine.evaluate(
+            new LocationFixDto("9", 52.2297, 21.0122, Instant.now(), null)).size());
+        assertArrayEquals(new int[] { 0 }, geofenceEngine.getDeviceIndex().slotsFor(1L));
+    }
+
+    @Test
+    void onAssignmentsChanged_EvaluatesNewlyAssignedDevice() {
+        when(zoneDeviceRepository.findDeviceIdsByZoneId(2L)).thenReturn(List.of(5L, 9L));
+
+        geofenceEngine.onAssignmentsChanged(new ZoneAssignmentsChangedEvent(2L));
+
+        List<GeofenceEventDto> events = geofenceEngine.evaluate(
+            new LocationFixDto("9", 52.2370, 21.0175, Instant.now(), null));
+        assertEquals(1, events.size());
+        assertEquals(2L, events.get(0).zoneId());
+    }
+
+    @Test
+    void evaluate_PolygonZone_IgnoresFixesInsideEnclosingCircleButOutsideOutline() {
+        // L-shaped block south-west anchored at Home's center: 200 m arms, 60 m wide
+        double north = 1 / 111_195.0;
+        double east = 1 / (111_195.0 * Math.cos(Math.toRadians(52.2297)));
+        Zone campus = new Zone("Campus", "school", "Address", 52.2297 + 30 * north, 21.0122 + 30 * east, 250);
+        campus.setId(3L);
+        campus.setDeviceIds(List.of("7"));
+        double[][] outline = { {0, 0}, {200, 0}, {200, 60}, {60, 60}, {60, 200}, {0, 200} };
+        for (double[] vertex : outline) {
+            campus.getVertices().add(new ZoneVertex(52.2297 + vertex[1] * north, 21.0122 + vertex[0] * east));
+        }
+        geofenceEngine.upsertZone(campus);
+
+        List<GeofenceEventDto> inNotch = geofenceEngine.evaluate(
+            new LocationFixDto("7", 52.2297 + 150 * north, 21.0122 + 150 * east, Instant.now(), null));
+        List<GeofenceEventDto> inArm = geofenceEngine.evaluate(
+            new LocationFixDto("7", 52.2297 + 30 * north, 21.0122 + 150 * east, Instant.now(), null));
+        List<GeofenceEventDto> backInNotch = geofenceEngine.evaluate(
+            new LocationFixDto("7", 52.2297 + 150 * north, 21.0122 + 150 * east, Instant.now(), null));
+
+        assertTrue(inNotch.isEmpty());
+        assertEquals("ENTER", inArm.get(0).eventType());
+        assertEquals("EXIT", backInNotch.get(0).eventType());
+    }
+
+    @Test
+    void removeZone_StopsEvaluatingIt() {
+        geofenceEngine.removeZone(1L);
+
+        assertTrue(geofenceEngine.evaluate(
+            new LocationFixDto("1", 52.2297, 21.0122, Instant.now(), null)).isEmpty());
+        assertEquals(0, geofenceEngine.getDeviceIndex().slotsFor(1L).length);
+    }
+
+    @Test
+    void removeZone_ManyDeletions_CompactsSlotsAndKeepsAssignments() {
+        List<Zone> zones = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            Zone zone = new Zone("Zone " + i, "home", "Address", 50.0 + i * 0.01, 20.0, 100);
+            zone.setId(100L + i);
+            zone.setDeviceIds(List.of(String.valueOf(1_000 + i)));
+            zones.add(zone);
+        }
+        when(zoneRepository.findAllWithDeviceIds()).thenReturn(zones);
+        when(zoneDeviceRepository.findAllLinks()).thenReturn(List.of());
+        geofenceEngine.reloadZones();
+
+        for (int i = 0; i < 150; i++) {
+            geofenceEngine.removeZone(100L + i);
+        }
+
+        ZoneTable table = geofenceEngine.getZoneTable();
+        assertTrue(table.size() < 200, "slots " + table.size());
+        assertEquals(50, table.activeCount());
+        List<GeofenceEventDto> events = geofenceEngine.evaluate(
+            new LocationFixDto("1199", 50.0 + 199 * 0.01, 20.0, Instant.now(), null));
+        assertEquals(1, events.size());
+        assertEquals(299L, events.get(0).zoneId());
+    }
+}
@@ -0,0 +1,228 @@
+package com.maciejwasiak.locon.service;
+
+import com.maciejwasiak.locon.config.GeofenceProperties;
+import com.maciejwasiak.locon.dto.GeofenceEventDto;
+import com.maciejwasiak.locon.dto.LocationFixDto;
+import com.maciejwasiak.locon.geofence.DeviceZoneIndex;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class GeofencePipelineTest {
+
+    @Mock
+    private GeofenceEngine geofenceEngine;
+
+    @Mock
+    private DevicePriorities priorities;
+
+    @Mock
+    private DeviceLocationStore locations;
+
+    @Mock
+    private DeviceTrackStore tracks;
+
+    private final List<String> persisted = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> notified = Collections.synchronizedList(new ArrayList<>());
+    private GeofencePipeline pipeline;
+
+    @BeforeEach
+    void setUp() {
+        DeviceZoneIndex deviceIndex = new DeviceZoneIndex();
+        deviceIndex.replaceAll(Map.of(0, new long[] { 1L, 2L, 9L, FleetSimulator.VIRTUAL_DEVICE_BASE }));
+        lenient().when(geofenceEngine.getDeviceIndex()).thenReturn(deviceIndex);
+        lenient().when(geofenceEngine.partitionCount()).thenReturn(2);
+        lenient().when(geofenceEngine.partitionOf(anyLong()))
+            .thenAnswer(invocation -> (int) Math.floorMod((long) invocation.getArgument(0), 2L));
+        lenient().when(priorities.isSos(anyLong())).thenAnswer(invocation -> (long) invocation.getArgument(0) == 9L);
+        lenient().doAnswer(invocation -> {
+            LocationFixDto fix = invocation.getArgument(0);
+            List<GeofenceEventDto> transitions = invocation.getArgument(1);
+            transitions.add(new GeofenceEventDto(1L, "Home", fix.deviceId(), "Device", fix.latitude(), fix.longitude(),
+                100, "ENTER", fix.timestamp()));
+            return null;
+        }).when(geofenceEngine).evaluate(any(LocationFixDto.class), anyList());
+
+        GeofenceProperties properties = new GeofenceProperties();
+        properties.getPipeline().setRingSize(16);
+        properties.getPipeline().setDrainTimeout(Duration.ofMillis(100));
+        pipeline = pipeline(properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pipeline.stop();
+    }
+
+    @Test
+    void tryPublish_EvaluatesAssignedDevicesAndPersistsBeforeNotifying() throws Exception {
+        pipeline.start();
+
+        assertTrue(pipeline.tryPublish(List.of(fix("1"), fix("3"), fix("2"))));
+        awaitDrained();
+
+        verify(geofenceEngine, times(2)).evaluate(any(LocationFixDto.class), anyList());
+        assertEquals(List.of("1", "2"), persisted.stream().sorted().toList());
+        assertEquals(persisted, notified);
+        assertEquals(3, pipeline.getAcceptedFixes());
+        verify(locations, times(3)).record(any(LocationFixDto.class));
+        verify(tracks, times(3)).record(any(LocationFixDto.class));
+    }
+
+    @Test
+    void offer_PartitionSaturated_ShedsRoutineFixesButAcceptsSos() {
+        GeofenceProperties properties = new GeofenceProperties();
+        properties.getPipeline().setRingSize(16);
+        properties.getPipeline().setPartitionCapacity(4);
+        properties.getPipeline().setDrainTimeout(Duration.ofMillis(100));
+        pipeline = pipeline(properties);
+        // Not started: queued fixes stay queued
+        assertTrue(pipeline.offer(Collections.nCopies(4, fix("2")), false).isComplete());
+
+        GeofencePipeline.Admission admission = pipeline.offer(List.of(fix("2"), fix("9"), fix("4")), false);
+
+        assertEquals(1, admission.accepted());
+        assertEquals(2, admission.shed());
+        assertTrue(pipeline.offer(List.of(fix("1")), false).isComplete());
+        assertEquals(4, pipeline.getQueueDepth(0));
+        // The SOS fix waits in its lane, not in the partition's ring queue
+        assertEquals(1, pipeline.getQueueDepth(1));
+        assertEquals(1, pipeline.getSosPending());
+        assertEquals(2, pipeline.getShedRoutineFixes());
+        assertEquals(0, pipeline.getShedSosFixes());
+    }
+
+    @Test
+    void offer_RingAboveSosReserve_OnlySosFixesFit() {
+        GeofenceProperties properties = new GeofenceProperties();
+        properties.getPipeline().setRingSize(16);
+        properties.getPipeline().setSosReserve(0.25);
+        properties.getPipeline().setDrainTimeout(Duration.ofMillis(100));
+        pipeline = pipeline(properties);
+        assertTrue(pipeline.tryPublish(Collections.nCopies(12, fix("1"))));
+
+        assertFalse(pipeline.tryPublish(List.of(fix("2"))));
+        assertTrue(pipeline.tryPublish(Collections.nCopies(4, fix("9"))));
+        assertFalse(pipeline.tryPublish(List.of(fix("9"))));
+
+        assertEquals(16, pipeline.getBacklog());
+        assertEquals(1, pipeline.getShedRoutineFixes());
+        assertEquals(1, pipeline.getShedSosFixes());
+    }
+
+    @Test
+    void tryPublish_RingFull_RejectsWholeBatch() {
+        // Not started: nothing drains the ring
+        assertTrue(pipeline.tryPublish(Collections.nCopies(10, fix("1"))));
+
+        assertFalse(pipeline.tryPublish(Collections.nCopies(10, fix("1"))));
+        assertEquals(10, pipeline.getRejectedFixes());
+        assertEquals(10, pipeline.getBacklog());
+    }
+
+    @Test
+    void submit_CompletesWithTransitionsInFixOrderAfterPersisting() {
+        pipeline.start();
+
+        List<GeofenceEventDto> transitions = pipeline.submit(List.of(fix("2"), fix("3"), fix("1"))).join();
+
+        assertEquals(List.of("2", "1"), transitions.stream().map(GeofenceEventDto::deviceId).toList());
+        assertEquals(List.of("1", "2"), persisted.stream().sorted().toList());
+        assertTrue(pipeline.submit(List.of()).join().isEmpty());
+    }
+
+    @Test
+    void submit_SosFixesTakeTheLaneAndKeepFixOrder() {
+        pipeline.start();
+
+        List<GeofenceEventDto> transitions = pipeline.submit(List.of(fix("1"), fix("9"), fix("2"))).join();
+
+        assertEquals(List.of("1", "9", "2"), transitions.stream().map(GeofenceEventDto::deviceId).toList());
+        assertEquals(List.of("1", "2", "9"), persisted.stream().sorted().toList());
+        assertEquals(1, pipeline.getSosLatency().getCount());
+        assertEquals(0, pipeline.getSosPending());
+    }
+
+    @Test
+    void submit_SimulatedDevice_ReturnsTransitionsWithoutRecordingOrPublishing() {
+        pipeline.start();
+        String virtual = Long.toString(FleetSimulator.VIRTUAL_DEVICE_BASE);
+
+        List<GeofenceEventDto> transitions = pipeline.submit(List.of(fix(virtual), fix("1"))).join();
+
+        assertEquals(List.of(virtual, "1"), transitions.stream().map(GeofenceEventDto::deviceId).toList());
+        assertEquals(List.of("1"), persisted);
+        assertEquals(List.of("1"), notified);
+        verify(locations, times(1)).record(any(LocationFixDto.class));
+        verify(tracks, times(1)).record(any(LocationFixDto.class));
+    }
+
+    @Test
+    void onZoneChanged_Deleted_ForgetsZoneOnEveryPartition() throws Exception {
+        pipeline.start();
+
+        pipeline.onZoneChanged(new ZoneChangedEvent(7L, ZoneChangedEvent.ChangeType.DELETED));
+        pipeline.onZoneChanged(new ZoneChangedEvent(8L, ZoneChangedEvent.ChangeType.UPDATED));
+        awaitDrained();
+
+        verify(geofenceEngine).forgetZone(0, 7L);
+        verify(geofenceEngine).forgetZone(1, 7L);
+        verify(geofenceEngine, never()).forgetZone(anyInt(), eq(8L));
+    }
+
+    @Test
+    void broadcastAndWait_ReturnsOnceEveryPartitionRanTheAction() {
+        pipeline.start();
+        List<Integer> partitions = Collections.synchronizedList(new ArrayList<>());
+
+        pipeline.broadcastAndWait(partitions::add);
+
+        assertEquals(List.of(0, 1), partitions.stream().sorted().toList());
+    }
+
+    private void awaitDrained() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (pipeline.getBacklog() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(0, pipeline.getBacklog());
+    }
+
+    private GeofencePipeline pipeline(GeofenceProperties properties) {
+        GeofenceEventListener store = new RecordingListener(persisted, true);
+        GeofenceEventListener hub = new RecordingListener(notified, false);
+        return new GeofencePipeline(geofenceEngine, new GeofenceEventPublisher(List.of(hub, store)), priorities,
+            locations, tracks, properties);
+    }
+
+    private static LocationFixDto fix(String deviceId) {
+        return new LocationFixDto(deviceId, 52.2297, 21.0122, null, null);
+    }
+
+    private record RecordingListener(List<String> deviceIds, boolean durable) implements GeofenceEventListener {
+
+        @Override
+        public void onGeofenceEvents(List<GeofenceEventDto> events) {
+            events.forEach(event -> deviceIds.add(event.deviceId()));
+        }
+
+        @Override
+        public boolean isDurable() {
+            return durable;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.maciejwasiak.locon.service;
+
+import com.maciejwasiak.locon.config.GeofenceProperties;
+import com.maciejwasiak.locon.dto.GeofenceEventDto;
+import com.maciejwasiak.locon.dto.LocationBatchResponse;
+import com.maciejwasiak.locon.dto.LocationFixDto;
+import com.maciejwasiak.locon.dto.SimulationRequest;
+import com.maciejwasiak.locon.geofence.DeviceZoneStates;
+import com.maciejwasiak.locon.geofence.ZoneTable;
+import com.maciejwasiak.locon.model.Zone;
+import com.maciejwasiak.locon.repository.ZoneDeviceRepository;
+import com.maciejwasiak.locon.repository.ZoneRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+import static com.maciejwasiak.locon.geofence.DeviceZoneStates.*;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class GeofenceStateStoreTest {
+
+    @TempDir
+    Path directory;
+
+    @Mock
+    private GeofenceEngine geofenceEngine;
+
+    @Mock
+    private ZoneTable zoneTable;
+
+    @Mock
+    private GeofencePipeline pipeline;
+
+    private GeofenceProperties properties;
+    private GeofenceEventStore eventStore;
+
+    @BeforeEach
+    void setUp() {
+        properties = new GeofenceProperties();
+        properties.getEventLog().setDirectory(directory.resolve("events").toString());
+        properties.getEventLog().setSegmentSizeBytes(64 * 1024);
+        properties.getSnapshot().setDirectory(directory.resolve("snapshots").toString());
+        eventStore = new GeofenceEventStore(properties);
+        // The engine mock puts every device in partition 0
+        lenient().doAnswer(invocation -> {
+            invocation.<IntConsumer>getArgument(0).accept(0);
+            return null;
+        }).when(pipeline).broadcastAndWait(any());
+    }
+
+    @AfterEach
+    void tearDown() {
+        eventStore.close();
+    }
+
+    @Test
+    void restore_LoadsSnapshotThenReplaysTransitionsAppendedAfterIt() {
+        eventStore.onGeofenceEvents(List.of(event("1", 10L, "ENTER", 1_000)));
+        when(geofenceEngine.getZoneTable()).thenReturn(zoneTable);
+        when(zoneTable.slotOf(anyLong())).thenAnswer(invocation -> (long) invocation.getArgument(0) == 99L ? -1 : 0);
+        doAnswer(invocation -> {
+            DeviceZoneStates.PairVisitor visitor = invocation.getArgument(0);
+            visitor.visit(1L, 10L, pack(INSIDE, 1_000));
+            visitor.visit(2L, 10L, pack(PENDING_ENTER, 1_500));
+            visitor.visit(2L, 99L, pack(INSIDE, 500));
+            return null;
+        }).when(geofenceEngine).forEachState(any());
+        new GeofenceStateStore(geofenceEngine, eventStore, pipeline, properties).snapshot();
+        eventStore.onGeofenceEvents(List.of(event("1", 10L, "EXIT", 2_000), event("2", 10L, "ENTER", 2_500)));
+
+        new GeofenceStateStore(geofenceEngine, eventStore, pipeline, properties).restore();
+
+        InOrder order = inOrder(geofenceEngine);
+        order.verify(geofenceEngine).restoreState(0, 1L, 10L, pack(INSIDE, 1_000));
+        order.verify(geofenceEngine).restoreState(0, 2L, 10L, pack(PENDING_ENTER, 1_500));
+        order.verify(geofenceEngine).restoreState(0, 1L, 10L, pack(OUTSIDE, 0));
+        order.verify(geofenceEngine).restoreState(0, 2L, 10L, pack(INSIDE, 2_500));
+        verify(geofenceEngine, never()).restoreState(anyInt(), anyLong(), eq(99L), anyLong());
+        verify(geofenceEngine, times(4)).restoreState(anyInt(), anyLong(), anyLong(), anyLong());
+    }
+
+    @Test
+    void restore_WithoutSnapshot_ReplaysWholeEventLog() {
+        eventStore.onGeofenceEvents(List.of(event("1", 10L, "ENTER", 1_000), event("virtual", 10L, "ENTER", 1_000)));
+
+        new GeofenceStateStore(geofenceEngine, eventStore, pipeline, properties).restore();
+
+        verify(geofenceEngine).restoreState(0, 1L, 10L, pack(INSIDE, 1_000));
+        verify(geofenceEngine, times(1)).restoreState(anyInt(), anyLong(), anyLong(), anyLong());
+        verify(pipeline).broadcastAndWait(any());
+    }
+
+    @Test
+    void snapshot_AfterSimulation_LeavesVirtualDevicesOut() {
+        ZoneRepository zoneRepository = mock(ZoneRepository.class);
+        ZoneDeviceRepository zoneDeviceRepository = mock(ZoneDeviceRepository.class);
+        Zone home = new Zone("Home", "home", "Address", 52.2297, 21.0122, 150);
+        home.setId(10L);
+        home.setDeviceIds(List.of("1"));
+        when(zoneRepository.findAllWithDeviceIds()).thenReturn(List.of(home));
+        GeofenceEngine engine = new GeofenceEngine(zoneRepository, zoneDeviceRepository, mock(DeviceLabels.class),
+            properties);
+        engine.reloadZones();
+        engine.evaluate(new LocationFixDto("1", 52.2297, 21.0122, Instant.now(), 5.0));
+        // Evaluate fixes inline; the broadcast that would forget the fleet never runs, as when a snapshot
+        // is taken before the simulation ends
+        GeofencingService geofencingService = mock(GeofencingService.class);
+        when(geofencingService.processBatch(anyList())).thenAnswer(invocation -> {
+            List<LocationFixDto> fixes = invocation.getArgument(0);
+            List<GeofenceEventDto> transitions = new ArrayList<>();
+            fixes.forEach(fix -> engine.evaluate(fix, transitions));
+            return new LocationBatchResponse(fixes.size(), transitions);
+        });
+        new FleetSimulator(engine, geofencingService, pipeline, properties)
+            .run(new SimulationRequest(40, 30, 30, SimulationRequest.MovementModel.MIXED, 5.0, 64, 7L, null));
+        long[] virtualPairs = { 0 };
+        engine.forEachState((deviceId, zoneId, packed) -> virtualPairs[0] += FleetSimulator.isVirtual(deviceId) ? 1 : 0);
+        assertTrue(virtualPairs[0] > 0);
+
+        long written = new GeofenceStateStore(engine, eventStore, pipeline, properties).snapshot();
+        new GeofenceStateStore(geofenceEngine, eventStore, pipeline, properties).restore();
+
+        assertEquals(1, written);
+        verify(geofenceEngine).restoreState(eq(0), eq(1L), eq(10L), anyLong());
+        verify(geofenceEngine, times(1)).restoreState(anyInt(), anyLong(), anyLong(), anyLong());
+    }
+
+    private static GeofenceEventDto event(String deviceId, long zoneId, String type, long millis) {
+        return new GeofenceEventDto(zoneId, "Zone " + zoneId, deviceId, "Device " + deviceId, 52.2297, 21.0122, 100,
+            type, Instant.ofEpochMilli(millis));
+    }
+}
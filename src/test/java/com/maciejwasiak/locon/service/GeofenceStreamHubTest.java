@@ -0,0 +1,197 @@
+package com.maciejwasiak.locon.service;
+
+import com.maciejwasiak.locon.config.GeofenceProperties;
+import com.maciejwasiak.locon.dto.GeofenceEventDto;
+import com.maciejwasiak.locon.geofence.ZoneSnapshot;
+import com.maciejwasiak.locon.geofence.ZoneTable;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class GeofenceStreamHubTest {
+
+    @Mock
+    private GeofenceEngine geofenceEngine;
+
+    private ManualExecutor executor;
+    private GeofenceStreamHub hub;
+
+    @BeforeEach
+    void setUp() {
+        GeofenceProperties.Stream properties = new GeofenceProperties.Stream();
+        properties.setBufferSize(2);
+        executor = new ManualExecutor();
+        hub = new GeofenceStreamHub(geofenceEngine, properties, executor);
+        lenient().when(geofenceEngine.getZoneTable()).thenReturn(ZoneTable.of(List.of(
+            new ZoneSnapshot(1L, "Home", "home", "Address", 52.2297, 21.0122, 100, true, 7L, List.of()),
+            new ZoneSnapshot(2L, "School", "school", "Address", 52.2370, 21.0175, 200, true, 8L, List.of()))));
+    }
+
+    @Test
+    void onGeofenceEvents_SlowSubscriber_DropsOldestAndKeepsBufferBounded() throws Exception {
+        CapturingEmitter emitter = new CapturingEmitter();
+        hub.register(emitter, 1L, null);
+
+        hub.onGeofenceEvents(List.of(event(1L, "a"), event(1L, "b"), event(1L, "c"), event(1L, "d")));
+
+        assertEquals(2, hub.getDroppedEvents());
+        assertEquals(1, executor.pending.size());
+        executor.runAll();
+        assertEquals(2, emitter.sent);
+    }
+
+    @Test
+    void onGeofenceEvents_RoutesByZoneAndOwner() throws Exception {
+        CapturingEmitter zoneSubscriber = new CapturingEmitter();
+        CapturingEmitter ownerSubscriber = new CapturingEmitter();
+        CapturingEmitter otherOwner = new CapturingEmitter();
+        hub.register(zoneSubscriber, 2L, null);
+        hub.register(ownerSubscriber, null, 7L);
+        hub.register(otherOwner, null, 99L);
+
+        hub.onGeofenceEvents(List.of(event(1L, "a"), event(2L, "b")));
+        executor.runAll();
+
+        assertEquals(1, zoneSubscriber.sent);
+        assertEquals(1, ownerSubscriber.sent);
+        assertEquals(0, otherOwner.sent);
+        assertEquals(3, hub.subscriberCount());
+    }
+
+    @Test
+    void expireStalledWrites_BlockedWrite_DropsSubscriberWhileOthersKeepReceiving() throws Exception {
+        GeofenceProperties.Stream properties = new GeofenceProperties.Stream();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(1, 2, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        GeofenceStreamHub hub = new GeofenceStreamHub(geofenceEngine, properties, pool, null);
+        BlockingEmitter stalled = new BlockingEmitter();
+        LatchEmitter healthy = new LatchEmitter();
+        try {
+            hub.register(stalled, 1L, null);
+            hub.register(healthy, 2L, null);
+
+            hub.onGeofenceEvents(List.of(event(1L, "a")));
+            assertTrue(stalled.writing.await(5, TimeUnit.SECONDS));
+            hub.onGeofenceEvents(List.of(event(2L, "b")));
+            hub.expireStalledWrites(System.nanoTime() + properties.getWriteTimeout().toNanos() + 1);
+
+            // The only dispatch thread is still blocked; a stand-in thread serves the healthy subscriber
+            assertTrue(healthy.received.await(5, TimeUnit.SECONDS));
+            assertEquals(1, hub.getStalledSubscribers());
+            assertEquals(1, hub.subscriberCount());
+            assertTrue(stalled.interrupted);
+            assertEquals(1, stalled.failed.getCount());
+
+            stalled.release.countDown();
+            assertTrue(stalled.failed.await(5, TimeUnit.SECONDS));
+            assertEquals(1, pool.getCorePoolSize());
+        } finally {
+            stalled.release.countDown();
+            pool.shutdownNow();
+        }
+    }
+
+    private static GeofenceEventDto event(Long zoneId, String deviceId) {
+        return new GeofenceEventDto(zoneId, "Zone", deviceId, "Device " + deviceId, 52.2297, 21.0122, 100,
+            "ENTER", Instant.now());
+    }
+
+    private static final class CapturingEmitter extends SseEmitter {
+        int sent;
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            sent++;
+        }
+    }
+
+    /**
+     * Blocks in {@code send} until released, ignoring interrupts like a socket write to a client that stopped reading.
+     */
+    private static final class BlockingEmitter extends SseEmitter {
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch failed = new CountDownLatch(1);
+        volatile boolean interrupted;
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            writing.countDown();
+            while (release.getCount() > 0) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+
+        @Override
+        public void completeWithError(Throwable error) {
+            failed.countDown();
+        }
+    }
+
+    private static final class LatchEmitter extends SseEmitter {
+        final CountDownLatch received = new CountDownLatch(1);
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            received.countDown();
+        }
+    }
+
+    private static final class ManualExecutor extends AbstractExecutorService {
+        final List<Runnable> pending = new ArrayList<>();
+
+        void runAll() {
+            while (!pending.isEmpty()) {
+                pending.remove(0).run();
+            }
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            pending.add(command);
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return List.of();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return true;
+        }
+    }
+}
@@ -59,6 +59,25 @@ class GeofencingServiceTest {
         when(zoneRepository.findById(99L)).thenReturn(Optional.empty());
         assertThrows(IllegalArgumentException.class, () -> geofencingService.generateMockEvents(99L, 1));
     }
-}
 
+    @Test
+    void streamMockEvents_WithSeed_IsReproducible() {
+        Zone zone = new Zone("Home", "Address", "home", 300, null);
+        zone.setId(12L);
+        zone.setLatitude(52.2297);
+        zone.setLongitude(21.0122);
+        zone.setDeviceIds(List.of("1", "2", "3"));
+        when(zoneRepository.findById(12L)).thenReturn(Optional.of(zone));
+
+        List<GeofenceEventDto> first = geofencingService.streamMockEvents(12L, 20, 42L).toList();
+        List<GeofenceEventDto> second = geofencingService.streamMockEvents(12L, 20, 42L).toList();
 
+        assertEquals(20, first.size());
+        for (int i = 0; i < first.size(); i++) {
+            assertEquals(first.get(i).deviceId(), second.get(i).deviceId());
+            assertEquals(first.get(i).eventType(), second.get(i).eventType());
+            assertEquals(first.get(i).latitude(), second.get(i).latitude());
+            assertEquals(first.get(i).longitude(), second.get(i).longitude());
+        }
+    }
+}
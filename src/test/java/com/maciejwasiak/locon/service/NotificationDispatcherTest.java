@@ -0,0 +1,204 @@
+package com.maciejwasiak.locon.service;
+
+import com.maciejwasiak.locon.config.GeofenceProperties;
+import com.maciejwasiak.locon.dto.GeofenceEventDto;
+import com.maciejwasiak.locon.geofence.NotificationRoute;
+import com.maciejwasiak.locon.repository.ZoneDeviceRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class NotificationDispatcherTest {
+
+    @Mock
+    private ZoneDeviceRepository zoneDeviceRepository;
+
+    @Mock
+    private DevicePriorities priorities;
+
+    private final Map<Long, List<GeofenceEventDto>> delivered = new ConcurrentHashMap<>();
+    private NotificationDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() {
+        when(zoneDeviceRepository.findNotificationRoutes()).thenReturn(List.of(
+            new NotificationRoute(1L, 10L, 100L, 200L),
+            new NotificationRoute(1L, 11L, 100L, 100L),
+            new NotificationRoute(2L, 10L, 100L, 300L, 0),
+            new NotificationRoute(1L, 13L, 100L, 400L)));
+        lenient().when(priorities.isSos(anyLong())).thenAnswer(invocation -> (long) invocation.getArgument(0) == 13L);
+        dispatcher = new NotificationDispatcher(zoneDeviceRepository, delivered::put, priorities,
+            new GeofenceProperties(), Executors.newSingleThreadExecutor(), Executors.newSingleThreadExecutor());
+        dispatcher.reloadRoutes();
+    }
+
+    @Test
+    void onGeofenceEvents_BatchesPerRecipientWithoutQueryingPerEvent() throws Exception {
+        GeofenceEventDto first = event("10", 1L);
+        GeofenceEventDto second = event("11", 1L);
+        GeofenceEventDto unassigned = event("12", 1L);
+
+        dispatcher.onGeofenceEvents(List.of(first, second, unassigned, event("virtual", 1L)));
+        dispatcher.close();
+
+        assertEquals(List.of(first, second), delivered.get(100L));
+        assertEquals(List.of(first), delivered.get(200L));
+        assertEquals(3, dispatcher.getSentEvents());
+        assertEquals(2, dispatcher.getUnroutedEvents());
+        verify(zoneDeviceRepository).findNotificationRoutes();
+        verifyNoMoreInteractions(zoneDeviceRepository);
+    }
+
+    @Test
+    void offer_CoalescesTransitionsUntilTheWindowPasses() throws Exception {
+        long now = System.currentTimeMillis();
+        GeofenceEventDto enter = event("10", 1L);
+        GeofenceEventDto exit = event("10", 1L, "EXIT");
+        GeofenceEventDto reenter = event("10", 1L);
+        GeofenceEventDto other = event("11", 1L);
+
+        dispatcher.offer(List.of(enter), now);
+        dispatcher.offer(List.of(other, exit), now + 1_000);
+        dispatcher.offer(List.of(reenter), now + 2_000);
+        dispatcher.flushDue(now + 29_000);
+        assertEquals(2, dispatcher.getOpenDigests());
+        assertTrue(delivered.isEmpty());
+
+        dispatcher.flushDue(now + 30_500);
+        dispatcher.close();
+
+        assertSame(reenter, delivered.get(100L).get(0));
+        assertEquals(List.of(reenter, other), delivered.get(100L));
+        assertEquals(List.of(reenter), delivered.get(200L));
+        assertEquals(4, dispatcher.getCoalescedEvents());
+        assertEquals(2, dispatcher.getSentNotifications());
+        assertEquals(0, dispatcher.getOpenDigests());
+    }
+
+    @Test
+    void offer_EnterThenExitWithinWindowKeepsBoth() throws Exception {
+        long now = System.currentTimeMillis();
+        GeofenceEventDto enter = event("10", 1L);
+        GeofenceEventDto exit = event("10", 1L, "EXIT");
+
+        dispatcher.offer(List.of(enter), now);
+        dispatcher.offer(List.of(exit), now + 1_000);
+        dispatcher.flushDue(now + 30_500);
+        dispatcher.close();
+
+        assertEquals(List.of(enter, exit), delivered.get(200L));
+        assertEquals(0, dispatcher.getCoalescedEvents());
+    }
+
+    @Test
+    void offer_DigestIsSentAfterTheShortestWindowOfItsZones() throws Exception {
+        when(zoneDeviceRepository.findNotificationRoutesByZoneId(3L)).thenReturn(List.of(
+            new NotificationRoute(3L, 10L, 100L, 200L, 5)));
+        dispatcher.onZoneChanged(new ZoneChangedEvent(3L, ZoneChangedEvent.ChangeType.UPDATED));
+        long now = System.currentTimeMillis();
+        GeofenceEventDto slow = event("10", 1L);
+        GeofenceEventDto fast = event("10", 3L);
+
+        dispatcher.offer(List.of(slow), now);
+        dispatcher.offer(List.of(fast), now + 1_000);
+        dispatcher.flushDue(now + 4_500);
+        assertTrue(delivered.isEmpty());
+
+        dispatcher.flushDue(now + 6_500);
+        assertEquals(0, dispatcher.getOpenDigests());
+        dispatcher.close();
+
+        assertEquals(List.of(slow, fast), delivered.get(200L));
+        assertEquals(2, dispatcher.getSentNotifications());
+    }
+
+    @Test
+    void offer_ZeroWindowTransitionFlushesOpenDigestAheadOfItself() throws Exception {
+        long now = System.currentTimeMillis();
+        GeofenceEventDto digested = event("10", 1L);
+        GeofenceEventDto immediate = event("10", 2L);
+
+        dispatcher.offer(List.of(digested), now);
+        dispatcher.offer(List.of(immediate), now + 1_000);
+
+        // Recipient 200 is not routed for zone 2, so its digest stays open
+        assertEquals(1, dispatcher.getOpenDigests());
+        dispatcher.close();
+        assertEquals(List.of(digested, immediate), delivered.get(100L));
+        assertEquals(List.of(immediate), delivered.get(300L));
+        assertEquals(List.of(digested), delivered.get(200L));
+    }
+
+    @Test
+    void offer_ZeroWindowDeliversImmediately() throws Exception {
+        GeofenceEventDto enter = event("10", 2L);
+
+        dispatcher.offer(List.of(enter), System.currentTimeMillis());
+
+        assertEquals(0, dispatcher.getOpenDigests());
+        dispatcher.close();
+        assertEquals(List.of(enter), delivered.get(300L));
+    }
+
+    @Test
+    void offer_SosDeviceBypassesTheDigest() throws Exception {
+        GeofenceEventDto sos = event("13", 1L);
+
+        dispatcher.offer(List.of(sos), System.currentTimeMillis());
+
+        assertEquals(0, dispatcher.getOpenDigests());
+        dispatcher.close();
+        assertEquals(List.of(sos), delivered.get(100L));
+        assertEquals(List.of(sos), delivered.get(400L));
+        assertEquals(2, dispatcher.getSosLatency().getCount());
+        assertEquals(0, dispatcher.getCoalescedEvents());
+    }
+
+    @Test
+    void onZoneChanged_MutedZoneStopsRouting() throws Exception {
+        when(zoneDeviceRepository.findNotificationRoutesByZoneId(1L)).thenReturn(List.of());
+
+        dispatcher.onZoneChanged(new ZoneChangedEvent(1L, ZoneChangedEvent.ChangeType.UPDATED));
+        dispatcher.onGeofenceEvents(List.of(event("10", 1L)));
+        dispatcher.close();
+
+        assertTrue(delivered.isEmpty());
+        assertEquals(1, dispatcher.getUnroutedEvents());
+    }
+
+    @Test
+    void onAssignmentsChanged_RoutesNewlyAssignedDevice() throws Exception {
+        when(zoneDeviceRepository.findNotificationRoutesByZoneId(2L)).thenReturn(List.of(
+            new NotificationRoute(2L, 10L, 100L, 300L, 0),
+            new NotificationRoute(2L, 12L, 100L, 500L, 0)));
+
+        dispatcher.onAssignmentsChanged(new ZoneAssignmentsChangedEvent(2L));
+        GeofenceEventDto enter = event("12", 2L);
+        dispatcher.onGeofenceEvents(List.of(enter));
+        dispatcher.close();
+
+        assertEquals(List.of(enter), delivered.get(500L));
+        assertEquals(0, dispatcher.getUnroutedEvents());
+    }
+
+    private static GeofenceEventDto event(String deviceId, long zoneId) {
+        return event(deviceId, zoneId, "ENTER");
+    }
+
+    private static GeofenceEventDto event(String deviceId, long zoneId, String eventType) {
+        return new GeofenceEventDto(zoneId, "School", deviceId, "Device " + deviceId, 52.2297, 21.0122, 100,
+            eventType, Instant.ofEpochMilli(1_000));
+    }
+}
@@ -0,0 +1,50 @@
+package com.maciejwasiak.locon.service;
+
+import com.maciejwasiak.locon.model.User;
+import com.maciejwasiak.locon.model.UserRole;
+import com.maciejwasiak.locon.model.Zone;
+import com.maciejwasiak.locon.model.ZoneVertex;
+import com.maciejwasiak.locon.repository.ZoneRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ZoneServiceTest {
+
+    @Mock
+    private ZoneRepository zoneRepository;
+
+    @InjectMocks
+    private ZoneService zoneService;
+
+    @Test
+    void updateZone_FromForm_KeepsPolygonRadiusEnclosingEveryVertex() {
+        User user = new User("+48987654321", UserRole.USER);
+        Zone zone = new Zone("Campus", "school", "Address", 52.2297, 21.0122, 300);
+        zone.setId(1L);
+        // Vertices about 220 m east and 330 m north of the center
+        zone.setVertices(new ArrayList<>(List.of(
+            new ZoneVertex(52.2297, 21.0122), new ZoneVertex(52.2297, 21.0154), new ZoneVertex(52.2327, 21.0154))));
+        when(zoneRepository.findByIdAndUser(1L, user)).thenReturn(Optional.of(zone));
+        when(zoneRepository.save(any(Zone.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        Zone shrunk = zoneService.updateZone(1L, "Campus", "Address", "school", 50, List.of(), user);
+        int enclosing = shrunk.getRadius();
+        Zone moved = zoneService.updateZone(1L, "Campus", "Address", "school", 50, 52.2312, 21.0138, List.of(), user);
+
+        assertEquals(398, enclosing, 2);
+        assertTrue(moved.getRadius() < enclosing);
+        assertTrue(moved.getRadius() > 50);
+    }
+}